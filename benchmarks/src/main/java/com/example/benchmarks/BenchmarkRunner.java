@@ -0,0 +1,31 @@
+package com.example.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point for the benchmark jar. Runs everything matching the given JMH arguments (all benchmarks by default) with the
+ * gc profiler attached, so each report carries throughput, sampled latency percentiles (p99 included) and allocation per
+ * operation, and writes the results to jmh-result.json.
+ *
+ * @author Paul Gregoire
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(cli).addProfiler(GCProfiler.class);
+        if (cli.getIncludes().isEmpty()) {
+            builder.include("com\\.example\\.benchmarks\\..*Benchmark");
+        }
+        if (!cli.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON).result("jmh-result.json");
+        }
+        new Runner(builder.build()).run();
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.example.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.scope.ScopeType;
+import org.red5.server.api.stream.IBroadcastStream;
+import org.red5.server.api.stream.IStreamPacket;
+
+import com.example.buffer.OverflowPolicy;
+import com.example.config.PluginConfig;
+import com.example.dump.DumpSettings;
+import com.example.inspect.BitstreamInspector;
+import com.example.inspect.CodecInspection;
+import com.example.listener.MyProStreamListener;
+import com.example.pipeline.PacketPipeline;
+import com.example.pipeline.PacketProcessor;
+
+/**
+ * Cost per packet of the codec inspector stage on a 1080p60 H.264 / AAC publish with real NAL unit framing, against the
+ * same listener without a pipeline, with packets spread round-robin over a number of streams so the inspector state of
+ * many streams competes for cache. The difference between the two is the inspector's share; throughput divided by the
+ * roughly 107 packets per second of one such stream gives the streams a core keeps up with. Timestamps restart with every
+ * pass over the GOP, so each pass also reports one regression per track.
+ *
+ * @author Paul Gregoire
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BitstreamInspectorBenchmark {
+
+    @Param({ "1", "100", "1000" })
+    int streams;
+
+    @Param({ "false", "true" })
+    boolean inspect;
+
+    private MyProStreamListener[] listeners;
+
+    private IBroadcastStream[] broadcastStreams;
+
+    private IStreamPacket[] packets;
+
+    private CodecInspection inspection;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        IScope app = Stubs.scope("live", ScopeType.APPLICATION, null);
+        inspection = new CodecInspection(PluginConfig.EMPTY);
+        listeners = new MyProStreamListener[streams];
+        broadcastStreams = new IBroadcastStream[streams];
+        for (int i = 0; i < streams; i++) {
+            String name = "stream" + i;
+            listeners[i] = new MyProStreamListener(app, name, (DumpSettings) null, 512, OverflowPolicy.DROP_OLDEST_UNLESS_KEYFRAME);
+            if (inspect) {
+                listeners[i].setPipeline(new PacketPipeline(new PacketProcessor[] { inspection.create(app, name) }).open(app, name));
+            }
+            broadcastStreams[i] = Stubs.broadcastStream(app, name);
+        }
+        packets = SyntheticPackets.gop(true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (inspect) {
+            // the parsed parameters show the stage saw real frames rather than rejecting them
+            BitstreamInspector inspector = inspection.get(listeners[0].getScope(), "stream0");
+            if (inspector == null || inspector.getWidth() != 1920 || inspector.getHeight() != 1080) {
+                throw new IllegalStateException("Inspector didn't parse the stream: " + inspector);
+            }
+        }
+        for (MyProStreamListener listener : listeners) {
+            PacketPipeline pipeline = listener.getPipeline();
+            if (pipeline != null) {
+                pipeline.close();
+            }
+            listener.getPacketQueue().close();
+        }
+    }
+
+    @Benchmark
+    public int packetReceived() {
+        int n = next++;
+        int stream = n % streams;
+        MyProStreamListener listener = listeners[stream];
+        listener.packetReceived(broadcastStreams[stream], packets[(n / streams) % packets.length]);
+        // stand in for the scheduler worker
+        return listener.drain(64);
+    }
+
+}
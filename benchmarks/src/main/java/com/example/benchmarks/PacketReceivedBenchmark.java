@@ -0,0 +1,84 @@
+package com.example.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.scope.ScopeType;
+import org.red5.server.api.stream.IBroadcastStream;
+import org.red5.server.api.stream.IStreamPacket;
+
+import com.example.buffer.OverflowPolicy;
+import com.example.dump.DumpSettings;
+import com.example.listener.MyProStreamListener;
+
+/**
+ * Cost per packet of {@link MyProStreamListener#packetReceived} plus draining the queue, with packets spread round-robin
+ * over a number of streams.
+ *
+ * @author Paul Gregoire
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PacketReceivedBenchmark {
+
+    @Param({ "1", "10", "100", "1000" })
+    int streams;
+
+    @Param({ "DROP_OLDEST_UNLESS_KEYFRAME", "DROP_UNTIL_KEYFRAME" })
+    OverflowPolicy policy;
+
+    private MyProStreamListener[] listeners;
+
+    private IBroadcastStream[] broadcastStreams;
+
+    private IStreamPacket[] packets;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        IScope app = Stubs.scope("live", ScopeType.APPLICATION, null);
+        listeners = new MyProStreamListener[streams];
+        broadcastStreams = new IBroadcastStream[streams];
+        for (int i = 0; i < streams; i++) {
+            String name = "stream" + i;
+            listeners[i] = new MyProStreamListener(app, name, (DumpSettings) null, 512, policy);
+            broadcastStreams[i] = Stubs.broadcastStream(app, name);
+        }
+        packets = SyntheticPackets.gop();
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (MyProStreamListener listener : listeners) {
+            listener.getPacketQueue().close();
+        }
+    }
+
+    @Benchmark
+    public int packetReceived() {
+        int n = next++;
+        int stream = n % streams;
+        MyProStreamListener listener = listeners[stream];
+        listener.packetReceived(broadcastStreams[stream], packets[(n / streams) % packets.length]);
+        // stand in for the scheduler worker
+        return listener.drain(64);
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.example.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.server.api.stream.IStreamPacket;
+
+import com.example.buffer.DirectBufferPool;
+import com.example.buffer.OverflowPolicy;
+import com.example.buffer.PacketRing;
+import com.example.buffer.PacketSlot;
+
+/**
+ * Producer / consumer hand-off through a single {@link PacketRing}.
+ *
+ * @author Paul Gregoire
+ */
+@State(Scope.Group)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PacketRingBenchmark {
+
+    @Param({ "256", "1024" })
+    int capacity;
+
+    @Param({ "DROP_OLDEST_UNLESS_KEYFRAME", "DROP_UNTIL_KEYFRAME" })
+    OverflowPolicy policy;
+
+    private PacketRing ring;
+
+    private IStreamPacket[] packets;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        ring = new PacketRing(capacity, policy, new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_RETAINED_BYTES));
+        packets = SyntheticPackets.gop();
+    }
+
+    @TearDown
+    public void tearDown() {
+        ring.close();
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public boolean offer() {
+        return ring.offer(packets[next++ % packets.length]);
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public int poll() {
+        PacketSlot slot = ring.poll();
+        if (slot == null) {
+            return 0;
+        }
+        int size = slot.getSize();
+        ring.release(slot);
+        return size;
+    }
+
+}
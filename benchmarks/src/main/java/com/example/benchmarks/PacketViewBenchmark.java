@@ -0,0 +1,111 @@
+package com.example.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.scope.ScopeType;
+import org.red5.server.api.stream.IBroadcastStream;
+import org.red5.server.api.stream.IStreamPacket;
+
+import com.example.buffer.OverflowPolicy;
+import com.example.buffer.PacketView;
+import com.example.dump.DumpSettings;
+import com.example.listener.MyProStreamListener;
+import com.example.listener.PacketConsumer;
+
+/**
+ * Fan-out to three consumers in view mode (one shared zero-copy view) against copy mode (a private copy per consumer)
+ * at 1080p60 frame sizes. Run with the gc profiler to compare allocation per packet.
+ *
+ * @author Paul Gregoire
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PacketViewBenchmark {
+
+    private static final int CONSUMERS = 3;
+
+    @Param({ "true", "false" })
+    boolean readOnly;
+
+    @Param({ "10000", "200000" })
+    int frameSize;
+
+    private MyProStreamListener listener;
+
+    private IBroadcastStream stream;
+
+    private IStreamPacket[] packets;
+
+    private int next;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        IScope app = Stubs.scope("live", ScopeType.APPLICATION, null);
+        listener = new MyProStreamListener(app, "stream", (DumpSettings) null, 512, OverflowPolicy.DROP_OLDEST_UNLESS_KEYFRAME);
+        stream = Stubs.broadcastStream(app, "stream");
+        for (int i = 0; i < CONSUMERS; i++) {
+            listener.addPacketConsumer(new ReadingConsumer(readOnly, blackhole));
+        }
+        packets = new IStreamPacket[60];
+        for (int i = 0; i < packets.length; i++) {
+            packets[i] = SyntheticPackets.video(i * 16, i == 0, frameSize);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        listener.getPacketQueue().close();
+    }
+
+    @Benchmark
+    public int fanOut() {
+        listener.packetReceived(stream, packets[next++ % packets.length]);
+        return listener.drain(64);
+    }
+
+    /**
+     * Touches the start and end of each payload like a parser would.
+     */
+    static final class ReadingConsumer implements PacketConsumer {
+
+        private final boolean readOnly;
+
+        private final Blackhole blackhole;
+
+        ReadingConsumer(boolean readOnly, Blackhole blackhole) {
+            this.readOnly = readOnly;
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void onPacket(PacketView view) {
+            blackhole.consume(view.get(0));
+            blackhole.consume(view.get(view.getLength() - 1));
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return readOnly;
+        }
+
+    }
+
+}
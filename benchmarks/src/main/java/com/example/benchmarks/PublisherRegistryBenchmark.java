@@ -0,0 +1,83 @@
+package com.example.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.scope.ScopeType;
+
+import com.example.MyRed5ProPlugin;
+import com.example.registry.PublisherInfo;
+
+/**
+ * Publisher tracking through {@link MyRed5ProPlugin} with the registry pre-populated across ten applications.
+ *
+ * @author Paul Gregoire
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class PublisherRegistryBenchmark {
+
+    private static final int APPS = 10;
+
+    @Param({ "1", "100", "1000" })
+    int streams;
+
+    private MyRed5ProPlugin plugin;
+
+    private IScope[] apps;
+
+    private String[] names;
+
+    @Setup
+    public void setup() {
+        plugin = new MyRed5ProPlugin();
+        apps = new IScope[APPS];
+        for (int i = 0; i < APPS; i++) {
+            apps[i] = Stubs.scope("app" + i, ScopeType.APPLICATION, null);
+        }
+        names = new String[streams];
+        for (int i = 0; i < streams; i++) {
+            names[i] = "stream" + i;
+            plugin.addPublisher(apps[i % APPS], names[i]);
+        }
+    }
+
+    @Benchmark
+    public boolean isPublisherActive() {
+        int stream = ThreadLocalRandom.current().nextInt(streams);
+        return plugin.isPublisherActive(apps[stream % APPS], names[stream]);
+    }
+
+    @Benchmark
+    public boolean addRemove() {
+        IScope app = apps[(int) (Thread.currentThread().threadId() % APPS)];
+        String name = "churn" + Thread.currentThread().threadId();
+        plugin.addPublisher(app, name);
+        return plugin.removePublisher(app, name);
+    }
+
+    @Benchmark
+    public List<PublisherInfo> snapshotApplication() {
+        return plugin.getPublisherRegistry().snapshot(apps[0]);
+    }
+
+}
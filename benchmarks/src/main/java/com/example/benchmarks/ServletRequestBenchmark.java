@@ -0,0 +1,194 @@
+package com.example.benchmarks;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.servlet.MyServlet;
+import com.red5pro.plugin.Red5ProPlugin;
+
+import ch.qos.logback.classic.Level;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Per request overhead of the {@link MyServlet} service path against the original one, which probed readiness and, with
+ * debug logging on, dumped every request including its session (creating one each time for cookie-less clients). The
+ * handler itself does nothing so only the base class cost is measured; run with the GC profiler for allocation per
+ * request. Readiness is treated as true in both variants.
+ *
+ * @author Paul Gregoire
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ServletRequestBenchmark {
+
+    @Param({ "baseline", "current" })
+    String path;
+
+    @Param({ "false", "true" })
+    boolean debug;
+
+    private HttpServlet servlet;
+
+    private HttpServletRequest request;
+
+    private HttpServletResponse response;
+
+    @Setup
+    public void setup() {
+        if ("baseline".equals(path)) {
+            servlet = new BaselineServlet();
+        } else {
+            BenchServlet current = new BenchServlet();
+            current.setTraceSampleRate(100);
+            servlet = current;
+        }
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(servlet.getClass())).setLevel(debug ? Level.TRACE : Level.INFO);
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Host", "localhost:5080");
+        headers.put("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0 Safari/537.36");
+        headers.put("Accept", "application/json");
+        headers.put("Accept-Encoding", "gzip, deflate, br");
+        headers.put("Connection", "keep-alive");
+        request = Stubs.httpRequest("GET", "/myapp/myservlet", headers, new Cookie[] { new Cookie("pref", "1") });
+        response = Stubs.httpResponse();
+    }
+
+    @Benchmark
+    public int request() throws Exception {
+        if (servlet instanceof BenchServlet current) {
+            current.handle(request, response);
+        } else {
+            ((BaselineServlet) servlet).handle(request, response);
+        }
+        return response.getStatus();
+    }
+
+    /**
+     * Current base class with an empty GET handler.
+     */
+    static class BenchServlet extends MyServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        void handle(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+            service(request, response);
+        }
+
+        @Override
+        protected boolean isServiceReady() {
+            super.isServiceReady();
+            return true;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) {
+            resp.setStatus(HttpServletResponse.SC_OK);
+        }
+
+    }
+
+    /**
+     * The service path as it was before requests went sessionless and sampled, with an empty GET handler.
+     */
+    static class BaselineServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Logger logger = LoggerFactory.getLogger(getClass());
+
+        void handle(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+            service(request, response);
+        }
+
+        @Override
+        protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+            logger.trace("service <<");
+            if (logger.isDebugEnabled()) {
+                debugDump(request);
+            }
+            Red5ProPlugin.isReady();
+            logger.trace("service >>");
+            super.service(request, response);
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) {
+            resp.setStatus(HttpServletResponse.SC_OK);
+        }
+
+        private void debugDump(HttpServletRequest request) {
+            logger.debug("==========>>>DUMP START<<<==========");
+            logger.debug("Protocol: {} request id: {}", request.getProtocol(), request.getProtocolRequestId());
+            logger.debug("Request URI: {} URL: {}", request.getRequestURI(), request.getRequestURL());
+            logger.debug("Request id: {} requested session id: {}", request.getRequestId(), request.getRequestedSessionId());
+            logger.debug("Method: {}", request.getMethod());
+            logger.debug("Context type: {} path: {} servlet path: {}", request.getContentType(), request.getContextPath(),
+                    request.getServletPath());
+            logger.debug("Character encoding: {}", request.getCharacterEncoding());
+            logger.debug("Local address: {} name: {} port: {}", request.getLocalAddr(), request.getLocalName(), request.getLocalPort());
+            logger.debug("Remote address: {} host: {} port: {}", request.getRemoteAddr(), request.getRemoteHost(), request.getRemotePort());
+            logger.debug("Remote user: {}", request.getRemoteUser());
+            logger.debug("Server name: {} port: {}", request.getServerName(), request.getServerPort());
+            logger.debug("Path info: {}", request.getPathInfo());
+            logger.debug("Path translated: {}", request.getPathTranslated());
+            logger.debug("Query string: {}", request.getQueryString());
+            logger.debug("Auth type: {}", request.getAuthType());
+            logger.debug("User principal: {}", request.getUserPrincipal());
+            logger.debug("Session id: {}", request.getSession().getId());
+            logger.debug("Session created: {}", request.getSession().getCreationTime());
+            logger.debug("Session last accessed: {}", request.getSession().getLastAccessedTime());
+            logger.debug("Session max inactive: {}", request.getSession().getMaxInactiveInterval());
+            logger.debug("Session is new: {}", request.getSession().isNew());
+            request.getSession().getAttributeNames().asIterator().forEachRemaining(attrName -> {
+                logger.debug("Session attribute {}: {}", attrName, request.getSession().getAttribute(attrName));
+            });
+            Cookie[] cookies = request.getCookies();
+            if (cookies != null) {
+                for (Cookie cookie : cookies) {
+                    logger.debug("Cookie: {} value: {}", cookie.getName(), cookie.getValue());
+                    cookie.getAttributes().forEach((key, value) -> {
+                        logger.debug("Cookie attribute: {} value: {}", key, value);
+                    });
+                }
+            }
+            request.getHeaderNames().asIterator().forEachRemaining(headerName -> {
+                logger.trace("Header {}: {}", headerName, request.getHeader(headerName));
+            });
+            request.getParameterNames().asIterator().forEachRemaining(paramName -> {
+                logger.trace("Parameter {}: {}", paramName, request.getParameter(paramName));
+            });
+            request.getAttributeNames().asIterator().forEachRemaining(attrName -> {
+                logger.trace("Attribute {}: {}", attrName, request.getAttribute(attrName));
+            });
+            logger.debug("==========>>>DUMP END<<<==========");
+        }
+
+    }
+
+}
@@ -0,0 +1,221 @@
+package com.example.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.scope.ScopeType;
+import org.red5.server.api.stream.IBroadcastStream;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * Local stand-ins for server objects. Built as dynamic proxies answering only what the plugin asks for, so the harnesses
+ * don't have to track every method of the server interfaces.
+ *
+ * @author Paul Gregoire
+ */
+public final class Stubs {
+
+    private Stubs() {
+    }
+
+    /**
+     * Creates a scope stub.
+     *
+     * @param name scope name
+     * @param type scope type
+     * @param parent parent scope or null
+     * @return scope
+     */
+    public static IScope scope(String name, ScopeType type, IScope parent) {
+        String contextPath = parent != null ? parent.getContextPath() + '/' + name : '/' + name;
+        return (IScope) Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[] { IScope.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getType":
+                    return type;
+                case "getParent":
+                    return parent;
+                case "getContextPath":
+                case "getPath":
+                    return contextPath;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "StubScope [" + contextPath + "]";
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    /**
+     * Creates a broadcast stream stub.
+     *
+     * @param scope scope the stream lives in
+     * @param name published name
+     * @return stream
+     */
+    public static IBroadcastStream broadcastStream(IScope scope, String name) {
+        return (IBroadcastStream) Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[] { IBroadcastStream.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getScope":
+                            return scope;
+                        case "getPublishedName":
+                        case "getName":
+                            return name;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "StubBroadcastStream [" + name + "]";
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    /**
+     * Creates a request stub. Like the container, getSession() and getSession(true) create a new session with a random id
+     * on every call since the stub never hands out a session cookie; getSession(false) returns null.
+     *
+     * @param method HTTP method
+     * @param uri request URI
+     * @param headers request headers
+     * @param cookies request cookies
+     * @return request
+     */
+    public static HttpServletRequest httpRequest(String method, String uri, Map<String, String> headers, Cookie[] cookies) {
+        return (HttpServletRequest) Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[] { HttpServletRequest.class },
+                (proxy, m, args) -> {
+                    switch (m.getName()) {
+                        case "getMethod":
+                            return method;
+                        case "getRequestURI":
+                        case "getServletPath":
+                            return uri;
+                        case "getRequestURL":
+                            return new StringBuffer("http://localhost:5080").append(uri);
+                        case "getProtocol":
+                            return "HTTP/1.1";
+                        case "getRemoteAddr":
+                        case "getLocalAddr":
+                            return "127.0.0.1";
+                        case "getHeader":
+                            return headers.get(args[0]);
+                        case "getHeaderNames":
+                            return Collections.enumeration(headers.keySet());
+                        case "getCookies":
+                            return cookies;
+                        case "getParameterNames":
+                        case "getAttributeNames":
+                            return Collections.emptyEnumeration();
+                        case "getSession":
+                            return args == null || (Boolean) args[0] ? session() : null;
+                        case "getDispatcherType":
+                            return DispatcherType.REQUEST;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "StubRequest [" + method + ' ' + uri + "]";
+                        default:
+                            return defaultValue(m.getReturnType());
+                    }
+                });
+    }
+
+    private static HttpSession session() {
+        String id = UUID.randomUUID().toString();
+        long created = System.currentTimeMillis();
+        return (HttpSession) Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[] { HttpSession.class }, (proxy, m, args) -> {
+            switch (m.getName()) {
+                case "getId":
+                    return id;
+                case "getCreationTime":
+                case "getLastAccessedTime":
+                    return created;
+                case "getMaxInactiveInterval":
+                    return 1800;
+                case "isNew":
+                    return Boolean.TRUE;
+                case "getAttributeNames":
+                    return Collections.emptyEnumeration();
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    return defaultValue(m.getReturnType());
+            }
+        });
+    }
+
+    /**
+     * Creates a response stub that only keeps the status.
+     *
+     * @return response
+     */
+    public static HttpServletResponse httpResponse() {
+        int[] status = { HttpServletResponse.SC_OK };
+        return (HttpServletResponse) Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[] { HttpServletResponse.class },
+                (proxy, m, args) -> {
+                    switch (m.getName()) {
+                        case "setStatus":
+                        case "sendError":
+                            status[0] = (Integer) args[0];
+                            return null;
+                        case "getStatus":
+                            return status[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return defaultValue(m.getReturnType());
+                    }
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        if (type == char.class) {
+            return (char) 0;
+        }
+        return (byte) 0;
+    }
+
+}
@@ -0,0 +1,193 @@
+package com.example.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.server.api.stream.IStreamPacket;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.event.VideoData;
+
+/**
+ * Synthetic FLV-framed packets shaped like a 1080p60 H.264 / AAC publish.
+ *
+ * @author Paul Gregoire
+ */
+public final class SyntheticPackets {
+
+    // roughly 6 Mbps at 60 fps with a 2 second GOP
+    public static final int KEYFRAME_SIZE = 200_000;
+
+    public static final int INTERFRAME_SIZE = 10_000;
+
+    public static final int AUDIO_SIZE = 372;
+
+    public static final int GOP_LENGTH = 120;
+
+    private SyntheticPackets() {
+    }
+
+    public static VideoData video(int timestamp, boolean keyframe, int size) {
+        byte[] payload = new byte[size];
+        // avc, keyframe or inter frame, nalu
+        payload[0] = (byte) (keyframe ? 0x17 : 0x27);
+        payload[1] = 1;
+        VideoData video = new VideoData(IoBuffer.wrap(payload));
+        video.setTimestamp(timestamp);
+        return video;
+    }
+
+    /**
+     * AVC sequence header carrying an x264 1080p High profile SPS and a PPS.
+     *
+     * @param timestamp timestamp
+     * @return video packet
+     */
+    public static VideoData avcSequenceHeader(int timestamp) {
+        byte[] sps = bytes(0x67, 0x64, 0x00, 0x28, 0xac, 0xd9, 0x40, 0x78, 0x02, 0x27, 0xe5, 0xc0, 0x44, 0x00, 0x00, 0x03, 0x00, 0x04, 0x00,
+                0x00, 0x03, 0x00, 0xf0, 0x3c, 0x60, 0xc6, 0x58);
+        byte[] pps = bytes(0x68, 0xeb, 0xe3, 0xcb, 0x22, 0xc0);
+        IoBuffer buf = IoBuffer.allocate(64).setAutoExpand(true);
+        // avc keyframe, sequence header, composition time 0
+        buf.put(bytes(0x17, 0x00, 0x00, 0x00, 0x00));
+        // version, profile, compatibility, level, 4 byte lengths, one sps, one pps
+        buf.put(bytes(0x01, 0x64, 0x00, 0x28, 0xff, 0xe1)).putShort((short) sps.length).put(sps).put((byte) 0x01).putShort((short) pps.length)
+                .put(pps);
+        buf.flip();
+        VideoData video = new VideoData(buf);
+        video.setTimestamp(timestamp);
+        return video;
+    }
+
+    /**
+     * AVC frame framed the way encoders send it: an access unit delimiter, for keyframes an SEI, then a single slice
+     * filling the rest of the payload.
+     *
+     * @param timestamp timestamp
+     * @param keyframe IDR frame if true
+     * @param size payload size
+     * @return video packet
+     */
+    public static VideoData avcVideo(int timestamp, boolean keyframe, int size) {
+        byte[] payload = new byte[size];
+        payload[0] = (byte) (keyframe ? 0x17 : 0x27);
+        payload[1] = 1;
+        int pos = 5;
+        pos = nal(payload, pos, 2, 0x09);
+        if (keyframe) {
+            pos = nal(payload, pos, 24, 0x06);
+        }
+        nal(payload, pos, size - pos - 4, keyframe ? 0x65 : 0x41);
+        VideoData video = new VideoData(IoBuffer.wrap(payload));
+        video.setTimestamp(timestamp);
+        return video;
+    }
+
+    private static int nal(byte[] payload, int pos, int length, int header) {
+        payload[pos] = (byte) (length >>> 24);
+        payload[pos + 1] = (byte) (length >>> 16);
+        payload[pos + 2] = (byte) (length >>> 8);
+        payload[pos + 3] = (byte) length;
+        payload[pos + 4] = (byte) header;
+        return pos + 4 + length;
+    }
+
+    /**
+     * AAC sequence header, an AudioSpecificConfig for AAC LC at 44.1kHz stereo.
+     *
+     * @param timestamp timestamp
+     * @return audio packet
+     */
+    public static AudioData aacConfig(int timestamp) {
+        AudioData audio = new AudioData(IoBuffer.wrap(bytes(0xaf, 0x00, 0x12, 0x10)));
+        audio.setTimestamp(timestamp);
+        return audio;
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] out = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            out[i] = (byte) values[i];
+        }
+        return out;
+    }
+
+    public static AudioData audio(int timestamp, int size) {
+        byte[] payload = new byte[size];
+        // aac 44.1kHz stereo, raw frame
+        payload[0] = (byte) 0xaf;
+        payload[1] = 1;
+        AudioData audio = new AudioData(IoBuffer.wrap(payload));
+        audio.setTimestamp(timestamp);
+        return audio;
+    }
+
+    /**
+     * Stream metadata as it arrives from an encoder, an AMF encoded onMetaData notify.
+     *
+     * @param timestamp timestamp
+     * @return notify packet
+     */
+    public static Notify metadata(int timestamp) {
+        IoBuffer buf = IoBuffer.allocate(256).setAutoExpand(true);
+        // amf0 string "onMetaData" followed by an ecma array of numbers
+        writeString(buf.put((byte) 0x02), "onMetaData");
+        String[] keys = { "width", "height", "framerate", "videodatarate", "audiodatarate" };
+        double[] values = { 1920, 1080, 60, 6000, 128 };
+        buf.put((byte) 0x08).putInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            writeString(buf, keys[i]);
+            buf.put((byte) 0x00).putDouble(values[i]);
+        }
+        // object end
+        buf.put((byte) 0x00).put((byte) 0x00).put((byte) 0x09);
+        buf.flip();
+        Notify notify = new Notify(buf);
+        notify.setTimestamp(timestamp);
+        return notify;
+    }
+
+    private static void writeString(IoBuffer buf, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buf.putShort((short) bytes.length).put(bytes);
+    }
+
+    /**
+     * One GOP worth of interleaved packets: a keyframe, inter frames and audio at ~47 frames per second of video.
+     *
+     * @return packets in arrival order
+     */
+    public static IStreamPacket[] gop() {
+        return gop(false);
+    }
+
+    /**
+     * One GOP worth of interleaved packets as with {@link #gop()}, optionally with real AVC NAL unit framing and preceded
+     * by the AVC and AAC sequence headers, for stages that parse the bitstream.
+     *
+     * @param framed AVC framed video and sequence headers if true, zero filled payloads otherwise
+     * @return packets in arrival order
+     */
+    public static IStreamPacket[] gop(boolean framed) {
+        IStreamPacket[] packets = new IStreamPacket[GOP_LENGTH + GOP_LENGTH * 47 / 60 + (framed ? 3 : 1)];
+        int i = 0;
+        packets[i++] = metadata(0);
+        if (framed) {
+            packets[i++] = avcSequenceHeader(0);
+            packets[i++] = aacConfig(0);
+        }
+        int audioTs = 0;
+        for (int frame = 0; frame < GOP_LENGTH; frame++) {
+            int ts = frame * 1000 / 60;
+            int size = frame == 0 ? KEYFRAME_SIZE : INTERFRAME_SIZE;
+            packets[i++] = framed ? avcVideo(ts, frame == 0, size) : video(ts, frame == 0, size);
+            while (audioTs <= ts && i < packets.length) {
+                packets[i++] = audio(audioTs, AUDIO_SIZE);
+                audioTs += 21;
+            }
+        }
+        return i == packets.length ? packets : Arrays.copyOf(packets, i);
+    }
+
+}
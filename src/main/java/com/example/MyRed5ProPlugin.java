@@ -1,15 +1,16 @@
 package com.example;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
+import java.net.URI;
 import java.nio.file.Paths;
-import java.util.HashSet;
-import java.util.Properties;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import org.red5.server.adapter.MultiThreadedApplicationAdapter;
+import org.red5.server.api.IConnection;
+import org.red5.server.api.Red5;
 import org.red5.server.api.listeners.ScopeListenerAdapter;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.api.scope.ScopeType;
@@ -18,14 +19,45 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.support.FileSystemXmlApplicationContext;
 
+import com.example.admission.AdmissionController;
+import com.example.admission.AdmissionDecision;
+import com.example.buffer.DirectBufferPool;
+import com.example.cluster.ClusterRegistry;
+import com.example.cluster.ClusterSettings;
+import com.example.config.ConfigManager;
+import com.example.config.PluginConfig;
+import com.example.diag.DiagnosticsManager;
+import com.example.forward.ForwardManager;
+import com.example.forward.StreamForwarder;
+import com.example.gop.GopCache;
+import com.example.inspect.CodecInspection;
+import com.example.jfr.FlightRecording;
+import com.example.jfr.PublishAdmissionEvent;
 import com.example.listener.MyProStreamListener;
+import com.example.metrics.IngestMetrics;
+import com.example.pipeline.PipelineRegistry;
+import com.example.preview.PreviewService;
+import com.example.preview.PreviewSettings;
+import com.example.preview.StreamPreview;
+import com.example.processing.PacketScheduler;
+import com.example.record.RecordSettings;
+import com.example.record.RecordingManager;
+import com.example.registry.PublisherInfo;
+import com.example.registry.PublisherRegistry;
+import com.example.replay.ReplayEngine;
+import com.example.scope.ScopeConfig;
+import com.example.scope.ScopeServiceRegistry;
+import com.example.scope.ScopeServices;
+import com.example.timer.HashedTimerWheel;
+import com.example.watchdog.StaleStreamWatchdog;
+import com.red5pro.cluster.streams.Provision;
 import com.red5pro.license.LicenseManager;
 import com.red5pro.override.IProStream;
 import com.red5pro.override.ISideStream;
 import com.red5pro.override.ProStream;
 import com.red5pro.override.api.ProStreamTerminationEventListener;
 import com.red5pro.plugin.Red5ProPlugin;
-import com.red5pro.server.stream.ProStreamService;
+import com.red5pro.restreamer.plugin.RestreamerPlugin;
 import com.red5pro.whip.WhepSubscriber;
 
 /**
@@ -42,13 +74,62 @@ public class MyRed5ProPlugin extends Red5ProPlugin {
     // TODO set your plugin properties file name here, and place the file in conf/ with your desired properties
     private static String pluginPropsFileName = "my-plugin.properties";
 
-    private Properties plugProps = new Properties();
+    // current configuration, reloaded when the file changes
+    private ConfigManager configManager = new ConfigManager(Paths.get("conf", pluginPropsFileName));
 
     private ScopeListenerAdapter scopeListener;
 
     private PublishAlertHandler publishAlertHandler = new PublishAlertHandler(this);
 
-    private Set<String> activePublishers = new HashSet<>();
+    private PublisherRegistry activePublishers = new PublisherRegistry();
+
+    // per-scope services, created on a scope's first publish
+    private ScopeServiceRegistry scopeServices = new ScopeServiceRegistry(this);
+
+    // shared timer wheel for plugin-wide timeouts
+    private HashedTimerWheel timerWheel;
+
+    // attaches listeners to newly published streams
+    private StreamAttacher streamAttacher;
+
+    // shared workers draining the stream packet queues
+    private PacketScheduler packetScheduler;
+
+    // detects publishers that stopped sending
+    private StaleStreamWatchdog watchdog;
+
+    // per-stream ingest telemetry
+    private IngestMetrics ingestMetrics = new IngestMetrics(1000L);
+
+    // publish admission and rate limiting
+    private AdmissionController admissionController;
+
+    // last GOP per stream for priming new subscribers
+    private GopCache gopCache;
+
+    // segment recordings of published streams
+    private RecordingManager recordingManager;
+
+    // replays of recorded streams for load tests and incident reproduction
+    private ReplayEngine replayEngine;
+
+    // FLV over TCP relays of streams to downstream targets
+    private ForwardManager forwardManager;
+
+    // on-demand flight recordings with the plugin's events
+    private FlightRecording flightRecording;
+
+    // per-stream sampled packet logging, toggled at runtime
+    private DiagnosticsManager diagnostics;
+
+    private PreviewService previewService;
+
+    private ClusterRegistry clusterRegistry;
+
+    private CodecInspection codecInspection;
+
+    // per-stream processing pipelines built from the pipeline.* rules
+    private PipelineRegistry pipelineRegistry = new PipelineRegistry();
 
     @Override
     public void doStartProPlugin(FileSystemXmlApplicationContext activationContext) throws IOException {
@@ -60,18 +141,86 @@ public class MyRed5ProPlugin extends Red5ProPlugin {
         try {
             // set the properties
             log.trace("Loading properties");
-            try (InputStream in = Files.newInputStream(Paths.get("conf", pluginPropsFileName))) {
-                plugProps.load(in);
-            }
+            PluginConfig config = configManager.load();
             if (log.isTraceEnabled()) {
-                log.trace("Properties: {}", plugProps);
+                log.trace("Properties: {}", config);
             }
             // check for plugin enabled flag first
-            if (!Boolean.valueOf(plugProps.getProperty("enable", "true"))) {
+            if (!config.isEnabled()) {
                 log.info("Plugin disabled");
                 doStopProPlugin();
                 return;
             }
+            // limit how much off-heap memory the packet buffer pool keeps around
+            DirectBufferPool.shared().setMaxRetainedBytes(config.getBufferPoolMaxBytes());
+            // one timer wheel for all pending attaches
+            timerWheel = new HashedTimerWheel(config.getLong("timer.tick.ms", 50L), config.getInt("timer.wheel.size", 512));
+            timerWheel.start();
+            streamAttacher = new StreamAttacher(this, timerWheel, config.getLong("attach.retry.ms", 100L), config.getLong("attach.timeout.ms", 10000L));
+            // stale publisher detection on the same wheel
+            if (config.getBoolean("watchdog.enable", true)) {
+                watchdog = new StaleStreamWatchdog(timerWheel, config.getWatchdogAudioThresholdMs(), config.getWatchdogVideoThresholdMs(),
+                        config.isWatchdogRelease());
+            }
+            // admission control on the publish path, counting publishers that are still being attached
+            if (config.getBoolean("admission.enable", false)) {
+                admissionController = new AdmissionController(timerWheel, () -> activePublishers.size() + streamAttacher.getPendingCount(), config);
+                admissionController.start();
+            }
+            // GOP cache for instant subscriber start, off-heap under a node-wide budget
+            if (config.getBoolean("gop.cache.enable", false)) {
+                gopCache = new GopCache(config.getLong("gop.cache.max.bytes", 268435456L), config.getLong("gop.cache.max.stream.bytes", 16777216L),
+                        config.getBoolean("gop.cache.audio", true));
+            }
+            // memory-mapped recording of every published stream
+            if (config.getBoolean("record.enable", false)) {
+                recordingManager = new RecordingManager(RecordSettings.from(config));
+            }
+            // stream forwarding by rule or on request, written from the plugin executor
+            if (config.getBoolean("forward.enable", true)) {
+                forwardManager = new ForwardManager(timerWheel, gopCache, config);
+            }
+            // replay readers, idle until a replay is started
+            if (config.getBoolean("replay.enable", false)) {
+                replayEngine = new ReplayEngine(this, config.getInt("replay.threads", 2), config.getInt("replay.batch.size", 64));
+            }
+            // stream processing workers
+            PacketScheduler.Mode processingMode = PacketScheduler.Mode.of(config.getString("processing.mode"), PacketScheduler.Mode.WORKERS);
+            packetScheduler = new PacketScheduler(processingMode, config.getInt("processing.workers", 0), config.getInt("processing.batch.size", 64));
+            ingestMetrics.setSnapshotMaxAgeMs(config.getMetricsSnapshotMaxAgeMs());
+            // codec inspector stage, run on the streams the pipeline rules add it to
+            codecInspection = new CodecInspection(config);
+            pipelineRegistry.addFactory(codecInspection);
+            pipelineRegistry.setConfig(config);
+            flightRecording = new FlightRecording(ingestMetrics, config);
+            if (config.getBoolean("diag.enable", true)) {
+                diagnostics = new DiagnosticsManager(scopeServices, config);
+            }
+            // publisher locations replicated across the cluster
+            if (config.getBoolean("cluster.enable", false)) {
+                try {
+                    clusterRegistry = new ClusterRegistry(ClusterRegistry.nodeIdOf(config), ClusterRegistry.transportOf(config), timerWheel,
+                            ClusterSettings.from(config));
+                    clusterRegistry.start();
+                } catch (IOException | IllegalArgumentException e) {
+                    log.warn("Cluster registry not started", e);
+                    clusterRegistry = null;
+                }
+            }
+            // keyframe previews, decoded on demand by low priority threads
+            if (config.getBoolean("preview.enable", true)) {
+                previewService = new PreviewService(PreviewSettings.from(config));
+            }
+            // pick up edits to the properties file without a restart
+            configManager.addListener(this::applyConfig);
+            if (config.getBoolean("config.watch", true)) {
+                try {
+                    configManager.startWatching();
+                } catch (IOException | RuntimeException e) {
+                    // e.g. out of inotify watches, the plugin runs on without hot reload
+                    log.warn("Not watching the configuration for changes", e);
+                }
+            }
             // add scope listener for creation and removal events
             scopeListener = new ScopeListenerAdapter() {
 
@@ -81,8 +230,7 @@ public class MyRed5ProPlugin extends Red5ProPlugin {
                     ScopeType scopeType = scope.getType();
                     // configure the websocket scopes
                     if (scopeType == ScopeType.APPLICATION) {
-                        log.debug("Adding services to application scope: {}", scope);
-                        // TODO configure your application scope services etc here
+                        // services are created lazily on the scope's first publish, see ScopeServiceRegistry
 
                         // hook into publish create/start without needing to recreate the live app
                         MultiThreadedApplicationAdapter adapter = (MultiThreadedApplicationAdapter) scope.getHandler();
@@ -92,8 +240,8 @@ public class MyRed5ProPlugin extends Red5ProPlugin {
                         }
 
                     } else if (scopeType == ScopeType.ROOM) {
-                        // TODO configure your room scope services etc here
-
+                        // as with applications, room services wait for the first publish
+                        log.trace("Room scope created: {}", scope.getName());
                     }
                 }
 
@@ -102,7 +250,11 @@ public class MyRed5ProPlugin extends Red5ProPlugin {
                     log.trace("Scope removed: {}", scope);
                     ScopeType scopeType = scope.getType();
                     if (scopeType == ScopeType.APPLICATION) {
-                        // TODO perform clean up for things added at create
+                        // release the services of the application and any rooms left
+                        scopeServices.removeApplication(scope);
+                        if (admissionController != null) {
+                            admissionController.removeScope(scope);
+                        }
 
                         // remove the publish hook
                         MultiThreadedApplicationAdapter adapter = (MultiThreadedApplicationAdapter) scope.getHandler();
@@ -112,8 +264,10 @@ public class MyRed5ProPlugin extends Red5ProPlugin {
                         }
 
                     } else if (scopeType == ScopeType.ROOM) {
-                        // TODO perform clean up for things added at create
-
+                        scopeServices.remove(scope);
+                        if (admissionController != null) {
+                            admissionController.removeScope(scope);
+                        }
                     }
                 }
 
@@ -133,6 +287,53 @@ public class MyRed5ProPlugin extends Red5ProPlugin {
     public void doStopProPlugin() throws Exception {
         log.info("Stop plugin");
         // do your plugin stop logic here
+        configManager.stopWatching();
+        if (streamAttacher != null) {
+            log.debug("Stream attacher at stop: {}", streamAttacher);
+            streamAttacher.clear();
+        }
+        if (watchdog != null) {
+            watchdog.clear();
+        }
+        if (admissionController != null) {
+            log.debug("Admission at stop: {}", admissionController);
+            admissionController.stop();
+        }
+        if (replayEngine != null) {
+            log.debug("Replay engine at stop: {}", replayEngine);
+            replayEngine.shutdown();
+        }
+        if (flightRecording != null) {
+            flightRecording.shutdown();
+        }
+        if (diagnostics != null) {
+            diagnostics.shutdown();
+        }
+        if (clusterRegistry != null) {
+            log.debug("Cluster registry at stop: {}", clusterRegistry);
+            clusterRegistry.stop();
+        }
+        if (previewService != null) {
+            log.debug("Preview service at stop: {}", previewService);
+            previewService.shutdown();
+        }
+        if (timerWheel != null) {
+            timerWheel.stop();
+        }
+        activePublishers.clear();
+        scopeServices.clear();
+        if (gopCache != null) {
+            gopCache.clear();
+        }
+        if (recordingManager != null) {
+            recordingManager.clear();
+        }
+        if (forwardManager != null) {
+            forwardManager.clear();
+        }
+        if (packetScheduler != null) {
+            packetScheduler.shutdown();
+        }
 
         // calling into super stops the executors
         super.doStopProPlugin();
@@ -153,7 +354,7 @@ public class MyRed5ProPlugin extends Red5ProPlugin {
         @Override
     public String getProperty(String key) {
         // no props by default here
-        return plugProps.getProperty(key);
+        return configManager.get().getString(key);
     }
 
     /**
@@ -165,27 +366,304 @@ public class MyRed5ProPlugin extends Red5ProPlugin {
      */
     @Override
     public String getProperty(String key, String defaultValue) {
-        return plugProps.getProperty(key, defaultValue);
+        return configManager.get().getString(key, defaultValue);
+    }
+
+    /**
+     * Returns the current configuration snapshot; lock-free and safe to hold for the duration of an operation.
+     *
+     * @return configuration
+     */
+    public PluginConfig getConfig() {
+        return configManager.get();
+    }
+
+    public ConfigManager getConfigManager() {
+        return configManager;
+    }
+
+    /**
+     * Applies a reloaded configuration to the running services. Queue, dump and record settings are read per stream, so
+     * they take effect for streams published from now on; timer, worker and cache sizing need a restart.
+     *
+     * @param previous replaced configuration
+     * @param config new configuration
+     */
+    private void applyConfig(PluginConfig previous, PluginConfig config) {
+        DirectBufferPool.shared().setMaxRetainedBytes(config.getBufferPoolMaxBytes());
+        ingestMetrics.setSnapshotMaxAgeMs(config.getMetricsSnapshotMaxAgeMs());
+        if (watchdog != null && config.differs(previous, "watchdog.")) {
+            watchdog.setThresholds(config.getWatchdogAudioThresholdMs(), config.getWatchdogVideoThresholdMs(), config.isWatchdogRelease());
+        }
+        if (config.differs(previous, "pipeline.")) {
+            pipelineRegistry.setConfig(config);
+        }
+        if (admissionController != null && config.differs(previous, "admission.")) {
+            admissionController.setConfig(config);
+        }
+        if (recordingManager != null && config.differs(previous, "record.")) {
+            recordingManager.setSettings(RecordSettings.from(config));
+        }
+        if (forwardManager != null && config.differs(previous, "forward.")) {
+            forwardManager.setConfig(config);
+        }
+        if (diagnostics != null && config.differs(previous, "diag.")) {
+            diagnostics.setConfig(config);
+        }
+        if (previewService != null && config.differs(previous, "preview.")) {
+            previewService.setSettings(PreviewSettings.from(config));
+        }
+        if (codecInspection != null && config.differs(previous, "inspect.")) {
+            codecInspection.setConfig(config);
+        }
+        if (clusterRegistry != null && config.differs(previous, "cluster.")) {
+            clusterRegistry.setSettings(ClusterSettings.from(config));
+        }
+        if (flightRecording != null && config.differs(previous, "jfr.")) {
+            flightRecording.setConfig(config);
+        }
+        if (replayEngine != null) {
+            replayEngine.setBatchSize(config.getInt("replay.batch.size", 64));
+        }
+        if (config.isEnabled() != previous.isEnabled() || config.differs(previous, "timer.") || config.differs(previous, "processing.")
+                || config.differs(previous, "gop.") || config.getBoolean("record.enable", false) != previous.getBoolean("record.enable", false)
+                || config.getBoolean("replay.enable", false) != previous.getBoolean("replay.enable", false)
+                || config.getBoolean("diag.enable", true) != previous.getBoolean("diag.enable", true)
+                || config.getInt("diag.ring.capacity", 8192) != previous.getInt("diag.ring.capacity", 8192)
+                || config.getBoolean("preview.enable", true) != previous.getBoolean("preview.enable", true)
+                || config.getInt("preview.queue.capacity", 8) != previous.getInt("preview.queue.capacity", 8)
+                || config.getBoolean("cluster.enable", false) != previous.getBoolean("cluster.enable", false)
+                || !config.getString("cluster.node.id", "").equals(previous.getString("cluster.node.id", ""))
+                || !config.getString("cluster.transport", "loopback").equals(previous.getString("cluster.transport", "loopback"))) {
+            log.warn("Some changed settings only take effect after a restart");
+        }
     }
 
     public boolean addPublisher(IScope scope, String name) {
         log.debug("Adding publisher - scope: {} name: {}", scope.getName(), name);
-        return activePublishers.add(scope.getName() + "/" + name);
+        if (activePublishers.add(scope, name) == null) {
+            return false;
+        }
+        if (clusterRegistry != null) {
+            clusterRegistry.published(scope, name);
+        }
+        return true;
     }
 
     public boolean removePublisher(IScope scope, String name) {
         log.debug("Removing publisher - scope: {} name: {}", scope.getName(), name);
-        return activePublishers.remove(scope.getName() + "/" + name);
+        if (activePublishers.remove(scope, name) == null) {
+            return false;
+        }
+        if (clusterRegistry != null) {
+            clusterRegistry.unpublished(scope, name);
+        }
+        return true;
     }
 
     public boolean isPublisherActive(IScope scope, String name) {
-        return activePublishers.contains(scope.getName() + "/" + name);
+        return activePublishers.contains(scope, name);
+    }
+
+    public PublisherInfo getPublisher(IScope scope, String name) {
+        return activePublishers.get(scope, name);
     }
 
+    /**
+     * Returns an immutable snapshot of the active publisher paths; prefer {@link #getPublisherRegistry()} for anything
+     * beyond display.
+     *
+     * @return scope name / stream name entries
+     */
     public Set<String> getActivePublishers() {
+        return activePublishers.snapshot().stream().map(PublisherInfo::getPath).collect(Collectors.toUnmodifiableSet());
+    }
+
+    public PipelineRegistry getPipelineRegistry() {
+        return pipelineRegistry;
+    }
+
+    public ScopeServiceRegistry getScopeServices() {
+        return scopeServices;
+    }
+
+    public PublisherRegistry getPublisherRegistry() {
         return activePublishers;
     }
 
+    /**
+     * Attaches a stream listener to a ProStream that has just become available and tracks the publisher until it stops.
+     *
+     * @param scope scope of the stream
+     * @param name stream name
+     * @param proStream the stream
+     */
+    public void attachListener(IScope scope, String name, ProStream proStream) {
+        // the scope's services come to life with its first publish
+        ScopeServices services = scopeServices.forScope(scope);
+        ScopeConfig config = services.getConfig();
+        MyProStreamListener listener = new MyProStreamListener(scope, name, config.getDumpSettings(), config.getQueueCapacity(),
+                config.getOverflowPolicy());
+        listener.setPacketScheduler(services.getPacketScheduler());
+        listener.setDrainTimeoutMs(config.getDrainTimeoutMs());
+        listener.setPipeline(pipelineRegistry.create(scope, name));
+        services.addStream(name, listener);
+        addPublisher(scope, name);
+        listener.setPublisherInfo(getPublisher(scope, name));
+        listener.setStreamMetrics(ingestMetrics.register(scope, name));
+        if (diagnostics != null) {
+            listener.setPacketLog(diagnostics.get(scope, name));
+        }
+        StreamPreview preview = previewService != null ? previewService.register(scope, name) : null;
+        listener.setPreview(preview);
+        if (gopCache != null) {
+            listener.addPacketConsumer(gopCache.register(scope, name));
+        }
+        if (recordingManager != null) {
+            listener.addPacketConsumer(recordingManager.register(scope, name));
+        }
+        StreamForwarder forwarder = forwardManager != null ? forwardManager.register(scope, name) : null;
+        if (forwarder != null) {
+            listener.addPacketConsumer(forwarder);
+        }
+        // starting the listener adds it to the stream along with its own termination handling
+        listener.start(proStream);
+        if (watchdog != null) {
+            watchdog.watch(listener);
+        }
+        log.debug("Attached MyProStreamListener to ProStream: {} in scope: {}", name, scope.getName());
+        // add a termination listener to clean up when done
+        proStream.addTerminationEventListener(new ProStreamTerminationEventListener() {
+
+            @Override
+            public void streamStopped(IProStream stream) {
+                log.debug("ProStream stopped: {} in scope: {}", name, scope.getName());
+                // perform any clean up needed here
+                removePublisher(scope, name);
+                services.removeStream(name, listener);
+                ingestMetrics.unregister(scope, name);
+                if (gopCache != null) {
+                    gopCache.unregister(scope, name);
+                }
+                if (recordingManager != null) {
+                    recordingManager.unregister(scope, name);
+                }
+                if (forwarder != null) {
+                    forwardManager.unregister(scope, name);
+                }
+                if (preview != null) {
+                    previewService.unregister(preview);
+                }
+                if (watchdog != null) {
+                    watchdog.unwatch(listener);
+                }
+                ((ProStream) stream).removeTerminationEventListener(this);
+            }
+
+        });
+    }
+
+    public StreamAttacher getStreamAttacher() {
+        return streamAttacher;
+    }
+
+    public HashedTimerWheel getTimerWheel() {
+        return timerWheel;
+    }
+
+    public StaleStreamWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    public GopCache getGopCache() {
+        return gopCache;
+    }
+
+    public RecordingManager getRecordingManager() {
+        return recordingManager;
+    }
+
+    /**
+     * Forwards a provisioned stream to downstream targets as FLV over TCP, e.g. <code>tcp://host:port</code>. A listener
+     * is attached to the provision's source stream to feed the forwarder; if the stream is already forwarded the targets
+     * are added to its forwarder instead. Forwarding ends with the source stream or when the forwarder is closed.
+     *
+     * @param provision provision of the source stream
+     * @param targets target URIs
+     * @return forwarder, or null if forwarding is disabled or the source stream isn't available
+     */
+    public StreamForwarder forward(Provision provision, List<URI> targets) {
+        if (forwardManager == null) {
+            return null;
+        }
+        ProStream source = RestreamerPlugin.findStream(provision);
+        if (source == null) {
+            log.debug("No source stream for provision: {}", provision.getGuid());
+            return null;
+        }
+        IScope scope = source.getScope();
+        String name = source.getPublishedName();
+        // the listener is attached while the forwarder is created, so concurrent calls can't feed it twice
+        StreamForwarder forwarder = forwardManager.register(scope, name, targets, created -> {
+            PluginConfig config = getConfig();
+            MyProStreamListener listener = new MyProStreamListener(provision, null, config.getQueueCapacity(), config.getOverflowPolicy());
+            listener.addPacketConsumer(created);
+            created.setCloseHook(listener::stop);
+            listener.start(source);
+            source.addTerminationEventListener(new ProStreamTerminationEventListener() {
+
+                @Override
+                public void streamStopped(IProStream stream) {
+                    forwardManager.unregister(scope, name);
+                    ((ProStream) stream).removeTerminationEventListener(this);
+                }
+
+            });
+            log.debug("Forwarding provision: {}", provision.getGuid());
+        });
+        return forwarder;
+    }
+
+    public ForwardManager getForwardManager() {
+        return forwardManager;
+    }
+
+    public DiagnosticsManager getDiagnostics() {
+        return diagnostics;
+    }
+
+    public CodecInspection getCodecInspection() {
+        return codecInspection;
+    }
+
+    public ClusterRegistry getClusterRegistry() {
+        return clusterRegistry;
+    }
+
+    public PreviewService getPreviewService() {
+        return previewService;
+    }
+
+    public FlightRecording getFlightRecording() {
+        return flightRecording;
+    }
+
+    public ReplayEngine getReplayEngine() {
+        return replayEngine;
+    }
+
+    public IngestMetrics getIngestMetrics() {
+        return ingestMetrics;
+    }
+
+    public PacketScheduler getPacketScheduler() {
+        return packetScheduler;
+    }
+
     /**
      * Request a service switch for the given WHEP subscriber to another side stream.
      *
@@ -215,6 +693,18 @@ public class MyRed5ProPlugin extends Red5ProPlugin {
         return self != null ? self.scheduleTask(task, initialDelay, delay) : null;
     }
 
+    /** {@link #getPacketScheduler() packet scheduler} */
+    public static PacketScheduler packetScheduler() {
+        MyRed5ProPlugin self = (MyRed5ProPlugin) LicenseManager.getInstance().getPlugin(NAME);
+        return self != null ? self.getPacketScheduler() : null;
+    }
+
+    /** {@link #getTimerWheel() timer wheel} */
+    public static HashedTimerWheel timerWheel() {
+        MyRed5ProPlugin self = (MyRed5ProPlugin) LicenseManager.getInstance().getPlugin(NAME);
+        return self != null ? self.getTimerWheel() : null;
+    }
+
     public class PublishAlertHandler implements IStreamPublishSecurity {
 
         private MyRed5ProPlugin plugin;
@@ -228,42 +718,32 @@ public class MyRed5ProPlugin extends Red5ProPlugin {
         public boolean isPublishAllowed(IScope scope, String name, String mode) {
             // fires when a publisher is being set up, so perform any processing on this new publish as needed
             log.debug("isPublishAllowed - scope: {} name: {} mode: {}", scope, name, mode);
-            // create a task to attach a listener after publish starts
-            submit(() -> {
-                log.debug("Publish setup task executing for stream: {} in scope: {}", name, scope.getName());
-                // attempts to attach the listener
-                int attempts = 3;
-                // whether we successfully attached the listener
-                boolean attached = false;
-                do {
-                    ProStream proStream = ProStreamService.getProStream(scope, name);
-                    if (proStream != null) {
-                        proStream.addStreamListener(new MyProStreamListener(scope, name, true));
-                        plugin.addPublisher(scope, name);
-                        attached = true;
-                        log.debug("Attached MyProStreamListener to ProStream: {} in scope: {}", name, scope.getName());
-                        // add a termination listener to clean up when done
-                        proStream.addTerminationEventListener(new ProStreamTerminationEventListener() {
-
-                            @Override
-                            public void streamStopped(IProStream stream) {
-                                log.debug("ProStream stopped: {} in scope: {}", name, scope.getName());
-                                // perform any clean up needed here
-                                plugin.removePublisher(scope, name);
-                            }
-                            
-                        });
-                    } else {
-                        try {
-                            // wait a bit before trying again
-                            Thread.sleep(500);
-                        } catch (InterruptedException e) {
-                            log.warn("Interrupted while waiting to re-attempt ProStream fetch for stream: {} in scope: {}", name, scope.getName());
-                        }
-                    }
-                } while (!attached && attempts-- > 0);
-            });
-            // we dont perform security checks here, let it pass
+            // admit or reject before any work is queued for the publish
+            AdmissionController admission = plugin.getAdmissionController();
+            if (admission != null) {
+                PublishAdmissionEvent event = new PublishAdmissionEvent();
+                event.begin();
+                IConnection conn = Red5.getConnectionLocal();
+                String client = conn != null ? conn.getRemoteAddress() : null;
+                AdmissionDecision decision = admission.admit(scope, client);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.setStream(scope, name);
+                    event.client = client;
+                    event.decision = decision.name();
+                    event.admitted = decision.isAdmitted();
+                    event.commit();
+                }
+                if (!decision.isAdmitted()) {
+                    log.info("Publish rejected - scope: {} name: {} reason: {}", scope.getName(), name, decision);
+                    return false;
+                }
+            }
+            // register a pending attach, the listener is added once the ProStream exists
+            StreamAttacher attacher = plugin.getStreamAttacher();
+            if (attacher != null) {
+                attacher.requestAttach(scope, name);
+            }
             return true;
         }
 
@@ -0,0 +1,231 @@
+package com.example;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.stream.IBroadcastStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.jfr.StreamAttachEvent;
+import com.example.timer.HashedTimerWheel;
+import com.example.timer.HashedTimerWheel.Timeout;
+import com.red5pro.override.ProStream;
+import com.red5pro.server.stream.ProStreamService;
+
+/**
+ * Attaches the plugin to new ProStreams once they exist. A publish request registers a pending attach; the attach then
+ * happens on the broadcast start notification if the application forwards it to {@link #onBroadcastStart(IBroadcastStream)},
+ * or otherwise on the shared timer wheel which re-checks every pending stream at the retry interval until the attach
+ * timeout passes. No executor thread is held while waiting.
+ *
+ * @author Paul Gregoire
+ */
+public class StreamAttacher {
+
+    private static Logger log = LoggerFactory.getLogger(StreamAttacher.class);
+
+    // latency histogram buckets: < 1ms, < 2ms, < 4ms ... >= 32.768s
+    private static final int LATENCY_BUCKETS = 17;
+
+    private final MyRed5ProPlugin plugin;
+
+    private final HashedTimerWheel wheel;
+
+    private final long retryMs;
+
+    private final long timeoutMs;
+
+    private final ConcurrentHashMap<StreamKey, PendingAttach> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder requested = new LongAdder();
+
+    private final LongAdder attached = new LongAdder();
+
+    private final LongAdder attachedOnEvent = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder latencyTotalMs = new LongAdder();
+
+    private final AtomicLong latencyMaxMs = new AtomicLong();
+
+    private final AtomicLongArray latencyHistogram = new AtomicLongArray(LATENCY_BUCKETS);
+
+    public StreamAttacher(MyRed5ProPlugin plugin, HashedTimerWheel wheel, long retryMs, long timeoutMs) {
+        this.plugin = plugin;
+        this.wheel = wheel;
+        this.retryMs = retryMs;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Registers a stream that is about to be published. Returns immediately.
+     *
+     * @param scope scope
+     * @param name stream name
+     */
+    public void requestAttach(IScope scope, String name) {
+        StreamKey key = new StreamKey(scope, name);
+        PendingAttach attach = new PendingAttach(key);
+        if (pending.putIfAbsent(key, attach) == null) {
+            requested.increment();
+            // the stream usually doesn't exist yet when publish security is consulted, so don't look it up here
+            attach.timeout = wheel.schedule(attach, retryMs);
+        } else {
+            log.debug("Attach already pending for {}", key);
+        }
+    }
+
+    /**
+     * Broadcast start notification; applications may forward their streamBroadcastStart callback here to attach without
+     * waiting for the next wheel tick.
+     *
+     * @param stream the stream that started
+     */
+    public void onBroadcastStart(IBroadcastStream stream) {
+        PendingAttach attach = pending.get(new StreamKey(stream.getScope(), stream.getPublishedName()));
+        if (attach != null && attach.tryAttach()) {
+            attachedOnEvent.increment();
+        }
+    }
+
+    /**
+     * Drops all pending attaches, e.g. on plugin stop.
+     */
+    public void clear() {
+        pending.values().forEach(attach -> {
+            if (attach.timeout != null) {
+                attach.timeout.cancel();
+            }
+        });
+        pending.clear();
+    }
+
+    private void recordLatency(long latencyMs) {
+        attached.increment();
+        latencyTotalMs.add(latencyMs);
+        latencyMaxMs.accumulateAndGet(latencyMs, Math::max);
+        int bucket = latencyMs <= 0 ? 0 : Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(latencyMs));
+        latencyHistogram.incrementAndGet(bucket);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getRequestedCount() {
+        return requested.sum();
+    }
+
+    public long getAttachedCount() {
+        return attached.sum();
+    }
+
+    public long getAttachedOnEventCount() {
+        return attachedOnEvent.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public long getAverageLatencyMs() {
+        long count = attached.sum();
+        return count > 0 ? latencyTotalMs.sum() / count : 0L;
+    }
+
+    public long getMaxLatencyMs() {
+        return latencyMaxMs.get();
+    }
+
+    /**
+     * Attach latency counts in power-of-two millisecond buckets; index i counts latencies below 2^i ms.
+     *
+     * @return copy of the histogram
+     */
+    public long[] getLatencyHistogram() {
+        long[] counts = new long[LATENCY_BUCKETS];
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            counts[i] = latencyHistogram.get(i);
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamAttacher [pending=" + pending.size() + ", requested=" + getRequestedCount() + ", attached=" + getAttachedCount()
+                + ", failed=" + getFailedCount() + ", avgLatencyMs=" + getAverageLatencyMs() + ", maxLatencyMs=" + getMaxLatencyMs() + "]";
+    }
+
+    private final class PendingAttach implements HashedTimerWheel.TimerTask {
+
+        final StreamKey key;
+
+        final long requestTime = System.currentTimeMillis();
+
+        final AtomicBoolean done = new AtomicBoolean();
+
+        volatile Timeout timeout;
+
+        PendingAttach(StreamKey key) {
+            this.key = key;
+        }
+
+        boolean tryAttach() {
+            StreamAttachEvent event = new StreamAttachEvent();
+            event.begin();
+            boolean attached = attach();
+            event.end();
+            if (event.shouldCommit()) {
+                event.setStream(key.getScope(), key.getName());
+                event.attached = attached;
+                event.sinceRequestMs = System.currentTimeMillis() - requestTime;
+                event.commit();
+            }
+            return attached;
+        }
+
+        private boolean attach() {
+            ProStream proStream = ProStreamService.getProStream(key.getScope(), key.getName());
+            if (proStream != null && done.compareAndSet(false, true)) {
+                pending.remove(key, this);
+                Timeout t = timeout;
+                if (t != null) {
+                    t.cancel();
+                }
+                long latency = System.currentTimeMillis() - requestTime;
+                try {
+                    plugin.attachListener(key.getScope(), key.getName(), proStream);
+                    recordLatency(latency);
+                    log.debug("Attached to {} after {}ms", key, latency);
+                } catch (Exception e) {
+                    failed.increment();
+                    log.warn("Exception attaching to {}", key, e);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void run(Timeout timeout) {
+            if (done.get() || tryAttach()) {
+                return;
+            }
+            if (System.currentTimeMillis() - requestTime < timeoutMs) {
+                wheel.reschedule(timeout, retryMs);
+            } else if (done.compareAndSet(false, true)) {
+                pending.remove(key, this);
+                failed.increment();
+                log.warn("No ProStream for {} after {}ms, giving up", key, timeoutMs);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.example;
+
+import org.red5.server.api.scope.IScope;
+
+/**
+ * Identifies a stream by its scope and name without building a path string.
+ *
+ * @author Paul Gregoire
+ */
+public final class StreamKey {
+
+    private final IScope scope;
+
+    private final String name;
+
+    private final int hash;
+
+    public StreamKey(IScope scope, String name) {
+        this.scope = scope;
+        this.name = name;
+        this.hash = 31 * System.identityHashCode(scope) + name.hashCode();
+    }
+
+    public IScope getScope() {
+        return scope;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof StreamKey) {
+            StreamKey other = (StreamKey) obj;
+            return hash == other.hash && scope == other.scope && name.equals(other.name);
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return scope.getName() + "/" + name;
+    }
+
+}
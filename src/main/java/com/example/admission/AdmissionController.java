@@ -0,0 +1,235 @@
+package com.example.admission;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import org.red5.server.api.scope.IScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.config.PluginConfig;
+import com.example.timer.HashedTimerWheel;
+import com.example.timer.HashedTimerWheel.Timeout;
+
+/**
+ * Decides whether a publish may proceed, on the connect path. In order of cost: load shedding, the node-wide publisher
+ * cap, then token buckets per client address and per scope. CPU and heap are sampled on the shared timer wheel and
+ * published through a volatile flag, the publisher count comes from a supplier backed by atomic counters and the buckets
+ * take a token with a single compare-and-set, so a decision never locks or blocks. A client token is handed back when
+ * the scope bucket rejects the publish, so a scope at its limit doesn't use up its clients' allowance. Heap load is the tenured pool's
+ * occupancy after the last collection where available. Idle client buckets are swept on the sampling timer.
+ *
+ * @author Paul Gregoire
+ */
+public class AdmissionController {
+
+    private static Logger log = LoggerFactory.getLogger(AdmissionController.class);
+
+    // sweep idle client buckets every this many samples
+    private static final int SWEEP_SAMPLES = 20;
+
+    // shedding stops this far below the thresholds
+    private static final double SHED_HYSTERESIS = 0.05d;
+
+    private final HashedTimerWheel wheel;
+
+    // active plus pending publishers on this node
+    private final IntSupplier publisherCount;
+
+    private final ConcurrentHashMap<IScope, TokenBucket> scopeBuckets = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, TokenBucket> clientBuckets = new ConcurrentHashMap<>();
+
+    private final LongAdder[] decisions = new LongAdder[AdmissionDecision.values().length];
+
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    // largest collected heap pool, its usage after the last gc tells live data from garbage
+    private final MemoryPoolMXBean tenured = tenuredPool();
+
+    private volatile double scopeRate, clientRate;
+
+    private volatile int scopeBurst, clientBurst;
+
+    private volatile int maxPublishers;
+
+    private volatile double cpuThreshold, heapThreshold;
+
+    private volatile long sampleMs;
+
+    private volatile boolean overloaded;
+
+    private volatile double cpuLoad, heapLoad;
+
+    private volatile Timeout sampler;
+
+    private int samples;
+
+    public AdmissionController(HashedTimerWheel wheel, IntSupplier publisherCount, PluginConfig config) {
+        this.wheel = wheel;
+        this.publisherCount = publisherCount;
+        for (int i = 0; i < decisions.length; i++) {
+            decisions[i] = new LongAdder();
+        }
+        setConfig(config);
+    }
+
+    /**
+     * Applies the admission.* settings; buckets are rebuilt with the new limits.
+     *
+     * @param config configuration
+     */
+    public void setConfig(PluginConfig config) {
+        scopeRate = config.getDouble("admission.scope.rate", 50d);
+        scopeBurst = config.getInt("admission.scope.burst", 100);
+        clientRate = config.getDouble("admission.client.rate", 10d);
+        clientBurst = config.getInt("admission.client.burst", 100);
+        maxPublishers = config.getInt("admission.max.publishers", 0);
+        cpuThreshold = config.getDouble("admission.cpu.threshold", 0.9d);
+        heapThreshold = config.getDouble("admission.heap.threshold", 0.9d);
+        sampleMs = config.getLong("admission.load.sample.ms", 500L);
+        scopeBuckets.clear();
+        clientBuckets.clear();
+    }
+
+    public void start() {
+        sampler = wheel.schedule(this::sample, sampleMs);
+    }
+
+    public void stop() {
+        Timeout timeout = sampler;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        scopeBuckets.clear();
+        clientBuckets.clear();
+    }
+
+    /**
+     * Decides on a publish request.
+     *
+     * @param scope scope published into
+     * @param clientAddress remote address, or null if unknown
+     * @return decision
+     */
+    public AdmissionDecision admit(IScope scope, String clientAddress) {
+        AdmissionDecision decision = decide(scope, clientAddress);
+        decisions[decision.ordinal()].increment();
+        return decision;
+    }
+
+    private AdmissionDecision decide(IScope scope, String clientAddress) {
+        if (overloaded) {
+            return AdmissionDecision.OVERLOADED;
+        }
+        int max = maxPublishers;
+        if (max > 0 && publisherCount.getAsInt() >= max) {
+            return AdmissionDecision.NODE_FULL;
+        }
+        long now = System.nanoTime();
+        // client first so a rejected client doesn't spend the scope's tokens
+        TokenBucket clientBucket = null;
+        if (clientAddress != null && clientRate > 0) {
+            clientBucket = clientBuckets.get(clientAddress);
+            if (clientBucket == null) {
+                clientBucket = clientBuckets.computeIfAbsent(clientAddress, a -> new TokenBucket(clientRate, clientBurst));
+            }
+            if (!clientBucket.tryAcquire(now)) {
+                return AdmissionDecision.CLIENT_RATE;
+            }
+        }
+        if (scopeRate > 0) {
+            TokenBucket bucket = scopeBuckets.get(scope);
+            if (bucket == null) {
+                bucket = scopeBuckets.computeIfAbsent(scope, s -> new TokenBucket(scopeRate, scopeBurst));
+            }
+            if (!bucket.tryAcquire(now)) {
+                if (clientBucket != null) {
+                    clientBucket.refund();
+                }
+                return AdmissionDecision.SCOPE_RATE;
+            }
+        }
+        return AdmissionDecision.ADMITTED;
+    }
+
+    /**
+     * Drops the bucket of a removed scope.
+     *
+     * @param scope scope
+     */
+    public void removeScope(IScope scope) {
+        scopeBuckets.remove(scope);
+    }
+
+    public long getCount(AdmissionDecision decision) {
+        return decisions[decision.ordinal()].sum();
+    }
+
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    public double getCpuLoad() {
+        return cpuLoad;
+    }
+
+    public double getHeapLoad() {
+        return heapLoad;
+    }
+
+    private void sample(Timeout timeout) {
+        double cpu = os instanceof com.sun.management.OperatingSystemMXBean ? ((com.sun.management.OperatingSystemMXBean) os).getCpuLoad()
+                : os.getSystemLoadAverage() / os.getAvailableProcessors();
+        MemoryUsage heap = tenured != null ? tenured.getCollectionUsage() : null;
+        if (heap == null || heap.getMax() <= 0) {
+            heap = memory.getHeapMemoryUsage();
+        }
+        double used = heap.getMax() > 0 ? heap.getUsed() / (double) heap.getMax() : 0d;
+        cpuLoad = cpu;
+        heapLoad = used;
+        boolean shed = overloaded;
+        if (!shed && (cpu >= cpuThreshold || used >= heapThreshold)) {
+            log.warn("Shedding publishes - cpu: {} heap: {}", String.format("%.2f", cpu), String.format("%.2f", used));
+            overloaded = true;
+        } else if (shed && cpu < cpuThreshold - SHED_HYSTERESIS && used < heapThreshold - SHED_HYSTERESIS) {
+            log.info("Accepting publishes again - cpu: {} heap: {}", String.format("%.2f", cpu), String.format("%.2f", used));
+            overloaded = false;
+        }
+        if (++samples % SWEEP_SAMPLES == 0) {
+            long now = System.nanoTime();
+            clientBuckets.values().removeIf(bucket -> bucket.isFull(now));
+        }
+        wheel.reschedule(timeout, sampleMs);
+    }
+
+    private static MemoryPoolMXBean tenuredPool() {
+        MemoryPoolMXBean largest = null;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()
+                    && (largest == null || pool.getUsage().getMax() > largest.getUsage().getMax())) {
+                largest = pool;
+            }
+        }
+        return largest;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("AdmissionController [overloaded=").append(overloaded);
+        for (AdmissionDecision decision : AdmissionDecision.values()) {
+            sb.append(", ").append(decision).append('=').append(getCount(decision));
+        }
+        return sb.append(']').toString();
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.example.admission;
+
+/**
+ * Outcome of an admission check.
+ *
+ * @author Paul Gregoire
+ */
+public enum AdmissionDecision {
+
+    ADMITTED,
+    /** node-wide publisher cap reached */
+    NODE_FULL,
+    /** cpu or heap above the shedding threshold */
+    OVERLOADED,
+    /** too many publishes from the client address */
+    CLIENT_RATE,
+    /** too many publishes in the scope */
+    SCOPE_RATE;
+
+    public boolean isAdmitted() {
+        return this == ADMITTED;
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.example.admission;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket in its GCRA form: the whole state is the theoretical arrival time of the next token, so taking a
+ * token is one read and one compare-and-set. Admits rate tokens per second on average with bursts of up to burst tokens.
+ *
+ * @author Paul Gregoire
+ */
+public final class TokenBucket {
+
+    // nanoseconds per token
+    private final long interval;
+
+    // how far ahead of now the arrival time may run, (burst - 1) intervals
+    private final long tolerance;
+
+    private final AtomicLong tat = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Creates a bucket.
+     *
+     * @param rate tokens per second
+     * @param burst bucket capacity
+     */
+    public TokenBucket(double rate, int burst) {
+        this.interval = Math.max(1L, (long) (1_000_000_000d / rate));
+        this.tolerance = interval * (Math.max(1, burst) - 1);
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @param nowNanos current {@link System#nanoTime()}
+     * @return true if taken
+     */
+    public boolean tryAcquire(long nowNanos) {
+        for (;;) {
+            long current = tat.get();
+            long base = current == Long.MIN_VALUE || current - nowNanos < 0 ? nowNanos : current;
+            if (base - nowNanos > tolerance) {
+                return false;
+            }
+            if (tat.compareAndSet(current, base + interval)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns a token taken by {@link #tryAcquire} that ended up unused.
+     */
+    public void refund() {
+        long current;
+        do {
+            current = tat.get();
+            if (current == Long.MIN_VALUE) {
+                return;
+            }
+        } while (!tat.compareAndSet(current, current - interval));
+    }
+
+    /**
+     * Whether the bucket has refilled completely, i.e. holds no state worth keeping.
+     *
+     * @param nowNanos current {@link System#nanoTime()}
+     * @return true if full
+     */
+    public boolean isFull(long nowNanos) {
+        long current = tat.get();
+        return current == Long.MIN_VALUE || current - nowNanos <= 0;
+    }
+
+}
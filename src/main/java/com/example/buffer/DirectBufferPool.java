@@ -0,0 +1,165 @@
+package com.example.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of direct byte buffers bucketed into power-of-two size classes. Released buffers are retained for reuse up to a
+ * configurable byte budget, beyond which they are left to the cleaner. Requests larger than the largest size class are
+ * served with unpooled buffers.
+ *
+ * @author Paul Gregoire
+ */
+public class DirectBufferPool {
+
+    private static Logger log = LoggerFactory.getLogger(DirectBufferPool.class);
+
+    // smallest size class 512 bytes
+    private static final int MIN_SHIFT = 9;
+
+    // largest size class 8 MiB
+    private static final int MAX_SHIFT = 23;
+
+    // buffers retained per size class
+    private static final int MAX_PER_CLASS = 4096;
+
+    // default retained budget 256 MiB
+    public static final long DEFAULT_MAX_RETAINED_BYTES = 256L * 1024L * 1024L;
+
+    private static final DirectBufferPool SHARED = new DirectBufferPool(DEFAULT_MAX_RETAINED_BYTES);
+
+    private final SizeClass[] classes = new SizeClass[MAX_SHIFT - MIN_SHIFT + 1];
+
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    private volatile long maxRetainedBytes;
+
+    public DirectBufferPool(long maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new SizeClass(1 << (i + MIN_SHIFT));
+        }
+    }
+
+    /**
+     * Returns the node-wide pool shared by all streams.
+     *
+     * @return shared pool
+     */
+    public static DirectBufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Acquires a cleared direct buffer with at least the given capacity.
+     *
+     * @param size minimum capacity
+     * @return buffer with position 0 and limit equal to size
+     */
+    public ByteBuffer acquire(int size) {
+        int index = classIndex(size);
+        ByteBuffer buf = null;
+        if (index < classes.length) {
+            SizeClass sizeClass = classes[index];
+            buf = sizeClass.pop();
+            if (buf != null) {
+                retainedBytes.addAndGet(-buf.capacity());
+            } else {
+                buf = ByteBuffer.allocateDirect(sizeClass.size);
+                allocatedBytes.addAndGet(sizeClass.size);
+            }
+        } else {
+            log.debug("Unpooled direct allocation of {} bytes", size);
+            buf = ByteBuffer.allocateDirect(size);
+            // counted like pooled allocations so release can always subtract
+            allocatedBytes.addAndGet(size);
+        }
+        buf.clear().limit(size);
+        return buf;
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers not matching a size class, or that would exceed the retained budget, are
+     * dropped.
+     *
+     * @param buf buffer previously acquired from this pool
+     */
+    public void release(ByteBuffer buf) {
+        if (buf == null || !buf.isDirect()) {
+            return;
+        }
+        int capacity = buf.capacity();
+        int index = classIndex(capacity);
+        if (index < classes.length && classes[index].size == capacity) {
+            if (retainedBytes.addAndGet(capacity) <= maxRetainedBytes && classes[index].push(buf)) {
+                return;
+            }
+            retainedBytes.addAndGet(-capacity);
+        }
+        allocatedBytes.addAndGet(-capacity);
+    }
+
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    public long getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    public void setMaxRetainedBytes(long maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    private static int classIndex(int size) {
+        if (size <= (1 << MIN_SHIFT)) {
+            return 0;
+        }
+        // ceil(log2(size)) - MIN_SHIFT
+        return (32 - Integer.numberOfLeadingZeros(size - 1)) - MIN_SHIFT;
+    }
+
+    /**
+     * Bounded stack of free buffers for a single size; the lock is held only for the array swap.
+     */
+    private static final class SizeClass {
+
+        final int size;
+
+        final ByteBuffer[] stack = new ByteBuffer[MAX_PER_CLASS];
+
+        int top;
+
+        SizeClass(int size) {
+            this.size = size;
+        }
+
+        synchronized ByteBuffer pop() {
+            if (top == 0) {
+                return null;
+            }
+            ByteBuffer buf = stack[--top];
+            stack[top] = null;
+            return buf;
+        }
+
+        synchronized boolean push(ByteBuffer buf) {
+            if (top == stack.length) {
+                return false;
+            }
+            stack[top++] = buf;
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.example.buffer;
+
+/**
+ * Behavior of a {@link PacketRing} when a packet arrives and the ring is full.
+ *
+ * @author Paul Gregoire
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Evict the oldest queued packet to make room. When the oldest is a video keyframe or codec config and the incoming
+     * packet is neither, nothing is evicted and the incoming packet is dropped, so a full ring headed by a keyframe sheds
+     * new packets until the consumer moves past it (an incoming keyframe always supersedes a queued one). Only the head can
+     * be evicted without stalling the consumer, which is why a later non-keyframe is never picked instead.
+     */
+    DROP_OLDEST_UNLESS_KEYFRAME,
+
+    /**
+     * Drop the incoming packet and every following video packet until the next keyframe arrives with room to spare.
+     */
+    DROP_UNTIL_KEYFRAME,
+
+    /**
+     * Park the producer until the consumer frees a slot or the ring is closed.
+     */
+    BLOCK;
+
+    /**
+     * Lenient lookup for configuration values; unknown or empty values resolve to the given default. The former name
+     * drop_oldest_non_keyframe is still accepted for {@link #DROP_OLDEST_UNLESS_KEYFRAME}.
+     *
+     * @param value policy name, case insensitive
+     * @param defaultPolicy fallback
+     * @return policy
+     */
+    public static OverflowPolicy of(String value, OverflowPolicy defaultPolicy) {
+        if (value != null) {
+            if ("drop_oldest_non_keyframe".equalsIgnoreCase(value.trim())) {
+                return DROP_OLDEST_UNLESS_KEYFRAME;
+            }
+            for (OverflowPolicy policy : values()) {
+                if (policy.name().equalsIgnoreCase(value.trim())) {
+                    return policy;
+                }
+            }
+        }
+        return defaultPolicy;
+    }
+
+}
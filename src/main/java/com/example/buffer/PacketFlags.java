@@ -0,0 +1,124 @@
+package com.example.buffer;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.server.net.rtmp.message.Constants;
+
+/**
+ * Packet classification read in place from the FLV tag header byte(s) of the payload, or the name of a data message; no
+ * copies or API objects are created.
+ *
+ * @author Paul Gregoire
+ */
+public final class PacketFlags {
+
+    /** Video keyframe */
+    public static final int KEYFRAME = 1;
+
+    /** Decoder configuration: AVC/HEVC sequence header or AAC audio specific config */
+    public static final int CONFIG = 1 << 1;
+
+    /** Stream metadata: onMetaData or @setDataFrame data message */
+    public static final int METADATA = 1 << 2;
+
+    private static final byte[] ON_METADATA = "onMetaData".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] SET_DATA_FRAME = "@setDataFrame".getBytes(StandardCharsets.US_ASCII);
+
+    // AMF0 string marker
+    private static final int AMF0_STRING = 0x02;
+
+    // FLV audio codec id for AAC
+    private static final int AUDIO_AAC = 10;
+
+    // FLV video codec id for AVC
+    private static final int VIDEO_AVC = 7;
+
+    // FLV video codec id for HEVC (legacy extension)
+    private static final int VIDEO_HEVC = 12;
+
+    // enhanced rtmp header flag
+    private static final int EX_HEADER = 0x80;
+
+    private PacketFlags() {
+    }
+
+    /**
+     * Returns the flags for the given packet payload.
+     *
+     * @param dataType packet data type
+     * @param data payload, position and limit are not modified
+     * @return flag bits
+     */
+    public static int of(byte dataType, IoBuffer data) {
+        if (data == null || data.remaining() < 2) {
+            return 0;
+        }
+        int pos = data.position();
+        int b0 = data.get(pos) & 0xff;
+        int b1 = data.get(pos + 1) & 0xff;
+        switch (dataType) {
+            case Constants.TYPE_VIDEO_DATA:
+                int flags = 0;
+                if ((b0 & EX_HEADER) != 0) {
+                    // enhanced rtmp: 3 bit frame type, 4 bit packet type where 0 is sequence start
+                    if (((b0 >> 4) & 0x07) == 1) {
+                        flags |= KEYFRAME;
+                    }
+                    if ((b0 & 0x0f) == 0) {
+                        flags |= CONFIG;
+                    }
+                } else {
+                    if ((b0 >> 4) == 1) {
+                        flags |= KEYFRAME;
+                    }
+                    int codec = b0 & 0x0f;
+                    if ((codec == VIDEO_AVC || codec == VIDEO_HEVC) && b1 == 0) {
+                        flags |= CONFIG;
+                    }
+                }
+                return flags;
+            case Constants.TYPE_AUDIO_DATA:
+                return ((b0 >> 4) == AUDIO_AAC && b1 == 0) ? CONFIG : 0;
+            case Constants.TYPE_NOTIFY:
+                return isMetaData(data, pos) ? METADATA : 0;
+            default:
+                return 0;
+        }
+    }
+
+    // data message named onMetaData or @setDataFrame, read from the leading AMF0 string
+    private static boolean isMetaData(IoBuffer data, int pos) {
+        if (data.remaining() < 3 || data.get(pos) != AMF0_STRING) {
+            return false;
+        }
+        int length = ((data.get(pos + 1) & 0xff) << 8) | (data.get(pos + 2) & 0xff);
+        return matches(data, pos, length, ON_METADATA) || matches(data, pos, length, SET_DATA_FRAME);
+    }
+
+    private static boolean matches(IoBuffer data, int pos, int length, byte[] name) {
+        if (length != name.length || data.remaining() < 3 + length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data.get(pos + 3 + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean isKeyframe(int flags) {
+        return (flags & KEYFRAME) != 0;
+    }
+
+    public static boolean isConfig(int flags) {
+        return (flags & CONFIG) != 0;
+    }
+
+    public static boolean isMetaData(int flags) {
+        return (flags & METADATA) != 0;
+    }
+
+}
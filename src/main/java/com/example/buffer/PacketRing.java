@@ -0,0 +1,347 @@
+package com.example.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.server.api.stream.IStreamPacket;
+import org.red5.server.net.rtmp.message.Constants;
+
+/**
+ * Bounded single-producer / single-consumer packet ring. Payloads are copied into direct buffers taken from a
+ * {@link DirectBufferPool}, so steady state ingest allocates nothing on the heap. Slots carry a sequence number in the
+ * style of a Vyukov bounded queue; this lets the producer act as a second consumer when it has to evict the oldest entry
+ * under {@link OverflowPolicy#DROP_OLDEST_UNLESS_KEYFRAME}.
+ *
+ * @author Paul Gregoire
+ */
+public class PacketRing {
+
+    // how long a parked thread sleeps before re-checking
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final PacketSlot[] slots;
+
+    private final AtomicLongArray sequences;
+
+    private final int capacity;
+
+    private final int mask;
+
+    private final OverflowPolicy policy;
+
+    private final DirectBufferPool pool;
+
+    // next position to be consumed
+    private final AtomicLong head = new AtomicLong();
+
+    // next position to be produced, written by the producer thread only
+    private volatile long tail;
+
+    // producer only: dropping video until the next keyframe
+    private boolean awaitingKeyframe;
+
+    private volatile boolean closed;
+
+    private volatile Thread waitingConsumer;
+
+    private volatile Thread waitingProducer;
+
+    // counters are single-writer (producer) so volatile is enough
+    private volatile long offered, dropped, evicted, blocked, droppedKeyframes;
+
+    /**
+     * Creates a ring; capacity is rounded up to the next power of two.
+     *
+     * @param capacity minimum number of packets held
+     * @param policy overflow behavior
+     * @param pool buffer pool for payloads
+     */
+    public PacketRing(int capacity, OverflowPolicy policy, DirectBufferPool pool) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2");
+        }
+        this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.policy = policy;
+        this.pool = pool;
+        slots = new PacketSlot[this.capacity];
+        sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            slots[i] = new PacketSlot();
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Copies the packet into the ring. Producer thread only.
+     *
+     * @param packet incoming packet
+     * @return true if queued, false if dropped by the overflow policy or the ring is closed
+     */
+    public boolean offer(IStreamPacket packet) {
+        return offer(packet, PacketFlags.of(packet.getDataType(), packet.getData()));
+    }
+
+    /**
+     * Copies the packet into the ring when the caller already classified it. Producer thread only.
+     *
+     * @param packet incoming packet
+     * @param flags {@link PacketFlags} of the packet
+     * @return true if queued, false if dropped by the overflow policy or the ring is closed
+     */
+    public boolean offer(IStreamPacket packet, int flags) {
+        if (closed) {
+            return false;
+        }
+        offered++;
+        byte dataType = packet.getDataType();
+        IoBuffer data = packet.getData();
+        boolean video = dataType == Constants.TYPE_VIDEO_DATA;
+        boolean keyframe = video && PacketFlags.isKeyframe(flags);
+        if (awaitingKeyframe && video) {
+            if (!keyframe) {
+                return drop(flags);
+            }
+            awaitingKeyframe = false;
+        }
+        long pos = tail;
+        int index = (int) (pos & mask);
+        while (sequences.get(index) != pos) {
+            switch (policy) {
+                case BLOCK:
+                    if (!awaitRoom(pos, index)) {
+                        return drop(flags);
+                    }
+                    break;
+                case DROP_UNTIL_KEYFRAME:
+                    awaitingKeyframe = true;
+                    return drop(flags);
+                default:
+                    if (!evictOldest(pos, keyframe || PacketFlags.isConfig(flags))) {
+                        return drop(flags);
+                    }
+                    break;
+            }
+        }
+        PacketSlot slot = slots[index];
+        slot.dataType = dataType;
+        slot.timestamp = packet.getTimestamp();
+        slot.flags = flags;
+        slot.receiveNanos = System.nanoTime();
+        int size = data != null ? data.remaining() : 0;
+        ByteBuffer buf = pool.acquire(size);
+        if (size > 0) {
+            buf.put(0, data.buf(), data.position(), size);
+        }
+        slot.data = buf;
+        // publish to the consumer
+        sequences.set(index, pos + 1);
+        tail = pos + 1;
+        if (closed) {
+            // close() may have emptied the ring before this slot was published, so reclaim it here; both sides write
+            // before they read, so at least one of them sees the packet
+            PacketSlot left;
+            while ((left = poll()) != null) {
+                release(left);
+            }
+            return false;
+        }
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Claims the oldest packet without blocking. The slot must be handed back via {@link #release(PacketSlot)}.
+     *
+     * @return slot or null if empty
+     */
+    public PacketSlot poll() {
+        while (true) {
+            long pos = head.get();
+            int index = (int) (pos & mask);
+            long seq = sequences.get(index);
+            if (seq != pos + 1) {
+                // empty, or the producer evicted this one already and we'll see a new head on retry
+                if (seq < pos + 1) {
+                    return null;
+                }
+                continue;
+            }
+            if (head.compareAndSet(pos, pos + 1)) {
+                PacketSlot slot = slots[index];
+                slot.sequence = pos;
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Claims the oldest packet, parking while the ring is empty.
+     *
+     * @return slot or null if the ring was closed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public PacketSlot take() throws InterruptedException {
+        PacketSlot slot;
+        while ((slot = poll()) == null) {
+            if (closed) {
+                return null;
+            }
+            waitingConsumer = Thread.currentThread();
+            // re-check after advertising ourselves to avoid a lost wake-up
+            if ((slot = poll()) != null) {
+                waitingConsumer = null;
+                return slot;
+            }
+            LockSupport.parkNanos(this, PARK_NANOS);
+            waitingConsumer = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Returns a claimed slot to the ring and its payload buffer to the pool.
+     *
+     * @param slot slot from {@link #poll()} or {@link #take()}
+     */
+    public void release(PacketSlot slot) {
+        ByteBuffer buf = slot.data;
+        slot.data = null;
+        pool.release(buf);
+        sequences.set((int) (slot.sequence & mask), slot.sequence + capacity);
+        Thread producer = waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    /**
+     * Closes the ring and returns all queued payloads to the pool. Slots already claimed by the consumer are released by
+     * it as usual, a packet published by an offer racing with the close is reclaimed by that offer.
+     */
+    public void close() {
+        closed = true;
+        PacketSlot slot;
+        while ((slot = poll()) != null) {
+            release(slot);
+        }
+        Thread producer = waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    // evicts the head entry if it occupies the slot we need; false if the incoming packet should be dropped instead
+    private boolean evictOldest(long pos, boolean incomingKeyframe) {
+        long oldest = pos - capacity;
+        int index = (int) (oldest & mask);
+        if (head.get() != oldest || sequences.get(index) != oldest + 1) {
+            // the consumer holds the slot right now
+            return false;
+        }
+        PacketSlot slot = slots[index];
+        int flags = slot.flags;
+        if ((PacketFlags.isKeyframe(flags) || PacketFlags.isConfig(flags)) && !incomingKeyframe) {
+            return false;
+        }
+        if (head.compareAndSet(oldest, oldest + 1)) {
+            slot.sequence = oldest;
+            release(slot);
+            evicted++;
+            if (PacketFlags.isKeyframe(flags)) {
+                droppedKeyframes++;
+            }
+        }
+        return true;
+    }
+
+    private boolean awaitRoom(long pos, int index) {
+        blocked++;
+        waitingProducer = Thread.currentThread();
+        try {
+            while (sequences.get(index) != pos) {
+                if (closed || Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+            return true;
+        } finally {
+            waitingProducer = null;
+        }
+    }
+
+    private boolean drop(int flags) {
+        dropped++;
+        if (PacketFlags.isKeyframe(flags)) {
+            droppedKeyframes++;
+        }
+        return false;
+    }
+
+    public int size() {
+        long size = tail - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public long getOfferedCount() {
+        return offered;
+    }
+
+    /** Incoming packets rejected by the overflow policy */
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    /** Queued packets evicted to make room */
+    public long getEvictedCount() {
+        return evicted;
+    }
+
+    /** Times the producer had to park for room */
+    public long getBlockedCount() {
+        return blocked;
+    }
+
+    /** Keyframes lost to either dropping or eviction */
+    public long getDroppedKeyframeCount() {
+        return droppedKeyframes;
+    }
+
+    @Override
+    public String toString() {
+        return "PacketRing [capacity=" + capacity + ", policy=" + policy + ", size=" + size() + ", dropped=" + dropped + ", evicted="
+                + evicted + "]";
+    }
+
+}
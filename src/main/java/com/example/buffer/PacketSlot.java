@@ -0,0 +1,90 @@
+package com.example.buffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable ring entry holding a packet header and its payload in a pooled direct buffer. A slot handed out by
+ * {@link PacketRing#poll()} is only valid until it is passed back to {@link PacketRing#release(PacketSlot)}.
+ *
+ * @author Paul Gregoire
+ */
+public final class PacketSlot {
+
+    byte dataType;
+
+    int timestamp;
+
+    int flags;
+
+    ByteBuffer data;
+
+    // System.nanoTime() when queued
+    long receiveNanos;
+
+    // ring position this slot was claimed at
+    long sequence;
+
+    public byte getDataType() {
+        return dataType;
+    }
+
+    public int getTimestamp() {
+        return timestamp;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public long getReceiveNanos() {
+        return receiveNanos;
+    }
+
+    public boolean isKeyframe() {
+        return PacketFlags.isKeyframe(flags);
+    }
+
+    public boolean isConfig() {
+        return PacketFlags.isConfig(flags);
+    }
+
+    /**
+     * Payload from position 0 to limit; callers must not retain it past release.
+     *
+     * @return payload
+     */
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    public void setTimestamp(int timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public void setFlags(int flags) {
+        this.flags = flags;
+    }
+
+    /**
+     * Replaces the payload, e.g. after a transform; the new buffer must come from the same pool as the ring's and is
+     * released with the slot. The caller owns the returned buffer.
+     *
+     * @param data new payload from position 0 to limit
+     * @return previous payload
+     */
+    public ByteBuffer swapData(ByteBuffer data) {
+        ByteBuffer previous = this.data;
+        this.data = data;
+        return previous;
+    }
+
+    public int getSize() {
+        return data != null ? data.limit() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "PacketSlot [dataType=" + dataType + ", timestamp=" + timestamp + ", flags=" + flags + ", size=" + getSize() + "]";
+    }
+
+}
@@ -0,0 +1,221 @@
+package com.example.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.server.api.stream.IStreamPacket;
+
+/**
+ * Reference counted view of a packet payload. A shared view reads the original packet buffer in place and must be treated
+ * as read-only; that buffer belongs to the server and is reused once delivery returns, so a shared view is never valid
+ * past the callback it was delivered in, retained or not. Holders that need the payload later copy it out (as
+ * {@link com.example.gop.CachedPacket} and {@link com.example.record.StreamRecorder} do). A private view is backed by its
+ * own copy, may be modified by its holder and may be kept by {@link #retain()}ing it and {@link #release()}ing it when
+ * done; the last release recycles the view.
+ *
+ * @author Paul Gregoire
+ */
+public final class PacketView {
+
+    // recycled views, shared by all streams
+    private static final ArrayBlockingQueue<PacketView> RECYCLER = new ArrayBlockingQueue<>(4096);
+
+    private final AtomicInteger refCnt = new AtomicInteger();
+
+    private byte dataType;
+
+    private int timestamp;
+
+    private int flags;
+
+    private ByteBuffer buffer;
+
+    private int offset;
+
+    private int length;
+
+    private boolean shared;
+
+    private PacketView() {
+    }
+
+    /**
+     * Wraps the packet payload without copying. Reference count starts at 1.
+     *
+     * @param packet source packet
+     * @param flags precomputed {@link PacketFlags}
+     * @return shared read-only view
+     */
+    public static PacketView wrap(IStreamPacket packet, int flags) {
+        PacketView view = obtain();
+        IoBuffer data = packet.getData();
+        view.dataType = packet.getDataType();
+        view.timestamp = packet.getTimestamp();
+        view.flags = flags;
+        view.buffer = data != null ? data.buf() : null;
+        view.offset = data != null ? data.position() : 0;
+        view.length = data != null ? data.remaining() : 0;
+        view.shared = true;
+        view.refCnt.set(1);
+        return view;
+    }
+
+    /**
+     * Creates a private view over a heap copy of the payload for holders that modify it. Reference count starts at 1.
+     *
+     * @param packet source packet
+     * @param flags precomputed {@link PacketFlags}
+     * @return private writable view
+     */
+    public static PacketView copyOf(IStreamPacket packet, int flags) {
+        PacketView view = obtain();
+        IoBuffer data = packet.getData();
+        int size = data != null ? data.remaining() : 0;
+        ByteBuffer copy = ByteBuffer.allocate(size);
+        if (size > 0) {
+            copy.put(0, data.buf(), data.position(), size);
+        }
+        view.dataType = packet.getDataType();
+        view.timestamp = packet.getTimestamp();
+        view.flags = flags;
+        view.buffer = copy;
+        view.offset = 0;
+        view.length = size;
+        view.shared = false;
+        view.refCnt.set(1);
+        return view;
+    }
+
+    private static PacketView obtain() {
+        PacketView view = RECYCLER.poll();
+        return view != null ? view : new PacketView();
+    }
+
+    /**
+     * Adds a reference. This keeps the view object from being recycled, not the payload of a shared view, which is only
+     * readable until the delivering callback returns.
+     *
+     * @return this view
+     */
+    public PacketView retain() {
+        int count;
+        do {
+            count = refCnt.get();
+            if (count <= 0) {
+                throw new IllegalStateException("View already released");
+            }
+        } while (!refCnt.compareAndSet(count, count + 1));
+        return this;
+    }
+
+    /**
+     * Drops a reference, recycling the view when none are left.
+     *
+     * @return true if this was the last reference
+     */
+    public boolean release() {
+        int count = refCnt.decrementAndGet();
+        if (count == 0) {
+            buffer = null;
+            RECYCLER.offer(this);
+            return true;
+        }
+        if (count < 0) {
+            throw new IllegalStateException("View released too many times");
+        }
+        return false;
+    }
+
+    public int refCnt() {
+        return refCnt.get();
+    }
+
+    public byte getDataType() {
+        return dataType;
+    }
+
+    public int getTimestamp() {
+        return timestamp;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public boolean isKeyframe() {
+        return PacketFlags.isKeyframe(flags);
+    }
+
+    public boolean isConfig() {
+        return PacketFlags.isConfig(flags);
+    }
+
+    public boolean isMetaData() {
+        return PacketFlags.isMetaData(flags);
+    }
+
+    /**
+     * Whether this view reads the original packet buffer; shared views must not be written to.
+     *
+     * @return true if shared
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Underlying buffer for absolute reads between {@link #getOffset()} and offset + {@link #getLength()}, without
+     * allocating. Its position and limit belong to the packet and must not be changed.
+     *
+     * @return buffer
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Reads a payload byte.
+     *
+     * @param index index relative to the start of the payload
+     * @return byte
+     */
+    public byte get(int index) {
+        return buffer.get(offset + index);
+    }
+
+    /**
+     * Copies the payload into dst at its position, advancing it.
+     *
+     * @param dst destination with at least {@link #getLength()} remaining
+     */
+    public void copyTo(ByteBuffer dst) {
+        dst.put(dst.position(), buffer, offset, length);
+        dst.position(dst.position() + length);
+    }
+
+    /**
+     * Convenience read-only duplicate of the payload; allocates.
+     *
+     * @return buffer positioned at the payload
+     */
+    public ByteBuffer asReadOnlyBuffer() {
+        return buffer.asReadOnlyBuffer().limit(offset + length).position(offset);
+    }
+
+    @Override
+    public String toString() {
+        return "PacketView [dataType=" + dataType + ", timestamp=" + timestamp + ", flags=" + flags + ", length=" + length + ", shared=" + shared
+                + ", refCnt=" + refCnt.get() + "]";
+    }
+
+}
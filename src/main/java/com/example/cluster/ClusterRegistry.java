@@ -0,0 +1,620 @@
+package com.example.cluster;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.red5.server.api.scope.IScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.MyRed5ProPlugin;
+import com.example.cluster.ReplicationMessage.Change;
+import com.example.config.PluginConfig;
+import com.example.timer.HashedTimerWheel;
+import com.example.timer.HashedTimerWheel.Timeout;
+
+/**
+ * Replicates the publisher registry across nodes so any stream can be located with a local lookup. Each node owns its
+ * publishers: local publishes and unpublishes are numbered in order within the node's epoch (its start time) and sent to
+ * the peers as batched deltas from the plugin executor, off the publish path. A peer applies a delta only if it follows
+ * on from what it has of the origin, so loss, reordering and duplicates are told apart by sequence number alone.
+ * <p>
+ * Anti-entropy runs on a digest each node sends periodically with its epoch, last sequence number and publisher count.
+ * A peer that is behind, or that sees a new epoch after a restart, asks the origin to catch it up; the origin answers
+ * with the missing deltas from a bounded log of recent changes, falling back to a snapshot of its own publishers only
+ * when the log doesn't reach back far enough. A node that starts asks every peer for its state straight away rather than
+ * waiting for their digests. Peers that leave, or aren't heard from within the timeout, are dropped with their streams.
+ * <p>
+ * Streams are addressed by path, the scope's context path without the leading slash followed by the stream name (e.g.
+ * <code>live/stream1</code>); locations are held in a single map, local streams included, so a lookup is one hash probe.
+ *
+ * @author Paul Gregoire
+ */
+public class ClusterRegistry {
+
+    private static Logger log = LoggerFactory.getLogger(ClusterRegistry.class);
+
+    private final String nodeId;
+
+    // changes from a previous run of a node are told apart by this
+    private final long epoch = System.currentTimeMillis();
+
+    private final ClusterTransport transport;
+
+    private final HashedTimerWheel wheel;
+
+    private volatile ClusterSettings settings;
+
+    // stream path to node id
+    private final ConcurrentHashMap<String, String> locations = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Peer> peers = new ConcurrentHashMap<>();
+
+    // local publishers, written while holding this
+    private final Set<String> local = ConcurrentHashMap.newKeySet();
+
+    // recent local changes, guarded by this
+    private final ArrayDeque<Change> history = new ArrayDeque<>();
+
+    // local changes not yet sent, guarded by this
+    private final ArrayList<Change> pending = new ArrayList<>();
+
+    // last local sequence number, guarded by this
+    private long seq;
+
+    private volatile boolean dirty;
+
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    private final LongAdder sent = new LongAdder();
+
+    private final LongAdder received = new LongAdder();
+
+    private final LongAdder malformed = new LongAdder();
+
+    private final LongAdder syncs = new LongAdder();
+
+    private final LongAdder snapshots = new LongAdder();
+
+    private volatile Timeout flushTimer, digestTimer;
+
+    private volatile boolean stopped = true;
+
+    public ClusterRegistry(String nodeId, ClusterTransport transport, HashedTimerWheel wheel, ClusterSettings settings) {
+        this.nodeId = nodeId;
+        this.transport = transport;
+        this.wheel = wheel;
+        this.settings = settings;
+    }
+
+    /**
+     * Replaces the timing and batching settings; the log capacity applies from the next change.
+     *
+     * @param settings new settings
+     */
+    public void setSettings(ClusterSettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Joins the cluster and asks the peers for their publishers.
+     *
+     * @throws IOException if the transport can't be started
+     */
+    public void start() throws IOException {
+        transport.start(nodeId, this::receive);
+        stopped = false;
+        transport.broadcast(ReplicationMessage.sync(nodeId, 0L, 0L));
+        flushTimer = wheel.schedule(this::onFlush, settings.getFlushMs());
+        digestTimer = wheel.schedule(this::onDigest, settings.getDigestMs());
+        log.info("Cluster registry started - node: {} epoch: {} {}", nodeId, epoch, settings);
+    }
+
+    /**
+     * Tells the peers this node is leaving and leaves the cluster.
+     */
+    public void stop() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        for (Timeout timeout : new Timeout[] { flushTimer, digestTimer }) {
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+        try {
+            long last;
+            synchronized (this) {
+                last = seq;
+            }
+            transport.broadcast(ReplicationMessage.leave(nodeId, epoch, last));
+        } finally {
+            transport.close();
+        }
+        peers.clear();
+        locations.clear();
+        synchronized (this) {
+            local.clear();
+            history.clear();
+            pending.clear();
+        }
+    }
+
+    /**
+     * Records a local publish.
+     *
+     * @param scope scope
+     * @param name stream name
+     */
+    public void published(IScope scope, String name) {
+        change(ReplicationMessage.ADD, path(scope, name));
+    }
+
+    /**
+     * Records a local unpublish.
+     *
+     * @param scope scope
+     * @param name stream name
+     */
+    public void unpublished(IScope scope, String name) {
+        change(ReplicationMessage.REMOVE, path(scope, name));
+    }
+
+    private void change(byte op, String path) {
+        synchronized (this) {
+            if (op == ReplicationMessage.ADD ? !local.add(path) : !local.remove(path)) {
+                return;
+            }
+            Change change = new Change(++seq, op, path);
+            pending.add(change);
+            history.addLast(change);
+            for (int excess = history.size() - settings.getLogCapacity(); excess > 0; excess--) {
+                history.pollFirst();
+            }
+            dirty = true;
+        }
+        if (op == ReplicationMessage.ADD) {
+            locations.put(path, nodeId);
+        } else {
+            release(path, nodeId);
+        }
+    }
+
+    /**
+     * Returns the node a stream is published on.
+     *
+     * @param path stream path
+     * @return node id, or null if the stream isn't known anywhere
+     */
+    public String locate(String path) {
+        return locations.get(normalize(path));
+    }
+
+    public boolean isLocal(String path) {
+        return nodeId.equals(locate(path));
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Number of streams known across the cluster.
+     *
+     * @return stream count
+     */
+    public int size() {
+        return locations.size();
+    }
+
+    public int getPeerCount() {
+        return peers.size();
+    }
+
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    public long getReceivedCount() {
+        return received.sum();
+    }
+
+    private void onFlush(Timeout timeout) {
+        if (stopped) {
+            return;
+        }
+        // encoding and sending don't belong on the tick thread
+        if (dirty && flushing.compareAndSet(false, true)) {
+            if (MyRed5ProPlugin.submit(this::flush) == null) {
+                flushing.set(false);
+            }
+        }
+        wheel.reschedule(timeout, settings.getFlushMs());
+    }
+
+    private void flush() {
+        try {
+            List<Change> batch;
+            while ((batch = nextBatch()) != null) {
+                transport.broadcast(ReplicationMessage.delta(nodeId, epoch, batch));
+                sent.increment();
+            }
+        } catch (Throwable t) {
+            log.warn("Exception sending registry changes", t);
+        } finally {
+            flushing.set(false);
+        }
+    }
+
+    private synchronized List<Change> nextBatch() {
+        if (pending.isEmpty()) {
+            dirty = false;
+            return null;
+        }
+        List<Change> head = pending.subList(0, Math.min(pending.size(), settings.getBatchSize()));
+        List<Change> batch = new ArrayList<>(head);
+        head.clear();
+        return batch;
+    }
+
+    private void onDigest(Timeout timeout) {
+        if (stopped) {
+            return;
+        }
+        MyRed5ProPlugin.submit(this::gossip);
+        wheel.reschedule(timeout, settings.getDigestMs());
+    }
+
+    private void gossip() {
+        try {
+            long last;
+            int count;
+            synchronized (this) {
+                last = seq;
+                count = local.size();
+            }
+            transport.broadcast(ReplicationMessage.digest(nodeId, epoch, last, count));
+            sent.increment();
+            long now = System.currentTimeMillis();
+            long timeoutMs = settings.getPeerTimeoutMs();
+            for (Peer peer : peers.values()) {
+                if (now - peer.lastSeen > timeoutMs) {
+                    log.info("Cluster peer timed out: {}", peer.nodeId);
+                    drop(peer);
+                }
+            }
+        } catch (Throwable t) {
+            log.warn("Exception sending registry digest", t);
+        }
+    }
+
+    /**
+     * Handles a message from a peer; called by the transport.
+     *
+     * @param bytes message
+     */
+    void receive(byte[] bytes) {
+        if (stopped) {
+            return;
+        }
+        ReplicationMessage message;
+        try {
+            message = ReplicationMessage.decode(bytes);
+        } catch (IOException e) {
+            malformed.increment();
+            log.debug("Malformed replication message", e);
+            return;
+        }
+        if (nodeId.equals(message.origin)) {
+            return;
+        }
+        received.increment();
+        try {
+            if (message.type == ReplicationMessage.LEAVE) {
+                Peer peer = peers.get(message.origin);
+                if (peer != null) {
+                    log.info("Cluster peer left: {}", peer.nodeId);
+                    drop(peer);
+                }
+                return;
+            }
+            if (message.type == ReplicationMessage.SYNC) {
+                catchUp(message.origin, message.epoch, message.seq);
+            }
+            Peer peer = peers.computeIfAbsent(message.origin, Peer::new);
+            peer.lastSeen = System.currentTimeMillis();
+            switch (message.type) {
+                case ReplicationMessage.DELTA:
+                    onDelta(peer, message);
+                    break;
+                case ReplicationMessage.DIGEST:
+                    onDigest(peer, message);
+                    break;
+                case ReplicationMessage.SNAPSHOT:
+                    onSnapshot(peer, message);
+                    break;
+                default:
+                    break;
+            }
+        } catch (Throwable t) {
+            log.warn("Exception handling replication message from {}", message.origin, t);
+        }
+    }
+
+    private void onDelta(Peer peer, ReplicationMessage message) {
+        synchronized (peer) {
+            if (message.epoch < peer.epoch) {
+                return;
+            }
+            if (message.epoch > peer.epoch) {
+                // restarted, whatever it had before is gone
+                reset(peer, message.epoch);
+            }
+            long last = message.seq + message.paths.length - 1;
+            if (last <= peer.seq) {
+                return;
+            }
+            if (message.seq > peer.seq + 1) {
+                requestSync(peer);
+                return;
+            }
+            for (int i = (int) (peer.seq + 1 - message.seq); i < message.paths.length; i++) {
+                apply(peer, message.ops[i], message.paths[i]);
+            }
+            peer.seq = last;
+        }
+    }
+
+    private void onDigest(Peer peer, ReplicationMessage message) {
+        synchronized (peer) {
+            if (message.epoch > peer.epoch || (message.epoch == peer.epoch
+                    && (message.seq > peer.seq || (message.seq == peer.seq && message.count != peer.paths.size())))) {
+                requestSync(peer);
+            }
+        }
+    }
+
+    private void onSnapshot(Peer peer, ReplicationMessage message) {
+        synchronized (peer) {
+            if (message.epoch < peer.epoch || (message.epoch == peer.epoch && message.seq < peer.seq)) {
+                return;
+            }
+            Set<String> paths = new HashSet<>(Arrays.asList(message.paths));
+            for (Iterator<String> it = peer.paths.iterator(); it.hasNext();) {
+                String path = it.next();
+                if (!paths.contains(path)) {
+                    it.remove();
+                    release(path, peer.nodeId);
+                }
+            }
+            for (String path : message.paths) {
+                apply(peer, ReplicationMessage.ADD, path);
+            }
+            peer.epoch = message.epoch;
+            peer.seq = message.seq;
+            peer.syncRequested = 0L;
+            snapshots.increment();
+        }
+    }
+
+    private void apply(Peer peer, byte op, String path) {
+        if (op == ReplicationMessage.ADD) {
+            peer.paths.add(path);
+            locations.put(path, peer.nodeId);
+        } else if (peer.paths.remove(path)) {
+            release(path, peer.nodeId);
+        }
+    }
+
+    // asks the peer for what we're missing, at most once per digest interval
+    private void requestSync(Peer peer) {
+        long now = System.currentTimeMillis();
+        if (now - peer.syncRequested < settings.getDigestMs()) {
+            return;
+        }
+        peer.syncRequested = now;
+        syncs.increment();
+        transport.send(peer.nodeId, ReplicationMessage.sync(nodeId, peer.epoch, peer.seq));
+    }
+
+    // answers a sync request with the missing deltas when the log reaches back far enough, otherwise a snapshot
+    private void catchUp(String requester, long haveEpoch, long haveSeq) {
+        List<byte[]> replies = new ArrayList<>(1);
+        synchronized (this) {
+            Change first = history.peekFirst();
+            if (haveEpoch == epoch && haveSeq <= seq && (haveSeq == seq || (first != null && first.seq <= haveSeq + 1))) {
+                int batchSize = settings.getBatchSize();
+                List<Change> batch = new ArrayList<>(Math.min(batchSize, (int) (seq - haveSeq)));
+                for (Change change : history) {
+                    if (change.seq > haveSeq) {
+                        batch.add(change);
+                        if (batch.size() == batchSize) {
+                            replies.add(ReplicationMessage.delta(nodeId, epoch, batch));
+                            batch.clear();
+                        }
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    replies.add(ReplicationMessage.delta(nodeId, epoch, batch));
+                }
+                if (replies.isEmpty()) {
+                    // up to date, a digest settles it
+                    replies.add(ReplicationMessage.digest(nodeId, epoch, seq, local.size()));
+                }
+            } else {
+                replies.add(ReplicationMessage.snapshot(nodeId, epoch, seq, local, local.size()));
+            }
+        }
+        for (byte[] reply : replies) {
+            transport.send(requester, reply);
+            sent.increment();
+        }
+    }
+
+    private void reset(Peer peer, long epoch) {
+        for (String path : peer.paths) {
+            release(path, peer.nodeId);
+        }
+        peer.paths.clear();
+        peer.epoch = epoch;
+        peer.seq = 0L;
+        peer.syncRequested = 0L;
+    }
+
+    private void drop(Peer peer) {
+        if (peers.remove(peer.nodeId, peer)) {
+            synchronized (peer) {
+                reset(peer, peer.epoch);
+            }
+        }
+    }
+
+    // removes a location owned by the node, handing the path to another node that also has it
+    private void release(String path, String owner) {
+        if (!locations.remove(path, owner)) {
+            return;
+        }
+        if (local.contains(path)) {
+            locations.putIfAbsent(path, nodeId);
+            return;
+        }
+        for (Peer peer : peers.values()) {
+            if (!peer.nodeId.equals(owner) && peer.paths.contains(path)) {
+                locations.putIfAbsent(path, peer.nodeId);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Renders this node's replication state and its peers as compact JSON.
+     *
+     * @param out destination
+     */
+    public void writeJson(StringBuilder out) {
+        long last;
+        int count;
+        synchronized (this) {
+            last = seq;
+            count = local.size();
+        }
+        out.append("{\"node\":\"").append(escape(nodeId)).append("\",\"epoch\":").append(epoch).append(",\"seq\":").append(last)
+                .append(",\"local\":").append(count).append(",\"streams\":").append(locations.size()).append(",\"sent\":").append(sent.sum())
+                .append(",\"received\":").append(received.sum()).append(",\"malformed\":").append(malformed.sum()).append(",\"syncs\":")
+                .append(syncs.sum()).append(",\"snapshots\":").append(snapshots.sum()).append(",\"peers\":[");
+        boolean first = true;
+        for (Peer peer : peers.values()) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            synchronized (peer) {
+                out.append("{\"node\":\"").append(escape(peer.nodeId)).append("\",\"epoch\":").append(peer.epoch).append(",\"seq\":")
+                        .append(peer.seq).append(",\"streams\":").append(peer.paths.size()).append(",\"lastSeen\":").append(peer.lastSeen)
+                        .append('}');
+            }
+        }
+        out.append("]}");
+    }
+
+    /**
+     * Creates the transport named by <code>cluster.transport</code>: <code>loopback</code> or the class name of a
+     * {@link ClusterTransport}.
+     *
+     * @param config plugin configuration
+     * @return configured transport
+     * @throws IllegalArgumentException if the transport can't be created
+     */
+    public static ClusterTransport transportOf(PluginConfig config) {
+        String name = config.getString("cluster.transport", "loopback").trim();
+        ClusterTransport transport;
+        if ("loopback".equalsIgnoreCase(name)) {
+            transport = new LoopbackTransport();
+        } else {
+            try {
+                transport = Class.forName(name).asSubclass(ClusterTransport.class).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new IllegalArgumentException("Invalid cluster transport: " + name, e);
+            }
+        }
+        transport.configure(config);
+        return transport;
+    }
+
+    /**
+     * Returns <code>cluster.node.id</code>, or host name and process id if not set.
+     *
+     * @param config plugin configuration
+     * @return node id
+     */
+    public static String nodeIdOf(PluginConfig config) {
+        String nodeId = config.getString("cluster.node.id", "");
+        if (nodeId != null && !nodeId.isBlank()) {
+            return nodeId.trim();
+        }
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "localhost";
+        }
+        return host + ':' + ProcessHandle.current().pid();
+    }
+
+    private static String path(IScope scope, String name) {
+        return normalize(scope.getContextPath() + '/' + name);
+    }
+
+    private static String normalize(String path) {
+        String trimmed = path.trim();
+        return trimmed.startsWith("/") ? trimmed.substring(1) : trimmed;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    @Override
+    public String toString() {
+        return "ClusterRegistry [node=" + nodeId + ", peers=" + peers.size() + ", streams=" + locations.size() + ", sent=" + sent.sum()
+                + ", received=" + received.sum() + "]";
+    }
+
+    /**
+     * What this node has of a peer. Changes are applied while holding the peer; the path set is concurrent so that
+     * {@link ClusterRegistry#release} can check other peers without taking their locks.
+     */
+    private static final class Peer {
+
+        final String nodeId;
+
+        final Set<String> paths = ConcurrentHashMap.newKeySet();
+
+        long epoch, seq;
+
+        long syncRequested;
+
+        volatile long lastSeen;
+
+        Peer(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.example.cluster;
+
+import com.example.config.PluginConfig;
+
+/**
+ * Immutable settings for publisher registry replication.
+ *
+ * @author Paul Gregoire
+ */
+public final class ClusterSettings {
+
+    public static final ClusterSettings DEFAULT = new ClusterSettings(50L, 512, 2000L, 10000L, 4096);
+
+    // local changes are batched for this long before they go out
+    private final long flushMs;
+
+    // most changes in one delta message
+    private final int batchSize;
+
+    // how often the node's digest is sent; digests double as heartbeats
+    private final long digestMs;
+
+    // a peer not heard from for this long is dropped along with its publishers
+    private final long peerTimeoutMs;
+
+    // recent local changes kept to catch lagging peers up without a snapshot
+    private final int logCapacity;
+
+    public ClusterSettings(long flushMs, int batchSize, long digestMs, long peerTimeoutMs, int logCapacity) {
+        this.flushMs = Math.max(1L, flushMs);
+        this.batchSize = Math.max(1, batchSize);
+        this.digestMs = Math.max(100L, digestMs);
+        this.peerTimeoutMs = Math.max(this.digestMs * 2, peerTimeoutMs);
+        this.logCapacity = Math.max(this.batchSize, logCapacity);
+    }
+
+    /**
+     * Reads the cluster.* entries, falling back to the defaults.
+     *
+     * @param config plugin configuration
+     * @return settings
+     */
+    public static ClusterSettings from(PluginConfig config) {
+        return new ClusterSettings(config.getLong("cluster.flush.ms", DEFAULT.flushMs), config.getInt("cluster.batch.size", DEFAULT.batchSize),
+                config.getLong("cluster.digest.ms", DEFAULT.digestMs), config.getLong("cluster.peer.timeout.ms", DEFAULT.peerTimeoutMs),
+                config.getInt("cluster.log.capacity", DEFAULT.logCapacity));
+    }
+
+    public long getFlushMs() {
+        return flushMs;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getDigestMs() {
+        return digestMs;
+    }
+
+    public long getPeerTimeoutMs() {
+        return peerTimeoutMs;
+    }
+
+    public int getLogCapacity() {
+        return logCapacity;
+    }
+
+    @Override
+    public String toString() {
+        return "ClusterSettings [flushMs=" + flushMs + ", batchSize=" + batchSize + ", digestMs=" + digestMs + ", peerTimeoutMs=" + peerTimeoutMs
+                + ", logCapacity=" + logCapacity + "]";
+    }
+
+}
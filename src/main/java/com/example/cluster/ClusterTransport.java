@@ -0,0 +1,54 @@
+package com.example.cluster;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+import com.example.config.PluginConfig;
+
+/**
+ * Carries replication messages between nodes. Messages are opaque byte arrays, small and self-contained; a transport
+ * needs neither ordering nor reliable delivery since gaps are detected by sequence number and repaired from digests.
+ * Implementations are named by <code>cluster.transport</code> and need a public no-argument constructor.
+ *
+ * @author Paul Gregoire
+ */
+public interface ClusterTransport {
+
+    /**
+     * Reads transport specific settings, called before {@link #start}.
+     *
+     * @param config plugin configuration
+     */
+    default void configure(PluginConfig config) {
+    }
+
+    /**
+     * Joins the cluster.
+     *
+     * @param nodeId id of this node
+     * @param receiver called with each message from another node; must not be called for this node's own messages
+     * @throws IOException if the transport can't be set up
+     */
+    void start(String nodeId, Consumer<byte[]> receiver) throws IOException;
+
+    /**
+     * Sends a message to every other node.
+     *
+     * @param message message
+     */
+    void broadcast(byte[] message);
+
+    /**
+     * Sends a message to one node.
+     *
+     * @param nodeId target node
+     * @param message message
+     */
+    void send(String nodeId, byte[] message);
+
+    /**
+     * Leaves the cluster.
+     */
+    void close();
+
+}
@@ -0,0 +1,95 @@
+package com.example.cluster;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * In-process transport; nodes started on the same {@link Hub} see each other, e.g. several plugin instances in one test
+ * JVM. Delivery is asynchronous and in order on the hub's thread, so a node never receives inside its own send.
+ *
+ * @author Paul Gregoire
+ */
+public class LoopbackTransport implements ClusterTransport {
+
+    private static final Hub DEFAULT_HUB = new Hub();
+
+    private final Hub hub;
+
+    private volatile String nodeId;
+
+    /**
+     * Creates a transport on the JVM wide hub.
+     */
+    public LoopbackTransport() {
+        this(DEFAULT_HUB);
+    }
+
+    public LoopbackTransport(Hub hub) {
+        this.hub = hub;
+    }
+
+    @Override
+    public void start(String nodeId, Consumer<byte[]> receiver) {
+        this.nodeId = nodeId;
+        hub.nodes.put(nodeId, receiver);
+    }
+
+    @Override
+    public void broadcast(byte[] message) {
+        String self = nodeId;
+        hub.nodes.forEach((id, receiver) -> {
+            if (!id.equals(self)) {
+                hub.deliver(receiver, message);
+            }
+        });
+    }
+
+    @Override
+    public void send(String nodeId, byte[] message) {
+        Consumer<byte[]> receiver = hub.nodes.get(nodeId);
+        if (receiver != null) {
+            hub.deliver(receiver, message);
+        }
+    }
+
+    @Override
+    public void close() {
+        String self = nodeId;
+        if (self != null) {
+            hub.nodes.remove(self);
+        }
+    }
+
+    /**
+     * Set of nodes that can reach each other.
+     */
+    public static final class Hub {
+
+        private final ConcurrentHashMap<String, Consumer<byte[]>> nodes = new ConcurrentHashMap<>();
+
+        private final ExecutorService delivery = Executors
+                .newSingleThreadExecutor(Thread.ofPlatform().daemon().name("cluster-loopback").factory());
+
+        private void deliver(Consumer<byte[]> receiver, byte[] message) {
+            try {
+                delivery.execute(() -> receiver.accept(message));
+            } catch (RejectedExecutionException e) {
+                // hub shut down
+            }
+        }
+
+        public int size() {
+            return nodes.size();
+        }
+
+        public void shutdown() {
+            nodes.clear();
+            delivery.shutdownNow();
+        }
+
+    }
+
+}
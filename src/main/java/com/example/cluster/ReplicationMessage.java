@@ -0,0 +1,201 @@
+package com.example.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Replication message and its binary form: version, type, origin node, origin epoch and sequence number, then a list of
+ * changes or paths depending on the type. Paths are written as modified UTF-8.
+ * <ul>
+ * <li>DELTA - consecutive changes of the origin, <code>seq</code> is the first one's number</li>
+ * <li>DIGEST - the origin's latest sequence number and publisher count, sent periodically</li>
+ * <li>SYNC - asks the target for its changes after <code>seq</code> of <code>epoch</code>, or a snapshot</li>
+ * <li>SNAPSHOT - every publisher of the origin as of <code>seq</code></li>
+ * <li>LEAVE - the origin is shutting down</li>
+ * </ul>
+ *
+ * @author Paul Gregoire
+ */
+final class ReplicationMessage {
+
+    static final byte VERSION = 1;
+
+    static final byte DELTA = 1, DIGEST = 2, SYNC = 3, SNAPSHOT = 4, LEAVE = 5;
+
+    static final byte ADD = 1, REMOVE = 2;
+
+    // sanity bound on decoded list sizes
+    private static final int MAX_ENTRIES = 1 << 20;
+
+    final byte type;
+
+    final String origin;
+
+    final long epoch;
+
+    final long seq;
+
+    // DIGEST: publisher count
+    final int count;
+
+    // DELTA: ADD or REMOVE per path, otherwise null
+    final byte[] ops;
+
+    // DELTA and SNAPSHOT, otherwise null
+    final String[] paths;
+
+    private ReplicationMessage(byte type, String origin, long epoch, long seq, int count, byte[] ops, String[] paths) {
+        this.type = type;
+        this.origin = origin;
+        this.epoch = epoch;
+        this.seq = seq;
+        this.count = count;
+        this.ops = ops;
+        this.paths = paths;
+    }
+
+    static byte[] delta(String origin, long epoch, List<Change> changes) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + changes.size() * 24);
+        try (DataOutputStream out = header(bytes, DELTA, origin, epoch, changes.get(0).seq)) {
+            out.writeInt(changes.size());
+            for (Change change : changes) {
+                out.writeByte(change.op);
+                out.writeUTF(change.path);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] digest(String origin, long epoch, long seq, int count) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+        try (DataOutputStream out = header(bytes, DIGEST, origin, epoch, seq)) {
+            out.writeInt(count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] sync(String origin, long epoch, long seq) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+        try (DataOutputStream out = header(bytes, SYNC, origin, epoch, seq)) {
+            // header only
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] snapshot(String origin, long epoch, long seq, Iterable<String> paths, int count) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + count * 24);
+        try (DataOutputStream out = header(bytes, SNAPSHOT, origin, epoch, seq)) {
+            out.writeInt(count);
+            for (String path : paths) {
+                out.writeUTF(path);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] leave(String origin, long epoch, long seq) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+        try (DataOutputStream out = header(bytes, LEAVE, origin, epoch, seq)) {
+            // header only
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataOutputStream header(ByteArrayOutputStream bytes, byte type, String origin, long epoch, long seq) throws IOException {
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeByte(type);
+        out.writeUTF(origin);
+        out.writeLong(epoch);
+        out.writeLong(seq);
+        return out;
+    }
+
+    /**
+     * Decodes a message.
+     *
+     * @param message message bytes
+     * @return message
+     * @throws IOException if the message is malformed or of another version
+     */
+    static ReplicationMessage decode(byte[] message) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+        if (in.readByte() != VERSION) {
+            throw new IOException("Unsupported version");
+        }
+        byte type = in.readByte();
+        String origin = in.readUTF();
+        long epoch = in.readLong();
+        long seq = in.readLong();
+        switch (type) {
+            case DELTA: {
+                int n = entries(in);
+                byte[] ops = new byte[n];
+                String[] paths = new String[n];
+                for (int i = 0; i < n; i++) {
+                    ops[i] = in.readByte();
+                    paths[i] = in.readUTF();
+                }
+                return new ReplicationMessage(type, origin, epoch, seq, n, ops, paths);
+            }
+            case SNAPSHOT: {
+                int n = entries(in);
+                String[] paths = new String[n];
+                for (int i = 0; i < n; i++) {
+                    paths[i] = in.readUTF();
+                }
+                return new ReplicationMessage(type, origin, epoch, seq, n, null, paths);
+            }
+            case DIGEST:
+                return new ReplicationMessage(type, origin, epoch, seq, in.readInt(), null, null);
+            case SYNC:
+            case LEAVE:
+                return new ReplicationMessage(type, origin, epoch, seq, 0, null, null);
+            default:
+                throw new IOException("Unknown type: " + type);
+        }
+    }
+
+    private static int entries(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        if (n < 0 || n > MAX_ENTRIES) {
+            throw new IOException("Invalid entry count: " + n);
+        }
+        return n;
+    }
+
+    /**
+     * Numbered change to the origin's publishers.
+     */
+    static final class Change {
+
+        final long seq;
+
+        final byte op;
+
+        final String path;
+
+        Change(long seq, byte op, String path) {
+            this.seq = seq;
+            this.op = op;
+            this.path = path;
+        }
+
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.example.config;
+
+/**
+ * Notified after the plugin configuration was reloaded with different values.
+ *
+ * @author Paul Gregoire
+ */
+@FunctionalInterface
+public interface ConfigListener {
+
+    /**
+     * Called on the config watcher thread once the new snapshot is in place.
+     *
+     * @param previous snapshot that was replaced
+     * @param current snapshot now returned by {@link ConfigManager#get()}
+     */
+    void configChanged(PluginConfig previous, PluginConfig current);
+
+}
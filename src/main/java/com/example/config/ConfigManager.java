@@ -0,0 +1,163 @@
+package com.example.config;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Owns the current {@link PluginConfig} behind a volatile reference and reloads it when the file changes. A watcher
+ * thread blocks on a {@link WatchService} for the file's directory, lets a burst of events settle, parses the file into a
+ * new snapshot and, if the values changed, swaps it in and notifies the listeners. A file that fails to parse leaves the
+ * current snapshot in place.
+ *
+ * @author Paul Gregoire
+ */
+public class ConfigManager {
+
+    private static Logger log = LoggerFactory.getLogger(ConfigManager.class);
+
+    // editors often write a file in several steps
+    private static final long SETTLE_MS = 250L;
+
+    private final Path path;
+
+    private final CopyOnWriteArrayList<ConfigListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile PluginConfig current = PluginConfig.EMPTY;
+
+    private WatchService watchService;
+
+    private Thread watcher;
+
+    public ConfigManager(Path path) {
+        this.path = path.toAbsolutePath();
+    }
+
+    /**
+     * Loads the file, replacing the current snapshot without notifying listeners.
+     *
+     * @return snapshot
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if an entry has an invalid value
+     */
+    public PluginConfig load() throws IOException {
+        current = PluginConfig.load(path, current.getVersion() + 1);
+        return current;
+    }
+
+    /**
+     * Returns the current snapshot; lock-free.
+     *
+     * @return snapshot
+     */
+    public PluginConfig get() {
+        return current;
+    }
+
+    /**
+     * Reloads the file and notifies listeners if anything changed.
+     *
+     * @return true if a new snapshot was installed
+     */
+    public synchronized boolean reload() {
+        PluginConfig previous = current;
+        PluginConfig next;
+        try {
+            next = PluginConfig.load(path, previous.getVersion() + 1);
+        } catch (Exception e) {
+            log.warn("Configuration {} not reloaded, keeping version {}", path, previous.getVersion(), e);
+            return false;
+        }
+        if (next.sameValues(previous)) {
+            return false;
+        }
+        current = next;
+        log.info("Configuration reloaded - version: {}", next.getVersion());
+        for (ConfigListener listener : listeners) {
+            try {
+                listener.configChanged(previous, next);
+            } catch (Exception e) {
+                log.warn("Exception in config listener {}", listener, e);
+            }
+        }
+        return true;
+    }
+
+    public void addListener(ConfigListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ConfigListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts watching the file for changes.
+     *
+     * @throws IOException if the directory can't be watched
+     */
+    public synchronized void startWatching() throws IOException {
+        if (watcher == null) {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            try {
+                path.getParent().register(service, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+            } catch (IOException | RuntimeException e) {
+                service.close();
+                throw e;
+            }
+            watchService = service;
+            watcher = Thread.ofPlatform().daemon().name("config-watcher").start(this::watch);
+            log.debug("Watching {} for changes", path);
+        }
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.debug("Exception closing watch service", e);
+            }
+            watcher.interrupt();
+            watcher = null;
+        }
+    }
+
+    private void watch() {
+        WatchService service = watchService;
+        Path fileName = path.getFileName();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = service.take();
+                boolean changed = false;
+                // collect everything that arrives until the directory goes quiet
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context())) {
+                            changed = true;
+                        }
+                    }
+                    key.reset();
+                    key = service.poll(SETTLE_MS, TimeUnit.MILLISECONDS);
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+        log.debug("Stopped watching {}", path);
+    }
+
+}
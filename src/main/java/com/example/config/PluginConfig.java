@@ -0,0 +1,330 @@
+package com.example.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.example.buffer.DirectBufferPool;
+import com.example.buffer.OverflowPolicy;
+import com.example.dump.DumpSettings;
+import com.example.listener.MyProStreamListener;
+
+/**
+ * Immutable snapshot of the plugin properties. Settings read per stream or per packet are parsed once into typed fields;
+ * everything else is available through typed getters that parse a value on first use and cache it in the snapshot.
+ * Reads never lock, a reload simply produces a new snapshot. Every typed entry is parsed up front, so a snapshot that
+ * was built can't fail a later lookup.
+ *
+ * @author Paul Gregoire
+ */
+public final class PluginConfig {
+
+    // every typed key the plugin reads, checked when a snapshot is built; scope overrides are checked against the same
+    private static final Map<String, Class<?>> TYPES = new HashMap<>();
+
+    static {
+        typed(Boolean.class, "admin.enable", "admission.enable", "cluster.enable", "config.watch", "diag.enable", "dump.enable", "enable",
+                "forward.enable", "gop.cache.audio", "gop.cache.enable", "preview.enable", "record.enable", "replay.enable", "watchdog.enable",
+                "watchdog.release");
+        typed(Integer.class, "admission.client.burst", "admission.max.publishers", "admission.scope.burst", "cluster.batch.size",
+                "cluster.log.capacity", "diag.max.per.second", "diag.ring.capacity", "diag.sample.every", "forward.batch.size",
+                "forward.queue.capacity", "inspect.timestamp.jump.ms", "jfr.batch.sample.rate", "preview.cache.entries",
+                "preview.queue.capacity", "preview.threads", "preview.width", "processing.batch.size", "processing.workers",
+                "queue.capacity", "record.index.interval.ms", "record.retention.segments", "record.segment.bytes", "replay.batch.size",
+                "replay.threads", "timer.wheel.size");
+        typed(Long.class, "admission.load.sample.ms", "attach.retry.ms", "attach.timeout.ms", "buffer.pool.max.bytes", "cluster.digest.ms",
+                "cluster.flush.ms", "cluster.peer.timeout.ms", "forward.connect.timeout.ms", "forward.reconnect.max.ms",
+                "forward.reconnect.ms", "forward.stall.timeout.ms", "gop.cache.max.bytes", "gop.cache.max.stream.bytes",
+                "jfr.max.duration.ms", "jfr.max.size.bytes", "metrics.snapshot.max.age.ms", "preview.idle.ms", "preview.refresh.ms",
+                "queue.drain.timeout.ms", "record.retention.seconds", "timer.tick.ms", "watchdog.audio.threshold.ms",
+                "watchdog.video.threshold.ms");
+        // read by DumpSettings
+        typed(Integer.class, "dump.buffer.size", "dump.buffer.count");
+        typed(Long.class, "dump.fsync.interval.ms", "dump.rotate.bytes", "dump.rotate.seconds");
+        typed(Double.class, "admission.client.rate", "admission.cpu.threshold", "admission.heap.threshold", "admission.scope.rate",
+                "preview.jpeg.quality");
+    }
+
+    public static final PluginConfig EMPTY = new PluginConfig(new Properties(), 0L);
+
+    private final Map<String, String> values;
+
+    // typed values, parsed when the snapshot is built or on first lookup
+    private final ConcurrentHashMap<String, Object> parsed = new ConcurrentHashMap<>();
+
+    // increases with every reload
+    private final long version;
+
+    private final boolean enabled;
+
+    private final int queueCapacity;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final long drainTimeoutMs;
+
+    private final long bufferPoolMaxBytes;
+
+    private final boolean dumpEnabled;
+
+    // parsed even when dumping is off, scopes may turn it on
+    private final DumpSettings dumpSettings;
+
+    private final long metricsSnapshotMaxAgeMs;
+
+    private final long watchdogAudioThresholdMs, watchdogVideoThresholdMs;
+
+    private final boolean watchdogRelease;
+
+    PluginConfig(Properties props, long version) {
+        Map<String, String> map = new HashMap<>();
+        props.stringPropertyNames().forEach(key -> map.put(key, props.getProperty(key).trim()));
+        this.values = Collections.unmodifiableMap(map);
+        this.version = version;
+        validate();
+        enabled = getBoolean("enable", true);
+        queueCapacity = getInt("queue.capacity", MyProStreamListener.DEFAULT_QUEUE_CAPACITY);
+        overflowPolicy = OverflowPolicy.of(getString("queue.overflow.policy"), MyProStreamListener.DEFAULT_OVERFLOW_POLICY);
+        drainTimeoutMs = getLong("queue.drain.timeout.ms", MyProStreamListener.DEFAULT_DRAIN_TIMEOUT_MS);
+        bufferPoolMaxBytes = getLong("buffer.pool.max.bytes", DirectBufferPool.DEFAULT_MAX_RETAINED_BYTES);
+        dumpEnabled = getBoolean("dump.enable", true);
+        dumpSettings = DumpSettings.from(props);
+        metricsSnapshotMaxAgeMs = getLong("metrics.snapshot.max.age.ms", 1000L);
+        watchdogAudioThresholdMs = getLong("watchdog.audio.threshold.ms", 10000L);
+        watchdogVideoThresholdMs = getLong("watchdog.video.threshold.ms", 10000L);
+        watchdogRelease = getBoolean("watchdog.release", false);
+    }
+
+    /**
+     * Reads and parses a properties file.
+     *
+     * @param path file
+     * @param version version of the new snapshot
+     * @return snapshot
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if an entry has an invalid value
+     */
+    public static PluginConfig load(Path path, long version) throws IOException {
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            props.load(in);
+        }
+        return new PluginConfig(props, version);
+    }
+
+    private static void typed(Class<?> type, String... keys) {
+        for (String key : keys) {
+            TYPES.put(key, type);
+        }
+    }
+
+    /**
+     * Parses every typed entry, so a file with one bad value is rejected as a whole instead of failing later in whichever
+     * component reads it.
+     *
+     * @throws IllegalArgumentException naming the first entry that doesn't parse
+     */
+    private void validate() {
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            String key = entry.getKey();
+            Class<?> type = typeOf(key);
+            if (type == null) {
+                continue;
+            }
+            String raw = entry.getValue();
+            try {
+                if (type == Boolean.class) {
+                    if (!"true".equalsIgnoreCase(raw) && !"false".equalsIgnoreCase(raw)) {
+                        throw new IllegalArgumentException("expected true or false");
+                    }
+                    getBoolean(key, false);
+                } else if (type == Integer.class) {
+                    getInt(key, 0);
+                } else if (type == Long.class) {
+                    getLong(key, 0L);
+                } else {
+                    getDouble(key, 0d);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid value for " + key + ": " + raw, e);
+            }
+        }
+    }
+
+    private static Class<?> typeOf(String key) {
+        Class<?> type = TYPES.get(key);
+        if (type == null && key.startsWith("scope.")) {
+            // scope.<path>.<key>, the path itself may contain dots
+            for (int dot = key.indexOf('.', 6); dot != -1 && type == null; dot = key.indexOf('.', dot + 1)) {
+                type = TYPES.get(key.substring(dot + 1));
+            }
+        }
+        return type;
+    }
+
+    public String getString(String key) {
+        return values.get(key);
+    }
+
+    public String getString(String key, String defaultValue) {
+        return values.getOrDefault(key, defaultValue);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Object value = parsed.get(key);
+        if (value instanceof Integer) {
+            return (Integer) value;
+        }
+        String raw = values.get(key);
+        if (raw == null) {
+            return defaultValue;
+        }
+        Integer result = Integer.valueOf(raw);
+        parsed.put(key, result);
+        return result;
+    }
+
+    public long getLong(String key, long defaultValue) {
+        Object value = parsed.get(key);
+        if (value instanceof Long) {
+            return (Long) value;
+        }
+        String raw = values.get(key);
+        if (raw == null) {
+            return defaultValue;
+        }
+        Long result = Long.valueOf(raw);
+        parsed.put(key, result);
+        return result;
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        Object value = parsed.get(key);
+        if (value instanceof Double) {
+            return (Double) value;
+        }
+        String raw = values.get(key);
+        if (raw == null) {
+            return defaultValue;
+        }
+        Double result = Double.valueOf(raw);
+        parsed.put(key, result);
+        return result;
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object value = parsed.get(key);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        String raw = values.get(key);
+        if (raw == null) {
+            return defaultValue;
+        }
+        Boolean result = Boolean.valueOf(raw);
+        parsed.put(key, result);
+        return result;
+    }
+
+    public Set<String> keys() {
+        return values.keySet();
+    }
+
+    /**
+     * Whether any entry starting with the given prefix differs from another snapshot, for listeners that only care about
+     * their own section.
+     *
+     * @param other other snapshot
+     * @param prefix key prefix, e.g. "watchdog."
+     * @return true if a matching entry was added, removed or changed
+     */
+    public boolean differs(PluginConfig other, String prefix) {
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (entry.getKey().startsWith(prefix) && !entry.getValue().equals(other.values.get(entry.getKey()))) {
+                return true;
+            }
+        }
+        for (String key : other.values.keySet()) {
+            if (key.startsWith(prefix) && !values.containsKey(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the entries are the same as another snapshot's.
+     *
+     * @param other other snapshot
+     * @return true if equal
+     */
+    public boolean sameValues(PluginConfig other) {
+        return other != null && values.equals(other.values);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public long getDrainTimeoutMs() {
+        return drainTimeoutMs;
+    }
+
+    public long getBufferPoolMaxBytes() {
+        return bufferPoolMaxBytes;
+    }
+
+    public boolean isDumpEnabled() {
+        return dumpEnabled;
+    }
+
+    /**
+     * Plugin-wide dump settings, also when dumping is disabled; see {@link #isDumpEnabled()}.
+     *
+     * @return settings
+     */
+    public DumpSettings getDumpSettings() {
+        return dumpSettings;
+    }
+
+    public long getMetricsSnapshotMaxAgeMs() {
+        return metricsSnapshotMaxAgeMs;
+    }
+
+    public long getWatchdogAudioThresholdMs() {
+        return watchdogAudioThresholdMs;
+    }
+
+    public long getWatchdogVideoThresholdMs() {
+        return watchdogVideoThresholdMs;
+    }
+
+    public boolean isWatchdogRelease() {
+        return watchdogRelease;
+    }
+
+    @Override
+    public String toString() {
+        return "PluginConfig [version=" + version + ", values=" + values + "]";
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.example.diag;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.red5.server.api.scope.IScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.config.PluginConfig;
+import com.example.listener.MyProStreamListener;
+import com.example.scope.ScopeServiceRegistry;
+
+/**
+ * Per-stream diagnostic mode, toggled at runtime. Streams are addressed by path, the scope's context path without the
+ * leading slash followed by the stream name (e.g. <code>live/stream1</code>); enabling a path switches on sampled packet
+ * logging for the stream if it is publishing and for any later publish under the same path, until disabled. Streams not
+ * in diagnostic mode pay a single null check per packet.
+ *
+ * @author Paul Gregoire
+ */
+public class DiagnosticsManager {
+
+    private static Logger log = LoggerFactory.getLogger(DiagnosticsManager.class);
+
+    private final ScopeServiceRegistry scopeServices;
+
+    private final PacketLogWriter writer;
+
+    private final ConcurrentHashMap<String, PacketLog> enabled = new ConcurrentHashMap<>();
+
+    private volatile int sampleEvery, maxPerSecond;
+
+    public DiagnosticsManager(ScopeServiceRegistry scopeServices, PluginConfig config) {
+        this.scopeServices = scopeServices;
+        writer = new PacketLogWriter(config.getInt("diag.ring.capacity", 8192));
+        setConfig(config);
+    }
+
+    /**
+     * Applies the default sampling; streams already in diagnostic mode keep theirs.
+     *
+     * @param config configuration
+     */
+    public void setConfig(PluginConfig config) {
+        sampleEvery = config.getInt("diag.sample.every", 100);
+        maxPerSecond = config.getInt("diag.max.per.second", 50);
+    }
+
+    /**
+     * Puts a stream in diagnostic mode, or changes its sampling if it already is.
+     *
+     * @param path stream path
+     * @param sampleEvery log 1 in this many packets, 0 or less for the default
+     * @param maxPerSecond most records per second, less than 0 for the default and 0 for no limit
+     * @return packet log of the stream
+     */
+    public PacketLog enable(String path, int sampleEvery, int maxPerSecond) {
+        String key = normalize(path);
+        // the writer thread only runs once something is logged
+        writer.start();
+        PacketLog packetLog = new PacketLog(key, writer, sampleEvery > 0 ? sampleEvery : this.sampleEvery,
+                maxPerSecond >= 0 ? maxPerSecond : this.maxPerSecond);
+        enabled.put(key, packetLog);
+        MyProStreamListener listener = find(key);
+        if (listener != null) {
+            listener.setPacketLog(packetLog);
+        }
+        log.info("Diagnostic mode on for {} - publishing: {}", packetLog, listener != null);
+        return packetLog;
+    }
+
+    /**
+     * Takes a stream out of diagnostic mode.
+     *
+     * @param path stream path
+     * @return false if it wasn't in diagnostic mode
+     */
+    public boolean disable(String path) {
+        String key = normalize(path);
+        PacketLog packetLog = enabled.remove(key);
+        if (packetLog == null) {
+            return false;
+        }
+        MyProStreamListener listener = find(key);
+        if (listener != null) {
+            listener.setPacketLog(null);
+        }
+        log.info("Diagnostic mode off for {}", packetLog);
+        return true;
+    }
+
+    /**
+     * Returns the packet log for a stream that is starting, if its path is in diagnostic mode.
+     *
+     * @param scope scope
+     * @param name stream name
+     * @return packet log or null
+     */
+    public PacketLog get(IScope scope, String name) {
+        return enabled.isEmpty() ? null : enabled.get(normalize(scope.getContextPath() + '/' + name));
+    }
+
+    public void clear() {
+        enabled.keySet().forEach(this::disable);
+    }
+
+    public void shutdown() {
+        clear();
+        writer.shutdown();
+    }
+
+    public PacketLogWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Renders the streams in diagnostic mode and the writer counters as compact JSON.
+     *
+     * @param out destination
+     */
+    public void writeJson(StringBuilder out) {
+        out.append("{\"ringCapacity\":").append(writer.getCapacity()).append(",\"written\":").append(writer.getWrittenCount())
+                .append(",\"overflows\":").append(writer.getOverflowCount()).append(",\"streams\":[");
+        boolean first = true;
+        for (PacketLog packetLog : enabled.values()) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append("{\"path\":\"").append(packetLog.getPath().replace("\\", "\\\\").replace("\"", "\\\"")).append("\",\"sampleEvery\":")
+                    .append(packetLog.getSampleEvery()).append(",\"maxPerSecond\":").append(packetLog.getMaxPerSecond()).append(",\"logged\":")
+                    .append(packetLog.getLoggedCount()).append(",\"suppressed\":").append(packetLog.getSuppressedCount()).append('}');
+        }
+        out.append("]}");
+    }
+
+    private MyProStreamListener find(String key) {
+        int slash = key.lastIndexOf('/');
+        return slash > 0 ? scopeServices.findStream('/' + key.substring(0, slash), key.substring(slash + 1)) : null;
+    }
+
+    private static String normalize(String path) {
+        String trimmed = path.trim();
+        return trimmed.startsWith("/") ? trimmed.substring(1) : trimmed;
+    }
+
+    @Override
+    public String toString() {
+        return "DiagnosticsManager [streams=" + enabled.size() + ", " + writer + "]";
+    }
+
+}
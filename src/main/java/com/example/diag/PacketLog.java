@@ -0,0 +1,108 @@
+package com.example.diag;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Diagnostic packet logging for one stream: 1 in N packets, and no more than a given number per second, are handed to the
+ * shared {@link PacketLogWriter} as fixed-size records. The sampling state is only touched by the stream's receive thread,
+ * so deciding costs a counter increment and, for sampled packets, a clock read.
+ *
+ * @author Paul Gregoire
+ */
+public class PacketLog {
+
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String path;
+
+    private final PacketLogWriter writer;
+
+    private final int sampleEvery;
+
+    private final int maxPerSecond;
+
+    // receive thread only
+    private int sinceSample;
+
+    private long windowStart;
+
+    private int inWindow;
+
+    private final LongAdder logged = new LongAdder();
+
+    private final LongAdder suppressed = new LongAdder();
+
+    /**
+     * @param path stream path, scope context path and stream name
+     * @param writer shared writer
+     * @param sampleEvery log 1 in this many packets, 1 for all
+     * @param maxPerSecond most records per second, 0 for no limit
+     */
+    public PacketLog(String path, PacketLogWriter writer, int sampleEvery, int maxPerSecond) {
+        this.path = path;
+        this.writer = writer;
+        this.sampleEvery = Math.max(1, sampleEvery);
+        this.maxPerSecond = Math.max(0, maxPerSecond);
+    }
+
+    /**
+     * Offers a packet for logging.
+     *
+     * @param dataType packet type
+     * @param timestamp packet timestamp
+     * @param size payload size
+     * @param flags packet flags
+     * @param queueDepth stream queue depth after the packet
+     * @param dropped whether the overflow policy dropped it
+     */
+    public void onPacket(byte dataType, int timestamp, int size, int flags, int queueDepth, boolean dropped) {
+        if (++sinceSample < sampleEvery) {
+            return;
+        }
+        sinceSample = 0;
+        long now = System.nanoTime();
+        if (maxPerSecond > 0) {
+            if (now - windowStart >= SECOND_NANOS) {
+                windowStart = now;
+                inWindow = 0;
+            }
+            if (++inWindow > maxPerSecond) {
+                suppressed.increment();
+                return;
+            }
+        }
+        if (writer.append(this, now, dataType, timestamp, size, flags, queueDepth, dropped)) {
+            logged.increment();
+        } else {
+            suppressed.increment();
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getSampleEvery() {
+        return sampleEvery;
+    }
+
+    public int getMaxPerSecond() {
+        return maxPerSecond;
+    }
+
+    public long getLoggedCount() {
+        return logged.sum();
+    }
+
+    public long getSuppressedCount() {
+        return suppressed.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "PacketLog [path=" + path + ", sampleEvery=" + sampleEvery + ", maxPerSecond=" + maxPerSecond + ", logged=" + logged.sum()
+                + ", suppressed=" + suppressed.sum() + "]";
+    }
+
+}
@@ -0,0 +1,190 @@
+package com.example.diag;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.buffer.PacketFlags;
+
+/**
+ * Ring of fixed-size packet records shared by every stream in diagnostic mode, drained by a single writer thread. A
+ * record is a handful of primitives written into preallocated arrays, so producing one on the receive path neither
+ * allocates nor boxes nor touches an appender; formatting and logging happen on the writer thread, under the
+ * <code>com.example.diag.PacketLog</code> logger, which can be routed to its own appender. When the ring is full records
+ * are dropped and counted rather than waited for. The thread is started with the first stream put in diagnostic mode and
+ * parks while the ring is empty until a producer wakes it.
+ *
+ * @author Paul Gregoire
+ */
+public class PacketLogWriter implements Runnable {
+
+    private static Logger log = LoggerFactory.getLogger(PacketLogWriter.class);
+
+    // the records, logged at info so they show without turning on debug for the plugin
+    private static Logger packetLog = LoggerFactory.getLogger("com.example.diag.PacketLog");
+
+    private final int capacity;
+
+    private final int mask;
+
+    private final PacketLog[] streams;
+
+    private final long[] nanos;
+
+    private final byte[] dataTypes;
+
+    private final boolean[] droppedPackets;
+
+    private final int[] timestamps, sizes, flags, queueDepths;
+
+    // sequence + 1 once a record is written, claimed positions below that are still being filled in
+    private final AtomicLongArray published;
+
+    // next position to claim
+    private final AtomicLong tail = new AtomicLong();
+
+    // next position to write out, writer thread only but read by producers for the capacity check
+    private volatile long head;
+
+    private final LongAdder overflows = new LongAdder();
+
+    private volatile long written;
+
+    private volatile boolean running = true;
+
+    // set while the writer is parked on an empty ring
+    private volatile boolean parked;
+
+    private volatile Thread thread;
+
+    /**
+     * Creates the ring; the writer thread is started by {@link #start()}.
+     *
+     * @param capacity minimum number of records held, rounded up to a power of two
+     */
+    public PacketLogWriter(int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = this.capacity - 1;
+        streams = new PacketLog[this.capacity];
+        nanos = new long[this.capacity];
+        dataTypes = new byte[this.capacity];
+        droppedPackets = new boolean[this.capacity];
+        timestamps = new int[this.capacity];
+        sizes = new int[this.capacity];
+        flags = new int[this.capacity];
+        queueDepths = new int[this.capacity];
+        published = new AtomicLongArray(this.capacity);
+    }
+
+    /**
+     * Starts the writer thread unless it is running or the writer was shut down.
+     */
+    public synchronized void start() {
+        if (thread == null && running) {
+            thread = Thread.ofPlatform().daemon().priority(Thread.MIN_PRIORITY).name("packet-log-writer").start(this);
+        }
+    }
+
+    /**
+     * Adds a record; never blocks.
+     *
+     * @return false if the ring was full
+     */
+    boolean append(PacketLog stream, long nowNanos, byte dataType, int timestamp, int size, int packetFlags, int queueDepth, boolean dropped) {
+        long pos;
+        do {
+            pos = tail.get();
+            if (pos - head >= capacity) {
+                overflows.increment();
+                return false;
+            }
+        } while (!tail.compareAndSet(pos, pos + 1));
+        int index = (int) (pos & mask);
+        streams[index] = stream;
+        nanos[index] = nowNanos;
+        dataTypes[index] = dataType;
+        timestamps[index] = timestamp;
+        sizes[index] = size;
+        flags[index] = packetFlags;
+        queueDepths[index] = queueDepth;
+        droppedPackets[index] = dropped;
+        published.set(index, pos + 1);
+        if (parked) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        StringBuilder line = new StringBuilder(160);
+        while (running) {
+            long pos = head;
+            int index = (int) (pos & mask);
+            if (published.get(index) != pos + 1) {
+                // empty, or the producer that claimed this position hasn't finished writing it and wakes us when it has
+                parked = true;
+                // re-check after advertising so a record published meanwhile is not missed
+                if (published.get(index) != pos + 1 && running) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+                continue;
+            }
+            PacketLog stream = streams[index];
+            line.setLength(0);
+            line.append(stream.getPath()).append(" t=").append(nanos[index] / 1000L).append("us type=").append(dataTypes[index]).append(" ts=")
+                    .append(timestamps[index]).append(" size=").append(sizes[index]);
+            int f = flags[index];
+            if (PacketFlags.isKeyframe(f)) {
+                line.append(" key");
+            }
+            if (PacketFlags.isConfig(f)) {
+                line.append(" config");
+            }
+            line.append(" queue=").append(queueDepths[index]);
+            if (droppedPackets[index]) {
+                line.append(" dropped");
+            }
+            streams[index] = null;
+            head = pos + 1;
+            written++;
+            try {
+                packetLog.info(line.toString());
+            } catch (Throwable t) {
+                log.warn("Exception writing packet log", t);
+            }
+        }
+    }
+
+    public synchronized void shutdown() {
+        running = false;
+        Thread writer = thread;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getOverflowCount() {
+        return overflows.sum();
+    }
+
+    public long getWrittenCount() {
+        return written;
+    }
+
+    @Override
+    public String toString() {
+        return "PacketLogWriter [capacity=" + capacity + ", pending=" + (tail.get() - head) + ", written=" + written + ", overflows="
+                + overflows.sum() + "]";
+    }
+
+}
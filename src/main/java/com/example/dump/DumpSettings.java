@@ -0,0 +1,86 @@
+package com.example.dump;
+
+import java.util.Properties;
+
+/**
+ * Immutable settings for the a/v dump writers.
+ *
+ * @author Paul Gregoire
+ */
+public final class DumpSettings {
+
+    public static final DumpSettings DEFAULT = new DumpSettings(System.getProperty("java.io.tmpdir", "/tmp"), 64 * 1024, 4, 1000L, 0L, 0L);
+
+    // directory dumps are written to
+    private final String directory;
+
+    // size of each staging buffer, packets are coalesced into these before hitting the file
+    private final int bufferSize;
+
+    // most staging buffers a track may hold at once, bounds memory and how far the writer may fall behind
+    private final int bufferCount;
+
+    // minimum time between fsyncs
+    private final long fsyncIntervalMs;
+
+    // rotate when a file reaches this many bytes, 0 to disable
+    private final long rotateBytes;
+
+    // rotate when a file has been open this long, 0 to disable
+    private final long rotateMs;
+
+    public DumpSettings(String directory, int bufferSize, int bufferCount, long fsyncIntervalMs, long rotateBytes, long rotateMs) {
+        this.directory = directory;
+        this.bufferSize = bufferSize;
+        this.bufferCount = Math.max(2, bufferCount);
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        this.rotateBytes = rotateBytes;
+        this.rotateMs = rotateMs;
+    }
+
+    /**
+     * Reads the dump.* entries from the plugin properties, falling back to the defaults.
+     *
+     * @param props plugin properties
+     * @return settings
+     */
+    public static DumpSettings from(Properties props) {
+        return new DumpSettings(props.getProperty("dump.dir", DEFAULT.directory),
+                Integer.valueOf(props.getProperty("dump.buffer.size", String.valueOf(DEFAULT.bufferSize))),
+                Integer.valueOf(props.getProperty("dump.buffer.count", String.valueOf(DEFAULT.bufferCount))),
+                Long.valueOf(props.getProperty("dump.fsync.interval.ms", String.valueOf(DEFAULT.fsyncIntervalMs))),
+                Long.valueOf(props.getProperty("dump.rotate.bytes", String.valueOf(DEFAULT.rotateBytes))),
+                Long.valueOf(props.getProperty("dump.rotate.seconds", "0")) * 1000L);
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getBufferCount() {
+        return bufferCount;
+    }
+
+    public long getFsyncIntervalMs() {
+        return fsyncIntervalMs;
+    }
+
+    public long getRotateBytes() {
+        return rotateBytes;
+    }
+
+    public long getRotateMs() {
+        return rotateMs;
+    }
+
+    @Override
+    public String toString() {
+        return "DumpSettings [directory=" + directory + ", bufferSize=" + bufferSize + ", bufferCount=" + bufferCount + ", fsyncIntervalMs="
+                + fsyncIntervalMs + ", rotateBytes=" + rotateBytes + ", rotateMs=" + rotateMs + "]";
+    }
+
+}
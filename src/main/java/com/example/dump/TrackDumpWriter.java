@@ -0,0 +1,352 @@
+package com.example.dump;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.MyRed5ProPlugin;
+import com.example.buffer.DirectBufferPool;
+
+/**
+ * Dump writer for a single track. The ingest thread coalesces packet payloads, in arrival order, into direct staging
+ * buffers taken from the shared {@link DirectBufferPool} as needed; sealed buffers are flushed with gathering writes on a
+ * {@link FileChannel} by at most one plugin executor task at a time, so file order always matches arrival order, and go
+ * back to the pool once written. At most <code>dump.buffer.count</code> buffers are out per track; when all of them are
+ * waiting on the disk the writer has fallen behind and packets are dropped (video until the next keyframe) rather than
+ * stalling ingest.
+ *
+ * @author Paul Gregoire
+ */
+public class TrackDumpWriter implements Closeable {
+
+    private static Logger log = LoggerFactory.getLogger(TrackDumpWriter.class);
+
+    // marker queued between buffers where the file should be rotated
+    private static final ByteBuffer ROTATE = ByteBuffer.allocate(0);
+
+    private final DumpSettings settings;
+
+    private final String baseName;
+
+    private final String extension;
+
+    // only rotate / resume on keyframes
+    private final boolean video;
+
+    private final DirectBufferPool pool;
+
+    // staging buffers taken from the pool and not yet returned
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private final ArrayBlockingQueue<ByteBuffer> sealed;
+
+    // gather array reused by the flush task
+    private final ByteBuffer[] gather;
+
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    // guards the channel between flush tasks and close
+    private final Object writeLock = new Object();
+
+    // guards the producer state between append and close
+    private final Object appendLock = new Object();
+
+    // producer state
+    private ByteBuffer current;
+
+    private long currentSealTime;
+
+    private long bytesInFile;
+
+    private long fileOpenTime;
+
+    private boolean awaitingKeyframe;
+
+    private int lastTimestamp = Integer.MIN_VALUE;
+
+    // writer state
+    private FileChannel channel;
+
+    private int fileIndex;
+
+    private long lastFsync;
+
+    private volatile boolean closed;
+
+    private volatile long written, dropped, rotations, timestampRegressions;
+
+    public TrackDumpWriter(DumpSettings settings, String baseName, String extension, boolean video) {
+        this.settings = settings;
+        this.baseName = baseName;
+        this.extension = extension;
+        this.video = video;
+        pool = DirectBufferPool.shared();
+        int count = settings.getBufferCount();
+        // room for every buffer plus rotation markers
+        sealed = new ArrayBlockingQueue<>(count * 2);
+        gather = new ByteBuffer[count];
+        awaitingKeyframe = video;
+        fileOpenTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Appends a payload. Must be called from a single thread, normally the one delivering packets for the stream; payloads
+     * arriving after {@link #close()} are rejected.
+     *
+     * @param timestamp packet timestamp
+     * @param keyframe whether the packet is a video keyframe
+     * @param src source buffer, its position and limit are not modified
+     * @param offset start of the payload in src
+     * @param length payload length
+     * @return true if accepted, false if dropped or closed
+     */
+    public boolean append(int timestamp, boolean keyframe, ByteBuffer src, int offset, int length) {
+        // uncontended unless a close races the delivering thread
+        synchronized (appendLock) {
+            if (closed || length <= 0) {
+                return false;
+            }
+            return stage(timestamp, keyframe, src, offset, length);
+        }
+    }
+
+    // caller holds appendLock
+    private boolean stage(int timestamp, boolean keyframe, ByteBuffer src, int offset, int length) {
+        long now = System.currentTimeMillis();
+        if (awaitingKeyframe) {
+            if (!keyframe) {
+                dropped++;
+                return false;
+            }
+            awaitingKeyframe = false;
+        }
+        if (timestamp < lastTimestamp) {
+            // writes stay in arrival (decode) order; just make regressions visible
+            timestampRegressions++;
+            log.trace("Timestamp regression in {}: {} < {}", baseName, timestamp, lastTimestamp);
+        }
+        lastTimestamp = timestamp;
+        // rotate on a boundary the file can start with
+        if ((!video || keyframe) && rotationDue(now)) {
+            seal(now);
+            if (!sealed.offer(ROTATE)) {
+                return behind();
+            }
+            bytesInFile = 0;
+            fileOpenTime = now;
+        }
+        if (current != null && current.remaining() < length) {
+            seal(now);
+        }
+        if (current == null) {
+            if (outstanding.get() >= settings.getBufferCount()) {
+                return behind();
+            }
+            // an oversized payload gets a buffer of its own, from the pool all the same
+            current = pool.acquire(Math.max(length, settings.getBufferSize()));
+            outstanding.incrementAndGet();
+            current.put(0, src, offset, length).position(length);
+            currentSealTime = now;
+        } else {
+            current.put(current.position(), src, offset, length).position(current.position() + length);
+        }
+        bytesInFile += length;
+        // flush a partially filled buffer once it has been sitting for the fsync interval
+        if (now - currentSealTime >= settings.getFsyncIntervalMs() || !current.hasRemaining()) {
+            seal(now);
+        }
+        return true;
+    }
+
+    private boolean rotationDue(long now) {
+        return (settings.getRotateBytes() > 0 && bytesInFile >= settings.getRotateBytes())
+                || (settings.getRotateMs() > 0 && now - fileOpenTime >= settings.getRotateMs());
+    }
+
+    private boolean behind() {
+        dropped++;
+        if (video) {
+            awaitingKeyframe = true;
+        }
+        log.debug("Dump writer for {} fell behind, dropping", baseName);
+        return false;
+    }
+
+    private void seal(long now) {
+        ByteBuffer buf = current;
+        if (buf != null && buf.position() > 0) {
+            current = null;
+            buf.flip();
+            if (!sealed.offer(buf)) {
+                // only possible with a run of oversized payloads
+                dropped++;
+                recycle(buf);
+            }
+            scheduleFlush();
+        }
+        currentSealTime = now;
+    }
+
+    private void scheduleFlush() {
+        if (flushing.compareAndSet(false, true)) {
+            Future<?> future = MyRed5ProPlugin.submit(this::flush);
+            if (future == null) {
+                // no executor available, write inline
+                flush();
+            }
+        }
+    }
+
+    private void flush() {
+        try {
+            do {
+                synchronized (writeLock) {
+                    drain();
+                }
+                flushing.set(false);
+                // pick up anything sealed while we were releasing the flag
+            } while (!sealed.isEmpty() && !closed && flushing.compareAndSet(false, true));
+        } catch (Throwable t) {
+            flushing.set(false);
+            log.warn("Exception flushing dump {}", baseName, t);
+        }
+    }
+
+    // caller holds writeLock
+    private void drain() throws IOException {
+        ByteBuffer buf;
+        int count = 0;
+        while ((buf = sealed.poll()) != null) {
+            if (buf == ROTATE) {
+                writeGathered(count);
+                count = 0;
+                rotate();
+                continue;
+            }
+            gather[count++] = buf;
+            if (count == gather.length) {
+                writeGathered(count);
+                count = 0;
+            }
+        }
+        writeGathered(count);
+        long now = System.currentTimeMillis();
+        if (channel != null && now - lastFsync >= settings.getFsyncIntervalMs()) {
+            channel.force(false);
+            lastFsync = now;
+        }
+    }
+
+    private void writeGathered(int count) throws IOException {
+        if (count == 0) {
+            return;
+        }
+        try {
+            if (channel == null) {
+                open();
+            }
+            long remaining = 0;
+            for (int i = 0; i < count; i++) {
+                remaining += gather[i].remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(gather, 0, count);
+            }
+            for (int i = 0; i < count; i++) {
+                written += gather[i].limit();
+            }
+        } finally {
+            // returned even when the write failed, the data is lost either way
+            for (int i = 0; i < count; i++) {
+                recycle(gather[i]);
+                gather[i] = null;
+            }
+        }
+    }
+
+    private void recycle(ByteBuffer buf) {
+        pool.release(buf);
+        outstanding.decrementAndGet();
+    }
+
+    private void open() throws IOException {
+        String name = fileIndex == 0 ? baseName + '.' + extension : baseName + '_' + fileIndex + '.' + extension;
+        Path path = Paths.get(settings.getDirectory(), name);
+        log.debug("Opening dump file: {}", path);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        lastFsync = System.currentTimeMillis();
+    }
+
+    private void rotate() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+        fileIndex++;
+        rotations++;
+    }
+
+    /**
+     * Writes whatever is staged, syncs and closes the file, returning the staging buffers to the pool. May be called from
+     * any thread, including while packets are still being appended.
+     */
+    @Override
+    public void close() {
+        synchronized (appendLock) {
+            if (closed) {
+                return;
+            }
+            seal(System.currentTimeMillis());
+            closed = true;
+        }
+        synchronized (writeLock) {
+            try {
+                drain();
+                if (channel != null) {
+                    channel.force(false);
+                    channel.close();
+                    channel = null;
+                }
+            } catch (IOException e) {
+                log.warn("Exception closing dump {}", baseName, e);
+            } finally {
+                // anything a failed write left queued goes back to the pool too
+                ByteBuffer buf;
+                while ((buf = sealed.poll()) != null) {
+                    if (buf != ROTATE) {
+                        recycle(buf);
+                    }
+                }
+            }
+        }
+    }
+
+    public long getWrittenBytes() {
+        return written;
+    }
+
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    public long getRotationCount() {
+        return rotations;
+    }
+
+    public long getTimestampRegressionCount() {
+        return timestampRegressions;
+    }
+
+}
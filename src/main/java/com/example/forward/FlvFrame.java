@@ -0,0 +1,160 @@
+package com.example.forward;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.red5.server.net.rtmp.message.Constants;
+
+import com.example.buffer.DirectBufferPool;
+import com.example.buffer.PacketView;
+import com.example.gop.CachedPacket;
+
+/**
+ * A packet encoded once as a complete FLV tag (header, payload and trailing previous tag size) in a pooled direct buffer
+ * and shared by every target it is queued to. Reference counted; the buffer goes back to the pool with the last release.
+ *
+ * @author Paul Gregoire
+ */
+final class FlvFrame {
+
+    static final int TAG_HEADER_BYTES = 11;
+
+    // signature, version, flags, header size and the first previous tag size
+    static final int FILE_HEADER_BYTES = 13;
+
+    private final AtomicInteger refCnt = new AtomicInteger(1);
+
+    private final byte dataType;
+
+    private final int flags;
+
+    private final long createdNanos;
+
+    private ByteBuffer data;
+
+    private final boolean pooled;
+
+    private FlvFrame(byte dataType, int flags, ByteBuffer data, boolean pooled) {
+        this.dataType = dataType;
+        this.flags = flags;
+        this.data = data;
+        this.pooled = pooled;
+        this.createdNanos = System.nanoTime();
+    }
+
+    /**
+     * Encodes a packet. Reference count starts at 1, owned by the caller.
+     *
+     * @param view packet
+     * @return frame
+     */
+    static FlvFrame encode(PacketView view) {
+        int length = view.getLength();
+        ByteBuffer data = tagHeader(view.getDataType(), view.getTimestamp(), length);
+        if (length > 0) {
+            view.copyTo(data);
+        }
+        return finish(view.getDataType(), view.getFlags(), data, length);
+    }
+
+    /**
+     * Encodes a packet from the GOP cache. Reference count starts at 1, owned by the caller.
+     *
+     * @param packet cached packet, still referenced by the caller
+     * @return frame
+     */
+    static FlvFrame encode(CachedPacket packet) {
+        int length = packet.getLength();
+        ByteBuffer data = tagHeader(packet.getDataType(), packet.getTimestamp(), length);
+        if (length > 0) {
+            data.put(packet.getData());
+        }
+        return finish(packet.getDataType(), packet.getFlags(), data, length);
+    }
+
+    private static ByteBuffer tagHeader(byte dataType, int timestamp, int length) {
+        ByteBuffer data = DirectBufferPool.shared().acquire(TAG_HEADER_BYTES + length + 4);
+        data.put(dataType);
+        putMedium(data, length);
+        putMedium(data, timestamp & 0xffffff);
+        data.put((byte) (timestamp >>> 24));
+        putMedium(data, 0);
+        return data;
+    }
+
+    private static FlvFrame finish(byte dataType, int flags, ByteBuffer data, int length) {
+        data.putInt(TAG_HEADER_BYTES + length);
+        data.flip();
+        return new FlvFrame(dataType, flags, data, true);
+    }
+
+    /**
+     * FLV file header a connection starts with.
+     *
+     * @param audio stream has audio
+     * @param video stream has video
+     * @return frame
+     */
+    static FlvFrame fileHeader(boolean audio, boolean video) {
+        ByteBuffer data = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        data.put((byte) 'F').put((byte) 'L').put((byte) 'V').put((byte) 1);
+        data.put((byte) ((audio ? 0x04 : 0) | (video ? 0x01 : 0)));
+        data.putInt(9).putInt(0);
+        data.flip();
+        return new FlvFrame((byte) 0, 0, data, false);
+    }
+
+    private static void putMedium(ByteBuffer data, int value) {
+        data.put((byte) (value >>> 16)).put((byte) (value >>> 8)).put((byte) value);
+    }
+
+    FlvFrame retain() {
+        int count;
+        do {
+            count = refCnt.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Frame already released");
+            }
+        } while (!refCnt.compareAndSet(count, count + 1));
+        return this;
+    }
+
+    void release() {
+        int count = refCnt.decrementAndGet();
+        if (count == 0) {
+            ByteBuffer buf = data;
+            data = null;
+            if (pooled) {
+                DirectBufferPool.shared().release(buf);
+            }
+        } else if (count < 0) {
+            throw new IllegalStateException("Frame released too many times");
+        }
+    }
+
+    /**
+     * Private cursor over the encoded bytes for one write.
+     *
+     * @return duplicate positioned at the start
+     */
+    ByteBuffer duplicate() {
+        return data.duplicate();
+    }
+
+    int size() {
+        return data.limit();
+    }
+
+    boolean isVideo() {
+        return dataType == Constants.TYPE_VIDEO_DATA;
+    }
+
+    int getFlags() {
+        return flags;
+    }
+
+    long getCreatedNanos() {
+        return createdNanos;
+    }
+
+}
@@ -0,0 +1,265 @@
+package com.example.forward;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import org.red5.server.api.scope.IScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.StreamKey;
+import com.example.config.PluginConfig;
+import com.example.gop.GopCache;
+import com.example.pipeline.PipelineRegistry;
+import com.example.timer.HashedTimerWheel;
+
+/**
+ * Node-wide set of {@link StreamForwarder}s. Published streams get their targets from ordered rules in the configuration,
+ * matched like the pipeline rules:
+ *
+ * <pre>
+ * forward.1.match=live/event*
+ * forward.1.targets=tcp://10.0.0.5:1935,tcp://10.0.0.6:1935
+ * </pre>
+ *
+ * Provisioned streams are forwarded on request with explicit targets, see
+ * {@link com.example.MyRed5ProPlugin#forward}. Writes for every target run on the plugin executor, so egress scales with
+ * its threads rather than needing a thread per target.
+ *
+ * @author Paul Gregoire
+ */
+public class ForwardManager {
+
+    private static Logger log = LoggerFactory.getLogger(ForwardManager.class);
+
+    private final ConcurrentHashMap<StreamKey, StreamForwarder> forwarders = new ConcurrentHashMap<>();
+
+    private final HashedTimerWheel wheel;
+
+    // new targets start from a stream's cached GOP, null when caching is off
+    private final GopCache gopCache;
+
+    // read when a forwarder is created, a reload applies to streams forwarded afterwards
+    private volatile ForwardSettings settings = ForwardSettings.DEFAULT;
+
+    private volatile Rule[] rules = new Rule[0];
+
+    public ForwardManager(HashedTimerWheel wheel, GopCache gopCache, PluginConfig config) {
+        this.wheel = wheel;
+        this.gopCache = gopCache;
+        setConfig(config);
+    }
+
+    /**
+     * Reads the forward.* settings and rules.
+     *
+     * @param config configuration
+     */
+    public void setConfig(PluginConfig config) {
+        settings = ForwardSettings.from(config);
+        TreeMap<Integer, Rule> ordered = new TreeMap<>();
+        for (String key : config.keys()) {
+            if (key.startsWith("forward.") && key.endsWith(".match")) {
+                String id = key.substring(8, key.length() - 6);
+                String targets = config.getString("forward." + id + ".targets");
+                try {
+                    if (targets != null && !targets.isBlank()) {
+                        ordered.put(Integer.valueOf(id), new Rule(config.getString(key), parseTargets(targets)));
+                    }
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring forward rule with non-numeric id: {}", key);
+                } catch (IllegalArgumentException e) {
+                    log.warn("Ignoring forward rule {}: {}", key, e.getMessage());
+                }
+            }
+        }
+        rules = ordered.values().toArray(new Rule[0]);
+        log.debug("Forward rules: {} {}", ordered.size(), settings);
+    }
+
+    private static List<URI> parseTargets(String targets) {
+        List<URI> uris = new ArrayList<>();
+        for (String target : targets.split("\\s*,\\s*")) {
+            if (!target.isEmpty()) {
+                URI uri = URI.create(target);
+                ForwardTarget.address(uri);
+                uris.add(uri);
+            }
+        }
+        return uris;
+    }
+
+    /**
+     * Creates the forwarder for a published stream if a rule matches it; add the returned consumer to the stream's
+     * listener.
+     *
+     * @param scope scope
+     * @param name stream name
+     * @return forwarder or null if the stream isn't forwarded
+     */
+    public StreamForwarder register(IScope scope, String name) {
+        Rule[] current = rules;
+        if (current.length == 0) {
+            return null;
+        }
+        String contextPath = scope.getContextPath();
+        String path = (contextPath.startsWith("/") ? contextPath.substring(1) : contextPath) + '/' + name;
+        for (Rule rule : current) {
+            if (rule.pattern.matcher(path).matches()) {
+                return register(scope, name, rule.targets);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates the forwarder for a stream with the given targets, or adds them to its existing one.
+     *
+     * @param scope scope
+     * @param name stream name
+     * @param targets target URIs
+     * @return forwarder
+     */
+    public StreamForwarder register(IScope scope, String name, List<URI> targets) {
+        StreamForwarder forwarder = forwarders.computeIfAbsent(new StreamKey(scope, name), key -> new StreamForwarder(key, settings, wheel, gopCache));
+        targets.forEach(forwarder::addTarget);
+        return forwarder;
+    }
+
+    /**
+     * Creates the forwarder for a stream with the given targets and hands it to <code>feed</code>, e.g. to attach the
+     * listener that feeds it, before anyone else can get it; if the stream already has a forwarder only the targets are
+     * added to it. A forwarder whose feed fails is closed and not registered.
+     *
+     * @param scope scope
+     * @param name stream name
+     * @param targets target URIs
+     * @param feed called once with a newly created forwarder
+     * @return forwarder
+     */
+    public StreamForwarder register(IScope scope, String name, List<URI> targets, Consumer<StreamForwarder> feed) {
+        boolean[] created = new boolean[1];
+        StreamForwarder forwarder = forwarders.computeIfAbsent(new StreamKey(scope, name), key -> {
+            StreamForwarder fresh = new StreamForwarder(key, settings, wheel, gopCache);
+            // targets first, the forwarder ignores packets until it has one
+            targets.forEach(fresh::addTarget);
+            try {
+                feed.accept(fresh);
+            } catch (RuntimeException e) {
+                fresh.close();
+                throw e;
+            }
+            created[0] = true;
+            return fresh;
+        });
+        if (created[0]) {
+            log.debug("Forwarding {} to {}", forwarder.getKey(), targets);
+        } else {
+            targets.forEach(forwarder::addTarget);
+        }
+        return forwarder;
+    }
+
+    public void unregister(IScope scope, String name) {
+        StreamForwarder forwarder = forwarders.remove(new StreamKey(scope, name));
+        if (forwarder != null) {
+            forwarder.close();
+        }
+    }
+
+    public StreamForwarder get(IScope scope, String name) {
+        return forwarders.get(new StreamKey(scope, name));
+    }
+
+    public void clear() {
+        forwarders.keySet().forEach(key -> {
+            StreamForwarder forwarder = forwarders.remove(key);
+            if (forwarder != null) {
+                forwarder.close();
+            }
+        });
+    }
+
+    public int size() {
+        return forwarders.size();
+    }
+
+    /**
+     * Renders every target as a compact JSON array.
+     *
+     * @param out destination
+     */
+    public void writeJson(StringBuilder out) {
+        out.append('[');
+        boolean first = true;
+        for (StreamForwarder forwarder : forwarders.values()) {
+            for (ForwardTarget target : forwarder.getTargets()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                out.append("{\"stream\":\"").append(escape(forwarder.getKey().toString())).append("\",\"target\":\"")
+                        .append(escape(target.getUri().toString())).append("\",\"state\":\"").append(target.getState()).append("\",\"framesSent\":")
+                        .append(target.getFramesSent()).append(",\"bytesSent\":").append(target.getBytesSent()).append(",\"framesDropped\":")
+                        .append(target.getFramesDropped()).append(",\"queueDepth\":").append(target.getQueueDepth()).append(",\"lagMs\":")
+                        .append(target.getLagMs()).append(",\"connects\":").append(target.getConnects()).append(",\"failures\":")
+                        .append(target.getFailures()).append('}');
+            }
+        }
+        out.append(']');
+    }
+
+    /**
+     * Renders every target in the Prometheus text exposition format.
+     *
+     * @param out destination
+     */
+    public void writePrometheus(StringBuilder out) {
+        out.append("# TYPE forward_frames_sent_total counter\n");
+        out.append("# TYPE forward_bytes_sent_total counter\n");
+        out.append("# TYPE forward_frames_dropped_total counter\n");
+        out.append("# TYPE forward_queue_depth gauge\n");
+        out.append("# TYPE forward_lag_ms gauge\n");
+        out.append("# TYPE forward_failures_total counter\n");
+        for (StreamForwarder forwarder : forwarders.values()) {
+            String stream = escape(forwarder.getKey().toString());
+            for (ForwardTarget target : forwarder.getTargets()) {
+                String labels = "{stream=\"" + stream + "\",target=\"" + escape(target.getUri().toString()) + "\"} ";
+                out.append("forward_frames_sent_total").append(labels).append(target.getFramesSent()).append('\n');
+                out.append("forward_bytes_sent_total").append(labels).append(target.getBytesSent()).append('\n');
+                out.append("forward_frames_dropped_total").append(labels).append(target.getFramesDropped()).append('\n');
+                out.append("forward_queue_depth").append(labels).append(target.getQueueDepth()).append('\n');
+                out.append("forward_lag_ms").append(labels).append(target.getLagMs()).append('\n');
+                out.append("forward_failures_total").append(labels).append(target.getFailures()).append('\n');
+            }
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    @Override
+    public String toString() {
+        return "ForwardManager [streams=" + forwarders.size() + ", rules=" + rules.length + "]";
+    }
+
+    private static final class Rule {
+
+        final Pattern pattern;
+
+        final List<URI> targets;
+
+        Rule(String match, List<URI> targets) {
+            this.pattern = PipelineRegistry.glob(match.trim());
+            this.targets = targets;
+        }
+
+    }
+
+}
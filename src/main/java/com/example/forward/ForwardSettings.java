@@ -0,0 +1,81 @@
+package com.example.forward;
+
+import com.example.config.PluginConfig;
+
+/**
+ * Immutable per-target forwarding settings.
+ *
+ * @author Paul Gregoire
+ */
+public final class ForwardSettings {
+
+    public static final ForwardSettings DEFAULT = new ForwardSettings(512, 64, 5000L, 10000L, 1000L, 30000L);
+
+    // frames queued per target before it starts dropping
+    private final int queueCapacity;
+
+    // frames per gathering write
+    private final int batchSize;
+
+    private final long connectTimeoutMs;
+
+    // a target whose oldest unsent frame is older than this is disconnected
+    private final long stallTimeoutMs;
+
+    // reconnect delay, doubled per failed attempt up to the max
+    private final long reconnectMs;
+
+    private final long reconnectMaxMs;
+
+    public ForwardSettings(int queueCapacity, int batchSize, long connectTimeoutMs, long stallTimeoutMs, long reconnectMs, long reconnectMaxMs) {
+        this.queueCapacity = Math.max(16, queueCapacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.stallTimeoutMs = stallTimeoutMs;
+        this.reconnectMs = Math.max(1L, reconnectMs);
+        this.reconnectMaxMs = Math.max(this.reconnectMs, reconnectMaxMs);
+    }
+
+    /**
+     * Reads the forward.* entries, falling back to the defaults.
+     *
+     * @param config plugin configuration
+     * @return settings
+     */
+    public static ForwardSettings from(PluginConfig config) {
+        return new ForwardSettings(config.getInt("forward.queue.capacity", DEFAULT.queueCapacity), config.getInt("forward.batch.size", DEFAULT.batchSize),
+                config.getLong("forward.connect.timeout.ms", DEFAULT.connectTimeoutMs), config.getLong("forward.stall.timeout.ms", DEFAULT.stallTimeoutMs),
+                config.getLong("forward.reconnect.ms", DEFAULT.reconnectMs), config.getLong("forward.reconnect.max.ms", DEFAULT.reconnectMaxMs));
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    public long getStallTimeoutMs() {
+        return stallTimeoutMs;
+    }
+
+    public long getReconnectMs() {
+        return reconnectMs;
+    }
+
+    public long getReconnectMaxMs() {
+        return reconnectMaxMs;
+    }
+
+    @Override
+    public String toString() {
+        return "ForwardSettings [queueCapacity=" + queueCapacity + ", batchSize=" + batchSize + ", connectTimeoutMs=" + connectTimeoutMs
+                + ", stallTimeoutMs=" + stallTimeoutMs + ", reconnectMs=" + reconnectMs + ", reconnectMaxMs=" + reconnectMaxMs + "]";
+    }
+
+}
@@ -0,0 +1,452 @@
+package com.example.forward;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.MyRed5ProPlugin;
+import com.example.buffer.PacketFlags;
+import com.example.timer.HashedTimerWheel;
+import com.example.timer.HashedTimerWheel.Timeout;
+
+/**
+ * One downstream target of a {@link StreamForwarder}, receiving the stream as FLV over TCP. The delivery thread only
+ * queues shared frames into the target's bounded queue; writes are gathering writes of up to a batch of frames on a
+ * non-blocking channel, run by at most one plugin executor task per target. A target that can't keep up is isolated
+ * from the source and the other targets:
+ * <ul>
+ * <li>a full queue drops frames for this target only, then resumes on the next keyframe</li>
+ * <li>a full socket buffer ends the write task; it is retried on the timer wheel instead of holding an executor
+ * thread</li>
+ * <li>a target whose oldest unsent frame is older than the stall timeout is disconnected and reconnected with
+ * backoff</li>
+ * </ul>
+ * Connecting is non-blocking as well, completed by polling on the wheel, and host names are looked up by the
+ * {@link HostResolver} rather than on the executor.
+ *
+ * @author Paul Gregoire
+ */
+public class ForwardTarget {
+
+    private static Logger log = LoggerFactory.getLogger(ForwardTarget.class);
+
+    public enum State {
+        CONNECTING, CONNECTED, BACKOFF, CLOSED
+    }
+
+    // batches written per executor task before yielding
+    private static final int MAX_ROUNDS = 8;
+
+    private final StreamForwarder owner;
+
+    private final URI uri;
+
+    private final InetSocketAddress address;
+
+    private final ForwardSettings settings;
+
+    private final HashedTimerWheel wheel;
+
+    private final ArrayBlockingQueue<FlvFrame> queue;
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    // guards the channel and in-flight frames between write tasks, connect and close
+    private final Object writeLock = new Object();
+
+    private volatile State state = State.CONNECTING;
+
+    // set on connect and after drops, delivery thread otherwise
+    private volatile boolean awaitingKeyframe = true;
+
+    // writer state
+    private volatile SocketChannel channel;
+
+    private final FlvFrame[] inFlight;
+
+    private final ByteBuffer[] gather;
+
+    private int inFlightStart, inFlightEnd;
+
+    private long backoffMs;
+
+    private long connectStarted, connectedNanos;
+
+    // creation time of the oldest frame being written, or the connect time if later; 0 when idle
+    private volatile long writeHeadNanos;
+
+    private volatile long framesSent, bytesSent, framesDropped, connects, failures;
+
+    private volatile String lastError;
+
+    ForwardTarget(StreamForwarder owner, URI uri, ForwardSettings settings, HashedTimerWheel wheel) {
+        this.owner = owner;
+        this.uri = uri;
+        this.address = address(uri);
+        this.settings = settings;
+        this.wheel = wheel;
+        queue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+        // room for the connection prefix: header, metadata and both configs
+        int slots = Math.max(settings.getBatchSize(), 4);
+        inFlight = new FlvFrame[slots];
+        gather = new ByteBuffer[slots];
+    }
+
+    /**
+     * Parses a target URI; only <code>tcp://host:port</code> is supported.
+     *
+     * @param uri target
+     * @return socket address, unresolved until connect
+     */
+    static InetSocketAddress address(URI uri) {
+        if (!"tcp".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null || uri.getPort() <= 0) {
+            throw new IllegalArgumentException("Unsupported forward target, expected tcp://host:port: " + uri);
+        }
+        return InetSocketAddress.createUnresolved(uri.getHost(), uri.getPort());
+    }
+
+    void start() {
+        submit(this::connect);
+    }
+
+    /**
+     * Queues a frame; delivery thread only, never blocks.
+     *
+     * @param frame shared frame, retained here if queued
+     * @param hasVideo whether the stream has video, drops then resume on a keyframe
+     */
+    void offer(FlvFrame frame, boolean hasVideo) {
+        if (state != State.CONNECTED) {
+            return;
+        }
+        int flags = frame.getFlags();
+        if (awaitingKeyframe) {
+            if (!hasVideo || (frame.isVideo() && PacketFlags.isKeyframe(flags))) {
+                awaitingKeyframe = false;
+            } else if (!PacketFlags.isConfig(flags) && !PacketFlags.isMetaData(flags)) {
+                framesDropped++;
+                return;
+            }
+        }
+        if (queue.offer(frame.retain())) {
+            if (state == State.CLOSED) {
+                releaseQueued();
+                return;
+            }
+            scheduleFlush();
+        } else {
+            frame.release();
+            framesDropped++;
+            awaitingKeyframe = true;
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true) && !submit(this::flush)) {
+            flushScheduled.set(false);
+        }
+    }
+
+    private void flush() {
+        boolean blocked = false;
+        try {
+            synchronized (writeLock) {
+                if (state != State.CONNECTED) {
+                    return;
+                }
+                long stallNanos = TimeUnit.MILLISECONDS.toNanos(settings.getStallTimeoutMs());
+                long now = System.nanoTime();
+                for (int round = 0; round < MAX_ROUNDS; round++) {
+                    if (inFlightStart == inFlightEnd && !fill()) {
+                        break;
+                    }
+                    if (stallNanos > 0 && now - since(inFlight[inFlightStart]) > stallNanos) {
+                        disconnect("stalled for more than " + settings.getStallTimeoutMs() + "ms");
+                        return;
+                    }
+                    channel.write(gather, inFlightStart, inFlightEnd - inFlightStart);
+                    while (inFlightStart < inFlightEnd && !gather[inFlightStart].hasRemaining()) {
+                        FlvFrame frame = inFlight[inFlightStart];
+                        bytesSent += frame.size();
+                        framesSent++;
+                        frame.release();
+                        inFlight[inFlightStart] = null;
+                        gather[inFlightStart] = null;
+                        inFlightStart++;
+                    }
+                    if (inFlightStart < inFlightEnd) {
+                        // socket buffer is full
+                        blocked = true;
+                        break;
+                    }
+                }
+                writeHeadNanos = inFlightStart < inFlightEnd ? since(inFlight[inFlightStart]) : 0L;
+            }
+        } catch (IOException e) {
+            synchronized (writeLock) {
+                disconnect(e.getMessage());
+            }
+            return;
+        } catch (Throwable t) {
+            log.warn("Exception writing to {}", uri, t);
+        } finally {
+            flushScheduled.set(false);
+        }
+        if (blocked) {
+            wheel.schedule(timeout -> scheduleFlush(), wheel.getTickMs());
+        } else if (!queue.isEmpty() && state == State.CONNECTED) {
+            scheduleFlush();
+        }
+    }
+
+    // frames count as waiting from the connect at the earliest, the kept prefix frames date from the start of the stream
+    private long since(FlvFrame frame) {
+        long created = frame.getCreatedNanos();
+        return created - connectedNanos > 0 ? created : connectedNanos;
+    }
+
+    // next batch from the queue into the in-flight slots
+    private boolean fill() {
+        inFlightStart = 0;
+        inFlightEnd = 0;
+        int max = settings.getBatchSize();
+        FlvFrame frame;
+        while (inFlightEnd < max && (frame = queue.poll()) != null) {
+            inFlight[inFlightEnd] = frame;
+            gather[inFlightEnd++] = frame.duplicate();
+        }
+        return inFlightEnd > 0;
+    }
+
+    private void connect() {
+        synchronized (writeLock) {
+            if (state == State.CLOSED) {
+                return;
+            }
+            state = State.CONNECTING;
+        }
+        CompletableFuture<InetSocketAddress> lookup = HostResolver.shared().resolve(address);
+        if (lookup.isDone() && !lookup.isCompletedExceptionally()) {
+            open(lookup.join());
+            return;
+        }
+        // the lookup completes on the resolver thread, connecting goes back to the executor
+        lookup.whenComplete((resolved, t) -> {
+            if (t != null) {
+                synchronized (writeLock) {
+                    if (state == State.CONNECTING) {
+                        disconnect("cannot resolve " + address.getHostString() + ": " + (t.getCause() != null ? t.getCause() : t));
+                    }
+                }
+            } else if (!submit(() -> open(resolved))) {
+                open(resolved);
+            }
+        });
+    }
+
+    private void open(InetSocketAddress resolved) {
+        synchronized (writeLock) {
+            if (state != State.CONNECTING) {
+                return;
+            }
+            try {
+                SocketChannel ch = SocketChannel.open();
+                channel = ch;
+                ch.configureBlocking(false);
+                ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                connectStarted = System.nanoTime();
+                if (ch.connect(resolved)) {
+                    connected();
+                } else {
+                    wheel.schedule(this::pollConnect, wheel.getTickMs());
+                }
+            } catch (IOException | RuntimeException e) {
+                disconnect(e.toString());
+            }
+        }
+    }
+
+    // finishing a non-blocking connect doesn't block, so it can run on the wheel
+    private void pollConnect(Timeout timeout) {
+        synchronized (writeLock) {
+            if (state != State.CONNECTING) {
+                return;
+            }
+            try {
+                if (channel.finishConnect()) {
+                    connected();
+                } else if (System.nanoTime() - connectStarted > TimeUnit.MILLISECONDS.toNanos(settings.getConnectTimeoutMs())) {
+                    disconnect("connect timed out");
+                } else {
+                    wheel.reschedule(timeout, wheel.getTickMs());
+                }
+            } catch (IOException e) {
+                disconnect(e.toString());
+            }
+        }
+    }
+
+    // writer lock held
+    private void connected() {
+        if (state == State.CLOSED) {
+            closeChannel();
+            return;
+        }
+        releaseQueued();
+        releaseInFlight();
+        // a receiver needs the file header and decoder configuration before the first keyframe
+        List<FlvFrame> prefix = owner.connectionPrefix();
+        for (FlvFrame frame : prefix) {
+            inFlight[inFlightEnd] = frame;
+            gather[inFlightEnd++] = frame.duplicate();
+        }
+        // then the cached GOP, so it can start decoding at once; live frames follow from the next keyframe
+        boolean full = false;
+        for (FlvFrame frame : owner.cachedGop()) {
+            if (full || !queue.offer(frame)) {
+                // a GOP cut short still decodes from its keyframe
+                full = true;
+                frame.release();
+            }
+        }
+        backoffMs = 0L;
+        connects++;
+        connectedNanos = System.nanoTime();
+        awaitingKeyframe = true;
+        state = State.CONNECTED;
+        log.debug("Forwarding {} to {}", owner.getKey(), uri);
+        scheduleFlush();
+    }
+
+    // writer lock held
+    private void disconnect(String reason) {
+        closeChannel();
+        releaseInFlight();
+        releaseQueued();
+        if (state == State.CLOSED) {
+            // closed targets don't reconnect
+            return;
+        }
+        failures++;
+        lastError = reason;
+        state = State.BACKOFF;
+        backoffMs = backoffMs == 0L ? settings.getReconnectMs() : Math.min(backoffMs * 2, settings.getReconnectMaxMs());
+        log.info("Forward target {} of {} disconnected ({}), reconnecting in {}ms", uri, owner.getKey(), reason, backoffMs);
+        wheel.schedule(timeout -> submit(this::connect), backoffMs);
+    }
+
+    private void closeChannel() {
+        SocketChannel ch = channel;
+        channel = null;
+        if (ch != null) {
+            try {
+                ch.close();
+            } catch (IOException e) {
+                log.trace("Exception closing channel to {}", uri, e);
+            }
+        }
+    }
+
+    private void releaseInFlight() {
+        for (int i = inFlightStart; i < inFlightEnd; i++) {
+            inFlight[i].release();
+            inFlight[i] = null;
+            gather[i] = null;
+        }
+        inFlightStart = 0;
+        inFlightEnd = 0;
+        writeHeadNanos = 0L;
+    }
+
+    private void releaseQueued() {
+        FlvFrame frame;
+        while ((frame = queue.poll()) != null) {
+            frame.release();
+        }
+    }
+
+    /**
+     * Disconnects for good; queued frames are released. Taken under the writer lock, so a connect in progress either
+     * sees the target closed or has its channel closed here; writes never block, so the wait is short.
+     */
+    void close() {
+        synchronized (writeLock) {
+            state = State.CLOSED;
+            closeChannel();
+            releaseInFlight();
+            releaseQueued();
+        }
+    }
+
+    private static boolean submit(Runnable task) {
+        return MyRed5ProPlugin.submit(task) != null;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Age of the oldest frame not yet written, i.e. how far the target is behind the source.
+     *
+     * @return lag in milliseconds
+     */
+    public long getLagMs() {
+        long oldest = writeHeadNanos;
+        FlvFrame head = queue.peek();
+        if (oldest == 0L && head != null) {
+            oldest = head.getCreatedNanos();
+        }
+        return oldest == 0L ? 0L : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest);
+    }
+
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    public long getConnects() {
+        return connects;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    @Override
+    public String toString() {
+        return "ForwardTarget [uri=" + uri + ", state=" + state + ", sent=" + framesSent + ", bytes=" + bytesSent + ", dropped=" + framesDropped
+                + ", queued=" + queue.size() + ", lagMs=" + getLagMs() + ", connects=" + connects + ", failures=" + failures + "]";
+    }
+
+}
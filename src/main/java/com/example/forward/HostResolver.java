@@ -0,0 +1,83 @@
+package com.example.forward;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Resolves forward target host names off the plugin executor. Lookups run one at a time on a single daemon thread that
+ * exits when idle, so a dead resolver can hold up reconnects but never an executor thread. Each host has at most one
+ * lookup in flight and its address is reused for {@link #TTL_MS}; failed lookups are not kept.
+ *
+ * @author Paul Gregoire
+ */
+final class HostResolver {
+
+    // how long a resolved address is reused
+    static final long TTL_MS = 60000L;
+
+    private static final HostResolver SHARED = new HostResolver();
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+        Thread thread = new Thread(r, "forward-resolver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    static HostResolver shared() {
+        return SHARED;
+    }
+
+    /**
+     * Resolves a target address, completing at once when a fresh lookup of its host is cached.
+     *
+     * @param address unresolved address
+     * @return resolved address, or completes exceptionally with the lookup failure
+     */
+    CompletableFuture<InetSocketAddress> resolve(InetSocketAddress address) {
+        String host = address.getHostString();
+        long now = System.nanoTime();
+        Entry entry = entries.compute(host, (h, current) -> current != null && current.isUsable(now) ? current : new Entry(now));
+        if (entry.submitted.compareAndSet(false, true)) {
+            executor.execute(() -> lookup(host, entry));
+        }
+        return entry.lookup.thenApply(resolved -> new InetSocketAddress(resolved, address.getPort()));
+    }
+
+    private void lookup(String host, Entry entry) {
+        try {
+            entry.lookup.complete(InetAddress.getByName(host));
+        } catch (UnknownHostException | RuntimeException e) {
+            entries.remove(host, entry);
+            entry.lookup.completeExceptionally(e);
+        }
+    }
+
+    private static final class Entry {
+
+        final CompletableFuture<InetAddress> lookup = new CompletableFuture<>();
+
+        final AtomicBoolean submitted = new AtomicBoolean();
+
+        final long expiresNanos;
+
+        Entry(long now) {
+            expiresNanos = now + TimeUnit.MILLISECONDS.toNanos(TTL_MS);
+        }
+
+        // pending lookups are shared, finished ones only while fresh
+        boolean isUsable(long now) {
+            return !lookup.isDone() || (!lookup.isCompletedExceptionally() && expiresNanos - now > 0);
+        }
+
+    }
+
+}
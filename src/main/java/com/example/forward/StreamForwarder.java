@@ -0,0 +1,254 @@
+package com.example.forward;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.red5.server.net.rtmp.message.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.StreamKey;
+import com.example.buffer.PacketView;
+import com.example.gop.CachedPacket;
+import com.example.gop.GopCache;
+import com.example.listener.PacketConsumer;
+import com.example.timer.HashedTimerWheel;
+
+/**
+ * Forwards one stream to any number of {@link ForwardTarget}s. Fed as a read-only {@link PacketConsumer}, each packet is
+ * encoded once into a shared FLV frame and queued by reference to every target, so the cost on the delivery thread is
+ * one copy plus a queue offer per target whatever the targets are doing. The latest metadata and decoder configuration
+ * are kept to start each new or reconnected target with, followed by the stream's GOP when the {@link GopCache} holds
+ * one.
+ *
+ * @author Paul Gregoire
+ */
+public class StreamForwarder implements PacketConsumer {
+
+    private static Logger log = LoggerFactory.getLogger(StreamForwarder.class);
+
+    private final StreamKey key;
+
+    private final ForwardSettings settings;
+
+    private final HashedTimerWheel wheel;
+
+    // null when GOP caching is off
+    private final GopCache gopCache;
+
+    // copy-on-write so delivery iterates without locking
+    private volatile ForwardTarget[] targets = new ForwardTarget[0];
+
+    private final Object targetLock = new Object();
+
+    // connection prefix, replaced on the delivery thread and read on connect
+    private FlvFrame metadata, videoConfig, audioConfig;
+
+    private volatile boolean hasAudio, hasVideo;
+
+    private volatile Runnable closeHook;
+
+    private volatile boolean closed;
+
+    StreamForwarder(StreamKey key, ForwardSettings settings, HashedTimerWheel wheel, GopCache gopCache) {
+        this.key = key;
+        this.settings = settings;
+        this.wheel = wheel;
+        this.gopCache = gopCache;
+    }
+
+    @Override
+    public void onPacket(PacketView view) {
+        ForwardTarget[] current = targets;
+        if (current.length == 0 || closed) {
+            return;
+        }
+        byte dataType = view.getDataType();
+        if (dataType == Constants.TYPE_VIDEO_DATA) {
+            hasVideo = true;
+        } else if (dataType == Constants.TYPE_AUDIO_DATA) {
+            hasAudio = true;
+        } else if (dataType != Constants.TYPE_NOTIFY) {
+            return;
+        }
+        FlvFrame frame = FlvFrame.encode(view);
+        try {
+            if (view.isConfig() || view.isMetaData()) {
+                remember(dataType, view.isMetaData(), frame);
+            }
+            boolean video = hasVideo;
+            for (ForwardTarget target : current) {
+                target.offer(frame, video);
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    private synchronized void remember(byte dataType, boolean isMetaData, FlvFrame frame) {
+        if (closed) {
+            return;
+        }
+        frame.retain();
+        FlvFrame previous;
+        if (isMetaData) {
+            previous = metadata;
+            metadata = frame;
+        } else if (dataType == Constants.TYPE_VIDEO_DATA) {
+            previous = videoConfig;
+            videoConfig = frame;
+        } else {
+            previous = audioConfig;
+            audioConfig = frame;
+        }
+        if (previous != null) {
+            previous.release();
+        }
+    }
+
+    /**
+     * Frames a new connection starts with, each retained for the caller: the FLV header, then metadata and decoder
+     * configuration when known. Until the stream's tracks are seen the header announces both.
+     *
+     * @return frames
+     */
+    synchronized List<FlvFrame> connectionPrefix() {
+        boolean audio = hasAudio, video = hasVideo;
+        List<FlvFrame> frames = new ArrayList<>(4);
+        frames.add(FlvFrame.fileHeader(audio || !video, video || !audio));
+        for (FlvFrame frame : new FlvFrame[] { metadata, videoConfig, audioConfig }) {
+            if (frame != null) {
+                frames.add(frame.retain());
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * The stream's cached GOP as frames, each owned by the caller, so a new connection can start at the last keyframe
+     * rather than wait for the next one. Metadata and configuration are left out, they come with the prefix.
+     *
+     * @return frames starting with a keyframe, or empty without a cached GOP
+     */
+    List<FlvFrame> cachedGop() {
+        if (gopCache == null) {
+            return Collections.emptyList();
+        }
+        List<CachedPacket> packets = gopCache.snapshot(key);
+        try {
+            List<FlvFrame> frames = new ArrayList<>(packets.size());
+            for (CachedPacket packet : packets) {
+                if (packet.getDataType() != Constants.TYPE_NOTIFY && !packet.isConfig()) {
+                    frames.add(FlvFrame.encode(packet));
+                }
+            }
+            return frames;
+        } finally {
+            GopCache.release(packets);
+        }
+    }
+
+    /**
+     * Adds a target and starts connecting to it; adding a target already present does nothing.
+     *
+     * @param uri target, <code>tcp://host:port</code>
+     * @return the target
+     */
+    public ForwardTarget addTarget(URI uri) {
+        synchronized (targetLock) {
+            for (ForwardTarget target : targets) {
+                if (target.getUri().equals(uri)) {
+                    return target;
+                }
+            }
+            ForwardTarget target = new ForwardTarget(this, uri, settings, wheel);
+            ForwardTarget[] updated = Arrays.copyOf(targets, targets.length + 1);
+            updated[targets.length] = target;
+            targets = updated;
+            target.start();
+            return target;
+        }
+    }
+
+    public boolean removeTarget(URI uri) {
+        synchronized (targetLock) {
+            ForwardTarget[] current = targets;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].getUri().equals(uri)) {
+                    ForwardTarget[] updated = new ForwardTarget[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    targets = updated;
+                    current[i].close();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public List<ForwardTarget> getTargets() {
+        return Collections.unmodifiableList(Arrays.asList(targets));
+    }
+
+    /**
+     * Sets something to run once the forwarder closes, e.g. detaching the listener that feeds it.
+     *
+     * @param closeHook hook
+     */
+    public void setCloseHook(Runnable closeHook) {
+        this.closeHook = closeHook;
+    }
+
+    /**
+     * Disconnects every target and releases the kept frames.
+     */
+    public void close() {
+        ForwardTarget[] current;
+        synchronized (targetLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            current = targets;
+            targets = new ForwardTarget[0];
+        }
+        for (ForwardTarget target : current) {
+            target.close();
+        }
+        synchronized (this) {
+            for (FlvFrame frame : new FlvFrame[] { metadata, videoConfig, audioConfig }) {
+                if (frame != null) {
+                    frame.release();
+                }
+            }
+            metadata = videoConfig = audioConfig = null;
+        }
+        Runnable hook = closeHook;
+        if (hook != null) {
+            try {
+                hook.run();
+            } catch (Throwable t) {
+                log.warn("Exception in close hook of {}", key, t);
+            }
+        }
+        log.debug("Closed forwarder: {}", this);
+    }
+
+    public StreamKey getKey() {
+        return key;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamForwarder [key=" + key + ", targets=" + targets.length + "]";
+    }
+
+}
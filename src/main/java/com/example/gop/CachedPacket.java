@@ -0,0 +1,156 @@
+package com.example.gop;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.server.api.stream.IStreamPacket;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.BaseEvent;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Constants;
+
+import com.example.buffer.DirectBufferPool;
+import com.example.buffer.PacketFlags;
+import com.example.buffer.PacketView;
+
+/**
+ * Packet held by a {@link StreamGop} in a pooled direct buffer. Reference counted so readers priming a subscriber can keep
+ * using it after the cache has moved on to the next GOP; the buffer goes back to the pool with the last release.
+ *
+ * @author Paul Gregoire
+ */
+public final class CachedPacket {
+
+    private final AtomicInteger refCnt = new AtomicInteger(1);
+
+    private final byte dataType;
+
+    private final int timestamp;
+
+    private final int flags;
+
+    private final int length;
+
+    private ByteBuffer data;
+
+    private CachedPacket(byte dataType, int timestamp, int flags, ByteBuffer data, int length) {
+        this.dataType = dataType;
+        this.timestamp = timestamp;
+        this.flags = flags;
+        this.data = data;
+        this.length = length;
+    }
+
+    /**
+     * Copies a view into a pooled buffer. Reference count starts at 1, owned by the cache.
+     *
+     * @param view source
+     * @return cached packet
+     */
+    static CachedPacket copyOf(PacketView view) {
+        int length = view.getLength();
+        ByteBuffer data = DirectBufferPool.shared().acquire(Math.max(1, length));
+        data.limit(length);
+        if (length > 0) {
+            view.copyTo(data);
+            data.flip();
+        }
+        return new CachedPacket(view.getDataType(), view.getTimestamp(), view.getFlags(), data, length);
+    }
+
+    /**
+     * Adds a reference.
+     *
+     * @return this packet
+     */
+    public CachedPacket retain() {
+        int count;
+        do {
+            count = refCnt.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Packet already released");
+            }
+        } while (!refCnt.compareAndSet(count, count + 1));
+        return this;
+    }
+
+    /**
+     * Drops a reference, returning the buffer to the pool when none are left.
+     */
+    public void release() {
+        int count = refCnt.decrementAndGet();
+        if (count == 0) {
+            ByteBuffer buf = data;
+            data = null;
+            DirectBufferPool.shared().release(buf);
+        } else if (count < 0) {
+            throw new IllegalStateException("Packet released too many times");
+        }
+    }
+
+    public byte getDataType() {
+        return dataType;
+    }
+
+    public int getTimestamp() {
+        return timestamp;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public boolean isKeyframe() {
+        return PacketFlags.isKeyframe(flags);
+    }
+
+    public boolean isConfig() {
+        return PacketFlags.isConfig(flags);
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Read-only view of the payload; valid until the caller's reference is released.
+     *
+     * @return payload
+     */
+    public ByteBuffer getData() {
+        return data.asReadOnlyBuffer();
+    }
+
+    /**
+     * Builds a server packet over a heap copy of the payload, for injecting into a subscriber or restream.
+     *
+     * @return packet
+     */
+    public IStreamPacket toStreamPacket() {
+        IoBuffer buf = IoBuffer.allocate(length);
+        buf.put(data.duplicate());
+        buf.flip();
+        BaseEvent packet;
+        switch (dataType) {
+            case Constants.TYPE_AUDIO_DATA:
+                packet = new AudioData(buf);
+                break;
+            case Constants.TYPE_VIDEO_DATA:
+                packet = new VideoData(buf);
+                break;
+            default:
+                packet = new Notify(buf);
+                break;
+        }
+        packet.setTimestamp(timestamp);
+        return (IStreamPacket) packet;
+    }
+
+    @Override
+    public String toString() {
+        return "CachedPacket [dataType=" + dataType + ", timestamp=" + timestamp + ", flags=" + flags + ", length=" + length + "]";
+    }
+
+}
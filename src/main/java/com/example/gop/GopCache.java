@@ -0,0 +1,192 @@
+package com.example.gop;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.red5.server.api.scope.IScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.MyRed5ProPlugin;
+import com.example.StreamKey;
+
+/**
+ * Node-wide set of {@link StreamGop} caches sharing one memory budget. Payloads live in buffers from the shared
+ * {@link com.example.buffer.DirectBufferPool}. When the budget is exceeded the GOPs of the least recently read streams are
+ * dropped until it fits again; config and metadata are kept since they are small and needed for any start. The packet
+ * path just adds to a counter, eviction walks an access-ordered map from its eldest entry on the plugin executor.
+ *
+ * @author Paul Gregoire
+ */
+public class GopCache {
+
+    private static Logger log = LoggerFactory.getLogger(GopCache.class);
+
+    private final ConcurrentHashMap<StreamKey, StreamGop> streams = new ConcurrentHashMap<>();
+
+    // access order, least recently read first; guarded by itself
+    private final LinkedHashMap<StreamKey, StreamGop> lru = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder evictions = new LongAdder();
+
+    // budget across all streams
+    private final long maxBytes;
+
+    // largest GOP kept for one stream
+    private final long maxStreamBytes;
+
+    // keep audio frames of the GOP along with the video
+    private final boolean cacheAudio;
+
+    public GopCache(long maxBytes, long maxStreamBytes, boolean cacheAudio) {
+        this.maxBytes = maxBytes;
+        this.maxStreamBytes = Math.min(maxStreamBytes, maxBytes);
+        this.cacheAudio = cacheAudio;
+    }
+
+    /**
+     * Creates the cache for a stream; add the returned consumer to the stream's listener.
+     *
+     * @param scope scope
+     * @param name stream name
+     * @return stream cache
+     */
+    public StreamGop register(IScope scope, String name) {
+        StreamKey key = new StreamKey(scope, name);
+        return streams.computeIfAbsent(key, k -> {
+            StreamGop gop = new StreamGop(this, k);
+            synchronized (lru) {
+                lru.put(k, gop);
+            }
+            return gop;
+        });
+    }
+
+    public void unregister(IScope scope, String name) {
+        StreamKey key = new StreamKey(scope, name);
+        StreamGop gop = streams.remove(key);
+        if (gop != null) {
+            synchronized (lru) {
+                lru.remove(key);
+            }
+            gop.close();
+        }
+    }
+
+    public StreamGop get(IScope scope, String name) {
+        return streams.get(new StreamKey(scope, name));
+    }
+
+    /**
+     * Retained packets to prime a new subscriber of the stream with, see {@link StreamGop#snapshot()}.
+     *
+     * @param scope scope
+     * @param name stream name
+     * @return packets, empty if the stream isn't cached
+     */
+    public List<CachedPacket> snapshot(IScope scope, String name) {
+        return snapshot(new StreamKey(scope, name));
+    }
+
+    public List<CachedPacket> snapshot(StreamKey key) {
+        StreamGop gop = streams.get(key);
+        return gop != null ? gop.snapshot() : Collections.emptyList();
+    }
+
+    /**
+     * Releases every packet of a snapshot.
+     *
+     * @param packets snapshot
+     */
+    public static void release(List<CachedPacket> packets) {
+        packets.forEach(CachedPacket::release);
+    }
+
+    public void clear() {
+        streams.keySet().forEach(key -> {
+            StreamGop gop = streams.remove(key);
+            if (gop != null) {
+                synchronized (lru) {
+                    lru.remove(key);
+                }
+                gop.close();
+            }
+        });
+    }
+
+    public int size() {
+        return streams.size();
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxStreamBytes() {
+        return maxStreamBytes;
+    }
+
+    public boolean isCacheAudio() {
+        return cacheAudio;
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    void touch(StreamKey key) {
+        synchronized (lru) {
+            lru.get(key);
+        }
+    }
+
+    void charge(long delta) {
+        // one eviction at a time, the delivery threads carry on briefly over budget meanwhile
+        if (usedBytes.addAndGet(delta) > maxBytes && delta > 0 && evicting.compareAndSet(false, true)) {
+            // eviction takes other streams' monitors, keep it off the delivery thread
+            if (MyRed5ProPlugin.submit(this::evict) == null) {
+                evict();
+            }
+        }
+    }
+
+    private void evict() {
+        try {
+            synchronized (lru) {
+                // streams without a cached GOP free nothing and are passed over
+                Iterator<StreamGop> eldest = lru.values().iterator();
+                while (usedBytes.get() > maxBytes && eldest.hasNext()) {
+                    StreamGop victim = eldest.next();
+                    long freed = victim.evict();
+                    if (freed > 0) {
+                        evictions.increment();
+                        log.debug("Evicted GOP of {} freeing {} bytes", victim.getKey(), freed);
+                    }
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "GopCache [streams=" + streams.size() + ", usedBytes=" + usedBytes.get() + ", maxBytes=" + maxBytes + ", evictions="
+                + evictions.sum() + "]";
+    }
+
+}
@@ -0,0 +1,200 @@
+package com.example.gop;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.red5.server.net.rtmp.message.Constants;
+
+import com.example.StreamKey;
+import com.example.buffer.PacketView;
+import com.example.listener.PacketConsumer;
+
+/**
+ * GOP cache of a single stream: the packets since the last video keyframe plus the latest video sequence header, AAC
+ * config and metadata. Fed as a read-only {@link PacketConsumer} on the delivery thread; readers take a retained
+ * {@link #snapshot()} to prime a subscriber, side stream switch or restream without waiting for the next keyframe. The
+ * monitor is only contended while a snapshot is being taken.
+ *
+ * @author Paul Gregoire
+ */
+public class StreamGop implements PacketConsumer {
+
+    private final GopCache cache;
+
+    private final StreamKey key;
+
+    private CachedPacket metadata, videoConfig, audioConfig;
+
+    private final ArrayList<CachedPacket> gop = new ArrayList<>();
+
+    // payload bytes held by this stream, config and metadata included
+    private long bytes;
+
+    // false until the first keyframe and after the GOP was dropped, until the next one
+    private boolean valid;
+
+    private volatile boolean closed;
+
+    StreamGop(GopCache cache, StreamKey key) {
+        this.cache = cache;
+        this.key = key;
+    }
+
+    @Override
+    public void onPacket(PacketView view) {
+        long delta;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            long before = bytes;
+            byte dataType = view.getDataType();
+            if (dataType == Constants.TYPE_VIDEO_DATA) {
+                if (view.isConfig()) {
+                    videoConfig = replace(videoConfig, view);
+                } else if (view.isKeyframe()) {
+                    clearGop();
+                    valid = true;
+                    append(view);
+                } else if (valid) {
+                    append(view);
+                }
+            } else if (dataType == Constants.TYPE_AUDIO_DATA) {
+                if (view.isConfig()) {
+                    audioConfig = replace(audioConfig, view);
+                } else if (valid && cache.isCacheAudio()) {
+                    append(view);
+                }
+            } else if (dataType == Constants.TYPE_NOTIFY && view.isMetaData()) {
+                metadata = replace(metadata, view);
+            }
+            delta = bytes - before;
+        }
+        if (delta != 0) {
+            cache.charge(delta);
+        }
+    }
+
+    /**
+     * Returns the cached packets in decode order: metadata, video and audio config, then the GOP starting with its
+     * keyframe. Every packet is retained for the caller, who must release each one, e.g. via {@link GopCache#release(List)}.
+     *
+     * @return packets, empty if nothing is cached
+     */
+    public List<CachedPacket> snapshot() {
+        // a read makes this the most recently used stream, outside the monitor that eviction takes
+        cache.touch(key);
+        synchronized (this) {
+            if (closed) {
+                return Collections.emptyList();
+            }
+            List<CachedPacket> packets = new ArrayList<>(gop.size() + 3);
+            if (metadata != null) {
+                packets.add(metadata.retain());
+            }
+            if (videoConfig != null) {
+                packets.add(videoConfig.retain());
+            }
+            if (audioConfig != null) {
+                packets.add(audioConfig.retain());
+            }
+            for (CachedPacket packet : gop) {
+                packets.add(packet.retain());
+            }
+            return packets;
+        }
+    }
+
+    /**
+     * Whether a complete GOP from a keyframe is available.
+     *
+     * @return true if a keyframe is cached
+     */
+    public synchronized boolean hasKeyframe() {
+        return valid && !gop.isEmpty();
+    }
+
+    public StreamKey getKey() {
+        return key;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Drops the GOP, keeping config and metadata; caching resumes at the next keyframe.
+     *
+     * @return bytes freed
+     */
+    long evict() {
+        long freed;
+        synchronized (this) {
+            long before = bytes;
+            clearGop();
+            valid = false;
+            freed = before - bytes;
+        }
+        if (freed != 0) {
+            cache.charge(-freed);
+        }
+        return freed;
+    }
+
+    /**
+     * Releases everything; readers holding a snapshot keep their packets until they release them.
+     */
+    void close() {
+        long freed;
+        synchronized (this) {
+            closed = true;
+            long before = bytes;
+            clearGop();
+            metadata = replace(metadata, null);
+            videoConfig = replace(videoConfig, null);
+            audioConfig = replace(audioConfig, null);
+            freed = before - bytes;
+        }
+        if (freed != 0) {
+            cache.charge(-freed);
+        }
+    }
+
+    private void append(PacketView view) {
+        if (bytes + view.getLength() > cache.getMaxStreamBytes()) {
+            // oversized GOP, wait for the next keyframe rather than keep a partial one
+            clearGop();
+            valid = false;
+            return;
+        }
+        gop.add(CachedPacket.copyOf(view));
+        bytes += view.getLength();
+    }
+
+    private CachedPacket replace(CachedPacket current, PacketView view) {
+        if (current != null) {
+            bytes -= current.getLength();
+            current.release();
+        }
+        if (view == null) {
+            return null;
+        }
+        bytes += view.getLength();
+        return CachedPacket.copyOf(view);
+    }
+
+    private void clearGop() {
+        for (CachedPacket packet : gop) {
+            bytes -= packet.getLength();
+            packet.release();
+        }
+        gop.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "StreamGop [" + key + ", bytes=" + bytes + ", packets=" + gop.size() + ", valid=" + valid + "]";
+    }
+
+}
@@ -0,0 +1,430 @@
+package com.example.inspect;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.red5.server.api.scope.IScope;
+import org.red5.server.net.rtmp.message.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.buffer.PacketSlot;
+import com.example.jfr.CodecEvent;
+import com.example.pipeline.PacketTap;
+
+/**
+ * Pipeline stage that follows the codec state of one stream. Video is walked NAL unit by NAL unit using the length
+ * prefixes, reading one header byte per unit; only sequence parameter sets are parsed further, and only when their bytes
+ * differ from the last one seen. Audio reads the AudioSpecificConfig and, where an encoder wrongly sends them, ADTS
+ * headers. Nothing is copied and nothing is allocated per packet, so the cost follows the number of NAL units rather than
+ * the payload size.
+ * <p>
+ * Tracked are the codec parameters, the GOP length between keyframes and timestamp monotonicity per track. Changes and
+ * anomalies are counted per {@link CodecEventType}, logged, and emitted as {@link CodecEvent}s while a flight recording
+ * runs. State is written on the stream's processing worker and read by anyone.
+ *
+ * @author Paul Gregoire
+ */
+public class BitstreamInspector extends PacketTap {
+
+    private static Logger log = LoggerFactory.getLogger(BitstreamInspector.class);
+
+    // FLV codec ids
+    private static final int VIDEO_AVC = 7, AUDIO_AAC = 10;
+
+    // enhanced rtmp header flag
+    private static final int EX_HEADER = 0x80;
+
+    private static final int NAL_SLICE = 1, NAL_IDR = 5, NAL_SPS = 7;
+
+    private static final int VIDEO = 0, AUDIO = 1;
+
+    private static final String[] TRACKS = { "video", "audio" };
+
+    private static final int NO_TIMESTAMP = Integer.MIN_VALUE;
+
+    private final CodecInspection inspection;
+
+    private final NalReader reader = new NalReader();
+
+    private final AtomicLongArray counts = new AtomicLongArray(CodecEventType.values().length);
+
+    private final int[] parsed = new int[4];
+
+    private final int[] lastTimestamp = { NO_TIMESTAMP, NO_TIMESTAMP };
+
+    private IScope scope;
+
+    private String streamName;
+
+    // length prefix size of NAL units, from the sequence header
+    private int nalLengthSize = 4;
+
+    // hash of the last parsed SPS, 0 before the first
+    private int spsHash;
+
+    private boolean videoConfigSeen, audioConfigSeen, videoStarted, missingVideoReported, missingAudioReported, adtsReported;
+
+    private int framesSinceKeyframe, lastKeyframeTimestamp = NO_TIMESTAMP;
+
+    // reported state
+    private volatile int videoCodec = -1, audioCodec = -1;
+
+    private volatile int profile, level, width, height;
+
+    private volatile int audioObjectType, sampleRate, channels;
+
+    private volatile int gopFrames, gopMs;
+
+    BitstreamInspector(CodecInspection inspection) {
+        this.inspection = inspection;
+    }
+
+    @Override
+    public void open(IScope scope, String streamName) {
+        this.scope = scope;
+        this.streamName = streamName;
+        inspection.register(scope, streamName, this);
+    }
+
+    @Override
+    public void close() {
+        inspection.unregister(scope, streamName, this);
+    }
+
+    @Override
+    protected void observe(PacketSlot packet) {
+        ByteBuffer data = packet.getData();
+        if (data == null || data.limit() == 0) {
+            return;
+        }
+        switch (packet.getDataType()) {
+            case Constants.TYPE_VIDEO_DATA:
+                video(packet, data, data.limit());
+                break;
+            case Constants.TYPE_AUDIO_DATA:
+                audio(packet.getTimestamp(), data, data.limit());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void video(PacketSlot packet, ByteBuffer data, int size) {
+        int timestamp = packet.getTimestamp();
+        int b0 = data.get(0) & 0xff;
+        if ((b0 & EX_HEADER) != 0) {
+            // enhanced rtmp, the fourcc follows; track gop and timing from the header only
+            videoCodec = b0 & EX_HEADER;
+            if ((b0 & 0x0f) != 0) {
+                timestamp(VIDEO, timestamp);
+                gop(packet.isKeyframe(), timestamp);
+            }
+            return;
+        }
+        int codec = b0 & 0x0f;
+        videoCodec = codec;
+        if (codec != VIDEO_AVC) {
+            if (!packet.isConfig()) {
+                timestamp(VIDEO, timestamp);
+                gop(packet.isKeyframe(), timestamp);
+            }
+            return;
+        }
+        if (size < 5) {
+            report(CodecEventType.MALFORMED, VIDEO, timestamp);
+            return;
+        }
+        int packetType = data.get(1);
+        if (packetType == 0) {
+            sequenceHeader(data, size, timestamp);
+            return;
+        }
+        if (packetType != 1) {
+            return;
+        }
+        timestamp(VIDEO, timestamp);
+        boolean slice = false, idr = false;
+        int lengthSize = nalLengthSize;
+        for (int pos = 5; pos < size;) {
+            if (size - pos < lengthSize) {
+                report(CodecEventType.MALFORMED, VIDEO, timestamp);
+                break;
+            }
+            int length = 0;
+            for (int i = 0; i < lengthSize; i++) {
+                length = (length << 8) | (data.get(pos++) & 0xff);
+            }
+            if (length <= 0 || length > size - pos) {
+                report(CodecEventType.MALFORMED, VIDEO, timestamp);
+                break;
+            }
+            switch (data.get(pos) & 0x1f) {
+                case NAL_IDR:
+                    idr = true;
+                    slice = true;
+                    break;
+                case NAL_SLICE:
+                    slice = true;
+                    break;
+                case NAL_SPS:
+                    // in band parameter sets can change the resolution without a new sequence header
+                    sps(data, pos + 1, pos + length, timestamp);
+                    break;
+                default:
+                    break;
+            }
+            pos += length;
+        }
+        if (!slice) {
+            return;
+        }
+        if (!videoConfigSeen && !missingVideoReported) {
+            missingVideoReported = true;
+            report(CodecEventType.MISSING_VIDEO_CONFIG, VIDEO, timestamp);
+        }
+        if (!videoStarted) {
+            videoStarted = true;
+            if (!idr) {
+                report(CodecEventType.NON_IDR_START, VIDEO, timestamp);
+            }
+        }
+        if (packet.isKeyframe() && !idr) {
+            report(CodecEventType.KEYFRAME_WITHOUT_IDR, VIDEO, timestamp);
+        }
+        gop(idr, timestamp);
+    }
+
+    // AVCDecoderConfigurationRecord after the 5 byte FLV video header
+    private void sequenceHeader(ByteBuffer data, int size, int timestamp) {
+        if (size < 13 || (data.get(10) & 0x1f) == 0) {
+            report(CodecEventType.MALFORMED, VIDEO, timestamp);
+            return;
+        }
+        nalLengthSize = (data.get(9) & 0x03) + 1;
+        int spsLength = ((data.get(11) & 0xff) << 8) | (data.get(12) & 0xff);
+        if (spsLength < 4 || 13 + spsLength > size) {
+            report(CodecEventType.MALFORMED, VIDEO, timestamp);
+            return;
+        }
+        videoConfigSeen = true;
+        sps(data, 14, 13 + spsLength, timestamp);
+    }
+
+    private void sps(ByteBuffer data, int from, int to, int timestamp) {
+        int hash = 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + data.get(i);
+        }
+        if (hash == spsHash) {
+            return;
+        }
+        spsHash = hash;
+        if (!CodecHeaders.parseSps(reader.reset(data, from, to), parsed)) {
+            report(CodecEventType.MALFORMED, VIDEO, timestamp);
+            return;
+        }
+        if (parsed[CodecHeaders.PROFILE] != profile || parsed[CodecHeaders.LEVEL] != level || parsed[CodecHeaders.WIDTH] != width
+                || parsed[CodecHeaders.HEIGHT] != height) {
+            boolean first = width == 0;
+            profile = parsed[CodecHeaders.PROFILE];
+            level = parsed[CodecHeaders.LEVEL];
+            width = parsed[CodecHeaders.WIDTH];
+            height = parsed[CodecHeaders.HEIGHT];
+            if (first) {
+                log.debug("Video for {}: {}", streamName, describeVideo());
+            } else {
+                log.info("Video parameters changed for {}: {}", streamName, describeVideo());
+            }
+            report(CodecEventType.VIDEO_CONFIG, VIDEO, timestamp);
+        }
+    }
+
+    private void audio(int timestamp, ByteBuffer data, int size) {
+        int format = (data.get(0) & 0xff) >> 4;
+        audioCodec = format;
+        if (format != AUDIO_AAC) {
+            timestamp(AUDIO, timestamp);
+            return;
+        }
+        if (size < 2) {
+            report(CodecEventType.MALFORMED, AUDIO, timestamp);
+            return;
+        }
+        if (data.get(1) == 0) {
+            if (CodecHeaders.parseAudioSpecificConfig(data, 2, size, parsed)) {
+                audioConfigSeen = true;
+                audioConfig(timestamp);
+            } else {
+                report(CodecEventType.MALFORMED, AUDIO, timestamp);
+            }
+            return;
+        }
+        timestamp(AUDIO, timestamp);
+        if (CodecHeaders.isAdts(data, 2, size)) {
+            if (!adtsReported) {
+                adtsReported = true;
+                report(CodecEventType.ADTS_FRAMING, AUDIO, timestamp);
+            }
+            if (CodecHeaders.parseAdts(data, 2, parsed)) {
+                audioConfig(timestamp);
+            }
+        } else if (!audioConfigSeen && !missingAudioReported) {
+            missingAudioReported = true;
+            report(CodecEventType.MISSING_AUDIO_CONFIG, AUDIO, timestamp);
+        }
+    }
+
+    private void audioConfig(int timestamp) {
+        if (parsed[CodecHeaders.OBJECT_TYPE] != audioObjectType || parsed[CodecHeaders.SAMPLE_RATE] != sampleRate
+                || parsed[CodecHeaders.CHANNELS] != channels) {
+            boolean first = sampleRate == 0;
+            audioObjectType = parsed[CodecHeaders.OBJECT_TYPE];
+            sampleRate = parsed[CodecHeaders.SAMPLE_RATE];
+            channels = parsed[CodecHeaders.CHANNELS];
+            if (first) {
+                log.debug("Audio for {}: {}", streamName, describeAudio());
+            } else {
+                log.info("Audio parameters changed for {}: {}", streamName, describeAudio());
+            }
+            report(CodecEventType.AUDIO_CONFIG, AUDIO, timestamp);
+        }
+    }
+
+    private void timestamp(int track, int timestamp) {
+        int last = lastTimestamp[track];
+        lastTimestamp[track] = timestamp;
+        if (last != NO_TIMESTAMP) {
+            int delta = timestamp - last;
+            if (delta < 0) {
+                report(CodecEventType.TIMESTAMP_REGRESSION, track, timestamp, delta);
+            } else if (delta > inspection.getTimestampJumpMs()) {
+                report(CodecEventType.TIMESTAMP_JUMP, track, timestamp, delta);
+            }
+        }
+    }
+
+    private void gop(boolean keyframe, int timestamp) {
+        if (keyframe) {
+            if (lastKeyframeTimestamp != NO_TIMESTAMP) {
+                gopFrames = framesSinceKeyframe;
+                gopMs = timestamp - lastKeyframeTimestamp;
+            }
+            lastKeyframeTimestamp = timestamp;
+            framesSinceKeyframe = 0;
+        }
+        framesSinceKeyframe++;
+    }
+
+    private void report(CodecEventType type, int track, int timestamp) {
+        report(type, track, timestamp, 0);
+    }
+
+    private void report(CodecEventType type, int track, int timestamp, int delta) {
+        counts.incrementAndGet(type.ordinal());
+        if (type != CodecEventType.VIDEO_CONFIG && type != CodecEventType.AUDIO_CONFIG && log.isDebugEnabled()) {
+            log.debug("{} on {} of {} at {} delta: {}", type, TRACKS[track], streamName, timestamp, delta);
+        }
+        CodecEvent event = new CodecEvent();
+        if (event.shouldCommit()) {
+            event.setStream(scope, streamName);
+            event.type = type.getLabel();
+            event.track = TRACKS[track];
+            event.timestamp = timestamp;
+            if (type == CodecEventType.VIDEO_CONFIG) {
+                event.detail = describeVideo();
+            } else if (type == CodecEventType.AUDIO_CONFIG) {
+                event.detail = describeAudio();
+            } else if (type == CodecEventType.TIMESTAMP_REGRESSION || type == CodecEventType.TIMESTAMP_JUMP) {
+                event.detail = String.valueOf(delta);
+            }
+            event.commit();
+        }
+    }
+
+    private String describeVideo() {
+        return width + "x" + height + " profile " + profile + " level " + level;
+    }
+
+    private String describeAudio() {
+        return "aac object type " + audioObjectType + " " + sampleRate + "Hz channels " + channels;
+    }
+
+    public IScope getScope() {
+        return scope;
+    }
+
+    public String getStreamName() {
+        return streamName;
+    }
+
+    public long getCount(CodecEventType type) {
+        return counts.get(type.ordinal());
+    }
+
+    /**
+     * FLV video codec id, 0x80 for enhanced RTMP, -1 before any video.
+     *
+     * @return codec id
+     */
+    public int getVideoCodec() {
+        return videoCodec;
+    }
+
+    /**
+     * FLV sound format, -1 before any audio.
+     *
+     * @return sound format
+     */
+    public int getAudioCodec() {
+        return audioCodec;
+    }
+
+    public int getProfile() {
+        return profile;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getAudioObjectType() {
+        return audioObjectType;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Frames in the last complete GOP.
+     *
+     * @return frame count, 0 until two keyframes were seen
+     */
+    public int getGopFrames() {
+        return gopFrames;
+    }
+
+    public int getGopMs() {
+        return gopMs;
+    }
+
+    @Override
+    public String toString() {
+        return "BitstreamInspector [stream=" + streamName + ", video=" + describeVideo() + ", audio=" + describeAudio() + ", gopFrames="
+                + gopFrames + "]";
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.example.inspect;
+
+/**
+ * Changes and anomalies reported by the {@link BitstreamInspector}.
+ *
+ * @author Paul Gregoire
+ */
+public enum CodecEventType {
+
+    /** Video codec parameters seen for the first time or changed, e.g. a resolution change */
+    VIDEO_CONFIG,
+    /** AAC configuration seen for the first time or changed */
+    AUDIO_CONFIG,
+    /** Video frames before any AVC sequence header */
+    MISSING_VIDEO_CONFIG,
+    /** AAC frames before any AudioSpecificConfig */
+    MISSING_AUDIO_CONFIG,
+    /** First video frame isn't an IDR frame */
+    NON_IDR_START,
+    /** Frame flagged as a keyframe carries no IDR slice */
+    KEYFRAME_WITHOUT_IDR,
+    /** AAC frames carry ADTS headers, which don't belong in FLV */
+    ADTS_FRAMING,
+    /** Timestamp went backwards on a track */
+    TIMESTAMP_REGRESSION,
+    /** Timestamp jumped forward by more than the threshold on a track */
+    TIMESTAMP_JUMP,
+    /** Header or NAL unit framing that couldn't be parsed */
+    MALFORMED;
+
+    private final String label = name().toLowerCase().replace('_', '-');
+
+    public String getLabel() {
+        return label;
+    }
+
+}
@@ -0,0 +1,186 @@
+package com.example.inspect;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the few header fields the inspector tracks: H.264 sequence parameter sets, AAC AudioSpecificConfig and ADTS
+ * headers. Everything is read in place from the payload and written to a caller supplied array.
+ *
+ * @author Paul Gregoire
+ */
+final class CodecHeaders {
+
+    /** Indexes into the video parameters array */
+    static final int PROFILE = 0, LEVEL = 1, WIDTH = 2, HEIGHT = 3;
+
+    /** Indexes into the audio parameters array */
+    static final int OBJECT_TYPE = 0, SAMPLE_RATE = 1, CHANNELS = 2;
+
+    private static final int[] SAMPLE_RATES = { 96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350 };
+
+    private CodecHeaders() {
+    }
+
+    /**
+     * Parses a sequence parameter set up to the frame size and cropping.
+     *
+     * @param reader reader positioned after the NAL header byte
+     * @param out profile, level, width and height
+     * @return false if the SPS is truncated or malformed
+     */
+    static boolean parseSps(NalReader reader, int[] out) {
+        int profile = reader.readBits(8);
+        reader.skipBits(8);
+        int level = reader.readBits(8);
+        reader.readUE();
+        int chromaFormat = 1;
+        boolean separatePlanes = false;
+        if (profile == 100 || profile == 110 || profile == 122 || profile == 244 || profile == 44 || profile == 83 || profile == 86
+                || profile == 118 || profile == 128 || profile == 138 || profile == 139 || profile == 134 || profile == 135) {
+            chromaFormat = reader.readUE();
+            if (chromaFormat == 3) {
+                separatePlanes = reader.readBit() == 1;
+            }
+            reader.readUE();
+            reader.readUE();
+            reader.skipBits(1);
+            if (reader.readBit() == 1) {
+                for (int i = 0, lists = chromaFormat != 3 ? 8 : 12; i < lists; i++) {
+                    if (reader.readBit() == 1) {
+                        skipScalingList(reader, i < 6 ? 16 : 64);
+                    }
+                }
+            }
+        }
+        reader.readUE();
+        int pocType = reader.readUE();
+        if (pocType == 0) {
+            reader.readUE();
+        } else if (pocType == 1) {
+            reader.skipBits(1);
+            reader.readSE();
+            reader.readSE();
+            int cycle = reader.readUE();
+            if (cycle < 0 || cycle > 255) {
+                return false;
+            }
+            for (int i = 0; i < cycle; i++) {
+                reader.readSE();
+            }
+        }
+        reader.readUE();
+        reader.skipBits(1);
+        int widthInMbs = reader.readUE() + 1;
+        int heightInMapUnits = reader.readUE() + 1;
+        int frameMbsOnly = reader.readBit();
+        if (frameMbsOnly == 0) {
+            reader.skipBits(1);
+        }
+        reader.skipBits(1);
+        int width = widthInMbs * 16;
+        int height = (2 - frameMbsOnly) * heightInMapUnits * 16;
+        if (reader.readBit() == 1) {
+            int left = reader.readUE(), right = reader.readUE(), top = reader.readUE(), bottom = reader.readUE();
+            int chroma = separatePlanes ? 0 : chromaFormat;
+            int cropX = chroma == 0 || chroma == 3 ? 1 : 2;
+            int cropY = (chroma == 1 ? 2 : 1) * (2 - frameMbsOnly);
+            width -= cropX * (left + right);
+            height -= cropY * (top + bottom);
+        }
+        if (reader.isOverrun() || widthInMbs <= 0 || heightInMapUnits <= 0 || width <= 0 || height <= 0) {
+            return false;
+        }
+        out[PROFILE] = profile;
+        out[LEVEL] = level;
+        out[WIDTH] = width;
+        out[HEIGHT] = height;
+        return true;
+    }
+
+    private static void skipScalingList(NalReader reader, int size) {
+        int last = 8, next = 8;
+        for (int j = 0; j < size; j++) {
+            if (next != 0) {
+                next = (last + reader.readSE() + 256) % 256;
+            }
+            last = next == 0 ? last : next;
+        }
+    }
+
+    /**
+     * Parses the start of an AudioSpecificConfig.
+     *
+     * @param data payload
+     * @param offset first byte of the config
+     * @param end index after the last byte
+     * @param out object type, sample rate and channel configuration
+     * @return false if it is truncated or uses a reserved sampling index
+     */
+    static boolean parseAudioSpecificConfig(ByteBuffer data, int offset, int end, int[] out) {
+        if (end - offset < 2) {
+            return false;
+        }
+        // bit fields straddle bytes, read up to five bytes big endian
+        long bits = 0L;
+        int available = Math.min(5, end - offset);
+        for (int i = 0; i < 5; i++) {
+            bits = (bits << 8) | (i < available ? data.get(offset + i) & 0xff : 0);
+        }
+        int shift = 40;
+        int objectType = (int) (bits >>> (shift -= 5)) & 0x1f;
+        if (objectType == 31) {
+            objectType = 32 + ((int) (bits >>> (shift -= 6)) & 0x3f);
+        }
+        int index = (int) (bits >>> (shift -= 4)) & 0x0f;
+        int sampleRate;
+        if (index == 15) {
+            sampleRate = (int) (bits >>> (shift -= 24)) & 0xffffff;
+        } else if (index < SAMPLE_RATES.length) {
+            sampleRate = SAMPLE_RATES[index];
+        } else {
+            return false;
+        }
+        int bitsUsed = 40 - shift + 4;
+        if (bitsUsed > available * 8) {
+            return false;
+        }
+        out[OBJECT_TYPE] = objectType;
+        out[SAMPLE_RATE] = sampleRate;
+        out[CHANNELS] = (int) (bits >>> (shift - 4)) & 0x0f;
+        return true;
+    }
+
+    /**
+     * Whether an ADTS header starts at the offset.
+     *
+     * @param data payload
+     * @param offset offset
+     * @param end index after the last byte
+     * @return true for a sync word with layer 0
+     */
+    static boolean isAdts(ByteBuffer data, int offset, int end) {
+        return end - offset >= 7 && (data.get(offset) & 0xff) == 0xff && (data.get(offset + 1) & 0xf6) == 0xf0;
+    }
+
+    /**
+     * Parses the stream parameters of an ADTS header.
+     *
+     * @param data payload
+     * @param offset first byte of the header, see {@link #isAdts}
+     * @param out object type, sample rate and channel configuration
+     * @return false if the sampling index is reserved
+     */
+    static boolean parseAdts(ByteBuffer data, int offset, int[] out) {
+        int b2 = data.get(offset + 2) & 0xff;
+        int b3 = data.get(offset + 3) & 0xff;
+        int index = (b2 >> 2) & 0x0f;
+        if (index >= SAMPLE_RATES.length) {
+            return false;
+        }
+        out[OBJECT_TYPE] = (b2 >> 6) + 1;
+        out[SAMPLE_RATE] = SAMPLE_RATES[index];
+        out[CHANNELS] = ((b2 & 0x01) << 2) | (b3 >> 6);
+        return true;
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.example.inspect;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.red5.server.api.scope.IScope;
+
+import com.example.StreamKey;
+import com.example.config.PluginConfig;
+import com.example.pipeline.PacketProcessor;
+import com.example.pipeline.ProcessorFactory;
+
+/**
+ * Creates the <code>codec-inspector</code> pipeline stage and keeps the inspectors of running streams for reporting. Add
+ * the stage to the streams to inspect through the pipeline.* rules.
+ *
+ * @author Paul Gregoire
+ */
+public class CodecInspection implements ProcessorFactory {
+
+    public static final String NAME = "codec-inspector";
+
+    private final ConcurrentHashMap<StreamKey, BitstreamInspector> inspectors = new ConcurrentHashMap<>();
+
+    private volatile int timestampJumpMs;
+
+    public CodecInspection(PluginConfig config) {
+        setConfig(config);
+    }
+
+    /**
+     * Applies the inspect.* settings to running and new streams.
+     *
+     * @param config configuration
+     */
+    public void setConfig(PluginConfig config) {
+        timestampJumpMs = config.getInt("inspect.timestamp.jump.ms", 5000);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public PacketProcessor create(IScope scope, String streamName) {
+        return new BitstreamInspector(this);
+    }
+
+    void register(IScope scope, String streamName, BitstreamInspector inspector) {
+        inspectors.put(new StreamKey(scope, streamName), inspector);
+    }
+
+    void unregister(IScope scope, String streamName, BitstreamInspector inspector) {
+        inspectors.remove(new StreamKey(scope, streamName), inspector);
+    }
+
+    public BitstreamInspector get(IScope scope, String streamName) {
+        return inspectors.get(new StreamKey(scope, streamName));
+    }
+
+    int getTimestampJumpMs() {
+        return timestampJumpMs;
+    }
+
+    public int size() {
+        return inspectors.size();
+    }
+
+    /**
+     * Renders the codec state of every inspected stream as compact JSON.
+     *
+     * @param out destination
+     */
+    public void writeJson(StringBuilder out) {
+        out.append('[');
+        boolean first = true;
+        for (Map.Entry<StreamKey, BitstreamInspector> entry : inspectors.entrySet()) {
+            BitstreamInspector inspector = entry.getValue();
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append("{\"stream\":\"").append(escape(entry.getKey().toString())).append("\",\"video\":{\"codec\":").append(inspector.getVideoCodec())
+                    .append(",\"profile\":").append(inspector.getProfile()).append(",\"level\":").append(inspector.getLevel())
+                    .append(",\"width\":").append(inspector.getWidth()).append(",\"height\":").append(inspector.getHeight())
+                    .append(",\"gopFrames\":").append(inspector.getGopFrames()).append(",\"gopMs\":").append(inspector.getGopMs())
+                    .append("},\"audio\":{\"codec\":").append(inspector.getAudioCodec()).append(",\"objectType\":")
+                    .append(inspector.getAudioObjectType()).append(",\"sampleRate\":").append(inspector.getSampleRate())
+                    .append(",\"channels\":").append(inspector.getChannels()).append("},\"events\":{");
+            boolean firstType = true;
+            for (CodecEventType type : CodecEventType.values()) {
+                long count = inspector.getCount(type);
+                if (count > 0) {
+                    if (!firstType) {
+                        out.append(',');
+                    }
+                    firstType = false;
+                    out.append('"').append(type.getLabel()).append("\":").append(count);
+                }
+            }
+            out.append("}}");
+        }
+        out.append(']');
+    }
+
+    /**
+     * Renders the codec state in the Prometheus text format.
+     *
+     * @param out destination
+     */
+    public void writePrometheus(StringBuilder out) {
+        out.append("# TYPE codec_video_width gauge\n");
+        out.append("# TYPE codec_video_height gauge\n");
+        out.append("# TYPE codec_gop_frames gauge\n");
+        out.append("# TYPE codec_gop_ms gauge\n");
+        out.append("# TYPE codec_audio_sample_rate gauge\n");
+        out.append("# TYPE codec_events_total counter\n");
+        for (Map.Entry<StreamKey, BitstreamInspector> entry : inspectors.entrySet()) {
+            BitstreamInspector inspector = entry.getValue();
+            String stream = escape(entry.getKey().toString());
+            String labels = "{stream=\"" + stream + "\"} ";
+            out.append("codec_video_width").append(labels).append(inspector.getWidth()).append('\n');
+            out.append("codec_video_height").append(labels).append(inspector.getHeight()).append('\n');
+            out.append("codec_gop_frames").append(labels).append(inspector.getGopFrames()).append('\n');
+            out.append("codec_gop_ms").append(labels).append(inspector.getGopMs()).append('\n');
+            out.append("codec_audio_sample_rate").append(labels).append(inspector.getSampleRate()).append('\n');
+            for (CodecEventType type : CodecEventType.values()) {
+                out.append("codec_events_total{stream=\"").append(stream).append("\",type=\"").append(type.getLabel()).append("\"} ")
+                        .append(inspector.getCount(type)).append('\n');
+            }
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    @Override
+    public String toString() {
+        return "CodecInspection [streams=" + inspectors.size() + ", timestampJumpMs=" + timestampJumpMs + "]";
+    }
+
+}
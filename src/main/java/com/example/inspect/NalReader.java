@@ -0,0 +1,113 @@
+package com.example.inspect;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bit reader over a NAL unit in place, skipping emulation prevention bytes (<code>00 00 03</code>) as it goes. Reads
+ * past the end return zeros and set {@link #isOverrun()}, so a truncated header parses to garbage that the caller can
+ * reject rather than an exception. Reused across packets; nothing is allocated.
+ *
+ * @author Paul Gregoire
+ */
+final class NalReader {
+
+    private ByteBuffer data;
+
+    private int pos, end;
+
+    // current byte and the bits left in it
+    private int current, bitsLeft;
+
+    // zero bytes just read, for spotting emulation prevention
+    private int zeros;
+
+    private boolean overrun;
+
+    /**
+     * Points the reader at a NAL unit payload.
+     *
+     * @param data buffer
+     * @param offset first byte, after the NAL header
+     * @param end index after the last byte
+     * @return this reader
+     */
+    NalReader reset(ByteBuffer data, int offset, int end) {
+        this.data = data;
+        this.pos = offset;
+        this.end = end;
+        bitsLeft = 0;
+        zeros = 0;
+        overrun = false;
+        return this;
+    }
+
+    private boolean nextByte() {
+        if (pos >= end) {
+            overrun = true;
+            current = 0;
+            bitsLeft = 8;
+            return false;
+        }
+        int b = data.get(pos++) & 0xff;
+        if (zeros >= 2 && b == 3) {
+            zeros = 0;
+            return nextByte();
+        }
+        zeros = b == 0 ? zeros + 1 : 0;
+        current = b;
+        bitsLeft = 8;
+        return true;
+    }
+
+    int readBit() {
+        if (bitsLeft == 0) {
+            nextByte();
+        }
+        return (current >> --bitsLeft) & 1;
+    }
+
+    int readBits(int n) {
+        int value = 0;
+        for (int i = 0; i < n; i++) {
+            value = (value << 1) | readBit();
+        }
+        return value;
+    }
+
+    void skipBits(int n) {
+        for (int i = 0; i < n; i++) {
+            readBit();
+        }
+    }
+
+    /**
+     * Reads an unsigned Exp-Golomb code.
+     *
+     * @return value, or -1 if it doesn't fit in an int or runs past the end
+     */
+    int readUE() {
+        int leadingZeros = 0;
+        while (readBit() == 0) {
+            if (++leadingZeros > 31 || overrun) {
+                overrun = true;
+                return -1;
+            }
+        }
+        return leadingZeros == 0 ? 0 : (int) ((1L << leadingZeros) - 1 + readBits(leadingZeros));
+    }
+
+    /**
+     * Reads a signed Exp-Golomb code.
+     *
+     * @return value
+     */
+    int readSE() {
+        int code = readUE();
+        return (code & 1) != 0 ? (code + 1) >> 1 : -(code >> 1);
+    }
+
+    boolean isOverrun() {
+        return overrun;
+    }
+
+}
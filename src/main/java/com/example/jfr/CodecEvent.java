@@ -0,0 +1,31 @@
+package com.example.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Codec parameter change or bitstream anomaly found by the inspector stage.
+ *
+ * @author Paul Gregoire
+ */
+@Name("com.example.Codec")
+@Label("Codec")
+@Description("Codec parameter change or bitstream anomaly on a stream")
+public class CodecEvent extends StreamEvent {
+
+    @Label("Type")
+    public String type;
+
+    @Label("Track")
+    public String track;
+
+    @Label("Timestamp")
+    @Description("Stream timestamp of the packet in milliseconds")
+    public int timestamp;
+
+    @Label("Detail")
+    @Description("New parameters, or the timestamp delta for timestamp anomalies")
+    public String detail;
+
+}
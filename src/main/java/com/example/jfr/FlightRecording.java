@@ -0,0 +1,196 @@
+package com.example.jfr;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.config.PluginConfig;
+import com.example.metrics.IngestMetrics;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+/**
+ * Starts and dumps a bounded flight recording with the plugin's events turned on, on top of the JDK settings named by
+ * <code>jfr.settings</code> (e.g. default or profile, empty for the plugin's events only). Duration and size are capped by
+ * <code>jfr.max.duration.ms</code> and <code>jfr.max.size.bytes</code> so a forgotten recording can't fill the disk. Only
+ * one recording is kept at a time; it stays available for dumping after its duration until it is closed or replaced.
+ * Also registers the periodic {@link QueueDepthEvent} hook, which only runs while a recording has it enabled.
+ *
+ * @author Paul Gregoire
+ */
+public class FlightRecording {
+
+    private static Logger log = LoggerFactory.getLogger(FlightRecording.class);
+
+    private static final List<Class<? extends StreamEvent>> EVENTS = List.of(PublishAdmissionEvent.class, StreamAttachEvent.class,
+            PacketBatchEvent.class, QueueDepthEvent.class, StreamDrainEvent.class, StreamTerminationEvent.class, CodecEvent.class);
+
+    // one in this many processed batches is recorded, read on the processing workers
+    private static volatile int batchSampleRate = 64;
+
+    private final Runnable queueDepthHook;
+
+    private volatile String settings;
+
+    private volatile long maxDurationMs, maxSizeBytes;
+
+    private Recording recording;
+
+    public FlightRecording(IngestMetrics metrics, PluginConfig config) {
+        setConfig(config);
+        queueDepthHook = () -> metrics.forEach(streamMetrics -> {
+            QueueDepthEvent event = new QueueDepthEvent();
+            if (event.isEnabled()) {
+                event.setStream(streamMetrics.getKey().getScope(), streamMetrics.getKey().getName());
+                event.depth = streamMetrics.getQueueDepth();
+                event.capacity = streamMetrics.getQueueCapacity();
+                event.dropped = streamMetrics.getQueueDrops();
+                event.commit();
+            }
+        });
+        FlightRecorder.addPeriodicEvent(QueueDepthEvent.class, queueDepthHook);
+    }
+
+    /**
+     * Applies the jfr.* settings; limits apply to recordings started afterwards.
+     *
+     * @param config configuration
+     */
+    public void setConfig(PluginConfig config) {
+        settings = config.getString("jfr.settings", "");
+        maxDurationMs = config.getLong("jfr.max.duration.ms", 300000L);
+        maxSizeBytes = config.getLong("jfr.max.size.bytes", 64L * 1024L * 1024L);
+        batchSampleRate = Math.max(1, config.getInt("jfr.batch.sample.rate", 64));
+    }
+
+    /**
+     * Starts a recording, replacing a previous one that has finished.
+     *
+     * @param durationMs how long to record, capped at the configured maximum; 0 or less for the maximum
+     * @param sizeBytes size limit, capped at the configured maximum; 0 or less for the maximum
+     * @return the recording
+     * @throws IllegalStateException if a recording is already running
+     * @throws IOException if the JDK settings can't be read
+     */
+    public synchronized Recording start(long durationMs, long sizeBytes) throws IOException {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            throw new IllegalStateException("Recording already running");
+        }
+        close();
+        Recording r;
+        String name = settings;
+        if (name != null && !name.isBlank()) {
+            try {
+                name = name.trim();
+                r = new Recording(name.endsWith(".jfc") ? Configuration.create(Path.of(name)) : Configuration.getConfiguration(name));
+            } catch (ParseException e) {
+                throw new IOException("Invalid JFR settings: " + name, e);
+            }
+        } else {
+            r = new Recording();
+        }
+        r.setName("red5pro-plugin");
+        for (Class<? extends StreamEvent> event : EVENTS) {
+            r.enable(event);
+        }
+        r.setDuration(Duration.ofMillis(durationMs > 0 ? Math.min(durationMs, maxDurationMs) : maxDurationMs));
+        r.setMaxSize(sizeBytes > 0 ? Math.min(sizeBytes, maxSizeBytes) : maxSizeBytes);
+        r.setToDisk(true);
+        r.start();
+        recording = r;
+        log.info("Flight recording started - settings: {} duration: {} max size: {}", name, r.getDuration(), r.getMaxSize());
+        return r;
+    }
+
+    /**
+     * Stops the current recording, keeping it for dumping.
+     *
+     * @return false if nothing was running
+     */
+    public synchronized boolean stop() {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            return recording.stop();
+        }
+        return false;
+    }
+
+    /**
+     * Writes what has been recorded so far to a file; the recording keeps running.
+     *
+     * @param destination file to write
+     * @return false if there is no recording
+     * @throws IOException if writing fails
+     */
+    public synchronized boolean dump(Path destination) throws IOException {
+        if (recording == null || recording.getState() == RecordingState.NEW || recording.getState() == RecordingState.CLOSED) {
+            return false;
+        }
+        recording.dump(destination);
+        return true;
+    }
+
+    /**
+     * Stops and discards the current recording.
+     */
+    public synchronized void close() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+
+    /**
+     * Closes the recording and unregisters the periodic hook.
+     */
+    public void shutdown() {
+        close();
+        FlightRecorder.removePeriodicEvent(queueDepthHook);
+    }
+
+    public synchronized RecordingState getState() {
+        return recording != null ? recording.getState() : null;
+    }
+
+    /**
+     * Renders the current recording as compact JSON.
+     *
+     * @param out destination
+     */
+    public synchronized void writeJson(StringBuilder out) {
+        out.append("{\"state\":");
+        if (recording == null) {
+            out.append("null");
+        } else {
+            out.append('"').append(recording.getState()).append('"');
+            if (recording.getStartTime() != null) {
+                out.append(",\"startTime\":\"").append(recording.getStartTime()).append('"');
+            }
+            out.append(",\"durationMs\":").append(recording.getDuration() != null ? recording.getDuration().toMillis() : 0L)
+                    .append(",\"maxSizeBytes\":").append(recording.getMaxSize()).append(",\"sizeBytes\":").append(recording.getSize());
+        }
+        out.append(",\"maxDurationMs\":").append(maxDurationMs).append(",\"batchSampleRate\":").append(batchSampleRate).append('}');
+    }
+
+    /**
+     * Whether the processing worker should record this batch.
+     *
+     * @param batches batches processed since the last recorded one, including this one
+     * @return true to record
+     */
+    public static boolean sampleBatch(int batches) {
+        return batches >= batchSampleRate;
+    }
+
+    public static int getBatchSampleRate() {
+        return batchSampleRate;
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.example.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A batch of packets drained from a stream's queue and run through its pipeline; sampled, see
+ * {@link FlightRecording#getBatchSampleRate()}.
+ *
+ * @author Paul Gregoire
+ */
+@Name("com.example.PacketBatch")
+@Label("Packet Batch")
+@Description("Sampled batch of queued packets processed by a worker")
+public class PacketBatchEvent extends StreamEvent {
+
+    @Label("Packets")
+    public int packets;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Queue Depth")
+    @Description("Packets left in the queue after the batch")
+    public int queueDepth;
+
+}
@@ -0,0 +1,26 @@
+package com.example.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A publish request passing through admission control.
+ *
+ * @author Paul Gregoire
+ */
+@Name("com.example.PublishAdmission")
+@Label("Publish Admission")
+@Description("Admission decision for a publish request")
+public class PublishAdmissionEvent extends StreamEvent {
+
+    @Label("Client")
+    public String client;
+
+    @Label("Decision")
+    public String decision;
+
+    @Label("Admitted")
+    public boolean admitted;
+
+}
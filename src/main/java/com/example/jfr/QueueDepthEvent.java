@@ -0,0 +1,29 @@
+package com.example.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+
+/**
+ * Periodic sample of a stream's packet queue.
+ *
+ * @author Paul Gregoire
+ */
+@Name("com.example.QueueDepth")
+@Label("Queue Depth")
+@Description("Packets waiting in a stream's queue")
+@Period("1 s")
+public class QueueDepthEvent extends StreamEvent {
+
+    @Label("Depth")
+    public int depth;
+
+    @Label("Capacity")
+    public int capacity;
+
+    @Label("Dropped")
+    @Description("Packets dropped or evicted by the overflow policy so far")
+    public long dropped;
+
+}
@@ -0,0 +1,26 @@
+package com.example.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * One attempt at attaching the plugin to a ProStream that was requested for publishing.
+ *
+ * @author Paul Gregoire
+ */
+@Name("com.example.StreamAttach")
+@Label("Stream Attach")
+@Description("Attempt to attach a listener to a new ProStream")
+public class StreamAttachEvent extends StreamEvent {
+
+    @Label("Attached")
+    @Description("Whether the stream existed and the listener was attached")
+    public boolean attached;
+
+    @Label("Since Request")
+    @Timespan(Timespan.MILLISECONDS)
+    public long sinceRequestMs;
+
+}
@@ -0,0 +1,25 @@
+package com.example.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Processing of the packets still queued when a stream ended, from the termination to the listener stopping.
+ *
+ * @author Paul Gregoire
+ */
+@Name("com.example.StreamDrain")
+@Label("Stream Drain")
+@Description("Drain of a stream's queue after it ended")
+public class StreamDrainEvent extends StreamEvent {
+
+    @Label("Queued")
+    @Description("Packets queued when the stream ended")
+    public int queued;
+
+    @Label("Flushed")
+    @Description("Whether every queued packet was processed before the deadline")
+    public boolean flushed;
+
+}
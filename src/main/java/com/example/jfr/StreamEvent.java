@@ -0,0 +1,40 @@
+package com.example.jfr;
+
+import org.red5.server.api.scope.IScope;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base of the plugin's flight recorder events, all of which identify the stream they belong to. Every event is disabled
+ * unless a recording turns it on, see {@link FlightRecording}; callers construct the event and check
+ * {@link #isEnabled()} or {@link #shouldCommit()} before filling it in, which the JIT reduces to nothing while disabled.
+ *
+ * @author Paul Gregoire
+ */
+@Category({ "Red5 Pro", "Plugin" })
+@Enabled(false)
+@StackTrace(false)
+public abstract class StreamEvent extends Event {
+
+    @Label("Scope")
+    String scope;
+
+    @Label("Stream")
+    String stream;
+
+    /**
+     * Sets the stream fields.
+     *
+     * @param scope scope, may be null
+     * @param name stream name
+     */
+    public void setStream(IScope scope, String name) {
+        this.scope = scope != null ? scope.getContextPath() : null;
+        this.stream = name;
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.example.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A ProStream ending, as seen by its listener's termination callback.
+ *
+ * @author Paul Gregoire
+ */
+@Name("com.example.StreamTermination")
+@Label("Stream Termination")
+@Description("ProStream termination callback")
+public class StreamTerminationEvent extends StreamEvent {
+
+    @Label("Queued")
+    @Description("Packets still queued when the stream ended")
+    public int queued;
+
+    @Label("Dropped")
+    @Description("Packets dropped or evicted by the overflow policy over the stream's life")
+    public long dropped;
+
+}
@@ -1,9 +1,10 @@
 package com.example.listener;
 
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedTransferQueue;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.red5.io.flv.meta.MetaData;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.api.stream.IBroadcastStream;
 import org.red5.server.api.stream.IStreamListener;
@@ -14,15 +15,34 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.example.MyRed5ProPlugin;
+import com.example.buffer.DirectBufferPool;
+import com.example.buffer.OverflowPolicy;
+import com.example.buffer.PacketFlags;
+import com.example.buffer.PacketRing;
+import com.example.buffer.PacketSlot;
+import com.example.buffer.PacketView;
+import com.example.diag.PacketLog;
+import com.example.dump.DumpSettings;
+import com.example.dump.TrackDumpWriter;
+import com.example.jfr.FlightRecording;
+import com.example.jfr.PacketBatchEvent;
+import com.example.jfr.StreamDrainEvent;
+import com.example.jfr.StreamTerminationEvent;
+import com.example.metrics.StreamMetrics;
+import com.example.pipeline.PacketBatch;
+import com.example.pipeline.PacketPipeline;
+import com.example.preview.StreamPreview;
+import com.example.processing.PacketScheduler;
+import com.example.processing.WorkSource;
+import com.example.registry.PublisherInfo;
+import com.example.timer.HashedTimerWheel;
+import com.example.timer.HashedTimerWheel.Timeout;
 import com.red5pro.cluster.streams.Provision;
-import com.red5pro.io.GenericFileWriter;
-import com.red5pro.media.MediaFile;
 import com.red5pro.override.IProStream;
 import com.red5pro.override.ProStream;
 import com.red5pro.override.api.ProStreamTerminationEventListener;
 import com.red5pro.restreamer.plugin.RestreamerPlugin;
 import com.red5pro.server.stream.ProStreamService;
-import com.red5pro.server.stream.Red5ProIO;
 import com.red5pro.util.ScopeUtil;
 
 /**
@@ -30,22 +50,77 @@ import com.red5pro.util.ScopeUtil;
  *
  * @author Paul Gregoire
  */
-public class MyProStreamListener implements IStreamListener {
+public class MyProStreamListener implements IStreamListener, WorkSource {
 
     private Logger logger = LoggerFactory.getLogger(getClass());
 
-    // this is used to queue up packets that are received from the ProStream
-    private LinkedTransferQueue<IStreamPacket> packetQueue = new LinkedTransferQueue<>();
+    public static final int DEFAULT_QUEUE_CAPACITY = 512;
 
-    // a/v file dumpers for debugging
-    private GenericFileWriter audioDumpWriter, videoDumpWriter;
+    public static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.DROP_OLDEST_UNLESS_KEYFRAME;
 
-    // worker future for processing the packet queue
-    private Future<?> queueProcessorFuture;
+    public static final long DEFAULT_DRAIN_TIMEOUT_MS = 5000L;
+
+    // bounded ring of packets received from the ProStream, payloads live in pooled direct buffers
+    private PacketRing packetQueue;
+
+    // a/v file dumpers for debugging, may be closed by stop() on another thread while packets arrive
+    private volatile TrackDumpWriter audioDumpWriter, videoDumpWriter;
+
+    // registration with the shared packet scheduler which processes the queue
+    private PacketScheduler.Registration schedulerRegistration;
+
+    // scheduler to register with, the plugin's shared one when not set
+    private PacketScheduler packetScheduler;
+
+    // processing stages run over each drained batch, null when none are configured
+    private volatile PacketPipeline pipeline;
+
+    // reused for every drain, processing worker only
+    private PacketBatch batch;
+
+    // batches processed since the last one recorded as a flight recorder event, processing worker only
+    private int unsampledBatches;
+
+    // how long queued packets may take to be processed once the stream has ended
+    private volatile long drainTimeoutMs = DEFAULT_DRAIN_TIMEOUT_MS;
+
+    // set once the stream has ended, the worker completes the drain when it empties the queue
+    private volatile boolean ending;
+
+    // true when the queue was flushed, false when the deadline passed or the listener was stopped first
+    private final CompletableFuture<Boolean> drained = new CompletableFuture<>();
+
+    // drops what is left of the queue if the worker hasn't flushed it in time
+    private volatile Timeout drainDeadline;
+
+    private final AtomicBoolean stopped = new AtomicBoolean();
 
     // time for the latest incoming data
     private volatile long lastReceiveTime;
 
+    // time for the latest audio and video data, 0 until the track is seen
+    private volatile long lastAudioReceiveTime, lastVideoReceiveTime;
+
+    // stream we are attached to when started directly
+    private ProStream proStream;
+
+    // packet consumers, copy-on-write so delivery iterates without locking or allocating
+    private volatile PacketConsumer[] packetConsumers = new PacketConsumer[0];
+
+    private final Object consumerLock = new Object();
+
+    // ingest telemetry
+    private StreamMetrics streamMetrics;
+
+    // sampled packet logging while the stream is in diagnostic mode, null otherwise
+    private volatile PacketLog packetLog;
+
+    // keyframe preview tap, null when previews are disabled
+    private volatile StreamPreview preview;
+
+    // registry entry updated as packets arrive
+    private PublisherInfo publisherInfo;
+
     // provision reference
     private Provision provision;
 
@@ -56,6 +131,12 @@ public class MyProStreamListener implements IStreamListener {
     private IScope scope;
 
     public MyProStreamListener(Provision provision, boolean dumpAV) {
+        this(provision, dumpAV ? DumpSettings.DEFAULT : null, DEFAULT_QUEUE_CAPACITY, DEFAULT_OVERFLOW_POLICY);
+    }
+
+    public MyProStreamListener(Provision provision, DumpSettings dumpSettings, int queueCapacity, OverflowPolicy overflowPolicy) {
+        // create the packet queue
+        packetQueue = new PacketRing(queueCapacity, overflowPolicy, DirectBufferPool.shared());
         // store the provision
         this.provision = provision;
         // get context path or default to live
@@ -65,16 +146,21 @@ public class MyProStreamListener implements IStreamListener {
         scope = ScopeUtil.resolveScope(RestreamerPlugin.getGlobalScope(), contextPath);
         // stream name for file naming etc
         streamName = provision.getStreamName();
-        // set up a/v dumpers if needed
-        if (dumpAV) {
-            // get a temp dir
-            String tempDir = System.getProperty("java.io.tmpdir", "/tmp");
-            audioDumpWriter = new GenericFileWriter(MediaFile.TYPE_AAC, tempDir, streamName + "_audio_dump");
-            videoDumpWriter = new GenericFileWriter(MediaFile.TYPE_H264, tempDir, streamName + "_video_dump");
+        // set up a/v dumpers if needed, one writer per track
+        if (dumpSettings != null) {
+            audioDumpWriter = new TrackDumpWriter(dumpSettings, streamName + "_audio_dump", "aac", false);
+            videoDumpWriter = new TrackDumpWriter(dumpSettings, streamName + "_video_dump", "h264", true);
         }
     }
 
     public MyProStreamListener(IScope scope, String streamName, boolean dumpAV) {
+        this(scope, streamName, dumpAV ? DumpSettings.DEFAULT : null, DEFAULT_QUEUE_CAPACITY, DEFAULT_OVERFLOW_POLICY);
+    }
+
+    public MyProStreamListener(IScope scope, String streamName, DumpSettings dumpSettings, int queueCapacity,
+            OverflowPolicy overflowPolicy) {
+        // create the packet queue
+        packetQueue = new PacketRing(queueCapacity, overflowPolicy, DirectBufferPool.shared());
         // get context path or default to live
         String contextPath = scope.getContextPath();
         logger.debug("Context path: {} stream name: {}", contextPath, streamName);
@@ -82,66 +168,50 @@ public class MyProStreamListener implements IStreamListener {
         this.scope = scope;
         // stream name for file naming etc
         this.streamName = streamName;
-        // set up a/v dumpers if needed
-        if (dumpAV) {
-            // get a temp dir
-            String tempDir = System.getProperty("java.io.tmpdir", "/tmp");
-            audioDumpWriter = new GenericFileWriter(MediaFile.TYPE_AAC, tempDir, streamName + "_audio_dump");
-            videoDumpWriter = new GenericFileWriter(MediaFile.TYPE_H264, tempDir, streamName + "_video_dump");
+        // set up a/v dumpers if needed, one writer per track
+        if (dumpSettings != null) {
+            audioDumpWriter = new TrackDumpWriter(dumpSettings, streamName + "_audio_dump", "aac", false);
+            videoDumpWriter = new TrackDumpWriter(dumpSettings, streamName + "_video_dump", "h264", true);
         }
     }
 
     public void start() {
+        // get the prostream, for a provision its source stream
+        start(provision != null ? RestreamerPlugin.findStream(provision) : ProStreamService.getProStream(scope, streamName));
+    }
+
+    public void start(ProStream proStream) {
         logger.debug("Starting MyProStreamListener");
-        // get the prostream
-        ProStream proStream = ProStreamService.getProStream(scope, streamName);
         if (proStream != null) {
+            this.proStream = proStream;
             // add listener to the pro stream
             proStream.addStreamListener(this);
-            // create a queue processor
-            queueProcessorFuture = MyRed5ProPlugin.submit(() -> {
-                logger.debug("Starting packet queue processor for stream: {}", streamName);
-                while (true) {
-                    try {
-                        // take packet from the queue, blocking
-                        IStreamPacket packet = packetQueue.take();
-                        if (packet != null) {
-                            // process the packet
-                            logger.trace("Processing packet from queue: {}", packet);
-                        }
-                    } catch (InterruptedException e) {
-                        logger.debug("Packet queue processor interrupted", e);
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                }
-            });
+            // register with the shared scheduler which drains the queue in batches
+            PacketScheduler scheduler = packetScheduler != null ? packetScheduler : MyRed5ProPlugin.packetScheduler();
+            if (scheduler != null) {
+                logger.debug("Registering packet queue processor for stream: {}", streamName);
+                schedulerRegistration = scheduler.register(this);
+            }
             // add termination listener to handle cleanup
             proStream.addTerminationEventListener(new ProStreamTerminationEventListener() {
 
                 @Override
                 public void streamStopped(IProStream stream) {
                     logger.debug("ProStream termination event received");
+                    StreamTerminationEvent event = new StreamTerminationEvent();
+                    if (event.shouldCommit()) {
+                        PacketRing queue = packetQueue;
+                        event.setStream(scope, streamName);
+                        event.queued = queue != null ? queue.size() : 0;
+                        event.dropped = queue != null ? queue.getDroppedCount() + queue.getEvictedCount() : 0L;
+                        event.commit();
+                    }
                     // remove our listener
                     stream.removeStreamListener(MyProStreamListener.this);
                     // remove termination listener
                     ((ProStream) stream).removeTerminationEventListener(this);
-                    // check packet queue before stopping
-                    if (packetQueue != null && !packetQueue.isEmpty()) {
-                        // wait for packets to be processed, rough assumption using video timing
-                        try {
-                            long waitTime = Math.min(10000L, packetQueue.size() * 16L);
-                            logger.debug("Waiting {}ms for queued packets to be processed...", waitTime);
-                            Thread.sleep(waitTime);
-                        } catch (InterruptedException e) {
-                            logger.debug("Interrupted while waiting for queued packets to be processed", e);
-                        }
-                    }
-                    try {
-                        stop();
-                    } catch (Exception e) {
-                        logger.warn("Exception stopping", e);
-                    }
+                    // let the worker process what is queued, the listener stops once it has or the deadline passes
+                    finish(drainTimeoutMs);
                 }
 
             });
@@ -149,89 +219,412 @@ public class MyProStreamListener implements IStreamListener {
 
     }
 
+    /**
+     * Ends the stream without blocking: no more packets are expected, the packets still queued are processed by the
+     * stream's worker and the listener stops once the queue is empty or the timeout passes, whichever comes first. Packets
+     * left at the deadline are dropped and their buffers returned to the pool.
+     *
+     * @param timeoutMs maximum time to wait for the queue to be processed
+     * @return completes with true when the queue was flushed, false when packets were dropped
+     */
+    public CompletableFuture<Boolean> finish(long timeoutMs) {
+        if (!ending) {
+            ending = true;
+            StreamDrainEvent event = new StreamDrainEvent();
+            event.begin();
+            if (event.isEnabled()) {
+                event.setStream(scope, streamName);
+                event.queued = packetQueue != null ? packetQueue.size() : 0;
+            }
+            drained.whenComplete((flushed, t) -> {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.flushed = flushed;
+                    event.commit();
+                }
+                Timeout deadline = drainDeadline;
+                if (deadline != null) {
+                    deadline.cancel();
+                }
+                if (!flushed) {
+                    logger.debug("Queue not drained in time for stream: {}, dropping the rest", streamName);
+                }
+                // off the worker and timer threads, closing the dumps may touch the disk
+                if (!stopped.get() && MyRed5ProPlugin.submit(this::stopQuietly) == null) {
+                    stopQuietly();
+                }
+            });
+            PacketRing queue = packetQueue;
+            PacketScheduler.Registration registration = schedulerRegistration;
+            if (queue == null || registration == null || registration.isCancelled()) {
+                drained.complete(queue == null || queue.isEmpty());
+            } else {
+                // an empty queue doesn't mean flushed, the worker may still be processing its last batch; only drain()
+                // completes the flush, once it has released everything it took
+                logger.debug("Draining {} queued packets within {}ms", queue.size(), timeoutMs);
+                HashedTimerWheel wheel = MyRed5ProPlugin.timerWheel();
+                if (wheel != null) {
+                    drainDeadline = wheel.schedule(timeout -> drained.complete(Boolean.FALSE), timeoutMs);
+                } else {
+                    drained.completeOnTimeout(Boolean.FALSE, timeoutMs, TimeUnit.MILLISECONDS);
+                }
+                // the worker may have emptied the queue before it saw the flag, hasWork() keeps it coming back until then
+                registration.signal();
+                if (drained.isDone() && drainDeadline != null) {
+                    drainDeadline.cancel();
+                }
+            }
+        }
+        return drained;
+    }
+
+    private void stopQuietly() {
+        try {
+            stop();
+        } catch (Exception e) {
+            logger.warn("Exception stopping", e);
+        }
+    }
+
     public void stop() {
+        if (!stopped.compareAndSet(false, true)) {
+            return;
+        }
         logger.debug("Stopping MyProStreamListener");
         // remove our listener from the pro stream
-        ProStream sourceStream = RestreamerPlugin.findStream(provision);
-        if (sourceStream != null) {
-            logger.trace("Stop forwarding guid: {} stream {}", provision.getGuid(), provision.getStreamName());
-            sourceStream.removeStreamListener(this);
-        }
-        // clean up resources
-        if (audioDumpWriter != null) {
-            audioDumpWriter.close();
+        if (provision != null) {
+            ProStream sourceStream = RestreamerPlugin.findStream(provision);
+            if (sourceStream != null) {
+                logger.trace("Stop forwarding guid: {} stream {}", provision.getGuid(), provision.getStreamName());
+                sourceStream.removeStreamListener(this);
+            }
+        } else if (proStream != null) {
+            proStream.removeStreamListener(this);
+        }
+        // clean up resources, a packet still being delivered is rejected by the closed writer
+        TrackDumpWriter audioWriter = audioDumpWriter;
+        if (audioWriter != null) {
             audioDumpWriter = null;
+            audioWriter.close();
         }
-        if (videoDumpWriter != null) {
-            videoDumpWriter.close();
+        TrackDumpWriter videoWriter = videoDumpWriter;
+        if (videoWriter != null) {
             videoDumpWriter = null;
+            videoWriter.close();
         }
         // cancel the queue processor
-        if (queueProcessorFuture != null) {
-            queueProcessorFuture.cancel(true);
-            queueProcessorFuture = null;
-        }
-        // clear the packet queue
-        if (packetQueue != null) {
-            logger.debug("Caller clearing packet queue");
-            packetQueue.clear();
+        if (schedulerRegistration != null) {
+            schedulerRegistration.cancel();
+            schedulerRegistration = null;
+        }
+        // no more batches after this
+        PacketPipeline current = pipeline;
+        if (current != null) {
+            pipeline = null;
+            current.close();
+        }
+        // clear the packet queue, returning anything left in it to the pool
+        PacketRing queue = packetQueue;
+        if (queue != null) {
             packetQueue = null;
+            logger.debug("Caller clearing packet queue - unprocessed: {} dropped: {} evicted: {}", queue.size(), queue.getDroppedCount(),
+                    queue.getEvictedCount());
+            queue.close();
         }
+        // a drain still in progress ends here
+        drained.complete(Boolean.FALSE);
     }
 
     @Override
     public void packetReceived(IBroadcastStream stream, IStreamPacket packet) {
-        // this is called when a packet is received from the ProStream
-        logger.trace("Packet received - packet: {}", packet);
+        // this is called when a packet is received from the ProStream, per packet logging only through the diagnostic mode
         if (packet != null) {
             // update the last receive time
-            lastReceiveTime = System.currentTimeMillis();
+            long now = System.currentTimeMillis();
+            lastReceiveTime = now;
+            if (packet instanceof VideoData) {
+                lastVideoReceiveTime = now;
+            } else if (packet instanceof AudioData) {
+                lastAudioReceiveTime = now;
+            }
+            int size = packet.getData() != null ? packet.getData().remaining() : 0;
+            if (publisherInfo != null) {
+                publisherInfo.onPacket(size, now);
+            }
             // type of packet
             byte dataType = packet.getDataType();
-            logger.debug("Packet data type: {}", dataType);
+            // classify once for the queue, metrics and consumers
+            int flags = PacketFlags.of(dataType, packet.getData());
+            StreamMetrics metrics = streamMetrics;
+            if (metrics != null) {
+                metrics.onPacket(dataType, flags, packet.getTimestamp(), size, System.nanoTime());
+            }
             // add the packet to the queue
-            if (packetQueue != null) {
+            PacketRing queue = packetQueue;
+            if (queue != null) {
                 try {
-                    // copy the packet to avoid issues with the ProStream or other consumers
-                    final IStreamPacket copy = Red5ProIO.copy(packet);
-                    // offer to the queue, non-blocking
-                    packetQueue.offer(copy);
-                    // dump a/v if needed
-                    if (audioDumpWriter != null && packet instanceof AudioData) {
-                        logger.debug("Audio packet received: {}", packet);
-                        Thread.ofVirtual().start(() -> {
-                            try {
-                                audioDumpWriter.write(copy.getData().array());
-                            } catch (Exception e) {
-                                logger.warn("Exception writing audio packet to dump", e);
-                            }
-                        });
-                    } else if (videoDumpWriter != null && packet instanceof VideoData) {
-                        logger.debug("Video packet received: {}", packet);
-                        Thread.ofVirtual().start(() -> {
-                            try {
-                                videoDumpWriter.write(copy.getData().array());
-                            } catch (Exception e) {
-                                logger.warn("Exception writing video packet to dump", e);
-                            }
-                        });
-                    } else if (packet instanceof MetaData) {
-                        // handle metadata data if needed
-                        logger.debug("Metadata packet received: {}", packet);
+                    // copy the payload into a pooled buffer, what happens when full depends on the overflow policy
+                    boolean queued = queue.offer(packet, flags);
+                    if (queued) {
+                        // let our worker know there's something to do
+                        PacketScheduler.Registration registration = schedulerRegistration;
+                        if (registration != null) {
+                            registration.signal();
+                        }
+                    }
+                    PacketLog diagnostics = packetLog;
+                    if (diagnostics != null) {
+                        diagnostics.onPacket(dataType, packet.getTimestamp(), size, flags, queue.size(), !queued);
                     }
+                    // fan out to the dumpers and consumers
+                    fanOut(packet, dataType, flags);
                 } catch (Exception e) {
-                    logger.warn("Exception copying packet", e);
+                    logger.warn("Exception queueing packet", e);
+                }
+            }
+        }
+    }
+
+    // one shared view for all read-only consumers, a private copy for each consumer that writes
+    private void fanOut(IStreamPacket packet, byte dataType, int flags) {
+        PacketConsumer[] consumers = packetConsumers;
+        // read once, stop() may clear them at any point
+        TrackDumpWriter audioWriter = audioDumpWriter, videoWriter = videoDumpWriter;
+        if (consumers.length == 0 && audioWriter == null && videoWriter == null) {
+            return;
+        }
+        PacketView view = PacketView.wrap(packet, flags);
+        try {
+            // dump a/v if needed, payloads are staged in arrival order and written in batches
+            if (audioWriter != null && packet instanceof AudioData) {
+                audioWriter.append(view.getTimestamp(), false, view.getBuffer(), view.getOffset(), view.getLength());
+            } else if (videoWriter != null && packet instanceof VideoData) {
+                videoWriter.append(view.getTimestamp(), view.isKeyframe(), view.getBuffer(), view.getOffset(), view.getLength());
+            }
+            for (PacketConsumer consumer : consumers) {
+                if (consumer.isReadOnly()) {
+                    consumer.onPacket(view);
+                } else {
+                    PacketView copy = PacketView.copyOf(packet, flags);
+                    try {
+                        consumer.onPacket(copy);
+                    } finally {
+                        copy.release();
+                    }
                 }
             }
+        } finally {
+            view.release();
+        }
+    }
+
+    /**
+     * Adds a consumer to receive every packet from this stream.
+     *
+     * @param consumer packet consumer
+     */
+    public void addPacketConsumer(PacketConsumer consumer) {
+        synchronized (consumerLock) {
+            PacketConsumer[] current = packetConsumers;
+            PacketConsumer[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = consumer;
+            packetConsumers = updated;
+        }
+    }
+
+    public void removePacketConsumer(PacketConsumer consumer) {
+        synchronized (consumerLock) {
+            PacketConsumer[] current = packetConsumers;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == consumer) {
+                    PacketConsumer[] updated = new PacketConsumer[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    packetConsumers = updated;
+                    return;
+                }
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int drain(int maxBatch) {
+        PacketRing queue = packetQueue;
+        if (queue == null) {
+            return 0;
         }
+        StreamMetrics metrics = streamMetrics;
+        long now = metrics != null ? System.nanoTime() : 0L;
+        PacketBatch batch = this.batch;
+        if (batch == null || batch.capacity() < maxBatch) {
+            batch = this.batch = new PacketBatch(maxBatch);
+        }
+        PacketSlot packet;
+        while (batch.size() < maxBatch && (packet = queue.poll()) != null) {
+            if (metrics != null) {
+                metrics.onProcessed(packet.getReceiveNanos(), now);
+            }
+            batch.add(packet);
+        }
+        int processed = batch.size();
+        if (processed > 0) {
+            // sampled, a disabled event costs nothing once compiled
+            PacketBatchEvent event = new PacketBatchEvent();
+            boolean traced = event.isEnabled() && FlightRecording.sampleBatch(++unsampledBatches);
+            if (traced) {
+                unsampledBatches = 0;
+                for (int i = 0; i < processed; i++) {
+                    event.bytes += batch.get(i).getSize();
+                }
+                event.begin();
+            }
+            try {
+                PacketPipeline current = pipeline;
+                if (current != null) {
+                    current.process(batch);
+                } else {
+                    logger.trace("Processing {} packets from queue", processed);
+                }
+                // after the pipeline, so previews show what subscribers get
+                StreamPreview tap = preview;
+                if (tap != null) {
+                    tap.process(batch);
+                }
+            } finally {
+                // hand the slots and their buffers back
+                for (int i = 0; i < processed; i++) {
+                    queue.release(batch.get(i));
+                }
+                batch.clear();
+            }
+            if (traced) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.setStream(scope, streamName);
+                    event.packets = processed;
+                    event.queueDepth = queue.size();
+                    event.commit();
+                }
+            }
+        }
+        if (ending && queue.isEmpty()) {
+            drained.complete(Boolean.TRUE);
+        }
+        return processed;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean hasWork() {
+        PacketRing queue = packetQueue;
+        // while ending, one more drain to complete the flush
+        return queue != null && (!queue.isEmpty() || (ending && !drained.isDone()));
     }
 
-    public LinkedTransferQueue<IStreamPacket> getPacketQueue() {
+    public PacketRing getPacketQueue() {
         return packetQueue;
     }
 
+    public void setPublisherInfo(PublisherInfo publisherInfo) {
+        this.publisherInfo = publisherInfo;
+    }
+
+    /**
+     * Sets the processing stages run over each batch drained from the queue.
+     *
+     * @param pipeline pipeline or null
+     */
+    public void setPipeline(PacketPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    public PacketPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Sets the scheduler that drains this stream's queue, e.g. one dedicated to its scope; must be called before start.
+     *
+     * @param packetScheduler scheduler
+     */
+    public void setPacketScheduler(PacketScheduler packetScheduler) {
+        this.packetScheduler = packetScheduler;
+    }
+
+    /**
+     * Sets how long packets queued when the stream ends may take to be processed before they are dropped.
+     *
+     * @param drainTimeoutMs timeout in milliseconds
+     */
+    public void setDrainTimeoutMs(long drainTimeoutMs) {
+        this.drainTimeoutMs = drainTimeoutMs;
+    }
+
+    /**
+     * Completes once the listener has finished after its stream ended, see {@link #finish(long)}.
+     *
+     * @return drain future
+     */
+    public CompletableFuture<Boolean> getDrainFuture() {
+        return drained;
+    }
+
+    public void setStreamMetrics(StreamMetrics streamMetrics) {
+        this.streamMetrics = streamMetrics;
+        if (streamMetrics != null) {
+            streamMetrics.setQueue(packetQueue);
+        }
+    }
+
+    /**
+     * Switches diagnostic packet logging for this stream on or off.
+     *
+     * @param packetLog packet log or null
+     */
+    public void setPacketLog(PacketLog packetLog) {
+        this.packetLog = packetLog;
+    }
+
+    public PacketLog getPacketLog() {
+        return packetLog;
+    }
+
+    /**
+     * Sets the tap that picks keyframes for the stream's preview; must be called before start.
+     *
+     * @param preview preview tap or null
+     */
+    public void setPreview(StreamPreview preview) {
+        this.preview = preview;
+    }
+
+    public StreamPreview getPreview() {
+        return preview;
+    }
+
+    public StreamMetrics getStreamMetrics() {
+        return streamMetrics;
+    }
+
     public long getLastReceiveTime() {
         return lastReceiveTime;
     }
 
+    public long getLastAudioReceiveTime() {
+        return lastAudioReceiveTime;
+    }
+
+    public long getLastVideoReceiveTime() {
+        return lastVideoReceiveTime;
+    }
+
+    public IScope getScope() {
+        return scope;
+    }
+
+    public String getStreamName() {
+        return streamName;
+    }
+
 }
@@ -0,0 +1,30 @@
+package com.example.listener;
+
+import com.example.buffer.PacketView;
+
+/**
+ * Receives packets fanned out by {@link MyProStreamListener}. Read-only consumers all share one zero-copy view of the
+ * original packet; consumers that modify payloads get a private copy.
+ *
+ * @author Paul Gregoire
+ */
+public interface PacketConsumer {
+
+    /**
+     * Called on the packet delivery thread. A shared view's payload is only valid for the duration of the call; copy it to
+     * keep it, retaining the view does not extend its life.
+     *
+     * @param view packet view
+     */
+    void onPacket(PacketView view);
+
+    /**
+     * Whether this consumer only reads payloads. Defaults to true.
+     *
+     * @return false if the consumer needs a private, writable copy
+     */
+    default boolean isReadOnly() {
+        return true;
+    }
+
+}
@@ -0,0 +1,142 @@
+package com.example.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.red5.server.api.scope.IScope;
+
+import com.example.StreamKey;
+
+/**
+ * Node-wide collection of {@link StreamMetrics} with JSON and Prometheus text rendering.
+ *
+ * @author Paul Gregoire
+ */
+public class IngestMetrics {
+
+    private final ConcurrentHashMap<StreamKey, StreamMetrics> streams = new ConcurrentHashMap<>();
+
+    // snapshots younger than this are reused between scrapes
+    private volatile long snapshotMaxAgeMs;
+
+    public IngestMetrics(long snapshotMaxAgeMs) {
+        this.snapshotMaxAgeMs = snapshotMaxAgeMs;
+    }
+
+    /**
+     * Creates and registers metrics for a stream.
+     *
+     * @param scope scope
+     * @param name stream name
+     * @return metrics
+     */
+    public StreamMetrics register(IScope scope, String name) {
+        StreamKey key = new StreamKey(scope, name);
+        return streams.computeIfAbsent(key, StreamMetrics::new);
+    }
+
+    public void unregister(IScope scope, String name) {
+        streams.remove(new StreamKey(scope, name));
+    }
+
+    public StreamMetrics get(IScope scope, String name) {
+        return streams.get(new StreamKey(scope, name));
+    }
+
+    public int size() {
+        return streams.size();
+    }
+
+    public void forEach(Consumer<StreamMetrics> action) {
+        streams.values().forEach(action);
+    }
+
+    public void setSnapshotMaxAgeMs(long snapshotMaxAgeMs) {
+        this.snapshotMaxAgeMs = snapshotMaxAgeMs;
+    }
+
+    /**
+     * Renders every stream as a compact JSON array.
+     *
+     * @param out destination
+     */
+    public void writeJson(StringBuilder out) {
+        out.append('[');
+        boolean first = true;
+        for (StreamMetrics metrics : streams.values()) {
+            StreamMetrics.Snapshot s = metrics.snapshot(snapshotMaxAgeMs);
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append("{\"stream\":\"").append(escape(s.stream)).append('"');
+            for (int track = 0; track < 3; track++) {
+                String name = StreamMetrics.TRACK_NAMES[track];
+                out.append(",\"").append(name).append("\":{\"pps\":").append(format(s.packetsPerSecond[track])).append(",\"bps\":")
+                        .append(format(s.bytesPerSecond[track] * 8)).append('}');
+            }
+            out.append(",\"keyframeIntervalMs\":{\"p50\":").append(s.keyframeIntervalP50Ms).append(",\"max\":").append(s.keyframeIntervalMaxMs)
+                    .append('}');
+            out.append(",\"jitterUs\":{\"p50\":").append(s.jitterP50Us).append(",\"p99\":").append(s.jitterP99Us).append('}');
+            out.append(",\"interArrivalUs\":{\"p99\":").append(s.interArrivalP99Us).append(",\"max\":").append(s.interArrivalMaxUs).append('}');
+            out.append(",\"processingLagUs\":{\"p50\":").append(s.processingLagP50Us).append(",\"p99\":").append(s.processingLagP99Us)
+                    .append('}');
+            out.append(",\"queueDepth\":").append(s.queueDepth).append(",\"queueDrops\":").append(s.queueDrops).append('}');
+        }
+        out.append(']');
+    }
+
+    /**
+     * Renders every stream in the Prometheus text exposition format.
+     *
+     * @param out destination
+     */
+    public void writePrometheus(StringBuilder out) {
+        out.append("# TYPE ingest_packets_per_second gauge\n");
+        out.append("# TYPE ingest_bits_per_second gauge\n");
+        // quantile series are summaries; _sum and _count are left out as the quantiles cover the last interval only
+        out.append("# TYPE ingest_keyframe_interval_ms summary\n");
+        out.append("# TYPE ingest_jitter_us summary\n");
+        out.append("# TYPE ingest_inter_arrival_us summary\n");
+        out.append("# TYPE ingest_processing_lag_us summary\n");
+        out.append("# TYPE ingest_queue_depth gauge\n");
+        out.append("# TYPE ingest_queue_drops_total counter\n");
+        for (StreamMetrics metrics : streams.values()) {
+            StreamMetrics.Snapshot s = metrics.snapshot(snapshotMaxAgeMs);
+            String stream = escape(s.stream);
+            for (int track = 0; track < 3; track++) {
+                String name = StreamMetrics.TRACK_NAMES[track];
+                line(out, "ingest_packets_per_second", stream, "track", name, format(s.packetsPerSecond[track]));
+                line(out, "ingest_bits_per_second", stream, "track", name, format(s.bytesPerSecond[track] * 8));
+            }
+            line(out, "ingest_keyframe_interval_ms", stream, "quantile", "0.5", String.valueOf(s.keyframeIntervalP50Ms));
+            line(out, "ingest_keyframe_interval_ms", stream, "quantile", "1", String.valueOf(s.keyframeIntervalMaxMs));
+            line(out, "ingest_jitter_us", stream, "quantile", "0.5", String.valueOf(s.jitterP50Us));
+            line(out, "ingest_jitter_us", stream, "quantile", "0.99", String.valueOf(s.jitterP99Us));
+            line(out, "ingest_inter_arrival_us", stream, "quantile", "0.99", String.valueOf(s.interArrivalP99Us));
+            line(out, "ingest_inter_arrival_us", stream, "quantile", "1", String.valueOf(s.interArrivalMaxUs));
+            line(out, "ingest_processing_lag_us", stream, "quantile", "0.5", String.valueOf(s.processingLagP50Us));
+            line(out, "ingest_processing_lag_us", stream, "quantile", "0.99", String.valueOf(s.processingLagP99Us));
+            line(out, "ingest_queue_depth", stream, null, null, String.valueOf(s.queueDepth));
+            line(out, "ingest_queue_drops_total", stream, null, null, String.valueOf(s.queueDrops));
+        }
+    }
+
+    private static void line(StringBuilder out, String metric, String stream, String label, String labelValue, String value) {
+        out.append(metric).append("{stream=\"").append(stream).append('"');
+        if (label != null) {
+            out.append(',').append(label).append("=\"").append(labelValue).append('"');
+        }
+        out.append("} ").append(value).append('\n');
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.example.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram in the style of HdrHistogram: each power of two is split into eight linear sub-buckets,
+ * giving roughly 12% precision from zero up to a fixed maximum, above which values land in the top bucket. The slot array
+ * is sized for that maximum, e.g. 209 slots for five minutes in microseconds. Recording is a single atomic increment with
+ * no allocation. Each histogram has a single reader, its {@link Interval}, which drains the counts on every update.
+ *
+ * @author Paul Gregoire
+ */
+public final class LogHistogram {
+
+    private static final int SUB_BITS = 3;
+
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts;
+
+    private final long maxValue;
+
+    /**
+     * Creates a histogram.
+     *
+     * @param maxValue largest value told apart, larger ones are recorded as this
+     */
+    public LogHistogram(long maxValue) {
+        this.maxValue = maxValue;
+        counts = new AtomicLongArray(indexOf(maxValue) + 1);
+    }
+
+    /**
+     * Records a value; negatives are recorded as zero and values above the maximum as the maximum.
+     *
+     * @param value value
+     */
+    public void record(long value) {
+        counts.getAndIncrement(indexOf(value < 0 ? 0 : Math.min(value, maxValue)));
+    }
+
+    public int buckets() {
+        return counts.length();
+    }
+
+    /**
+     * Moves the counts recorded since the previous drain into the given array; concurrent records are kept for the next one.
+     *
+     * @param into destination of at least {@link #buckets()} length
+     */
+    void drainCounts(long[] into) {
+        for (int i = 0; i < into.length; i++) {
+            long count = counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, -count);
+            }
+            into[i] = count;
+        }
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * Lowest value that maps to the given bucket.
+     *
+     * @param index bucket
+     * @return lower bound
+     */
+    static long lowerBound(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int exp = index / SUB_COUNT + SUB_BITS - 1;
+        int sub = index % SUB_COUNT;
+        return ((long) (SUB_COUNT + sub)) << (exp - SUB_BITS);
+    }
+
+    /**
+     * Summary of the values recorded since the previous update of the same histogram.
+     */
+    public static final class Interval {
+
+        private final long[] counts;
+
+        private long count, p50, p90, p99, max;
+
+        public Interval(LogHistogram histogram) {
+            counts = new long[histogram.buckets()];
+        }
+
+        /**
+         * Computes the interval since the last call.
+         *
+         * @param histogram source, the one this view was created for
+         * @return this
+         */
+        public Interval update(LogHistogram histogram) {
+            histogram.drainCounts(counts);
+            count = 0;
+            for (int i = 0; i < counts.length; i++) {
+                count += counts[i];
+            }
+            p50 = percentile(0.50);
+            p90 = percentile(0.90);
+            p99 = percentile(0.99);
+            max = 0;
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] > 0) {
+                    max = lowerBound(i);
+                    break;
+                }
+            }
+            return this;
+        }
+
+        private long percentile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(count * quantile);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return lowerBound(i);
+                }
+            }
+            return 0;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+    }
+
+}
@@ -0,0 +1,217 @@
+package com.example.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.red5.server.net.rtmp.message.Constants;
+
+import com.example.StreamKey;
+import com.example.buffer.PacketFlags;
+import com.example.buffer.PacketRing;
+
+/**
+ * Ingest telemetry for one stream. The packet delivery thread records arrivals and the processing worker records lag;
+ * both only touch striped counters, atomic histogram slots and fields they alone write. Snapshots are built by the
+ * scraping thread from the deltas since the previous snapshot and cached for a minimum interval, so frequent scrapes of
+ * many streams cost the ingest path nothing.
+ *
+ * @author Paul Gregoire
+ */
+public class StreamMetrics {
+
+    public static final int TRACK_AUDIO = 0, TRACK_VIDEO = 1, TRACK_DATA = 2;
+
+    static final String[] TRACK_NAMES = { "audio", "video", "data" };
+
+    // histogram ranges: ten minutes in milliseconds and five minutes in microseconds, longer is reported as the cap
+    private static final long MAX_MS = TimeUnit.MINUTES.toMillis(10), MAX_US = TimeUnit.MINUTES.toMicros(5);
+
+    private final StreamKey key;
+
+    private final LongAdder[] packets = { new LongAdder(), new LongAdder(), new LongAdder() };
+
+    private final LongAdder[] bytes = { new LongAdder(), new LongAdder(), new LongAdder() };
+
+    // keyframe interval in stream time, milliseconds
+    private final LogHistogram keyframeInterval = new LogHistogram(MAX_MS);
+
+    // |arrival delta - timestamp delta| per track, microseconds
+    private final LogHistogram jitter = new LogHistogram(MAX_US);
+
+    // gap between consecutive packet arrivals, microseconds
+    private final LogHistogram interArrival = new LogHistogram(MAX_US);
+
+    // time from arrival to processing, microseconds
+    private final LogHistogram processingLag = new LogHistogram(MAX_US);
+
+    // delivery thread state
+    private final long[] lastArrivalNanos = new long[3];
+
+    private final int[] lastTimestamp = new int[3];
+
+    private long lastPacketNanos;
+
+    private int lastKeyframeTimestamp = -1;
+
+    private PacketRing queue;
+
+    // scraper state, guarded by this
+    private final long[] previousPackets = new long[3];
+
+    private final long[] previousBytes = new long[3];
+
+    private final LogHistogram.Interval keyframeIntervalView = new LogHistogram.Interval(keyframeInterval);
+
+    private final LogHistogram.Interval jitterView = new LogHistogram.Interval(jitter);
+
+    private final LogHistogram.Interval interArrivalView = new LogHistogram.Interval(interArrival);
+
+    private final LogHistogram.Interval processingLagView = new LogHistogram.Interval(processingLag);
+
+    private long previousSnapshotNanos = System.nanoTime();
+
+    private Snapshot snapshot;
+
+    public StreamMetrics(StreamKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Records an arriving packet. Delivery thread only.
+     *
+     * @param dataType packet data type
+     * @param flags {@link PacketFlags}
+     * @param timestamp packet timestamp
+     * @param size payload size
+     * @param nowNanos arrival time
+     */
+    public void onPacket(byte dataType, int flags, int timestamp, int size, long nowNanos) {
+        int track = dataType == Constants.TYPE_VIDEO_DATA ? TRACK_VIDEO : dataType == Constants.TYPE_AUDIO_DATA ? TRACK_AUDIO : TRACK_DATA;
+        packets[track].increment();
+        bytes[track].add(size);
+        if (lastPacketNanos != 0) {
+            interArrival.record((nowNanos - lastPacketNanos) / 1000L);
+        }
+        lastPacketNanos = nowNanos;
+        if (lastArrivalNanos[track] != 0 && track != TRACK_DATA) {
+            long arrivalDeltaMicros = (nowNanos - lastArrivalNanos[track]) / 1000L;
+            long timestampDeltaMicros = (timestamp - lastTimestamp[track]) * 1000L;
+            jitter.record(Math.abs(arrivalDeltaMicros - timestampDeltaMicros));
+        }
+        lastArrivalNanos[track] = nowNanos;
+        lastTimestamp[track] = timestamp;
+        if (track == TRACK_VIDEO && PacketFlags.isKeyframe(flags) && !PacketFlags.isConfig(flags)) {
+            if (lastKeyframeTimestamp >= 0) {
+                keyframeInterval.record(timestamp - lastKeyframeTimestamp);
+            }
+            lastKeyframeTimestamp = timestamp;
+        }
+    }
+
+    /**
+     * Records how long processed packets waited. Processing worker only.
+     *
+     * @param receiveNanos arrival time of the packet
+     * @param nowNanos processing time
+     */
+    public void onProcessed(long receiveNanos, long nowNanos) {
+        processingLag.record((nowNanos - receiveNanos) / 1000L);
+    }
+
+    public void setQueue(PacketRing queue) {
+        this.queue = queue;
+    }
+
+    public StreamKey getKey() {
+        return key;
+    }
+
+    public int getQueueDepth() {
+        PacketRing ring = queue;
+        return ring != null ? ring.size() : 0;
+    }
+
+    public int getQueueCapacity() {
+        PacketRing ring = queue;
+        return ring != null ? ring.capacity() : 0;
+    }
+
+    public long getQueueDrops() {
+        PacketRing ring = queue;
+        return ring != null ? ring.getDroppedCount() + ring.getEvictedCount() : 0L;
+    }
+
+    /**
+     * Returns a snapshot no older than maxAgeMs, computing a new one from the deltas if needed.
+     *
+     * @param maxAgeMs maximum age of a cached snapshot
+     * @return snapshot
+     */
+    public synchronized Snapshot snapshot(long maxAgeMs) {
+        long now = System.nanoTime();
+        if (snapshot != null && now - previousSnapshotNanos < TimeUnit.MILLISECONDS.toNanos(maxAgeMs)) {
+            return snapshot;
+        }
+        double seconds = Math.max(1e-3, (now - previousSnapshotNanos) / 1e9);
+        previousSnapshotNanos = now;
+        double[] packetRates = new double[3];
+        double[] byteRates = new double[3];
+        for (int track = 0; track < 3; track++) {
+            long p = packets[track].sum();
+            long b = bytes[track].sum();
+            packetRates[track] = (p - previousPackets[track]) / seconds;
+            byteRates[track] = (b - previousBytes[track]) / seconds;
+            previousPackets[track] = p;
+            previousBytes[track] = b;
+        }
+        PacketRing ring = queue;
+        snapshot = new Snapshot(key.toString(), packetRates, byteRates, keyframeIntervalView.update(keyframeInterval), jitterView.update(jitter),
+                interArrivalView.update(interArrival), processingLagView.update(processingLag), ring != null ? ring.size() : 0,
+                ring != null ? ring.getDroppedCount() + ring.getEvictedCount() : 0L);
+        return snapshot;
+    }
+
+    /**
+     * Immutable point-in-time view; rates and percentiles cover the interval since the previous snapshot.
+     */
+    public static final class Snapshot {
+
+        public final String stream;
+
+        public final double[] packetsPerSecond;
+
+        public final double[] bytesPerSecond;
+
+        public final long keyframeIntervalP50Ms, keyframeIntervalMaxMs;
+
+        public final long jitterP50Us, jitterP99Us;
+
+        public final long interArrivalP99Us, interArrivalMaxUs;
+
+        public final long processingLagP50Us, processingLagP99Us;
+
+        public final int queueDepth;
+
+        public final long queueDrops;
+
+        Snapshot(String stream, double[] packetsPerSecond, double[] bytesPerSecond, LogHistogram.Interval keyframeInterval,
+                LogHistogram.Interval jitter, LogHistogram.Interval interArrival, LogHistogram.Interval processingLag, int queueDepth,
+                long queueDrops) {
+            this.stream = stream;
+            this.packetsPerSecond = packetsPerSecond;
+            this.bytesPerSecond = bytesPerSecond;
+            this.keyframeIntervalP50Ms = keyframeInterval.getP50();
+            this.keyframeIntervalMaxMs = keyframeInterval.getMax();
+            this.jitterP50Us = jitter.getP50();
+            this.jitterP99Us = jitter.getP99();
+            this.interArrivalP99Us = interArrival.getP99();
+            this.interArrivalMaxUs = interArrival.getMax();
+            this.processingLagP50Us = processingLag.getP50();
+            this.processingLagP99Us = processingLag.getP99();
+            this.queueDepth = queueDepth;
+            this.queueDrops = queueDrops;
+        }
+
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.example.pipeline;
+
+import java.nio.ByteBuffer;
+
+import com.example.buffer.DirectBufferPool;
+import com.example.buffer.PacketSlot;
+
+/**
+ * Reusable batch of queued packets handed from stage to stage. A filter drops entries instead of removing them, so the
+ * batch never shifts or allocates; later stages skip dropped entries. Slots and their pooled payloads go back to the ring
+ * once the whole pipeline has run.
+ *
+ * @author Paul Gregoire
+ */
+public final class PacketBatch {
+
+    private final PacketSlot[] slots;
+
+    private final boolean[] dropped;
+
+    private int size;
+
+    private int live;
+
+    public PacketBatch(int capacity) {
+        slots = new PacketSlot[capacity];
+        dropped = new boolean[capacity];
+    }
+
+    /**
+     * Adds a slot; the caller checks {@link #isFull()} first.
+     *
+     * @param slot slot polled from the ring
+     */
+    public void add(PacketSlot slot) {
+        slots[size] = slot;
+        dropped[size] = false;
+        size++;
+        live++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Entries not dropped by a filter.
+     *
+     * @return live count
+     */
+    public int liveCount() {
+        return live;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public boolean isFull() {
+        return size == slots.length;
+    }
+
+    public PacketSlot get(int index) {
+        return slots[index];
+    }
+
+    public boolean isDropped(int index) {
+        return dropped[index];
+    }
+
+    /**
+     * Drops an entry for the remaining stages.
+     *
+     * @param index entry
+     */
+    public void drop(int index) {
+        if (!dropped[index]) {
+            dropped[index] = true;
+            live--;
+        }
+    }
+
+    /**
+     * Acquires a pooled buffer for a transform that changes a payload's size, see {@link #replaceData(int, ByteBuffer)}.
+     *
+     * @param size capacity needed
+     * @return buffer with limit size
+     */
+    public ByteBuffer acquire(int size) {
+        return DirectBufferPool.shared().acquire(size);
+    }
+
+    /**
+     * Replaces an entry's payload with a buffer from {@link #acquire(int)}, returning the old one to the pool.
+     *
+     * @param index entry
+     * @param data new payload from position 0 to limit
+     */
+    public void replaceData(int index, ByteBuffer data) {
+        DirectBufferPool.shared().release(slots[index].swapData(data));
+    }
+
+    /**
+     * Empties the batch; the slots must have been released.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            slots[i] = null;
+        }
+        size = 0;
+        live = 0;
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.example.pipeline;
+
+import com.example.buffer.PacketSlot;
+
+/**
+ * Stage that drops packets the later stages should not see.
+ *
+ * @author Paul Gregoire
+ */
+public abstract class PacketFilter implements PacketProcessor {
+
+    @Override
+    public final void process(PacketBatch batch) {
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            if (!batch.isDropped(i) && !accept(batch.get(i))) {
+                batch.drop(i);
+            }
+        }
+    }
+
+    /**
+     * Whether a packet passes.
+     *
+     * @param packet packet
+     * @return false to drop it
+     */
+    protected abstract boolean accept(PacketSlot packet);
+
+}
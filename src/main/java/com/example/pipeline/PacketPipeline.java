@@ -0,0 +1,86 @@
+package com.example.pipeline;
+
+import org.red5.server.api.scope.IScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ordered stages run over each batch drained from a stream's queue. Runs on the stream's processing worker; the monitor
+ * is only there so {@link #close()} can't overlap a batch still in flight.
+ *
+ * @author Paul Gregoire
+ */
+public class PacketPipeline {
+
+    private static Logger log = LoggerFactory.getLogger(PacketPipeline.class);
+
+    private final PacketProcessor[] stages;
+
+    private boolean closed;
+
+    public PacketPipeline(PacketProcessor[] stages) {
+        this.stages = stages;
+    }
+
+    /**
+     * Opens every stage; a stage that fails to open is left out.
+     *
+     * @param scope scope of the stream
+     * @param streamName stream name
+     * @return this pipeline
+     */
+    public PacketPipeline open(IScope scope, String streamName) {
+        for (int i = 0; i < stages.length; i++) {
+            try {
+                stages[i].open(scope, streamName);
+            } catch (Exception e) {
+                log.warn("Stage {} failed to open for {}, skipping it", stages[i], streamName, e);
+                stages[i] = null;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Runs the batch through the stages, stopping early once everything was dropped.
+     *
+     * @param batch batch
+     */
+    public synchronized void process(PacketBatch batch) {
+        if (closed) {
+            return;
+        }
+        for (PacketProcessor stage : stages) {
+            if (batch.liveCount() == 0) {
+                break;
+            }
+            if (stage != null) {
+                try {
+                    stage.process(batch);
+                } catch (Exception e) {
+                    log.warn("Exception in stage {}", stage, e);
+                }
+            }
+        }
+    }
+
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            for (PacketProcessor stage : stages) {
+                if (stage != null) {
+                    try {
+                        stage.close();
+                    } catch (Exception e) {
+                        log.warn("Exception closing stage {}", stage, e);
+                    }
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return stages.length;
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.example.pipeline;
+
+import org.red5.server.api.scope.IScope;
+
+/**
+ * Stage of a stream's {@link PacketPipeline}. Stages are called on the stream's processing worker, one batch at a time and
+ * never concurrently for the same stream. Payloads are pooled and only valid during the call; stages that keep data must
+ * copy it. Most stages extend {@link PacketFilter}, {@link PacketTransform}, {@link PacketTap} or {@link PacketSink}.
+ *
+ * @author Paul Gregoire
+ */
+public interface PacketProcessor {
+
+    /**
+     * Called once before the first batch.
+     *
+     * @param scope scope of the stream
+     * @param streamName stream name
+     */
+    default void open(IScope scope, String streamName) {
+    }
+
+    /**
+     * Processes the live entries of a batch.
+     *
+     * @param batch batch
+     */
+    void process(PacketBatch batch);
+
+    /**
+     * Called once after the last batch.
+     */
+    default void close() {
+    }
+
+}
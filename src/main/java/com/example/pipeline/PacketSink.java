@@ -0,0 +1,25 @@
+package com.example.pipeline;
+
+/**
+ * Terminal stage that consumes the batch, e.g. writing it out. Gets the whole batch so it can write it in one go; the
+ * stages after a sink still run.
+ *
+ * @author Paul Gregoire
+ */
+public abstract class PacketSink implements PacketProcessor {
+
+    @Override
+    public final void process(PacketBatch batch) {
+        if (batch.liveCount() > 0) {
+            consume(batch);
+        }
+    }
+
+    /**
+     * Consumes the live entries of a batch.
+     *
+     * @param batch batch with at least one live entry
+     */
+    protected abstract void consume(PacketBatch batch);
+
+}
@@ -0,0 +1,23 @@
+package com.example.pipeline;
+
+import com.example.buffer.PacketSlot;
+
+/**
+ * Stage that observes packets without changing them, e.g. for metrics or inspection.
+ *
+ * @author Paul Gregoire
+ */
+public abstract class PacketTap implements PacketProcessor {
+
+    @Override
+    public final void process(PacketBatch batch) {
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            if (!batch.isDropped(i)) {
+                observe(batch.get(i));
+            }
+        }
+    }
+
+    protected abstract void observe(PacketSlot packet);
+
+}
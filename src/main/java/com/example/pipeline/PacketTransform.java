@@ -0,0 +1,31 @@
+package com.example.pipeline;
+
+import com.example.buffer.PacketSlot;
+
+/**
+ * Stage that rewrites packets in place. The payload buffer is a private pooled copy; a transform changing its size
+ * swaps it through {@link PacketBatch#replaceData(int, java.nio.ByteBuffer)}.
+ *
+ * @author Paul Gregoire
+ */
+public abstract class PacketTransform implements PacketProcessor {
+
+    @Override
+    public final void process(PacketBatch batch) {
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            if (!batch.isDropped(i)) {
+                transform(batch, i, batch.get(i));
+            }
+        }
+    }
+
+    /**
+     * Rewrites a packet.
+     *
+     * @param batch batch, for payload replacement
+     * @param index entry index
+     * @param packet packet
+     */
+    protected abstract void transform(PacketBatch batch, int index, PacketSlot packet);
+
+}
@@ -0,0 +1,152 @@
+package com.example.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.red5.server.api.scope.IScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.config.PluginConfig;
+
+/**
+ * Builds the pipeline of each new stream from ordered rules in the configuration:
+ *
+ * <pre>
+ * pipeline.1.match=live/camera*
+ * pipeline.1.processors=keyframe-filter,inspector
+ * pipeline.2.match=**
+ * pipeline.2.processors=inspector
+ * </pre>
+ *
+ * Patterns are globs over <code>scope path/stream name</code>, where <code>*</code> and <code>?</code> stay within a path
+ * segment and <code>**</code> spans segments; the first matching rule wins. Processor names refer to registered
+ * {@link ProcessorFactory} instances. Rules are replaced on reload and apply to streams published afterwards.
+ *
+ * @author Paul Gregoire
+ */
+public class PipelineRegistry {
+
+    private static Logger log = LoggerFactory.getLogger(PipelineRegistry.class);
+
+    private final ConcurrentHashMap<String, ProcessorFactory> factories = new ConcurrentHashMap<>();
+
+    private volatile Rule[] rules = new Rule[0];
+
+    public PipelineRegistry() {
+        for (ProcessorFactory factory : ServiceLoader.load(ProcessorFactory.class, PipelineRegistry.class.getClassLoader())) {
+            addFactory(factory);
+        }
+    }
+
+    public void addFactory(ProcessorFactory factory) {
+        log.debug("Adding processor factory: {}", factory.getName());
+        factories.put(factory.getName(), factory);
+    }
+
+    public void removeFactory(String name) {
+        factories.remove(name);
+    }
+
+    /**
+     * Reads the pipeline.* rules.
+     *
+     * @param config configuration
+     */
+    public void setConfig(PluginConfig config) {
+        TreeMap<Integer, Rule> ordered = new TreeMap<>();
+        for (String key : config.keys()) {
+            if (key.startsWith("pipeline.") && key.endsWith(".match")) {
+                String id = key.substring(9, key.length() - 6);
+                String processors = config.getString("pipeline." + id + ".processors");
+                try {
+                    if (processors != null && !processors.isBlank()) {
+                        ordered.put(Integer.valueOf(id), new Rule(config.getString(key), processors.split("\\s*,\\s*")));
+                    }
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring pipeline rule with non-numeric id: {}", key);
+                }
+            }
+        }
+        rules = ordered.values().toArray(new Rule[0]);
+        log.debug("Pipeline rules: {}", ordered.size());
+    }
+
+    /**
+     * Creates and opens the pipeline for a new stream.
+     *
+     * @param scope scope of the stream
+     * @param streamName stream name
+     * @return pipeline, or null if no rule matches or no stage could be created
+     */
+    public PacketPipeline create(IScope scope, String streamName) {
+        Rule[] current = rules;
+        if (current.length == 0) {
+            return null;
+        }
+        String contextPath = scope.getContextPath();
+        String path = (contextPath.startsWith("/") ? contextPath.substring(1) : contextPath) + '/' + streamName;
+        for (Rule rule : current) {
+            if (rule.pattern.matcher(path).matches()) {
+                List<PacketProcessor> stages = new ArrayList<>(rule.processors.length);
+                for (String name : rule.processors) {
+                    ProcessorFactory factory = factories.get(name);
+                    if (factory == null) {
+                        log.warn("No processor factory named {} for {}", name, path);
+                        continue;
+                    }
+                    PacketProcessor processor = factory.create(scope, streamName);
+                    if (processor != null) {
+                        stages.add(processor);
+                    }
+                }
+                return stages.isEmpty() ? null : new PacketPipeline(stages.toArray(new PacketProcessor[0])).open(scope, streamName);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compiles a stream path glob as used by the rules.
+     *
+     * @param glob pattern
+     * @return regular expression
+     */
+    public static Pattern glob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    regex.append(".*");
+                    i++;
+                } else {
+                    regex.append("[^/]*");
+                }
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static final class Rule {
+
+        final Pattern pattern;
+
+        final String[] processors;
+
+        Rule(String match, String[] processors) {
+            this.pattern = glob(match.trim());
+            this.processors = processors;
+        }
+
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.example.pipeline;
+
+import org.red5.server.api.scope.IScope;
+
+/**
+ * Creates a processor per stream. Factories are found with {@link java.util.ServiceLoader} (list them in
+ * <code>META-INF/services/com.example.pipeline.ProcessorFactory</code>) or registered with
+ * {@link PipelineRegistry#addFactory(ProcessorFactory)}, and referenced by name from the pipeline.* configuration.
+ *
+ * @author Paul Gregoire
+ */
+public interface ProcessorFactory {
+
+    /**
+     * Name used in the configuration.
+     *
+     * @return name
+     */
+    String getName();
+
+    /**
+     * Creates the processor for a stream.
+     *
+     * @param scope scope of the stream
+     * @param streamName stream name
+     * @return processor, or null to leave this stage out for the stream
+     */
+    PacketProcessor create(IScope scope, String streamName);
+
+}
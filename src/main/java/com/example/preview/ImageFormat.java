@@ -0,0 +1,47 @@
+package com.example.preview;
+
+/**
+ * Encodings a preview is served in.
+ *
+ * @author Paul Gregoire
+ */
+public enum ImageFormat {
+
+    JPEG("jpeg", "image/jpeg"), PNG("png", "image/png");
+
+    private final String name;
+
+    private final String contentType;
+
+    ImageFormat(String name, String contentType) {
+        this.name = name;
+        this.contentType = contentType;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Returns the format for a request parameter.
+     *
+     * @param value format name, jpeg when absent; jpg is taken for jpeg
+     * @return format or null if not supported
+     */
+    public static ImageFormat of(String value) {
+        if (value == null || value.isEmpty() || "jpg".equalsIgnoreCase(value)) {
+            return JPEG;
+        }
+        for (ImageFormat format : values()) {
+            if (format.name.equalsIgnoreCase(value)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.example.preview;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.jcodec.codecs.h264.H264Decoder;
+import org.jcodec.codecs.h264.H264Utils;
+import org.jcodec.codecs.h264.io.model.Frame;
+import org.jcodec.codecs.h264.io.model.SeqParameterSet;
+import org.jcodec.codecs.h264.mp4.AvcCBox;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+import org.jcodec.scale.ColorUtil;
+
+/**
+ * Decodes a single H.264 keyframe with jcodec and scales it down. A fresh decoder is used each time; an IDR frame needs
+ * no reference frames, so nothing is kept between the sparse decodes of a stream.
+ *
+ * @author Paul Gregoire
+ */
+final class KeyframeDecoder {
+
+    private KeyframeDecoder() {
+    }
+
+    /**
+     * Decodes a keyframe.
+     *
+     * @param config AVC decoder configuration record
+     * @param frame length prefixed NAL units of the keyframe
+     * @param width width of the returned image
+     * @return scaled image or null if nothing was decoded
+     */
+    static BufferedImage decode(byte[] config, byte[] frame, int width) {
+        AvcCBox avcC = H264Utils.parseAVCCFromBuffer(ByteBuffer.wrap(config));
+        if (avcC.getSpsList().isEmpty() || avcC.getPpsList().isEmpty()) {
+            return null;
+        }
+        H264Decoder decoder = new H264Decoder();
+        decoder.addSps(avcC.getSpsList());
+        decoder.addPps(avcC.getPpsList());
+        SeqParameterSet sps = H264Utils.readSPS(avcC.getSpsList().get(0).duplicate());
+        byte[][] buffer = Picture.create((sps.picWidthInMbsMinus1 + 1) << 4, SeqParameterSet.getPicHeightInMbs(sps) << 4, sps.chromaFormatIdc)
+                .getData();
+        List<ByteBuffer> nals = H264Utils.splitMOVPacket(ByteBuffer.wrap(frame), avcC);
+        Frame picture = decoder.decodeFrameFromNals(nals, buffer);
+        if (picture == null) {
+            return null;
+        }
+        Picture rgb = Picture.create(picture.getWidth(), picture.getHeight(), ColorSpace.RGB);
+        ColorUtil.getTransform(picture.getColor(), ColorSpace.RGB).transform(picture, rgb);
+        return scale(toImage(rgb, picture.getStartX(), picture.getStartY(), picture.getCroppedWidth(), picture.getCroppedHeight()), width);
+    }
+
+    // jcodec keeps 8 bit samples signed, shifted down by 128
+    private static BufferedImage toImage(Picture rgb, int left, int top, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] dst = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        byte[] src = rgb.getPlaneData(0);
+        int stride = rgb.getWidth() * 3;
+        for (int y = 0, d = 0; y < height; y++) {
+            int s = (top + y) * stride + left * 3;
+            for (int x = 0; x < width; x++, s += 3, d += 3) {
+                dst[d] = (byte) (src[s + 2] + 128);
+                dst[d + 1] = (byte) (src[s + 1] + 128);
+                dst[d + 2] = (byte) (src[s] + 128);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width) {
+        if (image.getWidth() <= width) {
+            return image;
+        }
+        int height = Math.max(1, Math.round(image.getHeight() * (width / (float) image.getWidth())));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+}
@@ -0,0 +1,286 @@
+package com.example.preview;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.red5.server.api.scope.IScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keyframe previews of publishing streams. Each stream gets a {@link StreamPreview} tap on its processing worker which
+ * hands a copy of a keyframe to a small pool of low priority decoder threads when a refresh is due; the pool's queue is
+ * bounded and a keyframe that doesn't fit is skipped, so a busy decoder never backs up into ingest. Decoded frames are
+ * scaled, encoded in the formats requested for the stream and kept in a least recently used cache. Nothing is decoded for
+ * a stream whose preview wasn't requested within the idle time, so the first request for a stream only starts the
+ * previews and finds nothing until the next keyframe is decoded.
+ * <p>
+ * Streams are addressed by path, the scope's context path without the leading slash followed by the stream name (e.g.
+ * <code>live/stream1</code>).
+ *
+ * @author Paul Gregoire
+ */
+public class PreviewService {
+
+    private static Logger log = LoggerFactory.getLogger(PreviewService.class);
+
+    private volatile PreviewSettings settings;
+
+    private final ThreadPoolExecutor decoders;
+
+    private final ConcurrentHashMap<String, StreamPreview> previews = new ConcurrentHashMap<>();
+
+    // access ordered, guarded by itself
+    private final LinkedHashMap<String, Thumbnail> cache = new LinkedHashMap<>(64, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Thumbnail> eldest) {
+            return size() > settings.getCacheEntries();
+        }
+
+    };
+
+    private final LongAdder decoded = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder skipped = new LongAdder();
+
+    public PreviewService(PreviewSettings settings) {
+        this.settings = settings;
+        decoders = new ThreadPoolExecutor(settings.getThreads(), settings.getThreads(), 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(settings.getQueueCapacity()),
+                Thread.ofPlatform().daemon().priority(Thread.MIN_PRIORITY).name("preview-decoder-", 0).factory());
+        decoders.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Replaces the settings; decoder threads follow the new count, the queue capacity needs a restart.
+     *
+     * @param settings new settings
+     */
+    public void setSettings(PreviewSettings settings) {
+        PreviewSettings previous = this.settings;
+        this.settings = settings;
+        if (settings.getThreads() > previous.getThreads()) {
+            decoders.setMaximumPoolSize(settings.getThreads());
+            decoders.setCorePoolSize(settings.getThreads());
+        } else if (settings.getThreads() < previous.getThreads()) {
+            decoders.setCorePoolSize(settings.getThreads());
+            decoders.setMaximumPoolSize(settings.getThreads());
+        }
+        synchronized (cache) {
+            while (cache.size() > settings.getCacheEntries()) {
+                cache.remove(cache.keySet().iterator().next());
+            }
+        }
+    }
+
+    public PreviewSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Creates the preview tap for a stream that is starting.
+     *
+     * @param scope scope
+     * @param name stream name
+     * @return preview tap
+     */
+    public StreamPreview register(IScope scope, String name) {
+        String path = path(scope, name);
+        StreamPreview preview = new StreamPreview(this, path);
+        StreamPreview previous = previews.put(path, preview);
+        if (previous != null) {
+            // republished, keep the stream wanted for as long as it was
+            preview.inherit(previous);
+        }
+        return preview;
+    }
+
+    /**
+     * Removes the preview of a stream that ended, along with its cached images; a tap already replaced by a republish
+     * is left alone.
+     *
+     * @param preview preview tap of the stream
+     */
+    public void unregister(StreamPreview preview) {
+        String path = preview.getPath();
+        if (previews.remove(path, preview)) {
+            synchronized (cache) {
+                for (ImageFormat format : ImageFormat.values()) {
+                    cache.remove(key(path, format));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the latest preview of a stream and marks it as wanted.
+     *
+     * @param path stream path
+     * @param format image format
+     * @return thumbnail, or null if none was decoded yet
+     * @throws IllegalArgumentException if the stream isn't publishing
+     */
+    public Thumbnail request(String path, ImageFormat format) {
+        String key = normalize(path);
+        StreamPreview preview = previews.get(key);
+        if (preview == null) {
+            throw new IllegalArgumentException("Stream not found: " + key);
+        }
+        preview.touch(format);
+        synchronized (cache) {
+            return cache.get(key(key, format));
+        }
+    }
+
+    /**
+     * Queues a keyframe for decoding.
+     *
+     * @return false if the decoders are saturated or shut down
+     */
+    boolean decode(StreamPreview preview, int formats, byte[] config, byte[] frame, int timestamp) {
+        try {
+            decoders.execute(() -> {
+                try {
+                    BufferedImage image = KeyframeDecoder.decode(config, frame, settings.getWidth());
+                    if (image == null) {
+                        failed.increment();
+                        return;
+                    }
+                    for (ImageFormat format : ImageFormat.values()) {
+                        if ((formats & (1 << format.ordinal())) != 0) {
+                            Thumbnail thumbnail = new Thumbnail(encode(image, format), format, image.getWidth(), image.getHeight(), timestamp);
+                            if (previews.get(preview.getPath()) == preview) {
+                                synchronized (cache) {
+                                    cache.put(key(preview.getPath(), format), thumbnail);
+                                }
+                            }
+                        }
+                    }
+                    decoded.increment();
+                } catch (Throwable t) {
+                    failed.increment();
+                    log.debug("Preview decode failed for {}", preview.getPath(), t);
+                } finally {
+                    preview.decoded();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            skipped.increment();
+            return false;
+        }
+    }
+
+    private byte[] encode(BufferedImage image, ImageFormat format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+        if (format == ImageFormat.JPEG) {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(settings.getJpegQuality());
+                writer.setOutput(ios);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+        } else {
+            ImageIO.write(image, format.getName(), out);
+        }
+        return out.toByteArray();
+    }
+
+    public void clear() {
+        previews.clear();
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public void shutdown() {
+        clear();
+        decoders.shutdownNow();
+    }
+
+    public long getDecodedCount() {
+        return decoded.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public long getSkippedCount() {
+        return skipped.sum();
+    }
+
+    /**
+     * Renders the service counters and the previewed streams as compact JSON.
+     *
+     * @param out destination
+     */
+    public void writeJson(StringBuilder out) {
+        int cached;
+        synchronized (cache) {
+            cached = cache.size();
+        }
+        out.append("{\"decoded\":").append(decoded.sum()).append(",\"failed\":").append(failed.sum()).append(",\"skipped\":")
+                .append(skipped.sum()).append(",\"queued\":").append(decoders.getQueue().size()).append(",\"cached\":").append(cached)
+                .append(",\"streams\":[");
+        long now = System.currentTimeMillis();
+        long idleMs = settings.getIdleMs();
+        boolean first = true;
+        for (StreamPreview preview : previews.values()) {
+            if (now - preview.getLastRequestTime() > idleMs) {
+                continue;
+            }
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append("{\"path\":\"").append(preview.getPath().replace("\\", "\\\\").replace("\"", "\\\"")).append("\",\"lastDecodeTime\":")
+                    .append(preview.getLastDecodeTime()).append('}');
+        }
+        out.append("]}");
+    }
+
+    private static String path(IScope scope, String name) {
+        return normalize(scope.getContextPath() + '/' + name);
+    }
+
+    private static String key(String path, ImageFormat format) {
+        return path + '.' + format.getName();
+    }
+
+    private static String normalize(String path) {
+        String trimmed = path.trim();
+        return trimmed.startsWith("/") ? trimmed.substring(1) : trimmed;
+    }
+
+    @Override
+    public String toString() {
+        return "PreviewService [streams=" + previews.size() + ", decoded=" + decoded.sum() + ", failed=" + failed.sum() + ", skipped="
+                + skipped.sum() + "]";
+    }
+
+}
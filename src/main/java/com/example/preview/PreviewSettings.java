@@ -0,0 +1,82 @@
+package com.example.preview;
+
+import com.example.config.PluginConfig;
+
+/**
+ * Immutable settings for the {@link PreviewService}.
+ *
+ * @author Paul Gregoire
+ */
+public final class PreviewSettings {
+
+    public static final PreviewSettings DEFAULT = new PreviewSettings(1, 8, 10000L, 60000L, 512, 320, 0.8f);
+
+    // decoder threads and decodes waiting for one; keyframes beyond that are skipped until the next refresh
+    private final int threads, queueCapacity;
+
+    // minimum time between decodes of a stream
+    private final long refreshMs;
+
+    // a stream is decoded only while its preview was requested within this long
+    private final long idleMs;
+
+    // thumbnails kept, least recently used ones are evicted
+    private final int cacheEntries;
+
+    // thumbnail width, height follows the aspect ratio
+    private final int width;
+
+    private final float jpegQuality;
+
+    public PreviewSettings(int threads, int queueCapacity, long refreshMs, long idleMs, int cacheEntries, int width, float jpegQuality) {
+        this.threads = Math.max(1, threads);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.refreshMs = refreshMs;
+        this.idleMs = idleMs;
+        this.cacheEntries = Math.max(1, cacheEntries);
+        this.width = Math.max(16, width);
+        this.jpegQuality = Math.min(1f, Math.max(0.1f, jpegQuality));
+    }
+
+    public static PreviewSettings from(PluginConfig config) {
+        return new PreviewSettings(config.getInt("preview.threads", DEFAULT.threads), config.getInt("preview.queue.capacity", DEFAULT.queueCapacity),
+                config.getLong("preview.refresh.ms", DEFAULT.refreshMs), config.getLong("preview.idle.ms", DEFAULT.idleMs),
+                config.getInt("preview.cache.entries", DEFAULT.cacheEntries), config.getInt("preview.width", DEFAULT.width),
+                (float) config.getDouble("preview.jpeg.quality", DEFAULT.jpegQuality));
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getRefreshMs() {
+        return refreshMs;
+    }
+
+    public long getIdleMs() {
+        return idleMs;
+    }
+
+    public int getCacheEntries() {
+        return cacheEntries;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public float getJpegQuality() {
+        return jpegQuality;
+    }
+
+    @Override
+    public String toString() {
+        return "PreviewSettings [threads=" + threads + ", queueCapacity=" + queueCapacity + ", refreshMs=" + refreshMs + ", idleMs=" + idleMs
+                + ", cacheEntries=" + cacheEntries + ", width=" + width + ", jpegQuality=" + jpegQuality + "]";
+    }
+
+}
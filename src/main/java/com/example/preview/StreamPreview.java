@@ -0,0 +1,118 @@
+package com.example.preview;
+
+import java.nio.ByteBuffer;
+
+import org.red5.server.net.rtmp.message.Constants;
+
+import com.example.buffer.PacketSlot;
+import com.example.pipeline.PacketTap;
+
+/**
+ * Picks keyframes for the preview of one stream off its processing worker. Packets are only looked at, the keyframe
+ * payload is copied out of the pooled buffer when a decode is actually due: the preview was requested within the idle
+ * time, the refresh interval has passed since the last decode and no decode for the stream is pending. Only AVC video is
+ * decoded; other codecs are passed over.
+ *
+ * @author Paul Gregoire
+ */
+public class StreamPreview extends PacketTap {
+
+    // FLV video codec id for AVC
+    private static final int VIDEO_AVC = 7;
+
+    // codec byte, packet type and composition time ahead of the AVC payload
+    private static final int AVC_HEADER = 5;
+
+    private final PreviewService service;
+
+    private final String path;
+
+    // AVC decoder configuration record, processing worker only
+    private byte[] config;
+
+    private volatile long lastRequestTime, lastDecodeTime;
+
+    // formats requested since the stream started, each decode encodes all of them
+    private volatile int formats;
+
+    private volatile boolean pending;
+
+    StreamPreview(PreviewService service, String path) {
+        this.service = service;
+        this.path = path;
+    }
+
+    @Override
+    protected void observe(PacketSlot packet) {
+        if (packet.getDataType() != Constants.TYPE_VIDEO_DATA || !(packet.isKeyframe() || packet.isConfig())) {
+            return;
+        }
+        ByteBuffer data = packet.getData();
+        if (data == null || data.limit() <= AVC_HEADER || (data.get(0) & 0x0f) != VIDEO_AVC) {
+            return;
+        }
+        if (packet.isConfig()) {
+            config = copy(data);
+            return;
+        }
+        if (config == null || pending) {
+            return;
+        }
+        PreviewSettings settings = service.getSettings();
+        long now = System.currentTimeMillis();
+        if (now - lastRequestTime > settings.getIdleMs() || now - lastDecodeTime < settings.getRefreshMs()) {
+            return;
+        }
+        pending = true;
+        lastDecodeTime = now;
+        if (!service.decode(this, formats, config, copy(data), packet.getTimestamp())) {
+            pending = false;
+        }
+    }
+
+    private static byte[] copy(ByteBuffer data) {
+        byte[] copy = new byte[data.limit() - AVC_HEADER];
+        data.get(AVC_HEADER, copy);
+        return copy;
+    }
+
+    /**
+     * Marks the preview as wanted in the given format; keyframes are only decoded while it is.
+     *
+     * @param format image format
+     */
+    void touch(ImageFormat format) {
+        int bit = 1 << format.ordinal();
+        if ((formats & bit) == 0) {
+            formats |= bit;
+        }
+        lastRequestTime = System.currentTimeMillis();
+    }
+
+    void inherit(StreamPreview previous) {
+        formats = previous.formats;
+        lastRequestTime = previous.lastRequestTime;
+    }
+
+    void decoded() {
+        pending = false;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getLastRequestTime() {
+        return lastRequestTime;
+    }
+
+    public long getLastDecodeTime() {
+        return lastDecodeTime;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamPreview [path=" + path + ", lastRequestTime=" + lastRequestTime + ", lastDecodeTime=" + lastDecodeTime + "]";
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.example.preview;
+
+/**
+ * Encoded preview image of a stream.
+ *
+ * @author Paul Gregoire
+ */
+public final class Thumbnail {
+
+    private final byte[] data;
+
+    private final ImageFormat format;
+
+    private final int width, height;
+
+    // stream timestamp of the keyframe
+    private final int timestamp;
+
+    private final long createdTime;
+
+    Thumbnail(byte[] data, ImageFormat format, int width, int height, int timestamp) {
+        this.data = data;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.timestamp = timestamp;
+        this.createdTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Encoded image; shared, callers must not modify it.
+     *
+     * @return image bytes
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public ImageFormat getFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTimestamp() {
+        return timestamp;
+    }
+
+    public long getCreatedTime() {
+        return createdTime;
+    }
+
+}
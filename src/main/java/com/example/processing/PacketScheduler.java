@@ -0,0 +1,222 @@
+package com.example.processing;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs stream processing on a fixed set of worker threads instead of one parked thread per stream. Each registered
+ * {@link WorkSource} is pinned to a single worker for its lifetime, which keeps its packets in order and its state warm in
+ * that core's cache. A source is queued on its worker when it signals new work and is drained in batches; a source with
+ * work left over goes to the back of the queue so busy streams cannot starve quiet ones. Alternatively each source can be
+ * given its own virtual thread.
+ *
+ * @author Paul Gregoire
+ */
+public class PacketScheduler {
+
+    private static Logger log = LoggerFactory.getLogger(PacketScheduler.class);
+
+    // how long an idle worker parks before re-checking its queue
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    public enum Mode {
+        /** fixed pool of platform workers, about one per core */
+        WORKERS,
+        /** a virtual thread per source */
+        VIRTUAL;
+
+        public static Mode of(String value, Mode defaultMode) {
+            return value != null && "virtual".equalsIgnoreCase(value.trim()) ? VIRTUAL : defaultMode;
+        }
+    }
+
+    private final Mode mode;
+
+    private final int batchSize;
+
+    private final Worker[] workers;
+
+    private volatile boolean running = true;
+
+    /**
+     * Creates and starts a scheduler.
+     *
+     * @param mode threading mode
+     * @param workerCount number of platform workers, 0 or less for one per available processor
+     * @param batchSize packets drained from a source before moving to the next one
+     */
+    public PacketScheduler(Mode mode, int workerCount, int batchSize) {
+        this.mode = mode;
+        this.batchSize = batchSize;
+        if (mode == Mode.WORKERS) {
+            int count = workerCount > 0 ? workerCount : Runtime.getRuntime().availableProcessors();
+            workers = new Worker[count];
+            for (int i = 0; i < count; i++) {
+                workers[i] = new Worker();
+                Thread.ofPlatform().daemon().name("packet-worker-" + i).start(workers[i]);
+            }
+        } else {
+            workers = new Worker[0];
+        }
+        log.info("Packet scheduler started - mode: {} workers: {} batch: {}", mode, workers.length, batchSize);
+    }
+
+    /**
+     * Registers a source.
+     *
+     * @param source work source
+     * @return registration used to signal new work and to unregister
+     */
+    public Registration register(WorkSource source) {
+        Worker worker;
+        if (mode == Mode.VIRTUAL) {
+            // dedicated worker with a single source
+            worker = new Worker();
+            Thread.ofVirtual().name("packet-vworker").start(worker);
+        } else {
+            // least loaded worker, the source stays with it from here on
+            worker = workers[0];
+            for (int i = 1; i < workers.length; i++) {
+                if (workers[i].sourceCount.get() < worker.sourceCount.get()) {
+                    worker = workers[i];
+                }
+            }
+        }
+        worker.sourceCount.incrementAndGet();
+        Registration registration = new Registration(source, worker);
+        // pick up anything queued before registration
+        registration.signal();
+        return registration;
+    }
+
+    public void shutdown() {
+        running = false;
+        for (Worker worker : workers) {
+            worker.stop();
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Handle a source uses to announce work; cheap to call on every packet.
+     */
+    public final class Registration {
+
+        private final WorkSource source;
+
+        private final Worker worker;
+
+        // true while queued on, or being drained by, the worker
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private volatile boolean cancelled;
+
+        Registration(WorkSource source, Worker worker) {
+            this.source = source;
+            this.worker = worker;
+        }
+
+        /**
+         * Queues the source on its worker unless it is already queued.
+         */
+        public void signal() {
+            if (!cancelled && !scheduled.get() && scheduled.compareAndSet(false, true)) {
+                worker.enqueue(this);
+            }
+        }
+
+        /**
+         * Unregisters the source; a drain in progress completes normally.
+         */
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                worker.sourceCount.decrementAndGet();
+                if (mode == Mode.VIRTUAL) {
+                    worker.stop();
+                }
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+    }
+
+    private final class Worker implements Runnable {
+
+        private final ConcurrentLinkedQueue<Registration> ready = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger sourceCount = new AtomicInteger();
+
+        private volatile Thread thread;
+
+        private volatile boolean parked;
+
+        private volatile boolean stopped;
+
+        void enqueue(Registration registration) {
+            ready.offer(registration);
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        void stop() {
+            stopped = true;
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            while (running && !stopped) {
+                Registration registration = ready.poll();
+                if (registration == null) {
+                    parked = true;
+                    // re-check after advertising so a concurrent enqueue is not missed
+                    if (ready.isEmpty()) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    parked = false;
+                    continue;
+                }
+                if (registration.cancelled) {
+                    continue;
+                }
+                try {
+                    registration.source.drain(batchSize);
+                } catch (Throwable t) {
+                    log.warn("Exception draining {}", registration.source, t);
+                }
+                if (registration.source.hasWork()) {
+                    // back of the line for fairness
+                    ready.offer(registration);
+                } else {
+                    registration.scheduled.set(false);
+                    // work may have arrived between the check and the flag reset
+                    if (registration.source.hasWork() && registration.scheduled.compareAndSet(false, true)) {
+                        ready.offer(registration);
+                    }
+                }
+            }
+            ready.clear();
+        }
+
+    }
+
+}
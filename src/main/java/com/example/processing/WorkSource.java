@@ -0,0 +1,25 @@
+package com.example.processing;
+
+/**
+ * Something with queued work a {@link PacketScheduler} worker can drain, such as a stream's packet queue.
+ *
+ * @author Paul Gregoire
+ */
+public interface WorkSource {
+
+    /**
+     * Processes up to maxBatch items. Only ever called from one thread at a time.
+     *
+     * @param maxBatch upper bound on items processed in this call
+     * @return number of items processed
+     */
+    int drain(int maxBatch);
+
+    /**
+     * Whether there is queued work left.
+     *
+     * @return true if drain would process something
+     */
+    boolean hasWork();
+
+}
@@ -0,0 +1,44 @@
+package com.example.record;
+
+/**
+ * Where to start reading a recording: a record in a segment and its timestamp.
+ *
+ * @author Paul Gregoire
+ */
+public final class RecordPosition {
+
+    private final Segment segment;
+
+    private final int position;
+
+    private final int timestamp;
+
+    RecordPosition(Segment segment, int position, int timestamp) {
+        this.segment = segment;
+        this.position = position;
+        this.timestamp = timestamp;
+    }
+
+    public Segment getSegment() {
+        return segment;
+    }
+
+    /**
+     * Record position in the segment, see {@link SegmentReader#seek(int)}.
+     *
+     * @return position
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    public int getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordPosition [segment=" + segment.getNumber() + ", position=" + position + ", timestamp=" + timestamp + "]";
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.example.record;
+
+import java.nio.file.Paths;
+
+import com.example.config.PluginConfig;
+
+/**
+ * Immutable settings for the segment recorder.
+ *
+ * @author Paul Gregoire
+ */
+public final class RecordSettings {
+
+    public static final RecordSettings DEFAULT = new RecordSettings(
+            Paths.get(System.getProperty("java.io.tmpdir", "/tmp"), "recordings").toString(), 64 * 1024 * 1024, 1000, 0, 0L);
+
+    // root directory, each stream records into <directory>/<scope path>/<stream name>
+    private final String directory;
+
+    // size of each memory-mapped segment file
+    private final int segmentBytes;
+
+    // time between index samples besides keyframes
+    private final int indexIntervalMs;
+
+    // sealed segments kept per stream, 0 for no limit
+    private final int retentionSegments;
+
+    // age after which sealed segments are deleted, 0 for no limit
+    private final long retentionMs;
+
+    public RecordSettings(String directory, int segmentBytes, int indexIntervalMs, int retentionSegments, long retentionMs) {
+        this.directory = directory;
+        this.segmentBytes = Math.max(64 * 1024, segmentBytes);
+        this.indexIntervalMs = Math.max(1, indexIntervalMs);
+        this.retentionSegments = retentionSegments;
+        this.retentionMs = retentionMs;
+    }
+
+    /**
+     * Reads the record.* entries, falling back to the defaults.
+     *
+     * @param config plugin configuration
+     * @return settings
+     */
+    public static RecordSettings from(PluginConfig config) {
+        return new RecordSettings(config.getString("record.dir", DEFAULT.directory), config.getInt("record.segment.bytes", DEFAULT.segmentBytes),
+                config.getInt("record.index.interval.ms", DEFAULT.indexIntervalMs),
+                config.getInt("record.retention.segments", DEFAULT.retentionSegments),
+                config.getLong("record.retention.seconds", 0L) * 1000L);
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public int getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    public int getIndexIntervalMs() {
+        return indexIntervalMs;
+    }
+
+    public int getRetentionSegments() {
+        return retentionSegments;
+    }
+
+    public long getRetentionMs() {
+        return retentionMs;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordSettings [directory=" + directory + ", segmentBytes=" + segmentBytes + ", indexIntervalMs=" + indexIntervalMs
+                + ", retentionSegments=" + retentionSegments + ", retentionMs=" + retentionMs + "]";
+    }
+
+}
@@ -0,0 +1,203 @@
+package com.example.record;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.red5.server.net.rtmp.message.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.buffer.PacketFlags;
+
+/**
+ * Ordered segments of one recorded stream, either a live view taken from a {@link StreamRecorder} or loaded from disk.
+ * {@link #locate(int)} finds the segment by binary search over the first timestamps and the record within it by the
+ * segment index, so a seek costs O(log segments + log entries) without touching the segment data.
+ *
+ * @author Paul Gregoire
+ */
+public final class Recording {
+
+    private static Logger log = LoggerFactory.getLogger(Recording.class);
+
+    private final Path directory;
+
+    // in segment number order, which is timestamp order
+    private final List<Segment> segments;
+
+    Recording(Path directory, List<Segment> segments) {
+        this.directory = directory;
+        this.segments = Collections.unmodifiableList(segments);
+    }
+
+    /**
+     * Loads a recording directory. Segments without an index file, i.e. the one being written when the recorder stopped
+     * abnormally, are scanned to rebuild it.
+     *
+     * @param directory directory holding segment-*.seg files
+     * @return recording, empty if there are no segments
+     * @throws IOException if the directory can't be listed
+     */
+    public static Recording open(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*" + SegmentFormat.SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.comparingInt(path -> SegmentFormat.segmentNumber(path.getFileName().toString())));
+        List<Segment> segments = new ArrayList<>(files.size());
+        for (Path path : files) {
+            int number = SegmentFormat.segmentNumber(path.getFileName().toString());
+            if (number < 0) {
+                continue;
+            }
+            try {
+                MappedByteBuffer buffer = SegmentReader.map(path);
+                int end = SegmentReader.dataEnd(buffer);
+                Path indexPath = Segment.indexPath(path);
+                long modified = Files.getLastModifiedTime(path).toMillis();
+                if (Files.exists(indexPath)) {
+                    segments.add(new Segment(number, path, SegmentIndex.read(indexPath), end, modified));
+                } else {
+                    Segment segment = new Segment(number, path, new SegmentIndex(), end, modified);
+                    rebuildIndex(segment, RecordSettings.DEFAULT.getIndexIntervalMs());
+                    segments.add(segment);
+                }
+            } catch (IOException e) {
+                log.warn("Skipping unreadable segment {}: {}", path, e.getMessage());
+            }
+        }
+        return new Recording(directory, segments);
+    }
+
+    private static void rebuildIndex(Segment segment, int intervalMs) throws IOException {
+        try (SegmentReader reader = SegmentReader.open(segment)) {
+            SegmentIndex index = segment.getIndex();
+            int lastIndexed = Integer.MIN_VALUE;
+            while (reader.next()) {
+                int timestamp = reader.getTimestamp();
+                boolean keyframe = reader.getDataType() == Constants.TYPE_VIDEO_DATA && PacketFlags.isKeyframe(reader.getFlags());
+                if (timestamp >= lastIndexed && (keyframe || lastIndexed == Integer.MIN_VALUE || timestamp - lastIndexed >= intervalMs)) {
+                    index.add(timestamp, reader.getRecordPosition(), keyframe);
+                    lastIndexed = timestamp;
+                }
+            }
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    public boolean isEmpty() {
+        return segments.isEmpty() || firstTimestamp() < 0;
+    }
+
+    /**
+     * First recorded timestamp.
+     *
+     * @return timestamp or -1 if nothing is recorded
+     */
+    public int firstTimestamp() {
+        for (Segment segment : segments) {
+            if (segment.getIndex().size() > 0) {
+                return segment.getIndex().firstTimestamp();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Last indexed timestamp; records after it up to the next index interval may follow.
+     *
+     * @return timestamp or -1 if nothing is recorded
+     */
+    public int lastTimestamp() {
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            SegmentIndex index = segments.get(i).getIndex();
+            if (index.size() > 0) {
+                return index.lastTimestamp();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds where to start reading to play from a timestamp: the last video keyframe at or before it, looking back into
+     * earlier segments if needed, or for streams without video the last index entry at or before it. Timestamps before
+     * the recording get its {@link #start()}.
+     *
+     * @param timestamp stream timestamp
+     * @return position or null if nothing is recorded
+     */
+    public RecordPosition locate(int timestamp) {
+        int lo = 0, hi = segments.size() - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int first = segments.get(mid).getIndex().firstTimestamp();
+            // only the newest segment can be without entries, treat it as later than anything
+            if (first >= 0 && first <= timestamp) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (found < 0) {
+            return start();
+        }
+        for (int i = found; i >= 0; i--) {
+            Segment segment = segments.get(i);
+            int entry = segment.getIndex().floorKeyframe(timestamp);
+            if (entry >= 0) {
+                return position(segment, entry);
+            }
+        }
+        Segment segment = segments.get(found);
+        return position(segment, segment.getIndex().floor(timestamp));
+    }
+
+    /**
+     * Position of the first video keyframe, or of the first record for streams without video keyframes.
+     *
+     * @return position or null if nothing is recorded
+     */
+    public RecordPosition start() {
+        for (Segment segment : segments) {
+            SegmentIndex index = segment.getIndex();
+            for (int entry = 0, n = index.size(); entry < n; entry++) {
+                if (index.isKeyframe(entry)) {
+                    return position(segment, entry);
+                }
+            }
+        }
+        for (Segment segment : segments) {
+            if (segment.getIndex().size() > 0) {
+                return position(segment, 0);
+            }
+        }
+        return null;
+    }
+
+    private static RecordPosition position(Segment segment, int entry) {
+        SegmentIndex index = segment.getIndex();
+        return new RecordPosition(segment, index.getPosition(entry), index.getTimestamp(entry));
+    }
+
+    @Override
+    public String toString() {
+        return "Recording [directory=" + directory + ", segments=" + segments.size() + ", first=" + firstTimestamp() + ", last=" + lastTimestamp()
+                + "]";
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.example.record;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.red5.server.api.scope.IScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.StreamKey;
+
+/**
+ * Node-wide set of {@link StreamRecorder}s. Each stream records into its own directory, the scope path and stream name
+ * under the configured root, so a recording can be opened again with {@link Recording#open(Path)} after the stream ends.
+ *
+ * @author Paul Gregoire
+ */
+public class RecordingManager {
+
+    private static Logger log = LoggerFactory.getLogger(RecordingManager.class);
+
+    private final ConcurrentHashMap<StreamKey, StreamRecorder> recorders = new ConcurrentHashMap<>();
+
+    // read when a recorder is created, a reload applies to streams published afterwards
+    private volatile RecordSettings settings;
+
+    public RecordingManager(RecordSettings settings) {
+        this.settings = settings;
+    }
+
+    public void setSettings(RecordSettings settings) {
+        this.settings = settings;
+    }
+
+    public RecordSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Creates the recorder for a stream; add the returned consumer to the stream's listener.
+     *
+     * @param scope scope
+     * @param name stream name
+     * @return recorder
+     */
+    public StreamRecorder register(IScope scope, String name) {
+        StreamKey key = new StreamKey(scope, name);
+        return recorders.computeIfAbsent(key, k -> {
+            RecordSettings current = settings;
+            StreamRecorder recorder = new StreamRecorder(k, directory(current, scope, name), current);
+            recorder.start();
+            log.debug("Recording {} into {}", k, recorder.getDirectory());
+            return recorder;
+        });
+    }
+
+    public void unregister(IScope scope, String name) {
+        StreamRecorder recorder = recorders.remove(new StreamKey(scope, name));
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+
+    public StreamRecorder get(IScope scope, String name) {
+        return recorders.get(new StreamKey(scope, name));
+    }
+
+    /**
+     * Returns the recording of a stream: the live view while it records, otherwise what is on disk.
+     *
+     * @param scope scope
+     * @param name stream name
+     * @return recording, possibly empty
+     * @throws IOException if the directory can't be read
+     */
+    public Recording getRecording(IScope scope, String name) throws IOException {
+        StreamRecorder recorder = get(scope, name);
+        if (recorder != null) {
+            return recorder.getRecording();
+        }
+        Path directory = directory(settings, scope, name);
+        return directory.toFile().isDirectory() ? Recording.open(directory) : new Recording(directory, List.of());
+    }
+
+    /**
+     * Directory a stream records into.
+     *
+     * @param settings settings
+     * @param scope scope
+     * @param name stream name
+     * @return directory
+     */
+    static Path directory(RecordSettings settings, IScope scope, String name) {
+        String path = scope.getContextPath();
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        return Paths.get(settings.getDirectory(), path, name);
+    }
+
+    public void clear() {
+        recorders.keySet().forEach(key -> {
+            StreamRecorder recorder = recorders.remove(key);
+            if (recorder != null) {
+                recorder.close();
+            }
+        });
+    }
+
+    public int size() {
+        return recorders.size();
+    }
+
+    @Override
+    public String toString() {
+        return "RecordingManager [streams=" + recorders.size() + ", " + settings + "]";
+    }
+
+}
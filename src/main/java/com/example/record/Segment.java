@@ -0,0 +1,93 @@
+package com.example.record;
+
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * A segment file with its index. While being recorded the segment holds its writable mapping and publishes the end of
+ * the written records after each one, so readers can follow it live; once sealed the mapping is dropped and the data end
+ * is fixed.
+ *
+ * @author Paul Gregoire
+ */
+public final class Segment {
+
+    private final int number;
+
+    private final Path path;
+
+    private final SegmentIndex index;
+
+    // writable mapping, recording thread only and null once sealed
+    MappedByteBuffer buffer;
+
+    // end of the complete records
+    private volatile int committed;
+
+    private volatile long sealedAt;
+
+    Segment(int number, Path path, SegmentIndex index, int committed, long sealedAt) {
+        this.number = number;
+        this.path = path;
+        this.index = index;
+        this.committed = committed;
+        this.sealedAt = sealedAt;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Index file written next to the segment when it is sealed.
+     *
+     * @return index path
+     */
+    public Path getIndexPath() {
+        return indexPath(path);
+    }
+
+    public SegmentIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * End of the last complete record; records before it may be read.
+     *
+     * @return position in the file
+     */
+    public int getCommitted() {
+        return committed;
+    }
+
+    void setCommitted(int committed) {
+        this.committed = committed;
+    }
+
+    public boolean isSealed() {
+        return sealedAt > 0L;
+    }
+
+    public long getSealedAt() {
+        return sealedAt;
+    }
+
+    void setSealedAt(long sealedAt) {
+        this.sealedAt = sealedAt;
+    }
+
+    static Path indexPath(Path segmentPath) {
+        String name = segmentPath.getFileName().toString();
+        return segmentPath.resolveSibling(name.substring(0, name.length() - SegmentFormat.SEGMENT_SUFFIX.length()) + SegmentFormat.INDEX_SUFFIX);
+    }
+
+    @Override
+    public String toString() {
+        return "Segment [number=" + number + ", committed=" + committed + ", sealed=" + isSealed() + ", " + index + "]";
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.example.record;
+
+/**
+ * Layout of a segment file. A 16 byte header (magic, version, segment number and the end of the written data, set when
+ * the segment is sealed) is followed by records of
+ * <code>[int payload length][byte data type][int timestamp][byte flags][payload]</code>, big-endian. The file is sized up
+ * front, so an unsealed segment, e.g. after a crash, ends at the first record with a data type of zero.
+ *
+ * @author Paul Gregoire
+ */
+final class SegmentFormat {
+
+    static final int MAGIC = 0x52355347; // R5SG
+
+    static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 16;
+
+    // offset of the data end in the header
+    static final int END_OFFSET = 12;
+
+    static final int RECORD_HEADER_BYTES = 10;
+
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    static final String INDEX_SUFFIX = ".idx";
+
+    private SegmentFormat() {
+    }
+
+    static String segmentName(int number) {
+        return String.format("segment-%010d", number);
+    }
+
+    /**
+     * Parses the number out of a segment file name.
+     *
+     * @param fileName file name
+     * @return number or -1 if not a segment file
+     */
+    static int segmentNumber(String fileName) {
+        if (!fileName.startsWith("segment-") || !fileName.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(fileName.substring(8, fileName.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+package com.example.record;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Timestamp index of one segment: every video keyframe plus a sample at least every index interval, each stored as a
+ * timestamp and the record's position in the segment. Entries are appended in timestamp order by the single recording
+ * thread and found with a binary search. Readers may search while the segment is still being written: the arrays are
+ * replaced rather than resized in place and the entry count is published last, so a reader sees a consistent prefix.
+ *
+ * @author Paul Gregoire
+ */
+public final class SegmentIndex {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    // timestamp and position in the segment, packed into one long
+    private volatile long[] entries;
+
+    // keyframe marks by entry, one bit each
+    private volatile long[] keyframes;
+
+    private volatile int size;
+
+    public SegmentIndex() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private SegmentIndex(int capacity) {
+        entries = new long[capacity];
+        keyframes = new long[(capacity + 63) >>> 6];
+    }
+
+    /**
+     * Adds an entry; timestamps must not go backwards. Recording thread only.
+     *
+     * @param timestamp record timestamp
+     * @param position record position in the segment
+     * @param keyframe whether the record is a video keyframe
+     */
+    void add(int timestamp, int position, boolean keyframe) {
+        int n = size;
+        long[] e = entries;
+        long[] k = keyframes;
+        if (n == e.length) {
+            e = Arrays.copyOf(e, n << 1);
+            k = Arrays.copyOf(k, (e.length + 63) >>> 6);
+        }
+        e[n] = pack(timestamp, position);
+        if (keyframe) {
+            k[n >>> 6] |= 1L << n;
+        }
+        entries = e;
+        keyframes = k;
+        size = n + 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getTimestamp(int entry) {
+        return (int) (entries[entry] >> 32);
+    }
+
+    public int getPosition(int entry) {
+        return (int) entries[entry];
+    }
+
+    public boolean isKeyframe(int entry) {
+        return (keyframes[entry >>> 6] & (1L << entry)) != 0;
+    }
+
+    /**
+     * First indexed timestamp.
+     *
+     * @return timestamp or -1 if empty
+     */
+    public int firstTimestamp() {
+        return size > 0 ? getTimestamp(0) : -1;
+    }
+
+    /**
+     * Last indexed timestamp.
+     *
+     * @return timestamp or -1 if empty
+     */
+    public int lastTimestamp() {
+        int n = size;
+        return n > 0 ? getTimestamp(n - 1) : -1;
+    }
+
+    /**
+     * Returns the last entry at or before the timestamp.
+     *
+     * @param timestamp timestamp
+     * @return entry or -1 if every entry is later
+     */
+    public int floor(int timestamp) {
+        int n = size;
+        long[] e = entries;
+        int lo = 0, hi = n - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if ((int) (e[mid] >> 32) <= timestamp) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the last keyframe entry at or before the timestamp. Keyframes come every GOP, so the walk back from the
+     * floor entry is bounded by the samples per GOP.
+     *
+     * @param timestamp timestamp
+     * @return entry or -1 if there is no earlier keyframe in this segment
+     */
+    public int floorKeyframe(int timestamp) {
+        for (int entry = floor(timestamp); entry >= 0; entry--) {
+            if (isKeyframe(entry)) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the index next to its segment as a count followed by the entries and keyframe marks.
+     *
+     * @param path index file
+     * @throws IOException on write failure
+     */
+    void write(Path path) throws IOException {
+        int n = size;
+        int words = (n + 63) >>> 6;
+        ByteBuffer buf = ByteBuffer.allocate(4 + n * 8 + words * 8);
+        buf.putInt(n);
+        for (int i = 0; i < n; i++) {
+            buf.putLong(entries[i]);
+        }
+        for (int i = 0; i < words; i++) {
+            buf.putLong(keyframes[i]);
+        }
+        buf.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #write(Path)}.
+     *
+     * @param path index file
+     * @return index
+     * @throws IOException on read failure or a truncated file
+     */
+    public static SegmentIndex read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate((int) channel.size());
+            while (buf.hasRemaining() && channel.read(buf) >= 0) {
+            }
+            buf.flip();
+            int n = buf.getInt();
+            int words = (n + 63) >>> 6;
+            if (n < 0 || buf.remaining() < n * 8 + words * 8) {
+                throw new IOException("Truncated index: " + path);
+            }
+            SegmentIndex index = new SegmentIndex(Math.max(n, 1));
+            for (int i = 0; i < n; i++) {
+                index.entries[i] = buf.getLong();
+            }
+            for (int i = 0; i < words; i++) {
+                index.keyframes[i] = buf.getLong();
+            }
+            index.size = n;
+            return index;
+        }
+    }
+
+    private static long pack(int timestamp, int position) {
+        return ((long) timestamp << 32) | (position & 0xffffffffL);
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentIndex [size=" + size + ", first=" + firstTimestamp() + ", last=" + lastTimestamp() + "]";
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.example.record;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Cursor over the records of one segment through a read-only mapping. Payloads are returned as slices of the mapping, so
+ * reading does not copy; a slice stays valid while the reader is reachable. A reader of a segment that is still being
+ * recorded sees the records committed when it was opened and picks up later ones after {@link #refresh()}.
+ *
+ * @author Paul Gregoire
+ */
+public final class SegmentReader implements Closeable {
+
+    private final Segment segment;
+
+    private MappedByteBuffer buffer;
+
+    // readable end, grows on refresh while the segment is recorded
+    private int limit;
+
+    private int position = SegmentFormat.HEADER_BYTES;
+
+    // current record
+    private int recordPosition = -1;
+
+    private byte dataType;
+
+    private int timestamp;
+
+    private int flags;
+
+    private ByteBuffer payload;
+
+    private SegmentReader(Segment segment, MappedByteBuffer buffer, int limit) {
+        this.segment = segment;
+        this.buffer = buffer;
+        this.limit = limit;
+    }
+
+    /**
+     * Opens a reader at the first record.
+     *
+     * @param segment segment, live or sealed
+     * @return reader
+     * @throws IOException if the file can't be mapped or isn't a segment
+     */
+    public static SegmentReader open(Segment segment) throws IOException {
+        MappedByteBuffer buffer = map(segment.getPath());
+        int limit = segment.isSealed() || segment.getCommitted() > 0 ? segment.getCommitted() : dataEnd(buffer);
+        return new SegmentReader(segment, buffer, Math.min(limit, buffer.capacity()));
+    }
+
+    static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < SegmentFormat.HEADER_BYTES || buffer.getInt(0) != SegmentFormat.MAGIC) {
+                throw new IOException("Not a segment file: " + path);
+            }
+            if (buffer.getInt(4) != SegmentFormat.VERSION) {
+                throw new IOException("Unsupported segment version " + buffer.getInt(4) + ": " + path);
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * End of the data in a mapped segment: the sealed end from the header, or for a segment that was never sealed the
+     * first record that isn't complete or has no data type.
+     *
+     * @param buffer mapping
+     * @return end position
+     */
+    static int dataEnd(ByteBuffer buffer) {
+        int end = buffer.getInt(SegmentFormat.END_OFFSET);
+        if (end >= SegmentFormat.HEADER_BYTES && end <= buffer.capacity()) {
+            return end;
+        }
+        int pos = SegmentFormat.HEADER_BYTES;
+        while (pos + SegmentFormat.RECORD_HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(pos);
+            if (length < 0 || buffer.get(pos + 4) == 0 || pos + SegmentFormat.RECORD_HEADER_BYTES + length > buffer.capacity()) {
+                break;
+            }
+            pos += SegmentFormat.RECORD_HEADER_BYTES + length;
+        }
+        return pos;
+    }
+
+    /**
+     * Moves to a record position, typically one from the segment index.
+     *
+     * @param position record position
+     */
+    public void seek(int position) {
+        if (position < SegmentFormat.HEADER_BYTES || position > limit) {
+            throw new IllegalArgumentException("Position out of range: " + position);
+        }
+        this.position = position;
+        recordPosition = -1;
+    }
+
+    /**
+     * Extends the readable range to the records committed since opening.
+     *
+     * @return true if there is more to read
+     */
+    public boolean refresh() {
+        limit = Math.max(limit, Math.min(segment.getCommitted(), buffer.capacity()));
+        return position < limit;
+    }
+
+    /**
+     * Advances to the next record.
+     *
+     * @return false at the end of the readable data
+     */
+    public boolean next() {
+        if (position + SegmentFormat.RECORD_HEADER_BYTES > limit) {
+            return false;
+        }
+        int length = buffer.getInt(position);
+        if (length < 0 || position + SegmentFormat.RECORD_HEADER_BYTES + length > limit) {
+            return false;
+        }
+        recordPosition = position;
+        dataType = buffer.get(position + 4);
+        timestamp = buffer.getInt(position + 5);
+        flags = buffer.get(position + 9) & 0xff;
+        int start = position + SegmentFormat.RECORD_HEADER_BYTES;
+        payload = buffer.slice(start, length);
+        position = start + length;
+        return true;
+    }
+
+    public Segment getSegment() {
+        return segment;
+    }
+
+    /**
+     * Position of the current record, usable with {@link #seek(int)}.
+     *
+     * @return position or -1 before the first {@link #next()}
+     */
+    public int getRecordPosition() {
+        return recordPosition;
+    }
+
+    public byte getDataType() {
+        return dataType;
+    }
+
+    public int getTimestamp() {
+        return timestamp;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    /**
+     * Payload of the current record, a read-only slice of the mapping.
+     *
+     * @return payload
+     */
+    public ByteBuffer getPayload() {
+        return payload;
+    }
+
+    @Override
+    public void close() {
+        // the mapping goes with the last reference
+        buffer = null;
+        payload = null;
+    }
+
+}
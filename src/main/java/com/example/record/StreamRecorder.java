@@ -0,0 +1,362 @@
+package com.example.record;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.red5.server.net.rtmp.message.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.MyRed5ProPlugin;
+import com.example.StreamKey;
+import com.example.buffer.PacketView;
+import com.example.listener.PacketConsumer;
+
+/**
+ * Records one stream into fixed-size memory-mapped segments. Fed as a read-only {@link PacketConsumer}, the payload is
+ * copied straight from the packet buffer into the mapping, and the delivery thread does nothing else that can block:
+ * the next segment is created, mapped and pre-faulted on the plugin executor while the current one fills, and sealing
+ * (sync, index file, retention) happens there as well. If the next segment isn't ready at rollover, packets are dropped
+ * until it is and, for streams with video, until the next keyframe so the recording stays decodable.
+ *
+ * @author Paul Gregoire
+ */
+public class StreamRecorder implements PacketConsumer {
+
+    private static Logger log = LoggerFactory.getLogger(StreamRecorder.class);
+
+    private static final int PAGE_SIZE = 4096;
+
+    private final StreamKey key;
+
+    private final Path directory;
+
+    private final RecordSettings settings;
+
+    // full segments, sealed or being sealed, oldest first
+    private final ConcurrentLinkedDeque<Segment> finished = new ConcurrentLinkedDeque<>();
+
+    // mapped ahead on the executor, taken at rollover
+    private final AtomicReference<Segment> next = new AtomicReference<>();
+
+    private final AtomicBoolean preparing = new AtomicBoolean();
+
+    private final LongAdder sealedCount = new LongAdder();
+
+    private final LongAdder deletedCount = new LongAdder();
+
+    // segment being written, read by readers for the live view
+    private volatile Segment current;
+
+    // last segment number used, executor only
+    private int lastNumber = -1;
+
+    // delivery thread state
+    private boolean hasVideo;
+
+    private boolean waitKeyframe;
+
+    private int lastIndexed = Integer.MIN_VALUE;
+
+    private volatile long written, writtenBytes, dropped;
+
+    private volatile boolean closed;
+
+    StreamRecorder(StreamKey key, Path directory, RecordSettings settings) {
+        this.key = key;
+        this.directory = directory;
+        this.settings = settings;
+    }
+
+    /**
+     * Maps the first segment in the background.
+     */
+    void start() {
+        prepare();
+    }
+
+    @Override
+    public void onPacket(PacketView view) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            byte dataType = view.getDataType();
+            boolean video = dataType == Constants.TYPE_VIDEO_DATA;
+            boolean keyframe = video && view.isKeyframe();
+            if (video) {
+                hasVideo = true;
+            }
+            int length = view.getLength();
+            int size = SegmentFormat.RECORD_HEADER_BYTES + length;
+            if (size > settings.getSegmentBytes() - SegmentFormat.HEADER_BYTES) {
+                log.debug("Packet of {} bytes doesn't fit a segment: {}", length, key);
+                dropped++;
+                return;
+            }
+            if (waitKeyframe) {
+                // sequence headers are kept, they are needed by whatever comes after the keyframe
+                if (hasVideo && !keyframe && !view.isConfig()) {
+                    dropped++;
+                    return;
+                }
+                waitKeyframe = false;
+            }
+            Segment segment = current;
+            MappedByteBuffer buf = segment != null ? segment.buffer : null;
+            if (buf == null || buf.remaining() < size) {
+                segment = roll(segment);
+                if (segment == null) {
+                    dropped++;
+                    waitKeyframe = hasVideo;
+                    return;
+                }
+                buf = segment.buffer;
+            }
+            int position = buf.position();
+            buf.putInt(length).put(dataType).putInt(view.getTimestamp()).put((byte) view.getFlags());
+            if (length > 0) {
+                view.copyTo(buf);
+            }
+            int timestamp = view.getTimestamp();
+            if (timestamp >= lastIndexed && (keyframe || lastIndexed == Integer.MIN_VALUE || timestamp - lastIndexed >= settings.getIndexIntervalMs())) {
+                segment.getIndex().add(timestamp, position, keyframe);
+                lastIndexed = timestamp;
+            }
+            segment.setCommitted(buf.position());
+            written++;
+            writtenBytes += length;
+            // start mapping the next segment once this one is half full
+            if (buf.remaining() < buf.capacity() >>> 1 && next.get() == null) {
+                prepare();
+            }
+        }
+    }
+
+    // swaps in the prepared segment, sealing the full one off-thread
+    private Segment roll(Segment full) {
+        Segment segment = next.getAndSet(null);
+        if (segment == null) {
+            prepare();
+            return null;
+        }
+        if (full != null) {
+            finished.add(full);
+        }
+        current = segment;
+        // index timestamps restart with each segment
+        lastIndexed = Integer.MIN_VALUE;
+        if (full != null && !submit(() -> seal(full))) {
+            seal(full);
+        }
+        prepare();
+        return segment;
+    }
+
+    private void prepare() {
+        if (next.get() == null && preparing.compareAndSet(false, true)) {
+            if (!submit(this::createNext)) {
+                preparing.set(false);
+            }
+        }
+    }
+
+    private void createNext() {
+        try {
+            if (closed || next.get() != null) {
+                return;
+            }
+            if (lastNumber < 0) {
+                Files.createDirectories(directory);
+                // continue after anything recorded by an earlier publish of the stream
+                lastNumber = highestNumber();
+            }
+            int number = ++lastNumber;
+            Path path = directory.resolve(SegmentFormat.segmentName(number) + SegmentFormat.SEGMENT_SUFFIX);
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, settings.getSegmentBytes());
+            }
+            buffer.putInt(SegmentFormat.MAGIC).putInt(SegmentFormat.VERSION).putInt(number).putInt(0);
+            // fault the pages in here rather than on the delivery thread
+            for (int i = PAGE_SIZE; i < buffer.capacity(); i += PAGE_SIZE) {
+                buffer.put(i, (byte) 0);
+            }
+            Segment segment = new Segment(number, path, new SegmentIndex(), SegmentFormat.HEADER_BYTES, 0L);
+            segment.buffer = buffer;
+            next.set(segment);
+            log.trace("Prepared segment {} for {}", number, key);
+            if (closed) {
+                discard(next.getAndSet(null));
+            }
+        } catch (Throwable t) {
+            log.warn("Exception preparing segment for {}", key, t);
+        } finally {
+            preparing.set(false);
+        }
+    }
+
+    private int highestNumber() throws IOException {
+        int highest = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*" + SegmentFormat.SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                highest = Math.max(highest, SegmentFormat.segmentNumber(path.getFileName().toString()));
+            }
+        }
+        return highest;
+    }
+
+    private void seal(Segment segment) {
+        try {
+            MappedByteBuffer buffer = segment.buffer;
+            segment.buffer = null;
+            if (buffer != null) {
+                buffer.putInt(SegmentFormat.END_OFFSET, segment.getCommitted());
+                buffer.force();
+            }
+            segment.getIndex().write(segment.getIndexPath());
+            segment.setSealedAt(System.currentTimeMillis());
+            sealedCount.increment();
+            log.debug("Sealed {} of {}", segment, key);
+        } catch (Throwable t) {
+            log.warn("Exception sealing segment {} of {}", segment.getNumber(), key, t);
+        }
+        applyRetention();
+    }
+
+    private void applyRetention() {
+        int maxSegments = settings.getRetentionSegments();
+        long maxAge = settings.getRetentionMs();
+        long now = System.currentTimeMillis();
+        Segment oldest;
+        while ((oldest = finished.peekFirst()) != null && oldest.isSealed()) {
+            if ((maxSegments > 0 && finished.size() > maxSegments) || (maxAge > 0 && now - oldest.getSealedAt() > maxAge)) {
+                if (finished.remove(oldest)) {
+                    delete(oldest);
+                }
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void delete(Segment segment) {
+        try {
+            Files.deleteIfExists(segment.getPath());
+            Files.deleteIfExists(segment.getIndexPath());
+            deletedCount.increment();
+        } catch (IOException e) {
+            log.warn("Failed to delete segment {}: {}", segment.getPath(), e.getMessage());
+        }
+    }
+
+    // a prepared segment that was never written to
+    private void discard(Segment segment) {
+        if (segment != null) {
+            segment.buffer = null;
+            try {
+                Files.deleteIfExists(segment.getPath());
+            } catch (IOException e) {
+                log.debug("Failed to delete unused segment {}: {}", segment.getPath(), e.getMessage());
+            }
+        }
+    }
+
+    private static boolean submit(Runnable task) {
+        return MyRed5ProPlugin.submit(task) != null;
+    }
+
+    /**
+     * Stops recording; the current segment is sealed and an unused prepared one removed, both in the background.
+     */
+    public void close() {
+        Segment segment;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            segment = current;
+        }
+        Segment unused = next.getAndSet(null);
+        if (segment != null) {
+            finished.add(segment);
+        }
+        Runnable finish = () -> {
+            if (segment != null) {
+                seal(segment);
+            }
+            discard(unused);
+        };
+        if (!submit(finish)) {
+            finish.run();
+        }
+        log.debug("Closed recorder: {}", this);
+    }
+
+    /**
+     * Live view of the recording: the sealed segments still retained plus the one being written.
+     *
+     * @return recording
+     */
+    public Recording getRecording() {
+        // current first: a rollover in between moves it into the finished segments rather than losing one
+        Segment segment = current;
+        List<Segment> segments = new ArrayList<>(finished);
+        if (segment != null && (segments.isEmpty() || segments.get(segments.size() - 1) != segment)) {
+            segments.add(segment);
+        }
+        return new Recording(directory, segments);
+    }
+
+    public StreamKey getKey() {
+        return key;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public long getWrittenCount() {
+        return written;
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    public long getSealedCount() {
+        return sealedCount.sum();
+    }
+
+    public long getDeletedCount() {
+        return deletedCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "StreamRecorder [key=" + key + ", written=" + written + ", bytes=" + writtenBytes + ", dropped=" + dropped + ", sealed="
+                + sealedCount.sum() + ", deleted=" + deletedCount.sum() + "]";
+    }
+
+}
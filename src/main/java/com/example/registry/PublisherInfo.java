@@ -0,0 +1,109 @@
+package com.example.registry;
+
+import org.red5.server.api.scope.IScope;
+
+/**
+ * Registry entry for an active publisher. Packet statistics are written by the single thread delivering the stream's
+ * packets and read by anyone.
+ *
+ * @author Paul Gregoire
+ */
+public final class PublisherInfo {
+
+    // bitrate averaging window
+    private static final long WINDOW_MS = 1000L;
+
+    private final IScope scope;
+
+    private final String name;
+
+    private final IScope applicationScope;
+
+    private final long startTime;
+
+    private volatile long lastPacketTime;
+
+    private volatile long totalBytes;
+
+    private volatile long bitrate;
+
+    // writer state for the current bitrate window
+    private long windowStart;
+
+    private long windowBytes;
+
+    PublisherInfo(IScope scope, String name, IScope applicationScope) {
+        this.scope = scope;
+        this.name = name;
+        this.applicationScope = applicationScope;
+        this.startTime = System.currentTimeMillis();
+        this.windowStart = startTime;
+    }
+
+    /**
+     * Records a received packet. Packet delivery thread only.
+     *
+     * @param size payload size in bytes
+     * @param now current time in milliseconds
+     */
+    public void onPacket(int size, long now) {
+        lastPacketTime = now;
+        totalBytes += size;
+        windowBytes += size;
+        long elapsed = now - windowStart;
+        if (elapsed >= WINDOW_MS) {
+            bitrate = windowBytes * 8000L / elapsed;
+            windowBytes = 0;
+            windowStart = now;
+        }
+    }
+
+    public IScope getScope() {
+        return scope;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public IScope getApplicationScope() {
+        return applicationScope;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getLastPacketTime() {
+        return lastPacketTime;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Bits per second over the last completed window.
+     *
+     * @return bitrate
+     */
+    public long getBitrate() {
+        return bitrate;
+    }
+
+    /**
+     * Path style identifier, built on demand for display only.
+     *
+     * @return scope name / stream name
+     */
+    public String getPath() {
+        return scope.getName() + "/" + name;
+    }
+
+    @Override
+    public String toString() {
+        return "PublisherInfo [path=" + getPath() + ", startTime=" + startTime + ", lastPacketTime=" + lastPacketTime + ", bitrate=" + bitrate
+                + "]";
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.example.registry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.scope.ScopeType;
+
+/**
+ * Thread-safe registry of active publishers. Entries are indexed by scope then stream name, so lookups need neither a key
+ * object nor a path string, and by application scope so per-application queries don't scan the whole node. Collections
+ * handed to callers are immutable snapshots.
+ *
+ * @author Paul Gregoire
+ */
+public class PublisherRegistry {
+
+    private final ConcurrentHashMap<IScope, ConcurrentHashMap<String, PublisherInfo>> byScope = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<IScope, Set<PublisherInfo>> byApplication = new ConcurrentHashMap<>();
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * Registers a publisher.
+     *
+     * @param scope scope the stream is published in
+     * @param name stream name
+     * @return the new entry, or null if the stream was already registered
+     */
+    public PublisherInfo add(IScope scope, String name) {
+        IScope applicationScope = applicationScopeOf(scope);
+        PublisherInfo info = new PublisherInfo(scope, name, applicationScope);
+        boolean[] added = new boolean[1];
+        // compute serializes with the empty map removal in remove
+        byScope.compute(scope, (s, streams) -> {
+            if (streams == null) {
+                streams = new ConcurrentHashMap<>();
+            }
+            added[0] = streams.putIfAbsent(name, info) == null;
+            return streams;
+        });
+        if (!added[0]) {
+            return null;
+        }
+        byApplication.computeIfAbsent(applicationScope, s -> ConcurrentHashMap.newKeySet()).add(info);
+        count.incrementAndGet();
+        return info;
+    }
+
+    /**
+     * Removes a publisher.
+     *
+     * @param scope scope
+     * @param name stream name
+     * @return removed entry or null if not registered
+     */
+    public PublisherInfo remove(IScope scope, String name) {
+        ConcurrentHashMap<String, PublisherInfo> streams = byScope.get(scope);
+        PublisherInfo info = streams != null ? streams.remove(name) : null;
+        if (info != null) {
+            count.decrementAndGet();
+            // drop empty per-scope maps atomically with respect to concurrent adds
+            byScope.computeIfPresent(scope, (s, map) -> map.isEmpty() ? null : map);
+            byApplication.computeIfPresent(info.getApplicationScope(), (s, set) -> {
+                set.remove(info);
+                return set.isEmpty() ? null : set;
+            });
+        }
+        return info;
+    }
+
+    public PublisherInfo get(IScope scope, String name) {
+        ConcurrentHashMap<String, PublisherInfo> streams = byScope.get(scope);
+        return streams != null ? streams.get(name) : null;
+    }
+
+    public boolean contains(IScope scope, String name) {
+        return get(scope, name) != null;
+    }
+
+    public int size() {
+        return count.get();
+    }
+
+    /**
+     * Number of publishers in the given application.
+     *
+     * @param applicationScope application scope
+     * @return count
+     */
+    public int size(IScope applicationScope) {
+        Set<PublisherInfo> set = byApplication.get(applicationScope);
+        return set != null ? set.size() : 0;
+    }
+
+    /**
+     * Immutable snapshot of every active publisher.
+     *
+     * @return entries
+     */
+    public List<PublisherInfo> snapshot() {
+        List<PublisherInfo> list = new ArrayList<>(count.get());
+        for (Map<String, PublisherInfo> streams : byScope.values()) {
+            list.addAll(streams.values());
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Immutable snapshot of the publishers in an application.
+     *
+     * @param applicationScope application scope
+     * @return entries
+     */
+    public List<PublisherInfo> snapshot(IScope applicationScope) {
+        Set<PublisherInfo> set = byApplication.get(applicationScope);
+        return set != null ? List.copyOf(set) : List.of();
+    }
+
+    public void clear() {
+        byScope.clear();
+        byApplication.clear();
+        count.set(0);
+    }
+
+    /**
+     * Walks up to the application scope; scopes above the application level map to themselves.
+     *
+     * @param scope scope
+     * @return application scope
+     */
+    public static IScope applicationScopeOf(IScope scope) {
+        IScope current = scope;
+        while (current != null && current.getType() != ScopeType.APPLICATION) {
+            current = current.getParent();
+        }
+        return current != null ? current : scope;
+    }
+
+}
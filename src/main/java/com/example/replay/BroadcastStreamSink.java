@@ -0,0 +1,116 @@
+package com.example.replay;
+
+import java.nio.ByteBuffer;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.server.api.IContext;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.BaseEvent;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.stream.ClientBroadcastStream;
+import org.red5.server.stream.IProviderService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.MyRed5ProPlugin;
+import com.red5pro.override.ProStream;
+
+/**
+ * Publishes a replay as a live broadcast stream in a scope, without a client connection. The stream comes from the
+ * scope's clientBroadcastStream prototype, which is a {@link ProStream} on Red5 Pro, and is registered with the provider
+ * service so it can be subscribed to like any other publish. When it is a ProStream the plugin attaches its listener as
+ * it does for client publishes, so the replay runs through the same ingest path.
+ *
+ * @author Paul Gregoire
+ */
+public class BroadcastStreamSink implements ReplaySink {
+
+    private static Logger log = LoggerFactory.getLogger(BroadcastStreamSink.class);
+
+    private final MyRed5ProPlugin plugin;
+
+    private final IScope scope;
+
+    private final String name;
+
+    private ClientBroadcastStream stream;
+
+    private IProviderService providerService;
+
+    /**
+     * @param plugin plugin to attach to the stream, or null to publish only
+     * @param scope scope to publish into
+     * @param name stream name
+     */
+    public BroadcastStreamSink(MyRed5ProPlugin plugin, IScope scope, String name) {
+        this.plugin = plugin;
+        this.scope = scope;
+        this.name = name;
+    }
+
+    @Override
+    public void open() throws Exception {
+        IContext context = scope.getContext();
+        providerService = (IProviderService) context.getBean(IProviderService.BEAN_NAME);
+        if (providerService.getLiveProviderInput(scope, name, false) != null) {
+            throw new IllegalStateException("Stream " + name + " is already published in " + scope.getName());
+        }
+        stream = (ClientBroadcastStream) context.getBean("clientBroadcastStream");
+        stream.setScope(scope);
+        stream.setName(name);
+        stream.setPublishedName(name);
+        stream.start();
+        stream.startPublishing();
+        if (!providerService.registerBroadcastStream(scope, name, stream)) {
+            stream.close();
+            throw new IllegalStateException("Could not register " + name + " in " + scope.getName());
+        }
+        if (plugin != null && stream instanceof ProStream) {
+            plugin.attachListener(scope, name, (ProStream) stream);
+        }
+        log.debug("Replay publishing {} in {}", name, scope.getName());
+    }
+
+    @Override
+    public void send(byte dataType, int timestamp, ByteBuffer payload) {
+        // events keep their data, the payload is only valid until the source moves on
+        IoBuffer data = IoBuffer.allocate(payload.remaining());
+        data.put(payload.duplicate());
+        data.flip();
+        BaseEvent event;
+        switch (dataType) {
+            case Constants.TYPE_AUDIO_DATA:
+                event = new AudioData(data);
+                break;
+            case Constants.TYPE_VIDEO_DATA:
+                event = new VideoData(data);
+                break;
+            default:
+                event = new Notify(data);
+                break;
+        }
+        event.setTimestamp(timestamp);
+        event.setSourceType(Constants.SOURCE_TYPE_LIVE);
+        stream.dispatchEvent(event);
+    }
+
+    @Override
+    public void close() {
+        ClientBroadcastStream current = stream;
+        if (current != null) {
+            stream = null;
+            providerService.unregisterBroadcastStream(scope, name);
+            // fires the stream's termination listeners, including the plugin's
+            current.close();
+            log.debug("Replay stopped publishing {} in {}", name, scope.getName());
+        }
+    }
+
+    public ClientBroadcastStream getStream() {
+        return stream;
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.example.replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import com.example.record.RecordPosition;
+import com.example.record.Recording;
+import com.example.record.Segment;
+import com.example.record.SegmentReader;
+
+/**
+ * Reads a {@link Recording} from a position through its segments in order. Payloads are slices of the segment mappings,
+ * so nothing is copied until the sink needs to.
+ *
+ * @author Paul Gregoire
+ */
+public class RecordingSource implements ReplaySource {
+
+    private final List<Segment> segments;
+
+    private final RecordPosition start;
+
+    private int segmentIndex;
+
+    private SegmentReader reader;
+
+    /**
+     * Creates a source starting at the keyframe at or before a timestamp.
+     *
+     * @param recording recording
+     * @param fromTimestamp stream timestamp to start at, or -1 for the beginning
+     * @throws IOException if nothing is recorded
+     */
+    public RecordingSource(Recording recording, int fromTimestamp) throws IOException {
+        this.segments = recording.getSegments();
+        this.start = fromTimestamp < 0 ? recording.start() : recording.locate(fromTimestamp);
+        if (start == null) {
+            throw new IOException("Nothing recorded in " + recording.getDirectory());
+        }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (reader == null) {
+            open();
+        }
+        while (!reader.next()) {
+            if (segmentIndex + 1 >= segments.size()) {
+                return false;
+            }
+            reader.close();
+            reader = SegmentReader.open(segments.get(++segmentIndex));
+        }
+        return true;
+    }
+
+    private void open() throws IOException {
+        segmentIndex = segments.indexOf(start.getSegment());
+        reader = SegmentReader.open(start.getSegment());
+        reader.seek(start.getPosition());
+    }
+
+    @Override
+    public byte getDataType() {
+        return reader.getDataType();
+    }
+
+    @Override
+    public int getTimestamp() {
+        return reader.getTimestamp();
+    }
+
+    @Override
+    public int getFlags() {
+        return reader.getFlags();
+    }
+
+    @Override
+    public ByteBuffer getPayload() {
+        return reader.getPayload();
+    }
+
+    @Override
+    public boolean rewind() throws IOException {
+        close();
+        open();
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+
+}
@@ -0,0 +1,188 @@
+package com.example.replay;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One replay: reads a {@link ReplaySource} and publishes to a {@link ReplaySink}, paced against the recorded timestamps.
+ * A replay holds no thread. Each run on the engine's reader pool sends the packets that are due, up to the batch size,
+ * and schedules the next run for when the following packet is due. At a speed of 0 the replay is unpaced and yields
+ * after every batch so replays sharing the pool progress together.
+ * <p>
+ * Timestamps are rebased to start at zero and keep increasing across loops; they are not scaled with the speed.
+ *
+ * @author Paul Gregoire
+ */
+public class Replay {
+
+    private static Logger log = LoggerFactory.getLogger(Replay.class);
+
+    public enum State {
+        PENDING, RUNNING, COMPLETED, STOPPED, FAILED
+    }
+
+    private final ReplayEngine engine;
+
+    private final String id;
+
+    private final ReplaySource source;
+
+    private final ReplaySink sink;
+
+    // multiple of real time, 0 for as fast as possible
+    private final double speed;
+
+    private final boolean loop;
+
+    private volatile State state = State.PENDING;
+
+    // pacing, reader thread only
+    private boolean pending;
+
+    private int firstTimestamp = Integer.MIN_VALUE;
+
+    private long startNanos;
+
+    private int offset, lastOut;
+
+    private volatile long packets, bytes, loops, maxLagNanos;
+
+    Replay(ReplayEngine engine, String id, ReplaySource source, ReplaySink sink, double speed, boolean loop) {
+        this.engine = engine;
+        this.id = id;
+        this.source = source;
+        this.sink = sink;
+        this.speed = Math.max(0d, speed);
+        this.loop = loop;
+    }
+
+    synchronized void open() throws Exception {
+        sink.open();
+        state = State.RUNNING;
+    }
+
+    /**
+     * Sends what is due and schedules the next run. Synchronized so a stop request can run it early to finish up.
+     */
+    synchronized void run() {
+        if (state != State.RUNNING) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            for (int budget = engine.getBatchSize(); budget > 0; budget--) {
+                if (!pending) {
+                    if (!source.next()) {
+                        if (loop && source.rewind()) {
+                            // carry on from just after the last packet sent
+                            offset = lastOut + 1;
+                            firstTimestamp = Integer.MIN_VALUE;
+                            loops++;
+                            continue;
+                        }
+                        finish(State.COMPLETED);
+                        return;
+                    }
+                    pending = true;
+                }
+                int timestamp = source.getTimestamp();
+                if (firstTimestamp == Integer.MIN_VALUE) {
+                    firstTimestamp = timestamp;
+                    startNanos = now;
+                }
+                long elapsed = timestamp - firstTimestamp;
+                if (speed > 0d && elapsed > 0) {
+                    long due = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(elapsed) / speed);
+                    if (due > now) {
+                        engine.schedule(this, due - now);
+                        return;
+                    }
+                    if (now - due > maxLagNanos) {
+                        maxLagNanos = now - due;
+                    }
+                }
+                ByteBuffer payload = source.getPayload();
+                lastOut = offset + (int) Math.max(0L, elapsed);
+                sink.send(source.getDataType(), lastOut, payload);
+                pending = false;
+                packets++;
+                bytes += payload.remaining();
+            }
+            engine.schedule(this, 0L);
+        } catch (Throwable t) {
+            log.warn("Exception in replay {}", id, t);
+            finish(State.FAILED);
+        }
+    }
+
+    /**
+     * Stops the replay; the sink is closed on the reader pool.
+     */
+    public void stop() {
+        if (state == State.RUNNING || state == State.PENDING) {
+            engine.stop(this);
+        }
+    }
+
+    synchronized void finish(State end) {
+        if (state == State.COMPLETED || state == State.STOPPED || state == State.FAILED) {
+            return;
+        }
+        state = end;
+        try {
+            sink.close();
+        } catch (Throwable t) {
+            log.warn("Exception closing replay sink {}", id, t);
+        }
+        source.close();
+        engine.finished(this);
+        log.debug("Replay {} ended: {}", id, this);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    public boolean isLoop() {
+        return loop;
+    }
+
+    public long getPacketCount() {
+        return packets;
+    }
+
+    public long getByteCount() {
+        return bytes;
+    }
+
+    public long getLoopCount() {
+        return loops;
+    }
+
+    /**
+     * Furthest a packet went out behind its paced time, i.e. how much the pool is falling behind.
+     *
+     * @return lag in milliseconds
+     */
+    public long getMaxLagMs() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLagNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "Replay [id=" + id + ", state=" + state + ", speed=" + speed + ", loop=" + loop + ", packets=" + packets + ", bytes=" + bytes
+                + ", loops=" + loops + ", maxLagMs=" + getMaxLagMs() + "]";
+    }
+
+}
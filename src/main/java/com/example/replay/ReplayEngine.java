@@ -0,0 +1,166 @@
+package com.example.replay;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.red5.server.api.scope.IScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.MyRed5ProPlugin;
+import com.example.record.Recording;
+
+/**
+ * Runs replays of recorded streams on a small shared pool of reader threads, for load testing and reproducing incidents
+ * without a network publisher. Replays are scheduled runs rather than threads, so the pool size bounds the threads
+ * whatever the number of replays; a replay that falls behind its pace shows it in {@link Replay#getMaxLagMs()}.
+ *
+ * @author Paul Gregoire
+ */
+public class ReplayEngine {
+
+    private static Logger log = LoggerFactory.getLogger(ReplayEngine.class);
+
+    private final MyRed5ProPlugin plugin;
+
+    private final ScheduledThreadPoolExecutor readers;
+
+    private final ConcurrentHashMap<String, Replay> replays = new ConcurrentHashMap<>();
+
+    private final LongAdder started = new LongAdder();
+
+    private final LongAdder ended = new LongAdder();
+
+    // packets sent per run at most
+    private volatile int batchSize;
+
+    /**
+     * @param plugin plugin to attach to replayed streams, or null
+     * @param threads reader threads
+     * @param batchSize packets a replay sends per run at most
+     */
+    public ReplayEngine(MyRed5ProPlugin plugin, int threads, int batchSize) {
+        this.plugin = plugin;
+        this.batchSize = Math.max(1, batchSize);
+        readers = new ScheduledThreadPoolExecutor(Math.max(1, threads), Thread.ofPlatform().daemon().name("replay-reader-", 0).factory());
+        readers.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Replays a recording as a live stream in a scope.
+     *
+     * @param recording recording to read
+     * @param fromTimestamp recorded timestamp to start at (from the keyframe before it), -1 for the beginning
+     * @param scope scope to publish into
+     * @param name stream name to publish as
+     * @param speed multiple of real time, 0 for as fast as possible
+     * @param loop start over at the end until stopped
+     * @return running replay
+     * @throws Exception if the recording is empty or the stream can't be published
+     */
+    public Replay start(Recording recording, int fromTimestamp, IScope scope, String name, double speed, boolean loop) throws Exception {
+        return start(new RecordingSource(recording, fromTimestamp), new BroadcastStreamSink(plugin, scope, name), scope.getName() + '/' + name,
+                speed, loop);
+    }
+
+    /**
+     * Replays any source into any sink.
+     *
+     * @param source packets to replay
+     * @param sink destination
+     * @param id unique name for the replay
+     * @param speed multiple of real time, 0 for as fast as possible
+     * @param loop start over at the end until stopped
+     * @return running replay
+     * @throws Exception if the sink can't be opened
+     */
+    public Replay start(ReplaySource source, ReplaySink sink, String id, double speed, boolean loop) throws Exception {
+        if (readers.isShutdown()) {
+            source.close();
+            throw new IllegalStateException("Replay engine is shut down");
+        }
+        Replay replay = new Replay(this, id, source, sink, speed, loop);
+        if (replays.putIfAbsent(id, replay) != null) {
+            source.close();
+            throw new IllegalStateException("Replay already running: " + id);
+        }
+        try {
+            replay.open();
+        } catch (Exception e) {
+            replays.remove(id, replay);
+            source.close();
+            throw e;
+        }
+        started.increment();
+        log.debug("Started replay {} at {}x", id, speed);
+        schedule(replay, 0L);
+        return replay;
+    }
+
+    void schedule(Replay replay, long delayNanos) {
+        try {
+            if (delayNanos <= 0L) {
+                readers.execute(replay::run);
+            } else {
+                readers.schedule(replay::run, delayNanos, TimeUnit.NANOSECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            replay.finish(Replay.State.STOPPED);
+        }
+    }
+
+    // wind down on a reader rather than in the caller, a send may be in progress
+    void stop(Replay replay) {
+        try {
+            readers.execute(() -> replay.finish(Replay.State.STOPPED));
+        } catch (RejectedExecutionException e) {
+            replay.finish(Replay.State.STOPPED);
+        }
+    }
+
+    void finished(Replay replay) {
+        if (replays.remove(replay.getId(), replay)) {
+            ended.increment();
+        }
+    }
+
+    public Replay get(String id) {
+        return replays.get(id);
+    }
+
+    public Collection<Replay> getReplays() {
+        return Collections.unmodifiableCollection(replays.values());
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public int size() {
+        return replays.size();
+    }
+
+    /**
+     * Stops every replay and the reader pool.
+     */
+    public void shutdown() {
+        replays.values().forEach(replay -> replay.finish(Replay.State.STOPPED));
+        readers.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return "ReplayEngine [active=" + replays.size() + ", started=" + started.sum() + ", ended=" + ended.sum() + ", threads="
+                + readers.getCorePoolSize() + "]";
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.example.replay;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Where a {@link Replay} publishes to. Calls come from one reader thread at a time.
+ *
+ * @author Paul Gregoire
+ */
+public interface ReplaySink {
+
+    /**
+     * Sets up the destination before the first packet.
+     *
+     * @throws Exception if it can't be set up
+     */
+    void open() throws Exception;
+
+    /**
+     * Publishes a packet. The payload belongs to the source and must be copied if kept.
+     *
+     * @param dataType packet data type
+     * @param timestamp timestamp in the replayed stream
+     * @param payload payload
+     */
+    void send(byte dataType, int timestamp, ByteBuffer payload);
+
+    void close();
+
+}
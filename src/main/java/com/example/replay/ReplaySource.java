@@ -0,0 +1,44 @@
+package com.example.replay;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Recorded packets in decode order, read by one {@link Replay} at a time.
+ *
+ * @author Paul Gregoire
+ */
+public interface ReplaySource extends AutoCloseable {
+
+    /**
+     * Advances to the next packet.
+     *
+     * @return false at the end of the source
+     * @throws Exception if reading fails
+     */
+    boolean next() throws Exception;
+
+    byte getDataType();
+
+    int getTimestamp();
+
+    int getFlags();
+
+    /**
+     * Payload of the current packet, valid until the next call to {@link #next()}.
+     *
+     * @return payload
+     */
+    ByteBuffer getPayload();
+
+    /**
+     * Goes back to where the source started, for looping.
+     *
+     * @return false if the source can't be rewound
+     * @throws Exception if reopening fails
+     */
+    boolean rewind() throws Exception;
+
+    @Override
+    void close();
+
+}
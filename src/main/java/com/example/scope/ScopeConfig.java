@@ -0,0 +1,72 @@
+package com.example.scope;
+
+import com.example.buffer.OverflowPolicy;
+import com.example.config.PluginConfig;
+import com.example.dump.DumpSettings;
+
+/**
+ * Configuration as seen by one scope: entries prefixed with <code>scope.&lt;path&gt;.</code>, where path is the scope's
+ * context path without the leading slash (e.g. <code>scope.live.queue.capacity</code> or
+ * <code>scope.live/room1.dump.enable</code>), override the plugin-wide ones. Built over the current snapshot, so it
+ * follows reloads.
+ *
+ * @author Paul Gregoire
+ */
+public final class ScopeConfig {
+
+    private final PluginConfig config;
+
+    private final String prefix;
+
+    ScopeConfig(PluginConfig config, String prefix) {
+        this.config = config;
+        this.prefix = prefix;
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = config.getString(prefix + key);
+        return value != null ? value : config.getString(key, defaultValue);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        return config.getInt(prefix + key, config.getInt(key, defaultValue));
+    }
+
+    public long getLong(String key, long defaultValue) {
+        return config.getLong(prefix + key, config.getLong(key, defaultValue));
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        return config.getBoolean(prefix + key, config.getBoolean(key, defaultValue));
+    }
+
+    public int getQueueCapacity() {
+        return config.getInt(prefix + "queue.capacity", config.getQueueCapacity());
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return OverflowPolicy.of(config.getString(prefix + "queue.overflow.policy"), config.getOverflowPolicy());
+    }
+
+    public long getDrainTimeoutMs() {
+        return config.getLong(prefix + "queue.drain.timeout.ms", config.getDrainTimeoutMs());
+    }
+
+    /**
+     * Dump settings if dumping is enabled for this scope; a scope may only toggle dumping, the settings themselves are
+     * plugin-wide.
+     *
+     * @return settings or null when disabled
+     */
+    public DumpSettings getDumpSettings() {
+        if (!config.getBoolean(prefix + "dump.enable", config.isDumpEnabled())) {
+            return null;
+        }
+        return config.getDumpSettings();
+    }
+
+    public PluginConfig getPluginConfig() {
+        return config;
+    }
+
+}
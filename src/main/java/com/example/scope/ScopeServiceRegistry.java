@@ -0,0 +1,97 @@
+package com.example.scope;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.red5.server.api.scope.IScope;
+
+import com.example.MyRed5ProPlugin;
+import com.example.listener.MyProStreamListener;
+import com.example.registry.PublisherRegistry;
+
+/**
+ * Lazily created {@link ScopeServices} per scope. Nothing is allocated for a scope until it sees its first publish, so
+ * idle applications and rooms cost nothing.
+ *
+ * @author Paul Gregoire
+ */
+public class ScopeServiceRegistry {
+
+    private final MyRed5ProPlugin plugin;
+
+    private final ConcurrentHashMap<IScope, ScopeServices> services = new ConcurrentHashMap<>();
+
+    public ScopeServiceRegistry(MyRed5ProPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Returns the services for a scope, creating them on first use.
+     *
+     * @param scope application or room scope
+     * @return services
+     */
+    public ScopeServices forScope(IScope scope) {
+        ScopeServices existing = services.get(scope);
+        return existing != null ? existing : services.computeIfAbsent(scope, s -> new ScopeServices(plugin, s));
+    }
+
+    /**
+     * Returns the services for a scope if it has any.
+     *
+     * @param scope scope
+     * @return services or null
+     */
+    public ScopeServices get(IScope scope) {
+        return services.get(scope);
+    }
+
+    /**
+     * Finds the listener of a publishing stream by its scope's context path, for callers that don't have the scope.
+     *
+     * @param contextPath scope context path, e.g. /live
+     * @param name stream name
+     * @return listener or null
+     */
+    public MyProStreamListener findStream(String contextPath, String name) {
+        for (ScopeServices scoped : services.values()) {
+            if (contextPath.equals(scoped.getScope().getContextPath())) {
+                return scoped.getStream(name);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Closes and forgets the services of a removed scope.
+     *
+     * @param scope scope
+     */
+    public void remove(IScope scope) {
+        ScopeServices removed = services.remove(scope);
+        if (removed != null) {
+            removed.close();
+        }
+    }
+
+    /**
+     * Closes the services of a removed application and of any of its rooms still present.
+     *
+     * @param application application scope
+     */
+    public void removeApplication(IScope application) {
+        services.keySet().forEach(scope -> {
+            if (scope == application || PublisherRegistry.applicationScopeOf(scope) == application) {
+                remove(scope);
+            }
+        });
+    }
+
+    public int size() {
+        return services.size();
+    }
+
+    public void clear() {
+        services.keySet().forEach(this::remove);
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.example.scope;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.red5.server.api.scope.IScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.MyRed5ProPlugin;
+import com.example.listener.MyProStreamListener;
+import com.example.processing.PacketScheduler;
+
+/**
+ * Services belonging to one application or room scope: its live streams, publish counters, configuration overrides and,
+ * when <code>scope.&lt;path&gt;.processing.workers</code> is set, a packet scheduler of its own so a busy scope can't
+ * take workers from the others. Created by {@link ScopeServiceRegistry} on the scope's first publish and closed when the
+ * scope is removed.
+ *
+ * @author Paul Gregoire
+ */
+public class ScopeServices {
+
+    private static Logger log = LoggerFactory.getLogger(ScopeServices.class);
+
+    private final MyRed5ProPlugin plugin;
+
+    private final IScope scope;
+
+    // override prefix, scope.<path>.
+    private final String prefix;
+
+    private final ConcurrentHashMap<String, MyProStreamListener> streams = new ConcurrentHashMap<>();
+
+    private final LongAdder publishes = new LongAdder();
+
+    private final long createdTime = System.currentTimeMillis();
+
+    // dedicated scheduler or null to use the plugin's shared one
+    private final PacketScheduler packetScheduler;
+
+    ScopeServices(MyRed5ProPlugin plugin, IScope scope) {
+        this.plugin = plugin;
+        this.scope = scope;
+        String path = scope.getContextPath();
+        this.prefix = "scope." + (path.startsWith("/") ? path.substring(1) : path) + '.';
+        ScopeConfig config = getConfig();
+        int workers = config.getPluginConfig().getInt(prefix + "processing.workers", 0);
+        if (workers > 0) {
+            packetScheduler = new PacketScheduler(PacketScheduler.Mode.WORKERS, workers, config.getInt("processing.batch.size", 64));
+        } else {
+            packetScheduler = null;
+        }
+        log.debug("Services created for scope: {} dedicated workers: {}", path, workers);
+    }
+
+    /**
+     * Returns the scope's view of the current plugin configuration.
+     *
+     * @return config
+     */
+    public ScopeConfig getConfig() {
+        return new ScopeConfig(plugin.getConfig(), prefix);
+    }
+
+    /**
+     * Scheduler for this scope's streams.
+     *
+     * @return dedicated scheduler, or the plugin's shared one
+     */
+    public PacketScheduler getPacketScheduler() {
+        return packetScheduler != null ? packetScheduler : plugin.getPacketScheduler();
+    }
+
+    public boolean hasDedicatedScheduler() {
+        return packetScheduler != null;
+    }
+
+    public void addStream(String name, MyProStreamListener listener) {
+        streams.put(name, listener);
+        publishes.increment();
+    }
+
+    public void removeStream(String name, MyProStreamListener listener) {
+        streams.remove(name, listener);
+    }
+
+    public MyProStreamListener getStream(String name) {
+        return streams.get(name);
+    }
+
+    public Set<String> getStreamNames() {
+        return streams.keySet();
+    }
+
+    public int getStreamCount() {
+        return streams.size();
+    }
+
+    public long getPublishCount() {
+        return publishes.sum();
+    }
+
+    public long getCreatedTime() {
+        return createdTime;
+    }
+
+    public IScope getScope() {
+        return scope;
+    }
+
+    /**
+     * Releases the scope's resources. Its streams have normally terminated by the time the scope is removed; any left
+     * are stopped here.
+     */
+    void close() {
+        streams.values().forEach(listener -> {
+            try {
+                listener.stop();
+            } catch (Exception e) {
+                log.warn("Exception stopping listener in removed scope", e);
+            }
+        });
+        streams.clear();
+        if (packetScheduler != null) {
+            packetScheduler.shutdown();
+        }
+        log.debug("Services closed for scope: {}", scope.getContextPath());
+    }
+
+    @Override
+    public String toString() {
+        return "ScopeServices [scope=" + scope.getContextPath() + ", streams=" + streams.size() + ", publishes=" + publishes.sum()
+                + ", dedicatedScheduler=" + (packetScheduler != null) + "]";
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.example.servlet;
+
+import java.io.IOException;
+
+import com.example.cluster.ClusterRegistry;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Locates streams across the cluster from this node's replicated registry. <code>GET ?path=live/stream1</code> returns
+ * the node the stream is published on, or 404 if no node has it; <code>GET</code> without a path returns the replication
+ * state and peers as JSON.
+ *
+ * @author Paul Gregoire
+ */
+public class ClusterServlet extends MyServlet {
+
+    private static final long serialVersionUID = -6408816627032519950L;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        ClusterRegistry cluster = plugin != null ? plugin.getClusterRegistry() : null;
+        if (cluster == null) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Cluster registry not available"); // 503
+            return;
+        }
+        StringBuilder out = new StringBuilder(256);
+        String path = request.getParameter("path");
+        if (path == null || path.isBlank()) {
+            cluster.writeJson(out);
+        } else {
+            String nodeId = cluster.locate(path);
+            if (nodeId == null) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND, "Stream not found"); // 404
+                return;
+            }
+            out.append("{\"node\":\"").append(nodeId.replace("\\", "\\\\").replace("\"", "\\\"")).append("\",\"local\":")
+                    .append(nodeId.equals(cluster.getNodeId())).append('}');
+        }
+        response.setContentType("application/json; charset=utf-8");
+        response.setHeader("Cache-Control", "no-store");
+        response.getWriter().append(out);
+    }
+
+}
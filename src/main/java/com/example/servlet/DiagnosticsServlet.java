@@ -0,0 +1,81 @@
+package com.example.servlet;
+
+import java.io.IOException;
+
+import com.example.diag.DiagnosticsManager;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Toggles per-stream diagnostic mode. <code>GET</code> lists the streams in diagnostic mode as JSON;
+ * <code>POST ?action=enable&amp;path=live/stream1</code> turns sampled packet logging on for a stream, optionally with
+ * <code>sampleEvery</code> (1 in n packets) and <code>maxPerSecond</code>, and <code>POST ?action=disable&amp;path=...</code>
+ * turns it off. Posts are administrative requests, see {@link MyServlet#checkAdmin}.
+ *
+ * @author Paul Gregoire
+ */
+public class DiagnosticsServlet extends MyServlet {
+
+    private static final long serialVersionUID = -3190582734618204961L;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        DiagnosticsManager diagnostics = plugin != null ? plugin.getDiagnostics() : null;
+        if (diagnostics == null) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Diagnostics not available"); // 503
+            return;
+        }
+        writeState(diagnostics, response);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (!checkAdmin(request, response)) {
+            return;
+        }
+        DiagnosticsManager diagnostics = plugin != null ? plugin.getDiagnostics() : null;
+        if (diagnostics == null) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Diagnostics not available"); // 503
+            return;
+        }
+        String path = request.getParameter("path");
+        if (path == null || path.isBlank() || path.indexOf('/', 1) < 0) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Stream path required, e.g. live/stream1"); // 400
+            return;
+        }
+        String action = request.getParameter("action");
+        if ("enable".equals(action)) {
+            try {
+                diagnostics.enable(path, intParam(request, "sampleEvery", 0), intParam(request, "maxPerSecond", -1));
+            } catch (NumberFormatException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid sampling"); // 400
+                return;
+            }
+        } else if ("disable".equals(action)) {
+            if (!diagnostics.disable(path)) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND, "Stream not in diagnostic mode"); // 404
+                return;
+            }
+        } else {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown action"); // 400
+            return;
+        }
+        writeState(diagnostics, response);
+    }
+
+    private static void writeState(DiagnosticsManager diagnostics, HttpServletResponse response) throws IOException {
+        StringBuilder out = new StringBuilder(256);
+        diagnostics.writeJson(out);
+        response.setContentType("application/json; charset=utf-8");
+        response.setHeader("Cache-Control", "no-store");
+        response.getWriter().append(out);
+    }
+
+    private static int intParam(HttpServletRequest request, String name, int defaultValue) {
+        String value = request.getParameter(name);
+        return value != null && !value.isBlank() ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.example.servlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.example.jfr.FlightRecording;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Controls the plugin's bounded flight recording. <code>GET</code> returns its state as JSON and, with
+ * <code>?action=dump</code>, streams what has been recorded so far as a .jfr file. <code>POST ?action=start</code> starts
+ * a recording, optionally limited with <code>durationMs</code> and <code>maxSizeBytes</code> below the configured caps, and
+ * <code>POST ?action=stop</code> stops it. Dumps are written off the container thread. Every request is an administrative
+ * one, see {@link MyServlet#checkAdmin}.
+ *
+ * @author Paul Gregoire
+ */
+public class FlightRecorderServlet extends MyServlet {
+
+    private static final long serialVersionUID = 6802193578862043517L;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (!checkAdmin(request, response)) {
+            return;
+        }
+        FlightRecording recording = plugin != null ? plugin.getFlightRecording() : null;
+        if (recording == null) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Flight recording not available"); // 503
+            return;
+        }
+        if ("dump".equals(request.getParameter("action"))) {
+            executeAsync(request, response, (req, resp) -> dump(recording, resp));
+        } else {
+            writeState(recording, response);
+        }
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (!checkAdmin(request, response)) {
+            return;
+        }
+        FlightRecording recording = plugin != null ? plugin.getFlightRecording() : null;
+        if (recording == null) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Flight recording not available"); // 503
+            return;
+        }
+        String action = request.getParameter("action");
+        if ("start".equals(action)) {
+            try {
+                recording.start(longParam(request, "durationMs"), longParam(request, "maxSizeBytes"));
+            } catch (NumberFormatException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid limit"); // 400
+                return;
+            } catch (IllegalStateException e) {
+                response.sendError(HttpServletResponse.SC_CONFLICT, e.getMessage()); // 409
+                return;
+            }
+        } else if ("stop".equals(action)) {
+            recording.stop();
+        } else {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown action"); // 400
+            return;
+        }
+        writeState(recording, response);
+    }
+
+    private void dump(FlightRecording recording, HttpServletResponse response) throws IOException {
+        Path file = Files.createTempFile("red5pro-plugin-", ".jfr");
+        try {
+            if (!recording.dump(file)) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND, "No recording"); // 404
+                return;
+            }
+            response.setContentType("application/octet-stream");
+            response.setHeader("Content-Disposition", "attachment; filename=\"" + file.getFileName() + '"');
+            response.setContentLengthLong(Files.size(file));
+            try (OutputStream out = response.getOutputStream()) {
+                Files.copy(file, out);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void writeState(FlightRecording recording, HttpServletResponse response) throws IOException {
+        StringBuilder out = new StringBuilder(256);
+        recording.writeJson(out);
+        response.setContentType("application/json; charset=utf-8");
+        response.setHeader("Cache-Control", "no-store");
+        response.getWriter().append(out);
+    }
+
+    private static long longParam(HttpServletRequest request, String name) {
+        String value = request.getParameter(name);
+        return value != null && !value.isBlank() ? Long.parseLong(value.trim()) : 0L;
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.example.servlet;
+
+import java.io.IOException;
+
+import com.example.forward.ForwardManager;
+import com.example.inspect.CodecInspection;
+import com.example.metrics.IngestMetrics;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Serves per-stream ingest metrics as compact JSON, or in the Prometheus text format when requested with
+ * <code>?format=prometheus</code> or an <code>Accept: text/plain</code> header. The Prometheus output includes the
+ * forward targets and the codec state of inspected streams, which are served as JSON with <code>?view=forward</code> and
+ * <code>?view=codec</code>.
+ *
+ * @author Paul Gregoire
+ */
+public class IngestMetricsServlet extends MyServlet {
+
+    private static final long serialVersionUID = 2094738610238817343L;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        IngestMetrics metrics = plugin != null ? plugin.getIngestMetrics() : null;
+        if (metrics == null) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Metrics not available"); // 503
+            return;
+        }
+        ForwardManager forwarding = plugin.getForwardManager();
+        CodecInspection codecs = plugin.getCodecInspection();
+        // size the buffer for the stream count to avoid regrowing it
+        StringBuilder out = new StringBuilder(256 + metrics.size() * 1024);
+        String format = request.getParameter("format");
+        String accept = request.getHeader("Accept");
+        String view = request.getParameter("view");
+        if ("forward".equals(view)) {
+            if (forwarding != null) {
+                forwarding.writeJson(out);
+            } else {
+                out.append("[]");
+            }
+            response.setContentType("application/json; charset=utf-8");
+        } else if ("codec".equals(view)) {
+            if (codecs != null) {
+                codecs.writeJson(out);
+            } else {
+                out.append("[]");
+            }
+            response.setContentType("application/json; charset=utf-8");
+        } else if ("prometheus".equalsIgnoreCase(format) || (format == null && accept != null && accept.startsWith("text/plain"))) {
+            metrics.writePrometheus(out);
+            if (forwarding != null) {
+                forwarding.writePrometheus(out);
+            }
+            if (codecs != null) {
+                codecs.writePrometheus(out);
+            }
+            response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        } else {
+            metrics.writeJson(out);
+            response.setContentType("application/json; charset=utf-8");
+        }
+        response.setHeader("Cache-Control", "no-store");
+        response.getWriter().append(out);
+    }
+
+}
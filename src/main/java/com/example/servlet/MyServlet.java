@@ -1,15 +1,24 @@
 package com.example.servlet;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.red5.server.plugin.PluginRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.example.MyRed5ProPlugin;
+import com.example.config.PluginConfig;
 import com.red5pro.plugin.Red5ProPlugin;
 import com.red5pro.server.stream.Red5ProConnManager;
 
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.ServletConfig;
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.ServletException;
@@ -17,9 +26,13 @@ import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
 
 /**
- * Base servlet for commonality between WHIP and WHEP.
+ * Base servlet for commonality between WHIP and WHEP. Requests are sessionless: nothing here creates an HTTP session.
+ * Tracing is sampled (init or context param <code>traceSampleRate</code>, 1 in n requests) with full dumps only when
+ * <code>fullDump</code> is set, and subclasses with slow backends can release the container thread via
+ * {@link #executeAsync}. Administrative endpoints guard their requests with {@link #checkAdmin}.
  *
  * @author Paul Gregoire
  */
@@ -35,6 +48,18 @@ public abstract class MyServlet extends HttpServlet {
     // connection manager reference
     protected static Red5ProConnManager connectionManager = (Red5ProConnManager) Red5ProConnManager.getInstance();
 
+    // once the server reports ready it stays ready, so stop asking
+    private static volatile boolean serverReady;
+
+    // trace 1 in n requests with a single summary line, 0 disables
+    protected int traceSampleRate;
+
+    // full request dumps at debug level; creates no sessions but walks every header, cookie and attribute
+    protected boolean fullDump;
+
+    // timeout for requests handed off with startAsync
+    protected long asyncTimeoutMs = 30000L;
+
     @Override
     public void init(ServletConfig config) throws ServletException {
         super.init(config);
@@ -44,25 +69,209 @@ public abstract class MyServlet extends HttpServlet {
         ServletContext context = config.getServletContext();
         if (context != null) {
             // do context param lookups here
+            traceSampleRate = intParam(config, context, "traceSampleRate", 0);
+            fullDump = Boolean.valueOf(param(config, context, "fullDump", "false"));
+            asyncTimeoutMs = intParam(config, context, "asyncTimeoutMs", (int) asyncTimeoutMs);
         }
         logger.debug("init completed - config: {} context: {}", config, context);
     }
 
     @Override
     protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-        logger.trace("service <<");
-        if (logger.isDebugEnabled()) {
+        // pick sampled requests up front, the rest pay nothing for tracing
+        long start = traceSampleRate > 0 && ThreadLocalRandom.current().nextInt(traceSampleRate) == 0 ? System.nanoTime() : 0L;
+        if (fullDump && logger.isDebugEnabled()) {
             debugDump(request, response);
         }
         // ensure the server is ready
-        if (Red5ProPlugin.isReady()) {
+        if (isServiceReady()) {
             // service your requests here
-            logger.trace("service >>");
             super.service(request, response);
         } else {
             logger.debug("Red5 Pro isn't ready yet");
             response.sendError(HttpServletResponse.SC_PRECONDITION_FAILED, "Service not ready"); // 412
         }
+        if (start != 0L) {
+            if (request.isAsyncStarted()) {
+                traceOnComplete(request, response, start);
+            } else {
+                trace(request, response, start);
+            }
+        }
+    }
+
+    /**
+     * Whether the server can take requests; the answer is cached once it turns true.
+     *
+     * @return true if ready
+     */
+    protected boolean isServiceReady() {
+        return serverReady || (serverReady = Red5ProPlugin.isReady());
+    }
+
+    /**
+     * Gates administrative requests. Nothing is served unless <code>admin.enable</code> is set; then callers must present
+     * <code>admin.token</code> as a bearer token in the Authorization header, or, with no token configured, connect from a
+     * loopback address. Rejected requests get a 404 while disabled and a 403 otherwise.
+     *
+     * @param request request
+     * @param response response
+     * @return true if the request may proceed
+     * @throws IOException if the error can't be sent
+     */
+    protected boolean checkAdmin(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        PluginConfig config = plugin != null ? plugin.getConfig() : null;
+        if (config == null || !config.getBoolean("admin.enable", false)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND); // 404
+            return false;
+        }
+        String token = config.getString("admin.token", "");
+        boolean allowed;
+        if (token != null && !token.isBlank()) {
+            String header = request.getHeader("Authorization");
+            allowed = header != null && header.startsWith("Bearer ") && MessageDigest.isEqual(token.trim().getBytes(StandardCharsets.UTF_8),
+                    header.substring(7).trim().getBytes(StandardCharsets.UTF_8));
+        } else {
+            allowed = isLoopback(request.getRemoteAddr());
+        }
+        if (!allowed) {
+            logger.warn("Rejected {} {} from {}", request.getMethod(), request.getRequestURI(), request.getRemoteAddr());
+            response.sendError(HttpServletResponse.SC_FORBIDDEN); // 403
+        }
+        return allowed;
+    }
+
+    private static boolean isLoopback(String address) {
+        if (address == null || address.isEmpty()) {
+            return false;
+        }
+        try {
+            // remote addresses are literals, so this never resolves
+            return InetAddress.getByName(address).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Completes the request off the container thread. The handler runs on the plugin executor and the response is completed
+     * when it returns or throws; requests exceeding the async timeout get a 503.
+     *
+     * @param request request
+     * @param response response
+     * @param handler work producing the response
+     */
+    protected void executeAsync(HttpServletRequest request, HttpServletResponse response, AsyncHandler handler) {
+        AsyncContext async = request.startAsync(request, response);
+        async.setTimeout(asyncTimeoutMs);
+        async.addListener(new AsyncListener() {
+
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                HttpServletResponse resp = (HttpServletResponse) event.getSuppliedResponse();
+                if (!resp.isCommitted()) {
+                    resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Timed out"); // 503
+                }
+                event.getAsyncContext().complete();
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                logger.debug("Async request error", event.getThrowable());
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+        });
+        Runnable task = () -> {
+            try {
+                handler.handle((HttpServletRequest) async.getRequest(), (HttpServletResponse) async.getResponse());
+            } catch (Throwable t) {
+                logger.warn("Exception in async request", t);
+                try {
+                    HttpServletResponse resp = (HttpServletResponse) async.getResponse();
+                    if (!resp.isCommitted()) {
+                        resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR); // 500
+                    }
+                } catch (Exception e) {
+                    logger.debug("Exception sending error", e);
+                }
+            } finally {
+                try {
+                    async.complete();
+                } catch (IllegalStateException e) {
+                    // already completed by a timeout
+                }
+            }
+        };
+        if (MyRed5ProPlugin.submit(task) == null) {
+            // no plugin executor, let the container run it
+            async.start(task);
+        }
+    }
+
+    /**
+     * Response producing work for {@link MyServlet#executeAsync}.
+     */
+    @FunctionalInterface
+    protected interface AsyncHandler {
+
+        void handle(HttpServletRequest request, HttpServletResponse response) throws Exception;
+
+    }
+
+    private void trace(HttpServletRequest request, HttpServletResponse response, long start) {
+        logger.info("trace {} {} from {} status: {} took: {}us", request.getMethod(), request.getRequestURI(), request.getRemoteAddr(),
+                response.getStatus(), (System.nanoTime() - start) / 1000L);
+    }
+
+    private void traceOnComplete(HttpServletRequest request, HttpServletResponse response, long start) {
+        request.getAsyncContext().addListener(new AsyncListener() {
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+                trace(request, response, start);
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+
+        });
+    }
+
+    private static String param(ServletConfig config, ServletContext context, String name, String defaultValue) {
+        String value = config.getInitParameter(name);
+        if (value == null) {
+            value = context.getInitParameter(name);
+        }
+        return value != null ? value : defaultValue;
+    }
+
+    private static int intParam(ServletConfig config, ServletContext context, String name, int defaultValue) {
+        return Integer.valueOf(param(config, context, name, String.valueOf(defaultValue)));
+    }
+
+    public void setTraceSampleRate(int traceSampleRate) {
+        this.traceSampleRate = traceSampleRate;
+    }
+
+    public void setFullDump(boolean fullDump) {
+        this.fullDump = fullDump;
     }
 
     /**
@@ -90,17 +299,21 @@ public abstract class MyServlet extends HttpServlet {
             logger.debug("Query string: {}", request.getQueryString());
             logger.debug("Auth type: {}", request.getAuthType());
             logger.debug("User principal: {}", request.getUserPrincipal());
-            // seems to be per browser without a forced refresh
-            logger.debug("Session id: {}", request.getSession().getId());
-            logger.debug("Session created: {}", request.getSession().getCreationTime());
-            logger.debug("Session last accessed: {}", request.getSession().getLastAccessedTime());
-            logger.debug("Session max inactive: {}", request.getSession().getMaxInactiveInterval());
-            // new session detection doesnt appear to work with Firefox
-            logger.debug("Session is new: {}", request.getSession().isNew());
-            // we're not using session attributes att, but we could
-            request.getSession().getAttributeNames().asIterator().forEachRemaining(attrName -> {
-                logger.debug("Session attribute {}: {}", attrName, request.getSession().getAttribute(attrName));
-            });
+            // only report an existing session, dumping must never create one
+            HttpSession session = request.getSession(false);
+            if (session != null) {
+                // seems to be per browser without a forced refresh
+                logger.debug("Session id: {}", session.getId());
+                logger.debug("Session created: {}", session.getCreationTime());
+                logger.debug("Session last accessed: {}", session.getLastAccessedTime());
+                logger.debug("Session max inactive: {}", session.getMaxInactiveInterval());
+                // new session detection doesnt appear to work with Firefox
+                logger.debug("Session is new: {}", session.isNew());
+                // we're not using session attributes att, but we could
+                session.getAttributeNames().asIterator().forEachRemaining(attrName -> {
+                    logger.debug("Session attribute {}: {}", attrName, session.getAttribute(attrName));
+                });
+            }
             Cookie[] cookies = request.getCookies();
             if (cookies != null) {
                 for (Cookie cookie : cookies) {
@@ -0,0 +1,67 @@
+package com.example.servlet;
+
+import java.io.IOException;
+
+import com.example.preview.ImageFormat;
+import com.example.preview.PreviewService;
+import com.example.preview.Thumbnail;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Serves keyframe previews of publishing streams. <code>GET ?path=live/stream1</code> returns the latest preview as
+ * JPEG, <code>&amp;format=png</code> as PNG. Requesting a preview is what keeps a stream's keyframes being decoded, so the
+ * first request for a stream, or one after it went idle, gets a 503 with a <code>Retry-After</code> until a keyframe has
+ * been decoded. <code>GET</code> without a path returns the service state as JSON.
+ *
+ * @author Paul Gregoire
+ */
+public class PreviewServlet extends MyServlet {
+
+    private static final long serialVersionUID = 5730918466204117385L;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        PreviewService previewService = plugin != null ? plugin.getPreviewService() : null;
+        if (previewService == null) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Previews not available"); // 503
+            return;
+        }
+        String path = request.getParameter("path");
+        if (path == null || path.isBlank()) {
+            StringBuilder out = new StringBuilder(256);
+            previewService.writeJson(out);
+            response.setContentType("application/json; charset=utf-8");
+            response.setHeader("Cache-Control", "no-store");
+            response.getWriter().append(out);
+            return;
+        }
+        ImageFormat format = ImageFormat.of(request.getParameter("format"));
+        if (format == null) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unsupported format"); // 400
+            return;
+        }
+        Thumbnail thumbnail;
+        try {
+            thumbnail = previewService.request(path, format);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Stream not found"); // 404
+            return;
+        }
+        long refreshMs = previewService.getSettings().getRefreshMs();
+        if (thumbnail == null) {
+            response.setHeader("Retry-After", String.valueOf(Math.max(1L, refreshMs / 1000L)));
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Preview not ready"); // 503
+            return;
+        }
+        byte[] data = thumbnail.getData();
+        response.setContentType(format.getContentType());
+        response.setContentLength(data.length);
+        response.setDateHeader("Last-Modified", thumbnail.getCreatedTime());
+        response.setHeader("Cache-Control", "max-age=" + (refreshMs / 1000L));
+        response.getOutputStream().write(data);
+    }
+
+}
@@ -0,0 +1,269 @@
+package com.example.timer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.MyRed5ProPlugin;
+
+/**
+ * Single hashed timer wheel shared by all streams, driven by one plugin scheduled task. Timeouts further out than one
+ * revolution wait in an overflow list that is cascaded once per revolution, so every entry found in the current bucket
+ * is due and a tick costs O(expired) rather than O(scheduled). Timeouts may be scheduled and cancelled from any thread;
+ * tasks run on the tick thread and must be short.
+ *
+ * @author Paul Gregoire
+ */
+public class HashedTimerWheel {
+
+    private static Logger log = LoggerFactory.getLogger(HashedTimerWheel.class);
+
+    private final long tickMs;
+
+    private final int mask;
+
+    private final Timeout[] buckets;
+
+    // timeouts beyond a single revolution
+    private Timeout overflow;
+
+    // handed over from other threads, drained on each tick
+    private final ConcurrentLinkedQueue<Timeout> pending = new ConcurrentLinkedQueue<>();
+
+    private long startTime;
+
+    // last tick processed, tick thread only
+    private long currentTick;
+
+    private Future<?> tickFuture;
+
+    private volatile int size;
+
+    /**
+     * Creates a wheel; wheelSize is rounded up to a power of two.
+     *
+     * @param tickMs tick duration in milliseconds
+     * @param wheelSize number of buckets
+     */
+    public HashedTimerWheel(long tickMs, int wheelSize) {
+        this.tickMs = tickMs;
+        int n = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        mask = n - 1;
+        buckets = new Timeout[n];
+    }
+
+    /**
+     * Starts ticking on the plugin scheduler.
+     */
+    public synchronized void start() {
+        if (tickFuture == null) {
+            startTime = System.nanoTime();
+            tickFuture = MyRed5ProPlugin.schedule(this::tick, tickMs, tickMs);
+            log.debug("Timer wheel started - tick: {}ms buckets: {}", tickMs, buckets.length);
+        }
+    }
+
+    public synchronized void stop() {
+        if (tickFuture != null) {
+            tickFuture.cancel(false);
+            tickFuture = null;
+        }
+        pending.clear();
+    }
+
+    /**
+     * Schedules a task to run once after the given delay.
+     *
+     * @param task task
+     * @param delayMs delay in milliseconds, rounded up to the tick
+     * @return handle for cancellation
+     */
+    public Timeout schedule(TimerTask task, long delayMs) {
+        Timeout timeout = new Timeout(this, task);
+        timeout.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+        pending.offer(timeout);
+        return timeout;
+    }
+
+    /**
+     * Re-arms an expired timeout without allocating a new handle. Intended to be called from within its own task, which
+     * runs on the tick thread. A cancel that landed while the task was running wins and the timeout stays cancelled.
+     *
+     * @param timeout timeout previously created by this wheel
+     * @param delayMs delay in milliseconds
+     * @return false if the timeout was cancelled
+     */
+    public boolean reschedule(Timeout timeout, long delayMs) {
+        if (!timeout.compareAndSetState(Timeout.ST_EXPIRED, Timeout.ST_INIT)) {
+            return false;
+        }
+        timeout.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+        pending.offer(timeout);
+        return true;
+    }
+
+    /**
+     * Processes all ticks elapsed since the last run. Called by the scheduler; exposed for deterministic driving.
+     */
+    public void tick() {
+        try {
+            long targetTick = (System.nanoTime() - startTime) / TimeUnit.MILLISECONDS.toNanos(tickMs);
+            transferPending();
+            while (currentTick < targetTick) {
+                currentTick++;
+                int index = (int) (currentTick & mask);
+                if (index == 0) {
+                    cascade();
+                }
+                expire(index);
+            }
+        } catch (Throwable t) {
+            log.warn("Exception in timer wheel tick", t);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTickMs() {
+        return tickMs;
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (!timeout.compareAndSetState(Timeout.ST_INIT, Timeout.ST_SCHEDULED)) {
+                // cancelled while pending
+                continue;
+            }
+            long ticks = (timeout.deadline - startTime + TimeUnit.MILLISECONDS.toNanos(tickMs) - 1) / TimeUnit.MILLISECONDS.toNanos(tickMs);
+            timeout.deadlineTick = Math.max(ticks, currentTick + 1);
+            size++;
+            place(timeout);
+        }
+    }
+
+    private void place(Timeout timeout) {
+        if (timeout.deadlineTick - currentTick <= mask) {
+            int index = (int) (timeout.deadlineTick & mask);
+            timeout.next = buckets[index];
+            buckets[index] = timeout;
+        } else {
+            timeout.next = overflow;
+            overflow = timeout;
+        }
+    }
+
+    private void cascade() {
+        Timeout timeout = overflow;
+        overflow = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.state == Timeout.ST_CANCELLED) {
+                size--;
+            } else {
+                place(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    private void expire(int index) {
+        Timeout timeout = buckets[index];
+        buckets[index] = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            size--;
+            if (timeout.compareAndSetState(Timeout.ST_SCHEDULED, Timeout.ST_EXPIRED)) {
+                try {
+                    timeout.task.run(timeout);
+                } catch (Throwable t) {
+                    log.warn("Exception in timer task {}", timeout.task, t);
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * Work executed when a timeout expires.
+     */
+    @FunctionalInterface
+    public interface TimerTask {
+
+        void run(Timeout timeout);
+
+    }
+
+    /**
+     * Handle to a scheduled task; intrusive list node owned by the wheel. State moves INIT to SCHEDULED to EXPIRED, and back
+     * to INIT when rescheduled, only by compare-and-set, so a concurrent cancel is never overwritten.
+     */
+    public static final class Timeout {
+
+        static final int ST_INIT = 0, ST_SCHEDULED = 1, ST_EXPIRED = 2, ST_CANCELLED = 3;
+
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final HashedTimerWheel wheel;
+
+        private final TimerTask task;
+
+        private volatile int state;
+
+        private long deadline;
+
+        private long deadlineTick;
+
+        private Timeout next;
+
+        Timeout(HashedTimerWheel wheel, TimerTask task) {
+            this.wheel = wheel;
+            this.task = task;
+        }
+
+        /**
+         * Cancels the timeout; it is unlinked lazily when its bucket comes around. Cancelling while the task runs keeps it
+         * from being rescheduled.
+         *
+         * @return false if it was already cancelled
+         */
+        public boolean cancel() {
+            int current;
+            while ((current = state) != ST_CANCELLED) {
+                if (STATE.compareAndSet(this, current, ST_CANCELLED)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean compareAndSetState(int expect, int update) {
+            return STATE.compareAndSet(this, expect, update);
+        }
+
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+
+        public HashedTimerWheel getWheel() {
+            return wheel;
+        }
+
+        public TimerTask getTask() {
+            return task;
+        }
+
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.example.watchdog;
+
+import com.example.listener.MyProStreamListener;
+
+/**
+ * Receives stale stream events from {@link StaleStreamWatchdog}. Called on the timer wheel thread, so implementations
+ * must return quickly.
+ *
+ * @author Paul Gregoire
+ */
+public interface StaleStreamListener {
+
+    /**
+     * A stream stopped sending on one or more tracks.
+     *
+     * @param listener the stream's listener
+     * @param staleness which tracks went quiet
+     * @param idleMs time since the most recent packet on the stale track(s)
+     */
+    void streamStale(MyProStreamListener listener, Staleness staleness, long idleMs);
+
+    /**
+     * A stream previously reported stale is sending on all tracks again.
+     *
+     * @param listener the stream's listener
+     */
+    default void streamRecovered(MyProStreamListener listener) {
+    }
+
+    enum Staleness {
+        NONE, AUDIO, VIDEO, ALL
+    }
+
+}
@@ -0,0 +1,188 @@
+package com.example.watchdog;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.MyRed5ProPlugin;
+import com.example.listener.MyProStreamListener;
+import com.example.timer.HashedTimerWheel;
+import com.example.timer.HashedTimerWheel.Timeout;
+import com.example.watchdog.StaleStreamListener.Staleness;
+
+/**
+ * Detects publishers whose audio, video or both stopped arriving. Each watched stream has a single timeout on the shared
+ * {@link HashedTimerWheel}, armed for the moment its oldest track would cross the threshold; when it fires the stream is
+ * either found stale or simply re-armed from its latest receive times. Work per tick is therefore proportional to the
+ * timeouts that expire, not to the number of streams.
+ *
+ * @author Paul Gregoire
+ */
+public class StaleStreamWatchdog {
+
+    private static Logger log = LoggerFactory.getLogger(StaleStreamWatchdog.class);
+
+    private final HashedTimerWheel wheel;
+
+    private volatile long audioThresholdMs;
+
+    private volatile long videoThresholdMs;
+
+    // stop listeners of streams with every track stale instead of waiting for the ProStream to terminate
+    private volatile boolean releaseOnStale;
+
+    private final ConcurrentHashMap<MyProStreamListener, Watch> watches = new ConcurrentHashMap<>();
+
+    private final CopyOnWriteArrayList<StaleStreamListener> listeners = new CopyOnWriteArrayList<>();
+
+    public StaleStreamWatchdog(HashedTimerWheel wheel, long audioThresholdMs, long videoThresholdMs, boolean releaseOnStale) {
+        this.wheel = wheel;
+        this.audioThresholdMs = audioThresholdMs;
+        this.videoThresholdMs = videoThresholdMs;
+        this.releaseOnStale = releaseOnStale;
+    }
+
+    /**
+     * Changes the thresholds; each watched stream picks them up the next time its timeout fires.
+     *
+     * @param audioThresholdMs audio idle threshold
+     * @param videoThresholdMs video idle threshold
+     * @param releaseOnStale release listeners of fully stale streams
+     */
+    public void setThresholds(long audioThresholdMs, long videoThresholdMs, boolean releaseOnStale) {
+        this.audioThresholdMs = audioThresholdMs;
+        this.videoThresholdMs = videoThresholdMs;
+        this.releaseOnStale = releaseOnStale;
+    }
+
+    public void addListener(StaleStreamListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(StaleStreamListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts watching a stream.
+     *
+     * @param listener the stream's listener
+     */
+    public void watch(MyProStreamListener listener) {
+        Watch watch = new Watch(listener);
+        if (watches.putIfAbsent(listener, watch) == null) {
+            watch.timeout = wheel.schedule(watch, Math.min(audioThresholdMs, videoThresholdMs));
+        }
+    }
+
+    /**
+     * Stops watching a stream.
+     *
+     * @param listener the stream's listener
+     */
+    public void unwatch(MyProStreamListener listener) {
+        Watch watch = watches.remove(listener);
+        if (watch != null) {
+            watch.cancelled = true;
+            Timeout timeout = watch.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+    }
+
+    public int size() {
+        return watches.size();
+    }
+
+    public void clear() {
+        watches.keySet().forEach(this::unwatch);
+    }
+
+    private final class Watch implements HashedTimerWheel.TimerTask {
+
+        final MyProStreamListener listener;
+
+        final long startTime = System.currentTimeMillis();
+
+        volatile Timeout timeout;
+
+        volatile boolean cancelled;
+
+        Staleness reported = Staleness.NONE;
+
+        Watch(MyProStreamListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void run(Timeout timeout) {
+            if (cancelled) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long lastAudio = listener.getLastAudioReceiveTime();
+            long lastVideo = listener.getLastVideoReceiveTime();
+            boolean audioSeen = lastAudio != 0, videoSeen = lastVideo != 0;
+            boolean audioStale = audioSeen && now - lastAudio >= audioThresholdMs;
+            boolean videoStale = videoSeen && now - lastVideo >= videoThresholdMs;
+            Staleness staleness;
+            long idleMs;
+            if (!audioSeen && !videoSeen) {
+                // nothing ever arrived
+                idleMs = now - startTime;
+                staleness = idleMs >= Math.max(audioThresholdMs, videoThresholdMs) ? Staleness.ALL : Staleness.NONE;
+            } else if ((audioStale || !audioSeen) && (videoStale || !videoSeen)) {
+                staleness = Staleness.ALL;
+                idleMs = now - Math.max(lastAudio, lastVideo);
+            } else if (audioStale) {
+                staleness = Staleness.AUDIO;
+                idleMs = now - lastAudio;
+            } else if (videoStale) {
+                staleness = Staleness.VIDEO;
+                idleMs = now - lastVideo;
+            } else {
+                staleness = Staleness.NONE;
+                idleMs = 0;
+            }
+            if (staleness != reported) {
+                if (staleness == Staleness.NONE) {
+                    log.info("Stream recovered: {}/{}", listener.getScope().getName(), listener.getStreamName());
+                    listeners.forEach(l -> l.streamRecovered(listener));
+                } else {
+                    log.info("Stream stale: {}/{} tracks: {} idle: {}ms", listener.getScope().getName(), listener.getStreamName(), staleness,
+                            idleMs);
+                    listeners.forEach(l -> l.streamStale(listener, staleness, idleMs));
+                }
+                reported = staleness;
+            }
+            if (staleness == Staleness.ALL && releaseOnStale) {
+                unwatch(listener);
+                // closing files etc doesn't belong on the tick thread
+                MyRed5ProPlugin.submit(() -> {
+                    try {
+                        listener.stop();
+                    } catch (Exception e) {
+                        log.warn("Exception releasing stale stream listener", e);
+                    }
+                });
+                return;
+            }
+            // next possible transition: a fresh track crossing its threshold, or a stale one recovering
+            long next = Math.min(audioThresholdMs, videoThresholdMs);
+            if (staleness == Staleness.NONE) {
+                if (audioSeen) {
+                    next = Math.min(next, lastAudio + audioThresholdMs - now);
+                }
+                if (videoSeen) {
+                    next = Math.min(next, lastVideo + videoThresholdMs - now);
+                }
+            }
+            wheel.reschedule(timeout, Math.max(wheel.getTickMs(), next));
+        }
+
+    }
+
+}